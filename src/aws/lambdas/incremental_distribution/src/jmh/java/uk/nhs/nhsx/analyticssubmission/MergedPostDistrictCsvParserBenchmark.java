@@ -0,0 +1,40 @@
+package uk.nhs.nhsx.analyticssubmission;
+
+import com.google.common.io.Resources;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/* the mapping shipped with the lambda, parsed on every cold start */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MergedPostDistrictCsvParserBenchmark {
+
+    private String csv;
+
+    @Setup
+    public void setUp() throws IOException {
+        csv = Resources.toString(Resources.getResource("analyticssubmission/merged_postcode_district_list.csv"), StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Map<String, String> parse() {
+        return MergedPostDistrictCsvParser.parse(csv);
+    }
+}
@@ -0,0 +1,58 @@
+package uk.nhs.nhsx.analyticssubmission;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.nhs.nhsx.analyticssubmission.model.ClientAnalyticsSubmissionPayload;
+import uk.nhs.nhsx.analyticssubmission.model.StoredAnalyticsSubmissionPayload;
+import uk.nhs.nhsx.core.Jackson;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StoredAnalyticsSubmissionPayloadBenchmark {
+
+    private static final String PAYLOAD = "{" +
+        "\"metadata\":{\"operatingSystemVersion\":\"iPhone OS 13.5.1 (17F80)\",\"latestApplicationVersion\":\"3.0\",\"deviceModel\":\"iPhone11,2\",\"postalDistrict\":\"AB10\"}," +
+        "\"analyticsWindow\":{\"endDate\":\"2020-07-28T22:59:00Z\",\"startDate\":\"2020-07-27T23:00:00Z\"}," +
+        "\"metrics\":{" +
+        "\"cumulativeDownloadBytes\":140000000,\"cumulativeUploadBytes\":140000000," +
+        "\"cumulativeCellularDownloadBytes\":80000000,\"cumulativeCellularUploadBytes\":70000000," +
+        "\"cumulativeWifiDownloadBytes\":60000000,\"cumulativeWifiUploadBytes\":50000000," +
+        "\"checkedIn\":1,\"canceledCheckIn\":1,\"receivedVoidTestResult\":1,\"isIsolatingBackgroundTick\":1," +
+        "\"hasHadRiskyContactBackgroundTick\":1,\"receivedPositiveTestResult\":1,\"receivedNegativeTestResult\":1," +
+        "\"hasSelfDiagnosedPositiveBackgroundTick\":1,\"completedQuestionnaireAndStartedIsolation\":1," +
+        "\"encounterDetectionPausedBackgroundTick\":1,\"completedQuestionnaireButDidNotStartIsolation\":1," +
+        "\"totalBackgroundTasks\":1,\"runningNormallyBackgroundTick\":1,\"completedOnboarding\":1}," +
+        "\"includesMultipleApplicationVersions\":false" +
+        "}";
+
+    private ClientAnalyticsSubmissionPayload clientPayload;
+
+    @Setup
+    public void setUp() {
+        clientPayload = Jackson.deserializeMaybe(PAYLOAD, ClientAnalyticsSubmissionPayload.class).orElseThrow();
+    }
+
+    @Benchmark
+    public ClientAnalyticsSubmissionPayload deserialize() {
+        return Jackson.deserializeMaybe(PAYLOAD, ClientAnalyticsSubmissionPayload.class).orElseThrow();
+    }
+
+    @Benchmark
+    public String convertAndSerialize() {
+        return Jackson.toJson(StoredAnalyticsSubmissionPayload.convertFrom(clientPayload));
+    }
+}
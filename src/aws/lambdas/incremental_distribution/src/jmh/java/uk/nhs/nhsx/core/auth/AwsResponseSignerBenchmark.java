@@ -0,0 +1,93 @@
+package uk.nhs.nhsx.core.auth;
+
+import com.amazonaws.services.kms.model.SigningAlgorithmSpec;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.nhs.nhsx.core.signature.KeyId;
+import uk.nhs.nhsx.core.signature.RFC2616DatedSigner;
+import uk.nhs.nhsx.core.signature.Signature;
+import uk.nhs.nhsx.core.signature.Signer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/* the signer only digests its input, so this is the cost of building and hashing what would be sent to KMS */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AwsResponseSignerBenchmark {
+
+    @Param({"1024", "262144"})
+    public int bodyBytes;
+
+    @Param({"false", "true"})
+    public boolean base64Encoded;
+
+    private final AwsResponseSigner signer = new AwsResponseSigner(
+        new RFC2616DatedSigner(() -> Instant.parse("2020-11-01T10:00:00Z"), new DigestingSigner())
+    );
+
+    private final APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent()
+        .withHttpMethod("POST")
+        .withPath("/virology-test/results")
+        .withHeaders(Map.of("Request-Id", "3fa85f64-5717-4562-b3fc-2c963f66afa6"));
+
+    private String body;
+
+    @Setup
+    public void setUp() {
+        byte[] bytes = new byte[bodyBytes];
+        new Random(1).nextBytes(bytes);
+        body = base64Encoded ? Base64.getEncoder().encodeToString(bytes) : Base64.getEncoder().encodeToString(bytes).substring(0, bodyBytes);
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent sign() {
+        APIGatewayProxyResponseEvent response = new APIGatewayProxyResponseEvent()
+            .withBody(body)
+            .withIsBase64Encoded(base64Encoded)
+            .withHeaders(new HashMap<>());
+        signer.sign(request, response);
+        return response;
+    }
+
+    private static class DigestingSigner implements Signer {
+        private static final KeyId KEY_ID = KeyId.of("some-id");
+
+        @Override
+        public Signature sign(byte[] content) {
+            return new Signature(KEY_ID, SigningAlgorithmSpec.ECDSA_SHA_256, Hashing.sha256().hashBytes(content).asBytes());
+        }
+
+        @Override
+        public Signature sign(ByteSource content) {
+            try {
+                return new Signature(KEY_ID, SigningAlgorithmSpec.ECDSA_SHA_256, content.hash(Hashing.sha256()).asBytes());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package uk.nhs.nhsx.core.random.crockford;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/* token generation runs on many threads at once, so this measures with contention on the shared SecureRandom */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CrockfordDammRandomStringGeneratorBenchmark {
+
+    private final CrockfordDammRandomStringGenerator generator = new CrockfordDammRandomStringGenerator();
+
+    @Benchmark
+    public String generate() {
+        return generator.generate();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String generateContended() {
+        return generator.generate();
+    }
+}
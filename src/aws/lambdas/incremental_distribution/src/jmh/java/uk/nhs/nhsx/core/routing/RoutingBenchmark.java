@@ -0,0 +1,74 @@
+package uk.nhs.nhsx.core.routing;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.nhs.nhsx.core.HttpResponses;
+
+import java.util.concurrent.TimeUnit;
+
+import static uk.nhs.nhsx.core.routing.Routing.path;
+import static uk.nhs.nhsx.core.routing.Routing.routes;
+
+/* shaped like the virology routes, the largest table we have */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoutingBenchmark {
+
+    private final Routing.Handler handler = routes(
+        path(Routing.Method.POST, "/virology-test/home-kit/order", r -> HttpResponses.ok()),
+        path(Routing.Method.POST, "/virology-test/home-kit/register", r -> HttpResponses.ok()),
+        path(Routing.Method.POST, "/virology-test/results", r -> HttpResponses.ok()),
+        path(Routing.Method.POST, "/virology-test/cta-exchange", r -> HttpResponses.ok()),
+        path(Routing.Method.POST, "/virology-test/v2/order", r -> HttpResponses.ok()),
+        path(Routing.Method.POST, "/virology-test/v2/results", r -> HttpResponses.ok()),
+        path(Routing.Method.POST, "/virology-test/v2/cta-exchange", r -> HttpResponses.ok()),
+        path(Routing.Method.POST, "/upload/virology-test/npex-result", r -> HttpResponses.ok()),
+        path(Routing.Method.POST, "/upload/virology-test/fiorano-result", r -> HttpResponses.ok()),
+        path(Routing.Method.POST, "/upload/virology-test/eng-result-tokengen", r -> HttpResponses.ok()),
+        path(Routing.Method.POST, "/upload/virology-test/wls-result-tokengen", r -> HttpResponses.ok()),
+        path(Routing.Method.POST, "/circuit-breaker/exposure-notification/request", r -> HttpResponses.ok()),
+        path(Routing.Method.POST, "/circuit-breaker/venue/request", r -> HttpResponses.ok())
+    );
+
+    private final APIGatewayProxyRequestEvent first = request("POST", "/virology-test/home-kit/order");
+    private final APIGatewayProxyRequestEvent last = request("POST", "/circuit-breaker/venue/request");
+    private final APIGatewayProxyRequestEvent unmatched = request("POST", "/not/a/route");
+    private final APIGatewayProxyRequestEvent wrongMethod = request("GET", "/virology-test/results");
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent matchFirst() {
+        return handler.handle(first);
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent matchLast() {
+        return handler.handle(last);
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent notFound() {
+        return handler.handle(unmatched);
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent methodNotAllowed() {
+        return handler.handle(wrongMethod);
+    }
+
+    private static APIGatewayProxyRequestEvent request(String method, String path) {
+        return new APIGatewayProxyRequestEvent().withHttpMethod(method).withPath(path);
+    }
+}
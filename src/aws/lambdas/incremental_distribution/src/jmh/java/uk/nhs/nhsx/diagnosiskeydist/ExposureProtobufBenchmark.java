@@ -0,0 +1,57 @@
+package uk.nhs.nhsx.diagnosiskeydist;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.nhs.nhsx.diagnosiskeydist.apispec.TwoHourlyZIPSubmissionPeriod;
+import uk.nhs.nhsx.diagnosiskeydist.apispec.ZIPSubmissionPeriod;
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKey;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExposureProtobufBenchmark {
+
+    @Param({"100", "10000"})
+    public int keyCount;
+
+    private final ExposureProtobuf protobuf = new ExposureProtobuf("uk.nhs.covid19.benchmark");
+    private final ZIPSubmissionPeriod period = new TwoHourlyZIPSubmissionPeriod(Date.from(Instant.parse("2020-11-01T10:00:00Z")));
+
+    private List<StoredTemporaryExposureKey> keys;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        keys = new ArrayList<>(keyCount);
+        for (int i = 0; i < keyCount; i++) {
+            byte[] key = new byte[16];
+            random.nextBytes(key);
+            keys.add(new StoredTemporaryExposureKey(Base64.getEncoder().encodeToString(key), 2675000 + (i % 14) * 144, 144, 7));
+        }
+    }
+
+    @Benchmark
+    public byte[] buildExport() {
+        return protobuf.buildTemporaryExposureKeyExport(keys, period, 0).toByteArray();
+    }
+}
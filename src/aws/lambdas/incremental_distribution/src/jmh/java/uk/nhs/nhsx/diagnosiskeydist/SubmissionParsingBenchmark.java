@@ -0,0 +1,56 @@
+package uk.nhs.nhsx.diagnosiskeydist;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.nhs.nhsx.core.Jackson;
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKey;
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKeyPayload;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SubmissionParsingBenchmark {
+
+    @Param({"14"})
+    public int keysPerSubmission;
+
+    private byte[] json;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        List<StoredTemporaryExposureKey> keys = new ArrayList<>();
+        for (int i = 0; i < keysPerSubmission; i++) {
+            byte[] key = new byte[16];
+            random.nextBytes(key);
+            keys.add(new StoredTemporaryExposureKey(Base64.getEncoder().encodeToString(key), 2675000 + i * 144, 144, 7));
+        }
+        json = Jackson.toJson(new StoredTemporaryExposureKeyPayload(keys)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public StoredTemporaryExposureKeyPayload getTemporaryExposureKeys() throws IOException {
+        return SubmissionRepository.getTemporaryExposureKeys(new ByteArrayInputStream(json));
+    }
+}
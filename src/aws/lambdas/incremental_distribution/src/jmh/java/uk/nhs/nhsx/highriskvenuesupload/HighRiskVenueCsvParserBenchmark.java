@@ -0,0 +1,53 @@
+package uk.nhs.nhsx.highriskvenuesupload;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HighRiskVenueCsvParserBenchmark {
+
+    private static final String VENUE_ID_ALPHABET = "CDEFHJKMPRTVWXY2345689";
+
+    @Param({"100", "5000"})
+    public int venueCount;
+
+    private final HighRiskVenueCsvParser parser = new HighRiskVenueCsvParser();
+
+    private String csv;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        StringBuilder builder = new StringBuilder("# venue_id, start_time, end_time");
+        for (int i = 0; i < venueCount; i++) {
+            StringBuilder venueId = new StringBuilder();
+            for (int c = 0; c < 8; c++) {
+                venueId.append(VENUE_ID_ALPHABET.charAt(random.nextInt(VENUE_ID_ALPHABET.length())));
+            }
+            builder.append("\n\"").append(venueId).append("\", \"2019-07-04T13:30:00Z\", \"2019-07-04T15:30:00Z\"");
+        }
+        csv = builder.toString();
+    }
+
+    @Benchmark
+    public VenuesParsingResult toJson() {
+        return parser.toJson(csv);
+    }
+}
@@ -12,6 +12,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import uk.nhs.nhsx.core.aws.s3.AwsS3;
 import uk.nhs.nhsx.core.aws.s3.AwsS3Client;
+import uk.nhs.nhsx.core.logging.AsyncLogging;
 
 import java.util.Optional;
 
@@ -35,6 +36,10 @@ public class AAEUploadHandler implements RequestHandler<SQSEvent, String> {
     }
 
     public String handleRequest(SQSEvent input, Context context) {
+        return AsyncLogging.drainedAfter(() -> handle(input, context));
+    }
+
+    private String handle(SQSEvent input, Context context) {
         if (input.getRecords().size() != 1) {
             logger.error(".tf configuration error: batch_size != 1");
             throw new IllegalStateException();
@@ -9,6 +9,7 @@ import uk.nhs.nhsx.core.aws.s3.BucketName;
 import uk.nhs.nhsx.core.aws.s3.ObjectKeyNameProvider;
 import uk.nhs.nhsx.core.aws.s3.S3Storage;
 import uk.nhs.nhsx.core.aws.s3.Sources;
+import uk.nhs.nhsx.core.logging.LogSampler;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -17,6 +18,7 @@ import java.util.UUID;
 public class AnalyticsEventsSubmissionService {
 
     private final static Logger log = LogManager.getLogger(AnalyticsEventsSubmissionService.class);
+    private static final LogSampler uploads = LogSampler.everyNth();
 
     private final S3Storage s3Storage;
     private final ObjectKeyNameProvider objectKeyNameProvider;
@@ -58,7 +60,9 @@ public class AnalyticsEventsSubmissionService {
 
     private void uploadToS3(String json) {
         var objectKey = objectKeyNameProvider.generateObjectKeyName().append(".json");
-        log.info("Uploading {} to {}", objectKey, bucketName.value);
+        if (uploads.sample()) {
+            log.info("Uploading {} to {} ({} uploads)", objectKey, bucketName.value, uploads.occurrences());
+        }
 
         s3Storage.upload(
             S3Storage.Locator.of(bucketName, objectKey),
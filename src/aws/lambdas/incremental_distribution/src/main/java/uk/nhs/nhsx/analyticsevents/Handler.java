@@ -1,6 +1,7 @@
 package uk.nhs.nhsx.analyticsevents;
 
 import uk.nhs.nhsx.core.*;
+import uk.nhs.nhsx.core.Priming;
 import uk.nhs.nhsx.core.auth.ApiName;
 import uk.nhs.nhsx.core.auth.Authenticator;
 import uk.nhs.nhsx.core.auth.ResponseSigner;
@@ -23,6 +24,7 @@ public class Handler extends RoutingHandler {
 
     public Handler() {
         this(Environment.fromSystem(), SystemClock.CLOCK);
+        prime();
     }
 
     public Handler(Environment environment, Supplier<Instant> clock) {
@@ -56,6 +58,8 @@ public class Handler extends RoutingHandler {
                 )
             )
         );
+
+        primeWith(Priming.signing(signer));
     }
 
     @Override
@@ -10,23 +10,34 @@ import uk.nhs.nhsx.analyticssubmission.model.ClientAnalyticsSubmissionPayload;
 import uk.nhs.nhsx.analyticssubmission.model.StoredAnalyticsSubmissionPayload;
 import uk.nhs.nhsx.core.Jackson;
 import uk.nhs.nhsx.core.aws.s3.*;
+import uk.nhs.nhsx.core.logging.LogSampler;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
 
 public class AnalyticsSubmissionService {
     
     private final static Logger log = LogManager.getLogger(AnalyticsSubmissionService.class);
+    private static final LogSampler uploads = LogSampler.everyNth();
     
     private final AnalyticsConfig config;
     private final S3Storage s3Storage;
     private final ObjectKeyNameProvider objectKeyNameProvider;
-    private final AmazonKinesisFirehose kinesisFirehose;
+    private final Supplier<AmazonKinesisFirehose> kinesisFirehose;
 
     public AnalyticsSubmissionService(AnalyticsConfig config,
                                       S3Storage s3Storage,
                                       ObjectKeyNameProvider objectKeyNameProvider,
                                       AmazonKinesisFirehose kinesisFirehose) {
+        this(config, s3Storage, objectKeyNameProvider, () -> kinesisFirehose);
+    }
+
+    /* the firehose client is only built if firehose ingest is enabled, and then on first use */
+    public AnalyticsSubmissionService(AnalyticsConfig config,
+                                      S3Storage s3Storage,
+                                      ObjectKeyNameProvider objectKeyNameProvider,
+                                      Supplier<AmazonKinesisFirehose> kinesisFirehose) {
         this.config = config;
         this.s3Storage = s3Storage;
         this.objectKeyNameProvider = objectKeyNameProvider;
@@ -47,7 +58,9 @@ public class AnalyticsSubmissionService {
 
     private void uploadToS3(String json) {
         var objectKey = objectKeyNameProvider.generateObjectKeyName().append(".json");
-        log.info("Uploading {} to {}", objectKey, config.bucketName.value);
+        if (uploads.sample()) {
+            log.info("Uploading {} to {} ({} uploads)", objectKey, config.bucketName.value, uploads.occurrences());
+        }
 
         s3Storage.upload(
             S3Storage.Locator.of(config.bucketName, objectKey),
@@ -66,6 +79,6 @@ public class AnalyticsSubmissionService {
 
         log.info("Sending json to {}", config.firehoseStreamName);
 
-        kinesisFirehose.putRecord(putRecordRequest);
+        kinesisFirehose.get().putRecord(putRecordRequest);
     }
 }
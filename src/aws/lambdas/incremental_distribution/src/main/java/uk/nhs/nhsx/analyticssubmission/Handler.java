@@ -1,16 +1,18 @@
 package uk.nhs.nhsx.analyticssubmission;
 
 import com.amazonaws.services.kinesisfirehose.AmazonKinesisFirehose;
-import com.amazonaws.services.kinesisfirehose.AmazonKinesisFirehoseClientBuilder;
 import uk.nhs.nhsx.analyticssubmission.model.ClientAnalyticsSubmissionPayload;
+import uk.nhs.nhsx.analyticssubmission.model.StoredAnalyticsSubmissionPayload;
 import uk.nhs.nhsx.core.Environment;
 import uk.nhs.nhsx.core.Environment.EnvironmentKey;
 import uk.nhs.nhsx.core.EnvironmentKeys;
 import uk.nhs.nhsx.core.HttpResponses;
+import uk.nhs.nhsx.core.Priming;
 import uk.nhs.nhsx.core.SystemClock;
 import uk.nhs.nhsx.core.UniqueId;
 import uk.nhs.nhsx.core.auth.ApiName;
 import uk.nhs.nhsx.core.auth.Authenticator;
+import uk.nhs.nhsx.core.aws.AwsClients;
 import uk.nhs.nhsx.core.aws.s3.AwsS3Client;
 import uk.nhs.nhsx.core.aws.s3.ObjectKeyNameProvider;
 import uk.nhs.nhsx.core.aws.s3.S3Storage;
@@ -38,6 +40,7 @@ public class Handler extends RoutingHandler {
 
     public Handler() {
         this(Environment.fromSystem(), SystemClock.CLOCK);
+        prime();
     }
 
     public Handler(Environment environment, Supplier<Instant> clock) {
@@ -45,7 +48,7 @@ public class Handler extends RoutingHandler {
             environment, 
             awsAuthentication(ApiName.Mobile),
             new AwsS3Client(),
-            AmazonKinesisFirehoseClientBuilder.defaultClient(),
+            AwsClients.firehose,
             new UniqueObjectKeyNameProvider(clock, UniqueId.ID),
             analyticsConfig(environment)
         );
@@ -57,6 +60,15 @@ public class Handler extends RoutingHandler {
                    AmazonKinesisFirehose kinesisFirehose,
                    ObjectKeyNameProvider objectKeyNameProvider,
                    AnalyticsConfig analyticsConfig) {
+        this(environment, authenticator, s3Storage, () -> kinesisFirehose, objectKeyNameProvider, analyticsConfig);
+    }
+
+    public Handler(Environment environment,
+                   Authenticator authenticator,
+                   S3Storage s3Storage,
+                   Supplier<AmazonKinesisFirehose> kinesisFirehose,
+                   ObjectKeyNameProvider objectKeyNameProvider,
+                   AnalyticsConfig analyticsConfig) {
 
         var service = new AnalyticsSubmissionService(
             analyticsConfig, s3Storage, objectKeyNameProvider, kinesisFirehose
@@ -77,6 +89,11 @@ public class Handler extends RoutingHandler {
                 )
             )
         );
+
+        primeWith(
+            Priming.jackson(ClientAnalyticsSubmissionPayload.class, StoredAnalyticsSubmissionPayload.class),
+            PostCodeDeserializer::loadMapping
+        );
     }
 
     private static AnalyticsConfig analyticsConfig(Environment environment) {
@@ -1,26 +1,32 @@
 package uk.nhs.nhsx.analyticssubmission;
 
 
+import com.google.common.base.Suppliers;
+import com.google.common.io.Resources;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import uk.nhs.nhsx.diagnosiskeydist.ConcurrentExecution;
 
 import java.io.IOException;
-import java.net.URISyntaxException;
 import java.net.URL;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 public class PostCodeDeserializer {
 
     private static final Logger logger = LogManager.getLogger(ConcurrentExecution.class);
     private final static String csvMappingFileLocation = "analyticssubmission/merged_postcode_district_list.csv";
-    private final static Map<String, String> postcodeMapping = getPostcodeMapping(csvMappingFileLocation);
+    private final static Supplier<Map<String, String>> postcodeMapping = Suppliers.memoize(() -> getPostcodeMapping(csvMappingFileLocation));
 
     public static String mergeSmallPostcodes(String postcode){
-        return mergeSmallPostcodes(postcode, postcodeMapping);
+        return mergeSmallPostcodes(postcode, postcodeMapping.get());
+    }
+
+    /* parsing the mapping takes a while, so the handler does it while priming rather than on the first submission */
+    public static void loadMapping() {
+        postcodeMapping.get();
     }
 
     public static String mergeSmallPostcodes(String postcode, Map<String, String> mapping) {
@@ -34,18 +40,19 @@ public class PostCodeDeserializer {
         String csv;
         try {
             csv = readFileAsString(resource);
-        } catch (IOException | URISyntaxException e) {
+        } catch (IOException e) {
             throw new RuntimeException("Failed to read csv file for postcode mapping due to exception: " + e.toString());
         }
         return MergedPostDistrictCsvParser.parse(csv);
     }
 
 
-    private static String readFileAsString(String resourceName) throws IOException, URISyntaxException {
+    // read through the URL rather than as a file, so it also loads from a jar or a native image
+    private static String readFileAsString(String resourceName) throws IOException {
         URL resource = PostCodeDeserializer.class.getClassLoader().getResource(resourceName);
         if (resource == null) {
             throw new RuntimeException("Could not find post code mapping csv file at " + resourceName);
         }
-        return new String(Files.readAllBytes(Paths.get(resource.toURI())));
+        return Resources.toString(resource, StandardCharsets.UTF_8);
     }
 }
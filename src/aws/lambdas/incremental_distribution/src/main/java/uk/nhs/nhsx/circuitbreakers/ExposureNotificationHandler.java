@@ -4,6 +4,7 @@ import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent
 import uk.nhs.nhsx.core.Environment;
 import uk.nhs.nhsx.core.EnvironmentKeys;
 import uk.nhs.nhsx.core.HttpResponses;
+import uk.nhs.nhsx.core.Priming;
 import uk.nhs.nhsx.core.SystemClock;
 import uk.nhs.nhsx.core.auth.ApiName;
 import uk.nhs.nhsx.core.auth.Authenticator;
@@ -34,6 +35,7 @@ public class ExposureNotificationHandler extends RoutingHandler {
 
     public ExposureNotificationHandler() {
         this(SystemClock.CLOCK, Environment.unknown());
+        prime();
     }
 
     public ExposureNotificationHandler(Supplier<Instant> clock, Environment environment) {
@@ -71,6 +73,8 @@ public class ExposureNotificationHandler extends RoutingHandler {
                 HttpResponses.ok()
             ))
         );
+
+        primeWith(Priming.jackson(ExposureNotificationCircuitBreakerRequest.class), Priming.signing(signer));
     }
 
     private APIGatewayProxyResponseEvent mapResultToResponse(CircuitBreakerResult result) {
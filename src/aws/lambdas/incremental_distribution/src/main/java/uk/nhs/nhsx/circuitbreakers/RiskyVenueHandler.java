@@ -4,6 +4,7 @@ import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent
 import uk.nhs.nhsx.core.Environment;
 import uk.nhs.nhsx.core.EnvironmentKeys;
 import uk.nhs.nhsx.core.HttpResponses;
+import uk.nhs.nhsx.core.Priming;
 import uk.nhs.nhsx.core.SystemClock;
 import uk.nhs.nhsx.core.auth.ApiName;
 import uk.nhs.nhsx.core.auth.Authenticator;
@@ -33,6 +34,7 @@ public class RiskyVenueHandler extends RoutingHandler {
     
     public RiskyVenueHandler() {
         this(SystemClock.CLOCK, Environment.fromSystem());
+        prime();
     }
 
     public RiskyVenueHandler(Supplier<Instant> clock, Environment environment) {
@@ -76,6 +78,8 @@ public class RiskyVenueHandler extends RoutingHandler {
                 )
             )
         );
+
+        primeWith(Priming.signing(signer));
     }
 
     private APIGatewayProxyResponseEvent mapResultToResponse(CircuitBreakerResult result) {
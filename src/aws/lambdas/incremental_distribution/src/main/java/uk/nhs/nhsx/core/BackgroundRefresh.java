@@ -0,0 +1,15 @@
+package uk.nhs.nhsx.core;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/*
+ one shared pool for refreshing cached configuration and credentials off the request path
+ */
+public interface BackgroundRefresh {
+    ScheduledExecutorService SCHEDULER = Executors.newScheduledThreadPool(2,
+        new ThreadFactoryBuilder().setNameFormat("background-refresh-%d").setDaemon(true).build()
+    );
+}
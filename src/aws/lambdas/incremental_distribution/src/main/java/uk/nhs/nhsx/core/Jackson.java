@@ -7,6 +7,7 @@ import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Optional;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -58,6 +59,18 @@ public class Jackson {
         }
     }
 
+    /* builds and caches the (de)serialisers for the given types, which otherwise happens on first use */
+    public static void warm(Class<?>... types) {
+        for (Class<?> type : types) {
+            SystemObjectMapper.MAPPER.canDeserialize(SystemObjectMapper.MAPPER.constructType(type));
+            SystemObjectMapper.MAPPER.canSerialize(type);
+        }
+    }
+
+    public static void writeJson(OutputStream outputStream, Object value) throws IOException {
+        SystemObjectMapper.MAPPER.writeValue(outputStream, value);
+    }
+
     public static String toJson(Object value) {
         try {
             return SystemObjectMapper.MAPPER.writeValueAsString(value);
@@ -0,0 +1,57 @@
+package uk.nhs.nhsx.core;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.nhs.nhsx.core.auth.ResponseSigner;
+import uk.nhs.nhsx.core.metrics.LoggingMetrics;
+import uk.nhs.nhsx.core.metrics.Metrics;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Supplier;
+
+/*
+ work that would otherwise happen on the first request - class loading, building jackson (de)serialisers,
+ looking up parameters, building clients - done while the lambda is initialising instead. Priming makes no call
+ to AWS that a request would not make itself, so it costs nothing per cold start and needs no permissions of its own.
+ a step that fails is logged and skipped, priming must never stop a handler from starting
+ */
+public class Priming {
+
+    private static final Logger logger = LogManager.getLogger(Priming.class);
+
+    public interface Step {
+        void run() throws Exception;
+    }
+
+    public static void prime(Class<?> handler, List<Step> steps) {
+        prime(handler, steps, new LoggingMetrics());
+    }
+
+    public static void prime(Class<?> handler, List<Step> steps, Metrics metrics) {
+        long start = System.nanoTime();
+        for (Step step : steps) {
+            try {
+                step.run();
+            } catch (Exception e) {
+                logger.warn("Priming step of {} failed, continuing", handler.getSimpleName(), e);
+            }
+        }
+        Duration duration = Duration.ofNanos(System.nanoTime() - start);
+        metrics.duration("PrimingDuration", duration);
+        logger.info("Primed {} in {} ms ({} steps)", handler.getSimpleName(), duration.toMillis(), steps.size());
+    }
+
+    public static Step jackson(Class<?>... types) {
+        return () -> Jackson.warm(types);
+    }
+
+    /* everything a signature needs short of asking KMS for one, see ResponseSigner.prime */
+    public static Step signing(ResponseSigner signer) {
+        return signer::prime;
+    }
+
+    public static Step client(Supplier<?> client) {
+        return client::get;
+    }
+}
@@ -10,12 +10,14 @@ import uk.nhs.nhsx.core.aws.ssm.Parameters;
 import uk.nhs.nhsx.core.signature.RFC2616DatedSigner;
 import uk.nhs.nhsx.core.signature.Signer;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.function.Supplier;
 
 public class StandardSigning {
 
     public static final Environment.EnvironmentKey<ParameterName> SSM_KEY_ID_PARAMETER_NAME = Environment.EnvironmentKey.value("SSM_KEY_ID_PARAMETER_NAME", ParameterName.class); 
+    public static final Environment.EnvironmentKey<Integer> KMS_SIGN_HEDGE_AFTER_MILLIS = Environment.EnvironmentKey.integer("KMS_SIGN_HEDGE_AFTER_MILLIS");
     
     public static ResponseSigner signResponseWithKeyGivenInSsm(Supplier<Instant> clock, Environment environment) {
         return new AwsResponseSigner(
@@ -24,18 +26,25 @@ public class StandardSigning {
     }
 
     public static RFC2616DatedSigner datedSigner(Supplier<Instant> clock, Environment environment) {
-        return datedSigner(clock, new AwsSsmParameters(), environment.access.required(SSM_KEY_ID_PARAMETER_NAME));
+        Duration hedgeAfter = environment.access.optional(KMS_SIGN_HEDGE_AFTER_MILLIS)
+            .map(Duration::ofMillis)
+            .orElse(KmsSigner.DEFAULT_HEDGE_AFTER);
+        return datedSigner(clock, new AwsSsmParameters(), environment.access.required(SSM_KEY_ID_PARAMETER_NAME), hedgeAfter);
     }
     
     public static RFC2616DatedSigner datedSigner(Supplier<Instant> clock, Parameters parameters, ParameterName parameterName) {
-        return new RFC2616DatedSigner(clock, signContentWithKeyFromParameter(parameters, parameterName));
+        return datedSigner(clock, parameters, parameterName, KmsSigner.DEFAULT_HEDGE_AFTER);
+    }
+
+    public static RFC2616DatedSigner datedSigner(Supplier<Instant> clock, Parameters parameters, ParameterName parameterName, Duration hedgeAfter) {
+        return new RFC2616DatedSigner(clock, signContentWithKeyId(new ParameterKeyLookup(parameters, parameterName), hedgeAfter));
     }
 
     public static Signer signContentWithKeyFromParameter(Parameters parameters, ParameterName name) {
-        return signContentWithKeyId(new ParameterKeyLookup(parameters, name));
+        return signContentWithKeyId(new ParameterKeyLookup(parameters, name), KmsSigner.DEFAULT_HEDGE_AFTER);
     }
 
-    private static Signer signContentWithKeyId(ParameterKeyLookup keyLookup) {
-        return new KmsSigner(keyLookup::getKmsKeyId);
+    private static Signer signContentWithKeyId(ParameterKeyLookup keyLookup, Duration hedgeAfter) {
+        return new KmsSigner(keyLookup::getKmsKeyId, hedgeAfter);
     }
 }
@@ -2,23 +2,32 @@ package uk.nhs.nhsx.core.auth;
 
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
-import com.amazonaws.util.Base64;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteSource;
+import com.google.common.io.CharSource;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import uk.nhs.nhsx.core.signature.DatedSignature;
 import uk.nhs.nhsx.core.signature.DatedSigner;
 import uk.nhs.nhsx.core.signature.SigningHeaders;
 
-import java.nio.ByteBuffer;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 
 public class AwsResponseSigner implements ResponseSigner {
 
     private final Logger logger = LogManager.getLogger(AwsResponseSigner.class);
 
+    /* a body may be wrapped into lines, as MIME base64 is, so whitespace anywhere in it is skipped when decoding */
+    private static final BaseEncoding BASE64_BODY = BaseEncoding.base64().withSeparator(" \t\r\n", Integer.MAX_VALUE);
+
     private final DatedSigner contentSigner;
 
     public AwsResponseSigner(DatedSigner signer) {
@@ -38,21 +47,9 @@ public class AwsResponseSigner implements ResponseSigner {
         String method = request.getHttpMethod();
         String path = request.getPath();
 
-        DatedSignature signature = contentSigner.sign(signatureDate -> {
-            if (Optional.ofNullable(response.getIsBase64Encoded()).orElse(false)) {
-                byte[] nonContentBytes = String.format("%s:%s:%s:%s:", requestId, method, path, signatureDate.string).getBytes(StandardCharsets.UTF_8);
-                byte[] contentBytes = Base64.decode(responseContent);
-
-                ByteBuffer buffer = ByteBuffer.allocate(nonContentBytes.length + contentBytes.length);
-
-                buffer.put(nonContentBytes);
-                buffer.put(contentBytes);
+        boolean isBase64Encoded = Optional.ofNullable(response.getIsBase64Encoded()).orElse(false);
 
-                return buffer.array();
-            } else {
-                return String.format("%s:%s:%s:%s:%s", requestId, method, path, signatureDate.string, responseContent).getBytes(StandardCharsets.UTF_8);
-            }
-        });
+        DatedSignature signature = contentSigner.signStreaming(signingContent(requestId, method, path, responseContent, isBase64Encoded));
 
         Map<String, String> headers = response.getHeaders();
 
@@ -60,4 +57,29 @@ public class AwsResponseSigner implements ResponseSigner {
             header -> headers.put(header.asHttpHeaderName(), header.value)
         );
     }
+
+    /* builds and digests the content of a throwaway response, as signing one would, then primes the signer itself */
+    @Override
+    public void prime() {
+        try {
+            signingContent("priming", "POST", "/priming", "", false)
+                .apply(new DatedSignature.SignatureDate("priming", Instant.EPOCH))
+                .hash(Hashing.sha256());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        contentSigner.prime();
+    }
+
+    /* the body is appended as a source rather than copied, so the signer can digest it without building the whole input */
+    private static Function<DatedSignature.SignatureDate, ByteSource> signingContent(String requestId, String method, String path, String responseContent, boolean isBase64Encoded) {
+        ByteSource content = isBase64Encoded
+            ? BASE64_BODY.decodingSource(CharSource.wrap(responseContent))
+            : CharSource.wrap(responseContent).asByteSource(StandardCharsets.UTF_8);
+
+        return signatureDate -> ByteSource.concat(
+            ByteSource.wrap((requestId + ":" + method + ":" + path + ":" + signatureDate.string + ":").getBytes(StandardCharsets.UTF_8)),
+            content
+        );
+    }
 }
@@ -1,37 +1,103 @@
 package uk.nhs.nhsx.core.auth;
 
+import com.google.common.base.Ticker;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.nhs.nhsx.core.BackgroundRefresh;
+import uk.nhs.nhsx.core.SystemClock;
 import uk.nhs.nhsx.core.exceptions.Defect;
+import uk.nhs.nhsx.core.metrics.LoggingMetrics;
+import uk.nhs.nhsx.core.metrics.Metrics;
 
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
+import java.time.Instant;
 import java.util.Base64;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
+/*
+ verifying a key is expensive (bcrypt), so results are cached by a digest of the key, and the key itself is never kept:
+ - concurrent requests for the same key share a single verification (the cache blocks other loaders of the same key)
+ - entries that are still in use are re-verified in the background before they expire, with the key of the request
+   that found them due
+ - failed verifications are only remembered briefly, enough to absorb bursts of bad credentials
+ */
 public class CachingApiKeyAuthorizer implements ApiKeyAuthorizer {
 
+    private static final Logger logger = LogManager.getLogger(CachingApiKeyAuthorizer.class);
+
+    private static final Duration EXPIRE_AFTER_WRITE = Duration.ofMinutes(1);
+    private static final Duration REFRESH_AFTER_WRITE = Duration.ofSeconds(45);
+    private static final Duration FAILED_EXPIRE_AFTER_WRITE = Duration.ofSeconds(10);
+
     private final Base64.Encoder encoder = Base64.getEncoder();
-    private final Cache<String, Boolean> cache = CacheBuilder.newBuilder()
-        .expireAfterWrite(Duration.ofMinutes(1))
-        .build();
+    private final Cache<String, Verification> cache;
     private final ApiKeyAuthorizer delegate;
+    private final Supplier<Instant> clock;
+    private final Metrics metrics;
+    private final Executor executor;
 
     public CachingApiKeyAuthorizer(ApiKeyAuthorizer delegate) {
+        this(delegate, SystemClock.CLOCK, new LoggingMetrics(), BackgroundRefresh.SCHEDULER);
+    }
+
+    public CachingApiKeyAuthorizer(ApiKeyAuthorizer delegate, Supplier<Instant> clock, Metrics metrics, Executor executor) {
         this.delegate = delegate;
+        this.clock = clock;
+        this.metrics = metrics;
+        this.executor = executor;
+        this.cache = CacheBuilder.newBuilder()
+            .ticker(tickerFrom(clock))
+            .expireAfterWrite(EXPIRE_AFTER_WRITE)
+            .build();
     }
 
     @Override
     public boolean authorize(ApiKey key) {
+        String hash = hashOf(key);
+        Instant now = clock.get();
+
+        Verification cached = cache.getIfPresent(hash);
+        if (cached != null && !cached.hasFailedExpired(now)) {
+            metrics.increment("ApiKeyAuthorizerCacheHit");
+            if (cached.claimRefreshIfDue(now)) {
+                executor.execute(() -> refresh(hash, key));
+            }
+            return cached.authorized;
+        }
+
+        if (cached != null) {
+            cache.invalidate(hash);
+        }
+
+        metrics.increment("ApiKeyAuthorizerCacheMiss");
         try {
-            return cache.get(hashOf(key), () -> delegate.authorize(key));
-        } catch (ExecutionException e) {
+            return cache.get(hash, () -> verify(key)).authorized;
+        } catch (ExecutionException | UncheckedExecutionException e) {
             throw new RuntimeException("Unable to verify key", e);
         }
     }
 
+    private void refresh(String hash, ApiKey key) {
+        try {
+            cache.put(hash, verify(key));
+        } catch (RuntimeException e) {
+            logger.warn("Unable to re-verify key in the background, it will be verified again when it expires", e);
+        }
+    }
+
+    private Verification verify(ApiKey key) {
+        return new Verification(delegate.authorize(key), clock.get());
+    }
+
     private String hashOf(ApiKey key) {
         MessageDigest digest = newDigest();
         digest.update(bytesFor(key.keyName));
@@ -50,4 +116,34 @@ public class CachingApiKeyAuthorizer implements ApiKeyAuthorizer {
             throw new Defect("Unable to get message digest", e);
         }
     }
+
+    private static Ticker tickerFrom(Supplier<Instant> clock) {
+        return new Ticker() {
+            @Override
+            public long read() {
+                Instant now = clock.get();
+                return now.getEpochSecond() * 1_000_000_000L + now.getNano();
+            }
+        };
+    }
+
+    private static class Verification {
+        private final boolean authorized;
+        private final Instant verifiedAt;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private Verification(boolean authorized, Instant verifiedAt) {
+            this.authorized = authorized;
+            this.verifiedAt = verifiedAt;
+        }
+
+        private boolean hasFailedExpired(Instant now) {
+            return !authorized && verifiedAt.plus(FAILED_EXPIRE_AFTER_WRITE).isBefore(now);
+        }
+
+        /* only the first request to find the entry due starts a refresh */
+        private boolean claimRefreshIfDue(Instant now) {
+            return !verifiedAt.plus(REFRESH_AFTER_WRITE).isAfter(now) && refreshing.compareAndSet(false, true);
+        }
+    }
 }
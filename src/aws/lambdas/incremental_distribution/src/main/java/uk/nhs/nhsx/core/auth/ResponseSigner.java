@@ -5,4 +5,8 @@ import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent
 
 public interface ResponseSigner {
     void sign(APIGatewayProxyRequestEvent request, APIGatewayProxyResponseEvent response);
+
+    /* does the work of a first signature that doesn't depend on the response, without producing a signature */
+    default void prime() {
+    }
 }
@@ -6,6 +6,8 @@ import org.apache.logging.log4j.Logger;
 import uk.nhs.nhsx.core.aws.secretsmanager.SecretManager;
 import uk.nhs.nhsx.core.aws.secretsmanager.SecretName;
 import uk.nhs.nhsx.core.aws.secretsmanager.SecretValue;
+import uk.nhs.nhsx.core.metrics.LoggingMetrics;
+import uk.nhs.nhsx.core.metrics.Metrics;
 
 import java.nio.charset.StandardCharsets;
 import java.util.Optional;
@@ -15,10 +17,16 @@ public class SecretManagerKeyAuthorizer implements ApiKeyAuthorizer {
 
     private final SecretManager secretManager;
     private final ApiName apiName;
+    private final Metrics metrics;
 
     public SecretManagerKeyAuthorizer(ApiName apiName, SecretManager secretManager) {
+        this(apiName, secretManager, new LoggingMetrics());
+    }
+
+    public SecretManagerKeyAuthorizer(ApiName apiName, SecretManager secretManager, Metrics metrics) {
         this.secretManager = secretManager;
         this.apiName = apiName;
+        this.metrics = metrics;
     }
 
     @Override
@@ -31,9 +39,10 @@ public class SecretManagerKeyAuthorizer implements ApiKeyAuthorizer {
     }
 
     private boolean verifyKeyValue(ApiKey apiKey, SecretValue secret) {
-        boolean verified = BCrypt.verifyer()
+        boolean verified = metrics.timed("ApiKeyBCryptVerifyDuration", () -> BCrypt.verifyer()
             .verify(apiKey.keyValue.getBytes(StandardCharsets.UTF_8), secret.value.getBytes(StandardCharsets.UTF_8))
-            .verified;
+            .verified
+        );
 
         if (!verified) {
             logger.warn(
@@ -2,29 +2,41 @@ package uk.nhs.nhsx.core.auth;
 
 import uk.nhs.nhsx.core.aws.secretsmanager.AwsSecretManager;
 import uk.nhs.nhsx.core.aws.secretsmanager.CachingSecretManager;
+import uk.nhs.nhsx.core.aws.secretsmanager.SecretManager;
+import uk.nhs.nhsx.core.aws.xray.Tracing;
+import uk.nhs.nhsx.core.metrics.LoggingMetrics;
+import uk.nhs.nhsx.core.metrics.Metrics;
 
 import java.util.regex.Pattern;
 
 import static uk.nhs.nhsx.core.auth.ApiKeyAuthenticator.authenticatingWithApiKey;
-import static uk.nhs.nhsx.core.aws.xray.Tracing.tracing;
 
 public class StandardAuthentication {
     private static final Pattern pattern = Pattern.compile("^[\\w_-]{6,50}");
+    private static final Metrics metrics = new LoggingMetrics();
 
     public static Authenticator awsAuthentication(ApiName apiName) {
+        return awsAuthentication(apiName, new AwsSecretManager());
+    }
+
+    public static Authenticator awsAuthentication(ApiName apiName, SecretManager secretManager) {
         return authenticatingWithApiKey(
             apiKeyNameValidator(),
-            tracing("authentication", ApiKeyAuthorizer.class,
+            traced(
                 new CachingApiKeyAuthorizer(
                     new SecretManagerKeyAuthorizer(
                         apiName,
-                        new CachingSecretManager(new AwsSecretManager())
+                        new CachingSecretManager(secretManager)
                     )
                 )
             )
         );
     }
 
+    private static ApiKeyAuthorizer traced(ApiKeyAuthorizer delegate) {
+        return key -> Tracing.trace("Authentication", metrics, () -> delegate.authorize(key));
+    }
+
     public static ApiKeyAuthorizer apiKeyNameValidator() {
         return key -> pattern.matcher(key.keyName).matches();
     }
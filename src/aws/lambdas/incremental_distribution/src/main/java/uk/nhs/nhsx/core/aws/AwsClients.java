@@ -0,0 +1,40 @@
+package uk.nhs.nhsx.core.aws;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
+import com.amazonaws.services.kinesisfirehose.AmazonKinesisFirehose;
+import com.amazonaws.services.kinesisfirehose.AmazonKinesisFirehoseClientBuilder;
+import com.amazonaws.services.lambda.AWSLambda;
+import com.amazonaws.services.lambda.AWSLambdaClientBuilder;
+import com.amazonaws.services.secretsmanager.AWSSecretsManager;
+import com.amazonaws.services.secretsmanager.AWSSecretsManagerClientBuilder;
+import com.amazonaws.services.simplesystemsmanagement.AWSSimpleSystemsManagement;
+import com.amazonaws.services.simplesystemsmanagement.AWSSimpleSystemsManagementClientBuilder;
+import com.google.common.base.Suppliers;
+import uk.nhs.nhsx.core.aws.xray.TracingRequestHandler;
+import uk.nhs.nhsx.core.metrics.LoggingMetrics;
+
+import java.util.function.Supplier;
+
+/*
+ one client per service for the whole lambda, built the first time it is used. Building a client is slow
+ (region and credential resolution, class loading), so this is done once, and only for services a handler needs.
+ Every call they make is traced, see TracingRequestHandler
+ */
+public interface AwsClients {
+    Supplier<AmazonDynamoDB> dynamoDB = Suppliers.memoize(() ->
+        AmazonDynamoDBClientBuilder.standard().withRequestHandlers(new TracingRequestHandler("DynamoDB", new LoggingMetrics())).build()
+    );
+    Supplier<AmazonKinesisFirehose> firehose = Suppliers.memoize(() ->
+        AmazonKinesisFirehoseClientBuilder.standard().withRequestHandlers(new TracingRequestHandler("Firehose", new LoggingMetrics())).build()
+    );
+    Supplier<AWSLambda> lambda = Suppliers.memoize(() ->
+        AWSLambdaClientBuilder.standard().withRequestHandlers(new TracingRequestHandler("Lambda", new LoggingMetrics())).build()
+    );
+    Supplier<AWSSecretsManager> secretsManager = Suppliers.memoize(() ->
+        AWSSecretsManagerClientBuilder.standard().withRequestHandlers(new TracingRequestHandler("SecretsManager", new LoggingMetrics())).build()
+    );
+    Supplier<AWSSimpleSystemsManagement> ssm = Suppliers.memoize(() ->
+        AWSSimpleSystemsManagementClientBuilder.standard().withRequestHandlers(new TracingRequestHandler("SSM", new LoggingMetrics())).build()
+    );
+}
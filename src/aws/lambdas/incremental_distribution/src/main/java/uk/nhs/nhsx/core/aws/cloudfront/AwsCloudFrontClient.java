@@ -9,6 +9,8 @@ import com.amazonaws.services.cloudfront.model.Paths;
 import com.google.common.base.Suppliers;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import uk.nhs.nhsx.core.aws.xray.TracingRequestHandler;
+import uk.nhs.nhsx.core.metrics.LoggingMetrics;
 
 import java.util.UUID;
 import java.util.function.Supplier;
@@ -18,7 +20,9 @@ public class AwsCloudFrontClient implements AwsCloudFront {
     private static final Logger logger = LogManager.getLogger(AwsCloudFrontClient.class);
 
     private static final Supplier<AmazonCloudFront> client =
-        Suppliers.memoize(AmazonCloudFrontClientBuilder::defaultClient);
+        Suppliers.memoize(() ->
+            AmazonCloudFrontClientBuilder.standard().withRequestHandlers(new TracingRequestHandler("CloudFront", new LoggingMetrics())).build()
+        );
 
     @Override
     public void invalidateCache(String distributionId, String path) {
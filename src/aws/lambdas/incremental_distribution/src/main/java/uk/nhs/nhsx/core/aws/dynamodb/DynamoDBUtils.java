@@ -1,33 +1,41 @@
 package uk.nhs.nhsx.core.aws.dynamodb;
 
-import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.document.*;
 import com.amazonaws.services.dynamodbv2.document.spec.DeleteItemSpec;
 import com.amazonaws.services.dynamodbv2.model.ReturnValue;
+import com.google.common.base.Suppliers;
+import uk.nhs.nhsx.core.aws.AwsClients;
+
+import java.util.function.Supplier;
 
 public class DynamoDBUtils implements AwsDynamoClient {
 
-	private final DynamoDB dynamoDB;
+	private final Supplier<DynamoDB> dynamoDB;
 
 	public DynamoDBUtils() {
-		dynamoDB = new DynamoDB(AmazonDynamoDBClientBuilder.defaultClient());
+		this(AwsClients.dynamoDB);
+	}
+
+	public DynamoDBUtils(Supplier<AmazonDynamoDB> client) {
+		dynamoDB = Suppliers.memoize(() -> new DynamoDB(client.get()));
 	}
 
 	@Override
 	public void putItem (String tableName, Item item) {
-		Table table = dynamoDB.getTable(tableName);
+		Table table = dynamoDB.get().getTable(tableName);
     	table.putItem(item);
 	}
 
 	@Override
 	public Item getItem(String tableName, String hashKeyName, String hashKeyValue) {
-		Table table = dynamoDB.getTable(tableName);
+		Table table = dynamoDB.get().getTable(tableName);
 		return table.getItem(hashKeyName, hashKeyValue);
 	}
 
 	@Override
 	public DeleteItemOutcome deleteItem(String tableName, String hashKeyName, String hashKeyValue) {
-		Table table = dynamoDB.getTable(tableName);
+		Table table = dynamoDB.get().getTable(tableName);
 
 		DeleteItemSpec deleteItemSpec = new DeleteItemSpec()
 			.withPrimaryKey(new PrimaryKey(hashKeyName, hashKeyValue))
@@ -1,51 +1,164 @@
 package uk.nhs.nhsx.core.aws.kms;
 
-import com.amazonaws.services.kms.AWSKMS;
-import com.amazonaws.services.kms.AWSKMSClientBuilder;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.kms.AWSKMSAsync;
+import com.amazonaws.services.kms.AWSKMSAsyncClientBuilder;
+import com.amazonaws.services.kms.model.AWSKMSException;
 import com.amazonaws.services.kms.model.MessageType;
 import com.amazonaws.services.kms.model.SignRequest;
 import com.amazonaws.services.kms.model.SignResult;
 import com.amazonaws.services.kms.model.SigningAlgorithmSpec;
+import com.google.common.base.Suppliers;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.nhs.nhsx.core.aws.xray.Tracing;
 import uk.nhs.nhsx.core.exceptions.Defect;
+import uk.nhs.nhsx.core.metrics.LoggingMetrics;
+import uk.nhs.nhsx.core.metrics.Metrics;
 import uk.nhs.nhsx.core.signature.KeyId;
 import uk.nhs.nhsx.core.signature.Signature;
 import uk.nhs.nhsx.core.signature.Signer;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
+/*
+ signing is on the request path of most apis, so a slow KMS call is answered by a second (hedged) call after a
+ short delay, and whichever answers first wins. Repeated failed signings open a circuit breaker: while it is open
+ signing fails immediately rather than adding load to a KMS that is already struggling, and once it has cooled down
+ a single unhedged signing is let through to decide whether to close it again.
+ */
 public class KmsSigner implements Signer {
 
+    private static final Logger logger = LogManager.getLogger(KmsSigner.class);
+
+    public static final Duration DEFAULT_HEDGE_AFTER = Duration.ofMillis(150);
+    private static final Duration TIMEOUT = Duration.ofSeconds(3);
+    private static final int FAILURES_BEFORE_OPENING = 5;
+    private static final Duration OPEN_FOR = Duration.ofSeconds(30);
+
     private static final SigningAlgorithmSpec algorithm = SigningAlgorithmSpec.ECDSA_SHA_256;
 
-    private static AWSKMS kmsClient;
+    private static final Supplier<AWSKMSAsync> kmsClient = Suppliers.memoize(KmsSigner::kmsClient);
+
+    private static final ScheduledExecutorService hedgeScheduler = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("kms-hedge-%d").setDaemon(true).build()
+    );
 
     private final Supplier<KeyId> keyId;
+    private final Supplier<AWSKMSAsync> client;
+    private final ScheduledExecutorService scheduler;
+    private final Metrics metrics;
+    private final Duration hedgeAfter;
+    private final Duration timeout;
+    private final CircuitBreaker breaker;
 
     public KmsSigner(Supplier<KeyId> keyId) {
+        this(keyId, DEFAULT_HEDGE_AFTER);
+    }
+
+    public KmsSigner(Supplier<KeyId> keyId, Duration hedgeAfter) {
+        this(keyId, kmsClient, hedgeScheduler, new LoggingMetrics(), hedgeAfter, TIMEOUT);
+    }
+
+    public KmsSigner(Supplier<KeyId> keyId,
+                     Supplier<AWSKMSAsync> client,
+                     ScheduledExecutorService scheduler,
+                     Metrics metrics,
+                     Duration hedgeAfter,
+                     Duration timeout) {
+        this(keyId, client, scheduler, metrics, hedgeAfter, timeout, OPEN_FOR);
+    }
+
+    KmsSigner(Supplier<KeyId> keyId,
+              Supplier<AWSKMSAsync> client,
+              ScheduledExecutorService scheduler,
+              Metrics metrics,
+              Duration hedgeAfter,
+              Duration timeout,
+              Duration openFor) {
         this.keyId = keyId;
+        this.client = client;
+        this.scheduler = scheduler;
+        this.metrics = metrics;
+        this.hedgeAfter = hedgeAfter;
+        this.timeout = timeout;
+        this.breaker = new CircuitBreaker(FAILURES_BEFORE_OPENING, openFor);
     }
 
-    private static synchronized AWSKMS kmsClient() {
-        if (kmsClient == null) {
-            kmsClient = AWSKMSClientBuilder.defaultClient();
-        }
-        return kmsClient;
+    private static AWSKMSAsync kmsClient() {
+        int connections = 10;
+        return AWSKMSAsyncClientBuilder.standard()
+            .withClientConfiguration(
+                new ClientConfiguration()
+                    .withMaxConnections(connections)
+                    .withConnectionTimeout((int) Duration.ofSeconds(1).toMillis())
+                    .withRequestTimeout((int) TIMEOUT.toMillis())
+                    .withTcpKeepAlive(true)
+            )
+            .withExecutorFactory(() -> Executors.newFixedThreadPool(connections,
+                new ThreadFactoryBuilder().setNameFormat("kms-client-%d").setDaemon(true).build())
+            )
+            .build();
+    }
+
+    /* looks up the key id and builds the client, but a signature is only ever asked for by a request */
+    @Override
+    public void prime() {
+        keyId.get();
+        client.get();
     }
 
     @Override
     public Signature sign(byte[] content) {
-        byte[] hash = hashOrThrow(content);
+        return signDigest(hashOrThrow(content));
+    }
+
+    /* KMS is only ever sent the digest, so content is hashed as it is read rather than loaded whole */
+    @Override
+    public Signature sign(ByteSource content) {
+        try {
+            return signDigest(content.hash(Hashing.sha256()).asBytes());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read " + content, e);
+        }
+    }
 
+    private Signature signDigest(byte[] hash) {
         KeyId keyId = this.keyId.get();
 
-        SignResult signResult = kmsClient().sign(new SignRequest()
-            .withKeyId(keyId.value)
-            .withMessage(ByteBuffer.wrap(hash))
-            .withMessageType(MessageType.DIGEST)
-            .withSigningAlgorithm(algorithm));
+        CircuitBreaker.Permit permit = breaker.permit();
+        if (permit == CircuitBreaker.Permit.REJECTED) {
+            metrics.increment("KmsSignRejected");
+            throw new RuntimeException("Not signing with KMS while the circuit breaker is open after repeated failures");
+        }
+
+        /* anything thrown counts, errors included, or a trial that ends in one would keep the breaker open for good */
+        SignResult signResult;
+        try {
+            signResult = Tracing.trace("KmsSign", metrics, () -> awaitWithinBudget(hedged(() -> signRequest(keyId, hash), permit == CircuitBreaker.Permit.CLOSED)));
+        } catch (Throwable e) {
+            recordFailure(e);
+            throw e;
+        }
+        breaker.succeeded();
 
         return new Signature(
             keyId,
@@ -54,6 +167,86 @@ public class KmsSigner implements Signer {
         );
     }
 
+    private SignResult awaitWithinBudget(CompletableFuture<SignResult> result) {
+        try {
+            return result.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            metrics.increment("KmsSignTimeout");
+            throw new RuntimeException("Timed out after " + timeout + " waiting for KMS signature", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Unable to sign with KMS", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for KMS signature", e);
+        }
+    }
+
+    private static SignRequest signRequest(KeyId keyId, byte[] hash) {
+        return new SignRequest()
+            .withKeyId(keyId.value)
+            .withMessage(ByteBuffer.wrap(hash))
+            .withMessageType(MessageType.DIGEST)
+            .withSigningAlgorithm(algorithm);
+    }
+
+    private CompletableFuture<SignResult> hedged(Supplier<SignRequest> request, boolean hedging) {
+        CompletableFuture<SignResult> result = new CompletableFuture<>();
+        AtomicInteger inFlight = new AtomicInteger(1);
+
+        send(request, result, inFlight);
+
+        if (hedging) {
+            ScheduledFuture<?> hedge = scheduler.schedule(() -> {
+                if (!result.isDone()) {
+                    inFlight.incrementAndGet();
+                    metrics.increment("KmsSignHedged");
+                    send(request, result, inFlight);
+                }
+            }, hedgeAfter.toMillis(), TimeUnit.MILLISECONDS);
+            result.whenComplete((r, e) -> hedge.cancel(false));
+        }
+
+        return result;
+    }
+
+    private void send(Supplier<SignRequest> request, CompletableFuture<SignResult> result, AtomicInteger inFlight) {
+        client.get().signAsync(request.get(), new AsyncHandler<>() {
+            @Override
+            public void onError(Exception exception) {
+                if (inFlight.decrementAndGet() == 0) {
+                    result.completeExceptionally(exception);
+                }
+            }
+
+            @Override
+            public void onSuccess(SignRequest signRequest, SignResult signResult) {
+                result.complete(signResult);
+            }
+        });
+    }
+
+    /* only the outcome of the whole signing counts, so an attempt that loses to its hedge is never a failure */
+    private void recordFailure(Throwable exception) {
+        if (isThrottling(exception)) {
+            metrics.increment("KmsSignThrottled");
+        } else {
+            metrics.increment("KmsSignFailed");
+        }
+
+        if (breaker.failed()) {
+            logger.warn("Opening KMS signing circuit breaker for {} after repeated failures", breaker.openFor);
+        }
+    }
+
+    private static boolean isThrottling(Throwable exception) {
+        return exception instanceof AWSKMSException
+            && ("ThrottlingException".equals(((AWSKMSException) exception).getErrorCode())
+            || ((AWSKMSException) exception).getStatusCode() == 429);
+    }
+
     private byte[] hashOrThrow(byte[] content) {
         try {
             MessageDigest digest = MessageDigest.getInstance("SHA-256");
@@ -62,4 +255,52 @@ public class KmsSigner implements Signer {
             throw new Defect("Failed to digest message", e);
         }
     }
+
+    private static final class CircuitBreaker {
+
+        enum Permit {CLOSED, TRIAL, REJECTED}
+
+        private final int failuresBeforeOpening;
+        private final Duration openFor;
+
+        private int consecutiveFailures = 0;
+        private boolean open = false;
+        private boolean trialInFlight = false;
+        private long openUntil = 0;
+
+        CircuitBreaker(int failuresBeforeOpening, Duration openFor) {
+            this.failuresBeforeOpening = failuresBeforeOpening;
+            this.openFor = openFor;
+        }
+
+        synchronized Permit permit() {
+            if (!open) {
+                return Permit.CLOSED;
+            }
+            if (trialInFlight || System.nanoTime() - openUntil < 0) {
+                return Permit.REJECTED;
+            }
+            trialInFlight = true;
+            return Permit.TRIAL;
+        }
+
+        synchronized void succeeded() {
+            consecutiveFailures = 0;
+            open = false;
+            trialInFlight = false;
+        }
+
+        /* returns whether this failure opened the breaker */
+        synchronized boolean failed() {
+            boolean wasTrial = trialInFlight;
+            trialInFlight = false;
+            if (wasTrial || (!open && ++consecutiveFailures >= failuresBeforeOpening)) {
+                open = true;
+                openUntil = System.nanoTime() + openFor.toNanos();
+                consecutiveFailures = 0;
+                return true;
+            }
+            return false;
+        }
+    }
 }
@@ -2,12 +2,73 @@ package uk.nhs.nhsx.core.aws.s3;
 
 import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.google.common.io.ByteSource;
+import org.apache.http.entity.ContentType;
 
+import java.io.IOException;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 public interface AwsS3 extends S3Storage {
     List<S3ObjectSummary> getObjectSummaries(String bucketName);
     Optional<S3Object> getObject(String bucketName, String key);
     void deleteObject(String bucketName, String objectKeyName);
+
+    /* like getObject, but only a key that does not exist is empty: any other failure is thrown, not logged and swallowed */
+    default Optional<S3Object> findObject(String bucketName, String key) {
+        return getObject(bucketName, key);
+    }
+
+    /*
+     writes only if the object is still the version with the given etag, or still absent when there is none, so a
+     read-modify-write does not lose what another writer stored in between. The etag of what was written, to make the
+     next write conditional on, or empty when someone else got there first
+     */
+    Optional<String> uploadIfUnchanged(Locator locator, ContentType contentType, ByteSource bytes, Optional<String> etag);
+
+    default CompletableFuture<Optional<S3Object>> getObjectAsync(String bucketName, String key) {
+        try {
+            return CompletableFuture.completedFuture(getObject(bucketName, key));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    default CompletableFuture<Void> deleteObjectAsync(String bucketName, String objectKeyName) {
+        try {
+            deleteObject(bucketName, objectKeyName);
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /*
+     objects are read by the given function and closed straight away, so the connection goes back to the pool.
+     keys that do not exist are left out of the result, which keeps the order of the keys given
+     */
+    default <T> Map<String, T> getAll(String bucketName, List<String> keys, ObjectReader<T> reader) {
+        Map<String, T> results = new LinkedHashMap<>();
+        keys.forEach(key -> getObject(bucketName, key).ifPresent(it -> results.put(key, readAndClose(it, reader))));
+        return results;
+    }
+
+    default void deleteAll(String bucketName, List<String> keys) {
+        keys.forEach(key -> deleteObject(bucketName, key));
+    }
+
+    static <T> T readAndClose(S3Object object, ObjectReader<T> reader) {
+        try (S3Object it = object) {
+            return reader.read(it);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to read " + object.getBucketName() + "/" + object.getKey(), e);
+        }
+    }
+
+    interface ObjectReader<T> {
+        T read(S3Object object) throws IOException;
+    }
 }
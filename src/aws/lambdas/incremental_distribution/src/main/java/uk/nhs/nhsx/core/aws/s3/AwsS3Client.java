@@ -1,80 +1,315 @@
 package uk.nhs.nhsx.core.aws.s3;
 
+import com.amazonaws.ClientConfiguration;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 import com.amazonaws.services.s3.model.*;
+import com.amazonaws.services.s3.transfer.TransferManager;
+import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
 import com.google.common.base.Suppliers;
+import com.google.common.collect.Lists;
 import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.http.entity.ContentType;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import uk.nhs.nhsx.core.Environment;
+import uk.nhs.nhsx.core.aws.xray.Tracing;
+import uk.nhs.nhsx.core.metrics.LoggingMetrics;
+import uk.nhs.nhsx.core.metrics.Metrics;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.function.Supplier;
 
 import static java.util.Arrays.stream;
+import static java.util.stream.Collectors.toList;
 
+/*
+ clients are shared per pool size, and the async and bulk operations run on a pool of the same size,
+ so a bulk call never queues more requests than there are connections for them
+ */
 public class AwsS3Client implements AwsS3 {
 
     private static final Logger logger = LogManager.getLogger(AwsS3Client.class);
 
-    private static final Supplier<AmazonS3> client =
-        Suppliers.memoize(AmazonS3ClientBuilder::defaultClient);
+    public static final Environment.EnvironmentKey<Integer> S3_MAX_CONNECTIONS = Environment.EnvironmentKey.integer("S3_MAX_CONNECTIONS");
+
+    private static final int DEFAULT_MAX_CONNECTIONS = 50;
+    private static final long MULTIPART_THRESHOLD_BYTES = 16 * 1024 * 1024;
+    private static final int MULTIPART_THREADS = 4;
+    private static final int MAX_KEYS_PER_DELETE = 1000;
+
+    private static final Map<Integer, Pool> pools = new ConcurrentHashMap<>();
+
+    private final Pool pool;
+    private final Metrics metrics;
+
+    public AwsS3Client() {
+        this(Environment.Access.SYSTEM);
+    }
+
+    public AwsS3Client(Environment.Access access) {
+        this(access.optional(S3_MAX_CONNECTIONS).orElse(DEFAULT_MAX_CONNECTIONS), new LoggingMetrics());
+    }
+
+    public AwsS3Client(int maxConnections, Metrics metrics) {
+        this(pools.computeIfAbsent(maxConnections, Pool::create), metrics);
+    }
+
+    AwsS3Client(AmazonS3 client, ExecutorService executor, Metrics metrics) {
+        this(new Pool(() -> client, executor), metrics);
+    }
+
+    private AwsS3Client(Pool pool, Metrics metrics) {
+        this.pool = pool;
+        this.metrics = metrics;
+    }
 
     @Override
     public void upload(Locator locator, ContentType contentType, ByteSource bytes, MetaHeader... meta) {
-        ObjectMetadata metadata = new ObjectMetadata();
-        metadata.setContentType(contentType.getMimeType());
-        stream(meta).forEach(m -> metadata.addUserMetadata(m.asS3MetaName(), m.value));
+        ObjectMetadata metadata = metadataFor(contentType, meta);
+        Optional<Long> size = bytes.sizeIfKnown().toJavaUtil();
+        size.ifPresent(metadata::setContentLength);
+        try (InputStream input = bytes.openBufferedStream()) {
+            PutObjectRequest request = new PutObjectRequest(locator.bucket.value, locator.key.value, input, metadata);
+            if (size.orElse(0L) >= MULTIPART_THRESHOLD_BYTES) {
+                metrics.increment("S3MultipartUpload");
+                Tracing.trace("S3PutObject", metrics, () -> uploadInParts(request));
+            } else {
+                Tracing.trace("S3PutObject", metrics, () -> pool.client.get().putObject(request));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Unable to open data source %s", bytes), e);
+        }
+    }
+
+    /* S3 answers 412 when the condition fails, and 409 when a conflicting write is still in progress */
+    @Override
+    public Optional<String> uploadIfUnchanged(Locator locator, ContentType contentType, ByteSource bytes, Optional<String> etag) {
+        ObjectMetadata metadata = metadataFor(contentType);
         bytes.sizeIfKnown().toJavaUtil().ifPresent(metadata::setContentLength);
         try (InputStream input = bytes.openBufferedStream()) {
-            client.get().putObject(
-                new PutObjectRequest(locator.bucket.value, locator.key.value, input, metadata)
-            );
+            PutObjectRequest request = new PutObjectRequest(locator.bucket.value, locator.key.value, input, metadata);
+            if (etag.isPresent()) {
+                request.putCustomRequestHeader("If-Match", "\"" + etag.get() + "\"");
+            } else {
+                request.putCustomRequestHeader("If-None-Match", "*");
+            }
+            return Optional.of(Tracing.trace("S3PutObject", metrics, () -> pool.client.get().putObject(request)).getETag());
+        } catch (AmazonS3Exception e) {
+            if (e.getStatusCode() == 412 || e.getStatusCode() == 409) {
+                metrics.increment("S3ConditionalPutRejected");
+                return Optional.empty();
+            }
+            throw e;
         } catch (IOException e) {
             throw new RuntimeException(String.format("Unable to open data source %s", bytes), e);
         }
     }
 
+    @Override
+    public UploadStream uploadStream(Locator locator, ContentType contentType, MetaHeader... meta) {
+        return new MultipartUploadStream(pool.client.get(), locator, metadataFor(contentType, meta), metrics);
+    }
+
+    private static ObjectMetadata metadataFor(ContentType contentType, MetaHeader... meta) {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType(contentType.getMimeType());
+        stream(meta).forEach(m -> metadata.addUserMetadata(m.asS3MetaName(), m.value));
+        return metadata;
+    }
+
+    private Void uploadInParts(PutObjectRequest request) {
+        try {
+            pool.transfers.get().upload(request).waitForCompletion();
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while uploading " + request.getKey(), e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> uploadAsync(Locator locator, ContentType contentType, ByteSource bytes, MetaHeader... meta) {
+        return CompletableFuture.runAsync(() -> upload(locator, contentType, bytes, meta), pool.tasks);
+    }
+
+    @Override
+    public void uploadAll(List<Upload> uploads) {
+        pool.requireCallerOutside("uploadAll");
+        joinAll(uploads.stream()
+            .map(it -> uploadAsync(it.locator, it.contentType, it.bytes, it.meta))
+            .collect(toList()));
+    }
+
     @Override
     public List<S3ObjectSummary> getObjectSummaries(String bucketName) {
-        ListObjectsV2Request listObjectsV2Request = new ListObjectsV2Request();
-        listObjectsV2Request.setBucketName(bucketName);
+        return Tracing.trace("S3ListObjects", metrics, () -> {
+            ListObjectsV2Request listObjectsV2Request = new ListObjectsV2Request();
+            listObjectsV2Request.setBucketName(bucketName);
 
-        ListObjectsV2Result result = client.get().listObjectsV2(listObjectsV2Request);
-        List<S3ObjectSummary> objectSummaries = new ArrayList<>(result.getObjectSummaries());
+            ListObjectsV2Result result = pool.client.get().listObjectsV2(listObjectsV2Request);
+            List<S3ObjectSummary> objectSummaries = new ArrayList<>(result.getObjectSummaries());
 
-        while (result.isTruncated()) {
-            String token = result.getNextContinuationToken();
-            listObjectsV2Request.setContinuationToken(token);
+            while (result.isTruncated()) {
+                String token = result.getNextContinuationToken();
+                listObjectsV2Request.setContinuationToken(token);
 
-            result = client.get().listObjectsV2(listObjectsV2Request);
-            objectSummaries.addAll(result.getObjectSummaries());
-        }
+                result = pool.client.get().listObjectsV2(listObjectsV2Request);
+                objectSummaries.addAll(result.getObjectSummaries());
+            }
 
-        return objectSummaries;
+            return objectSummaries;
+        });
     }
 
     @Override
     public Optional<S3Object> getObject(String bucketName, String objectKey) {
         try {
-            return Optional.ofNullable(client.get().getObject(bucketName, objectKey));
+            return findObject(bucketName, objectKey);
         } catch (AmazonS3Exception e) {
-            if (!(e.getStatusCode() == 404 && Objects.equals(e.getErrorCode(), "NoSuchKey"))) {
-                logger.warn("Object could not be retrieved", e);
-            }
+            logger.warn("Object could not be retrieved", e);
             return Optional.empty();
         }
     }
 
+    @Override
+    public Optional<S3Object> findObject(String bucketName, String objectKey) {
+        try {
+            return Tracing.trace("S3GetObject", metrics, () -> Optional.ofNullable(pool.client.get().getObject(bucketName, objectKey)));
+        } catch (AmazonS3Exception e) {
+            if (e.getStatusCode() == 404 && Objects.equals(e.getErrorCode(), "NoSuchKey")) {
+                return Optional.empty();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public CompletableFuture<Optional<S3Object>> getObjectAsync(String bucketName, String key) {
+        return CompletableFuture.supplyAsync(() -> getObject(bucketName, key), pool.tasks);
+    }
+
+    @Override
+    public <T> Map<String, T> getAll(String bucketName, List<String> keys, ObjectReader<T> reader) {
+        pool.requireCallerOutside("getAll");
+        List<CompletableFuture<Optional<T>>> reads = keys.stream()
+            .map(key -> CompletableFuture.supplyAsync(() -> read(bucketName, key, reader), pool.tasks))
+            .collect(toList());
+
+        joinAll(reads);
+
+        Map<String, T> results = new LinkedHashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            reads.get(i).join().ifPresent(it -> results.put(key, it));
+        }
+        return results;
+    }
+
+    private <T> Optional<T> read(String bucketName, String key, ObjectReader<T> reader) {
+        return getObject(bucketName, key).map(it -> AwsS3.readAndClose(it, reader));
+    }
+
     @Override
     public void deleteObject(String bucketName, String objectKey) {
-        client.get().deleteObject(bucketName, objectKey);
+        Tracing.trace("S3DeleteObject", metrics, () -> {
+            pool.client.get().deleteObject(bucketName, objectKey);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteObjectAsync(String bucketName, String objectKeyName) {
+        return CompletableFuture.runAsync(() -> deleteObject(bucketName, objectKeyName), pool.tasks);
+    }
+
+    /* one multi-object delete per thousand keys rather than a request per key */
+    @Override
+    public void deleteAll(String bucketName, List<String> keys) {
+        pool.requireCallerOutside("deleteAll");
+        joinAll(Lists.partition(keys, MAX_KEYS_PER_DELETE).stream()
+            .map(batch -> CompletableFuture.runAsync(() -> deleteObjects(bucketName, batch), pool.tasks))
+            .collect(toList()));
+    }
+
+    private void deleteObjects(String bucketName, List<String> keys) {
+        DeleteObjectsRequest request = new DeleteObjectsRequest(bucketName)
+            .withKeys(keys.stream().map(DeleteObjectsRequest.KeyVersion::new).collect(toList()))
+            .withQuiet(true);
+        Tracing.trace("S3DeleteObjects", metrics, () -> pool.client.get().deleteObjects(request));
+        metrics.count("S3DeletedObjects", keys.size());
     }
 
+    private static void joinAll(List<? extends CompletableFuture<?>> futures) {
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /*
+     a bulk call waits for tasks queued on the pool, so one made from a pool thread (say in a callback of an async
+     call) could be waiting on tasks that are queued behind it, and never finish. The threads that have run a pool
+     task are marked, and bulk calls from them fail straight away instead
+     */
+    private static class Pool {
+        private final Supplier<AmazonS3> client;
+        private final Supplier<TransferManager> transfers;
+        private final Executor tasks;
+        private final ThreadLocal<Boolean> poolThread = ThreadLocal.withInitial(() -> false);
+
+        private Pool(Supplier<AmazonS3> client, ExecutorService executor) {
+            this.client = client;
+            this.transfers = Suppliers.memoize(() -> TransferManagerBuilder.standard()
+                .withS3Client(client.get())
+                .withMultipartUploadThreshold(MULTIPART_THRESHOLD_BYTES)
+                .withExecutorFactory(() -> Executors.newFixedThreadPool(MULTIPART_THREADS, daemonThreads("s3-transfer-%d")))
+                .withShutDownThreadPools(false)
+                .build()
+            );
+            this.tasks = task -> executor.execute(() -> {
+                poolThread.set(true);
+                task.run();
+            });
+        }
+
+        private void requireCallerOutside(String operation) {
+            if (poolThread.get()) {
+                throw new IllegalStateException(operation + " can't be called from an S3 pool thread, it would wait on tasks queued behind itself");
+            }
+        }
+
+        private static Pool create(int maxConnections) {
+            return new Pool(
+                Suppliers.memoize(() -> AmazonS3ClientBuilder.standard()
+                    .withClientConfiguration(new ClientConfiguration().withMaxConnections(maxConnections))
+                    .build()
+                ),
+                Executors.newFixedThreadPool(maxConnections, daemonThreads("s3-client-%d"))
+            );
+        }
+
+        private static ThreadFactory daemonThreads(String nameFormat) {
+            return new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build();
+        }
+    }
 }
@@ -0,0 +1,132 @@
+package uk.nhs.nhsx.core.aws.s3;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import uk.nhs.nhsx.core.aws.xray.Tracing;
+import uk.nhs.nhsx.core.metrics.Metrics;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ holds at most one part in memory: each time the buffer fills it goes up as the next part of a multipart upload,
+ started when the first part is full. Anything that fits in one part is a plain put on close.
+ */
+class MultipartUploadStream extends UploadStream {
+
+    static final int PART_SIZE = 8 * 1024 * 1024;
+
+    private final AmazonS3 client;
+    private final S3Storage.Locator locator;
+    private final ObjectMetadata metadata;
+    private final Metrics metrics;
+    private final byte[] buffer;
+
+    private final List<PartETag> parts = new ArrayList<>();
+    private int buffered;
+    private String uploadId;
+    private boolean done;
+
+    MultipartUploadStream(AmazonS3 client, S3Storage.Locator locator, ObjectMetadata metadata, Metrics metrics) {
+        this(client, locator, metadata, metrics, PART_SIZE);
+    }
+
+    MultipartUploadStream(AmazonS3 client, S3Storage.Locator locator, ObjectMetadata metadata, Metrics metrics, int partSize) {
+        this.client = client;
+        this.locator = locator;
+        this.metadata = metadata;
+        this.metrics = metrics;
+        this.buffer = new byte[partSize];
+    }
+
+    @Override
+    public void write(int b) {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    /* a full buffer goes up only once there is more to write, so the last part is never empty */
+    @Override
+    public void write(byte[] b, int off, int len) {
+        if (done) throw new IllegalStateException("Upload of " + locator + " already finished");
+        try {
+            while (len > 0) {
+                if (buffered == buffer.length) {
+                    uploadPart();
+                }
+                int n = Math.min(len, buffer.length - buffered);
+                System.arraycopy(b, off, buffer, buffered, n);
+                buffered += n;
+                off += n;
+                len -= n;
+            }
+        } catch (RuntimeException e) {
+            throw abortedAfter(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (done) return;
+        try {
+            if (uploadId == null) {
+                metadata.setContentLength(buffered);
+                var request = new PutObjectRequest(locator.bucket.value, locator.key.value, new ByteArrayInputStream(buffer, 0, buffered), metadata);
+                Tracing.trace("S3PutObject", metrics, () -> client.putObject(request));
+            } else {
+                uploadPart();
+                var request = new CompleteMultipartUploadRequest(locator.bucket.value, locator.key.value, uploadId, parts);
+                Tracing.trace("S3CompleteMultipartUpload", metrics, () -> client.completeMultipartUpload(request));
+            }
+            done = true;
+        } catch (RuntimeException e) {
+            throw abortedAfter(e);
+        }
+    }
+
+    @Override
+    public void abort() {
+        if (done) return;
+        done = true;
+        if (uploadId != null) {
+            var request = new AbortMultipartUploadRequest(locator.bucket.value, locator.key.value, uploadId);
+            Tracing.trace("S3AbortMultipartUpload", metrics, () -> {
+                client.abortMultipartUpload(request);
+                return null;
+            });
+        }
+    }
+
+    /* a failure to abort is kept with the failure that caused it, rather than hiding it */
+    private RuntimeException abortedAfter(RuntimeException e) {
+        try {
+            abort();
+        } catch (RuntimeException abortFailure) {
+            e.addSuppressed(abortFailure);
+        }
+        return e;
+    }
+
+    private void uploadPart() {
+        if (uploadId == null) {
+            var request = new InitiateMultipartUploadRequest(locator.bucket.value, locator.key.value, metadata);
+            uploadId = Tracing.trace("S3InitiateMultipartUpload", metrics, () -> client.initiateMultipartUpload(request)).getUploadId();
+            metrics.increment("S3MultipartUpload");
+        }
+        var request = new UploadPartRequest()
+            .withBucketName(locator.bucket.value)
+            .withKey(locator.key.value)
+            .withUploadId(uploadId)
+            .withPartNumber(parts.size() + 1)
+            .withInputStream(new ByteArrayInputStream(buffer, 0, buffered))
+            .withPartSize(buffered);
+        parts.add(Tracing.trace("S3UploadPart", metrics, () -> client.uploadPart(request)).getPartETag());
+        buffered = 0;
+    }
+}
@@ -3,6 +3,9 @@ package uk.nhs.nhsx.core.aws.s3;
 import com.google.common.io.ByteSource;
 import org.apache.http.entity.ContentType;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 public interface S3Storage {
     
     class Locator {
@@ -26,6 +29,51 @@ public interface S3Storage {
             return new Locator(name, key);
         }
     }
+
+    class Upload {
+        public final Locator locator;
+        public final ContentType contentType;
+        public final ByteSource bytes;
+        public final MetaHeader[] meta;
+
+        public Upload(Locator locator, ContentType contentType, ByteSource bytes, MetaHeader... meta) {
+            this.locator = locator;
+            this.contentType = contentType;
+            this.bytes = bytes;
+            this.meta = meta;
+        }
+
+        public static Upload of(Locator locator, ContentType contentType, ByteSource bytes, MetaHeader... meta) {
+            return new Upload(locator, contentType, bytes, meta);
+        }
+
+        @Override
+        public String toString() {
+            return "Upload{" +
+                "locator=" + locator +
+                ", contentType=" + contentType +
+                '}';
+        }
+    }
     
     void upload(Locator locator, ContentType contentType, ByteSource bytes, MetaHeader... meta);
+
+    /* implementations without their own executor complete the upload on the calling thread */
+    default CompletableFuture<Void> uploadAsync(Locator locator, ContentType contentType, ByteSource bytes, MetaHeader... meta) {
+        try {
+            upload(locator, contentType, bytes, meta);
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /* implementations without streaming uploads of their own keep what is written and upload it on close */
+    default UploadStream uploadStream(Locator locator, ContentType contentType, MetaHeader... meta) {
+        return UploadStream.buffering(bytes -> upload(locator, contentType, bytes, meta));
+    }
+
+    default void uploadAll(List<Upload> uploads) {
+        uploads.forEach(it -> upload(it.locator, it.contentType, it.bytes, it.meta));
+    }
 }
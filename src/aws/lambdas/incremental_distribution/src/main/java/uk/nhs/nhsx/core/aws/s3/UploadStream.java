@@ -0,0 +1,46 @@
+package uk.nhs.nhsx.core.aws.s3;
+
+import com.google.common.io.ByteSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.function.Consumer;
+
+/* an object written as a stream: close() stores it, abort() gives up and stores nothing */
+public abstract class UploadStream extends OutputStream {
+
+    public abstract void abort();
+
+    @Override
+    public abstract void close();
+
+    /* keeps everything written and hands it over in one go on close, for stores without uploads of their own */
+    public static UploadStream buffering(Consumer<ByteSource> upload) {
+        return new UploadStream() {
+            private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            private boolean done;
+
+            @Override
+            public void write(int b) {
+                bytes.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                bytes.write(b, off, len);
+            }
+
+            @Override
+            public void close() {
+                if (done) return;
+                done = true;
+                upload.accept(ByteSource.wrap(bytes.toByteArray()));
+            }
+
+            @Override
+            public void abort() {
+                done = true;
+            }
+        };
+    }
+}
@@ -1,21 +1,29 @@
 package uk.nhs.nhsx.core.aws.secretsmanager;
 
 import com.amazonaws.services.secretsmanager.AWSSecretsManager;
-import com.amazonaws.services.secretsmanager.AWSSecretsManagerClientBuilder;
 import com.amazonaws.services.secretsmanager.model.*;
+import uk.nhs.nhsx.core.aws.AwsClients;
 
 import java.util.Optional;
+import java.util.function.Supplier;
 
 public class AwsSecretManager implements SecretManager {
 
-    private final AWSSecretsManager client = AWSSecretsManagerClientBuilder.standard()
-            .build();
+    private final Supplier<AWSSecretsManager> client;
+
+    public AwsSecretManager() {
+        this(AwsClients.secretsManager);
+    }
+
+    public AwsSecretManager(Supplier<AWSSecretsManager> client) {
+        this.client = client;
+    }
 
     @Override
     public Optional<SecretValue> getSecret(SecretName secretName) {
         try {
             GetSecretValueResult getSecretValueResult =
-                client.getSecretValue(new GetSecretValueRequest().withSecretId(secretName.value));
+                client.get().getSecretValue(new GetSecretValueRequest().withSecretId(secretName.value));
 
             return Optional
                 .ofNullable(getSecretValueResult.getSecretString())
@@ -29,7 +37,7 @@ public class AwsSecretManager implements SecretManager {
     public byte[] getSecretBinary(SecretName secretName) {
         try {
             GetSecretValueResult getSecretValueResult =
-                client.getSecretValue(new GetSecretValueRequest().withSecretId(secretName.value));
+                client.get().getSecretValue(new GetSecretValueRequest().withSecretId(secretName.value));
 
             byte[] buffer = new byte[getSecretValueResult.getSecretBinary().remaining()];
             getSecretValueResult.getSecretBinary().get(buffer);
@@ -3,26 +3,30 @@ package uk.nhs.nhsx.core.aws.secretsmanager;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import uk.nhs.nhsx.core.BackgroundRefresh;
 
 import java.time.Duration;
 import java.util.Optional;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 
+/*
+ secrets in use are reloaded in the background shortly before they expire, so callers only block on the first load
+ (or after the secret has not been used for the whole expiry period)
+ */
 public class CachingSecretManager implements SecretManager {
 
     private final LoadingCache<SecretName, Optional<SecretValue>> cache;
 
     public CachingSecretManager(SecretManager delegate) {
+        this(delegate, BackgroundRefresh.SCHEDULER);
+    }
+
+    public CachingSecretManager(SecretManager delegate, Executor executor) {
         cache = CacheBuilder.newBuilder()
+                .refreshAfterWrite(Duration.ofMinutes(4))
                 .expireAfterWrite(Duration.ofMinutes(5))
-                .build(
-                    new CacheLoader<>() {
-                        @Override
-                        public Optional<SecretValue> load(SecretName secretName) {
-                            return delegate.getSecret(secretName);
-                        }
-                    }
-                );
+                .build(CacheLoader.asyncReloading(CacheLoader.from(delegate::getSecret), executor));
     }
 
     @Override
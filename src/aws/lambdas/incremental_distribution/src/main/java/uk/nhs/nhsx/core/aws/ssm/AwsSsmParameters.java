@@ -1,61 +1,169 @@
 package uk.nhs.nhsx.core.aws.ssm;
 
 import com.amazonaws.services.simplesystemsmanagement.AWSSimpleSystemsManagement;
-import com.amazonaws.services.simplesystemsmanagement.AWSSimpleSystemsManagementClientBuilder;
-import com.amazonaws.services.simplesystemsmanagement.model.GetParameterRequest;
-import com.amazonaws.services.simplesystemsmanagement.model.GetParameterResult;
-import com.google.common.base.Suppliers;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
-import com.google.common.util.concurrent.ListenableFuture;
-import com.google.common.util.concurrent.ListenableFutureTask;
+import com.amazonaws.services.simplesystemsmanagement.model.GetParametersRequest;
+import com.amazonaws.services.simplesystemsmanagement.model.GetParametersResult;
+import com.google.common.collect.Lists;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import uk.nhs.nhsx.core.BackgroundRefresh;
+import uk.nhs.nhsx.core.aws.AwsClients;
 
-import java.util.concurrent.*;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
+import static java.util.stream.Collectors.toList;
+
+/*
+ parameters are declared when a handler is built, and the first value requested loads every declared parameter
+ in as few GetParameters calls as possible. After that values are only ever read from memory, and all of them are
+ refreshed together in the background.
+ */
 public class AwsSsmParameters implements Parameters {
 
-    private static final ExecutorService executor = Executors.newCachedThreadPool();
     private static final Logger logger = LogManager.getLogger(AwsSsmParameters.class);
 
-    // cannot construct in class, as tests fail, but not sure how often this is constructed, so compromise here
-    private static final Supplier<AWSSimpleSystemsManagement> ssmClient = Suppliers.memoize(AWSSimpleSystemsManagementClientBuilder::defaultClient);
+    private static final Duration REFRESH_INTERVAL = Duration.ofMinutes(2);
+    private static final int MAX_NAMES_PER_REQUEST = 10;
+
+    // shared by every instance so that all the parameters of a handler are fetched together
+    private static final ParameterValues shared = new ParameterValues(AwsClients.ssm, BackgroundRefresh.SCHEDULER);
+
+    private final ParameterValues values;
+
+    public AwsSsmParameters() {
+        this(shared);
+    }
+
+    AwsSsmParameters(Supplier<AWSSimpleSystemsManagement> client, ScheduledExecutorService scheduler) {
+        this(new ParameterValues(client, scheduler));
+    }
+
+    private AwsSsmParameters(ParameterValues values) {
+        this.values = values;
+    }
 
     @Override
     public <T> Parameter<T> parameter(ParameterName name, Function<String, T> convert) {
-        LoadingCache<ParameterName, T> loader = CacheBuilder.newBuilder()
-            .refreshAfterWrite(2, TimeUnit.MINUTES)
-            .build(new CacheLoader<>() {
-                @Override
-                public T load(ParameterName parameterName) {
-                    return AwsSsmParameters.this.load(parameterName, convert);
-                }
+        values.declare(name);
+        return new Converted<>(() -> values.get(name), convert);
+    }
 
-                @Override
-                public ListenableFuture<T> reload(ParameterName key, T oldValue) {
-                    ListenableFutureTask<T> task = ListenableFutureTask.create(() -> load(key));
-                    executor.execute(task);
-                    return task;
-                }
-            });
+    /*
+     the converted value is kept alongside the raw value it came from, and only converted again once a reload has
+     replaced the raw value, so reading a parameter costs a map lookup
+     */
+    private static class Converted<T> implements Parameter<T> {
+        private final Supplier<String> raw;
+        private final Function<String, T> convert;
+        private volatile Conversion<T> last;
 
-        return () -> {
-            try {
-                return loader.get(name);
-            } catch (ExecutionException e) {
-                throw new RuntimeException("Unable to load parameter for " + name, e);
+        private Converted(Supplier<String> raw, Function<String, T> convert) {
+            this.raw = raw;
+            this.convert = convert;
+        }
+
+        @Override
+        public T value() {
+            String current = raw.get();
+            Conversion<T> conversion = last;
+            if (conversion == null || conversion.raw != current) {
+                conversion = new Conversion<>(current, convert.apply(current));
+                last = conversion;
             }
-        };
+            return conversion.value;
+        }
     }
 
-    private <T> T load(ParameterName name, Function<String, T> convert) {
-        logger.info("Reloading value of parameter {}", name);
-        GetParameterRequest request = new GetParameterRequest().withName(name.value);
-        GetParameterResult result = ssmClient.get().getParameter(request);
-        return convert.apply(result.getParameter().getValue());
+    private static class Conversion<T> {
+        private final String raw;
+        private final T value;
+
+        private Conversion(String raw, T value) {
+            this.raw = raw;
+            this.value = value;
+        }
+    }
+
+    private static class ParameterValues {
+        private final Supplier<AWSSimpleSystemsManagement> client;
+        private final ScheduledExecutorService scheduler;
+        private final Set<ParameterName> declared = ConcurrentHashMap.newKeySet();
+        private final Map<ParameterName, String> values = new ConcurrentHashMap<>();
+        private final AtomicBoolean refreshScheduled = new AtomicBoolean();
+
+        private ParameterValues(Supplier<AWSSimpleSystemsManagement> client, ScheduledExecutorService scheduler) {
+            this.client = client;
+            this.scheduler = scheduler;
+        }
+
+        private void declare(ParameterName name) {
+            declared.add(name);
+        }
+
+        private String get(ParameterName name) {
+            String value = values.get(name);
+            if (value == null) {
+                loadMissing();
+                value = values.get(name);
+            }
+            if (value == null) {
+                throw new RuntimeException("Unable to load parameter for " + name);
+            }
+            return value;
+        }
+
+        private synchronized void loadMissing() {
+            List<ParameterName> missing = declared.stream()
+                .filter(name -> !values.containsKey(name))
+                .collect(toList());
+
+            if (!missing.isEmpty()) {
+                values.putAll(fetch(missing));
+            }
+
+            if (refreshScheduled.compareAndSet(false, true)) {
+                scheduler.scheduleWithFixedDelay(this::refresh, REFRESH_INTERVAL.toMillis(), REFRESH_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void refresh() {
+            try {
+                /* unchanged values keep their instance, so what was converted from them stays current */
+                fetch(new ArrayList<>(values.keySet())).forEach((name, value) -> {
+                    if (!value.equals(values.get(name))) values.put(name, value);
+                });
+            } catch (Exception e) {
+                logger.warn("Unable to refresh parameters, keeping previous values", e);
+            }
+        }
+
+        private Map<ParameterName, String> fetch(List<ParameterName> names) {
+            logger.info("Reloading values of parameters {}", names);
+
+            Map<ParameterName, String> result = new HashMap<>();
+            for (List<ParameterName> batch : Lists.partition(names, MAX_NAMES_PER_REQUEST)) {
+                GetParametersRequest request = new GetParametersRequest()
+                    .withNames(batch.stream().map(it -> it.value).collect(toList()));
+
+                GetParametersResult response = client.get().getParameters(request);
+                response.getParameters().forEach(it -> result.put(ParameterName.of(it.getName()), it.getValue()));
+
+                if (!response.getInvalidParameters().isEmpty()) {
+                    logger.warn("Unable to find parameters {}", response.getInvalidParameters());
+                }
+            }
+            return result;
+        }
     }
 }
@@ -2,35 +2,57 @@ package uk.nhs.nhsx.core.aws.xray;
 
 import com.amazonaws.xray.AWSXRay;
 import com.amazonaws.xray.AWSXRayRecorderBuilder;
+import com.amazonaws.xray.entities.Entity;
 import com.amazonaws.xray.entities.Subsegment;
+import com.amazonaws.xray.entities.TraceHeader;
+import uk.nhs.nhsx.core.metrics.Metrics;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Proxy;
+import java.util.Optional;
+import java.util.function.Supplier;
 
+/*
+ traced calls are explicit, typed wrappers rather than proxies, and the sampling decision is checked first: only a
+ sampled request pays for a subsegment. Otherwise the call is timed as a metric (<name>Duration) instead, so the
+ timings are still there for the requests x-ray does not see.
+ */
 public class Tracing {
 
-    public static <T> T tracing(String name, Class<T> clazz, T delegate) {
-        return clazz.cast(
-            Proxy.newProxyInstance(
-                clazz.getClassLoader(),
-                new Class<?>[]{clazz},
-                (proxy, method, args) -> {
-                    Subsegment subsegment = AWSXRay.beginSubsegment(name);
-                    try {
-                        return method.invoke(delegate, args);
-                    } catch (IllegalAccessException | IllegalArgumentException e) {
-                        subsegment.addException(e);
-                        throw new RuntimeException("Programmer error invoking " + method + " on " + clazz);
-                    } catch (InvocationTargetException e) {
-                        Throwable cause = e.getCause();
-                        subsegment.addException(cause);
-                        throw cause;
-                    } finally {
-                        subsegment.close();
-                    }
-                }
-            )
-        );
+    private static final String LAMBDA_TRACE_HEADER_PROPERTY = "com.amazonaws.xray.traceHeader";
+
+    public static <T> T trace(String name, Metrics metrics, Supplier<T> action) {
+        if (!isSampled()) {
+            return metrics.timed(name + "Duration", action);
+        }
+
+        Subsegment subsegment = AWSXRay.beginSubsegment(name);
+        try {
+            return action.get();
+        } catch (RuntimeException e) {
+            subsegment.addException(e);
+            throw e;
+        } finally {
+            subsegment.close();
+        }
+    }
+
+    /*
+     the current entity knows whether it is sampled; in a lambda there is none until the first subsegment is begun,
+     so the decision comes from the trace header the runtime sets for each invocation instead. The _X_AMZN_TRACE_ID
+     environment variable is only the one the process started with, so it is not consulted
+     */
+    public static boolean isSampled() {
+        Entity entity = AWSXRay.getGlobalRecorder().getTraceEntity();
+        if (entity != null) {
+            return entity.getParentSegment().isSampled();
+        }
+        return lambdaTraceHeader()
+            .map(TraceHeader::fromString)
+            .map(it -> it.getSampled() == TraceHeader.SampleDecision.SAMPLED)
+            .orElse(false);
+    }
+
+    private static Optional<String> lambdaTraceHeader() {
+        return Optional.ofNullable(System.getProperty(LAMBDA_TRACE_HEADER_PROPERTY));
     }
 
     public static void disableXRayComplaintsForMainClasses() {
@@ -0,0 +1,74 @@
+package uk.nhs.nhsx.core.aws.xray;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.handlers.HandlerContextKey;
+import com.amazonaws.handlers.RequestHandler2;
+import com.amazonaws.xray.AWSXRay;
+import com.amazonaws.xray.entities.Namespace;
+import com.amazonaws.xray.entities.Subsegment;
+import uk.nhs.nhsx.core.metrics.Metrics;
+
+import java.time.Duration;
+
+/*
+ traces every call made by an sdk client it is attached to, named after the service and operation, e.g.
+ DynamoDBGetItem. Sampled requests get a subsegment, the others a DynamoDBGetItemDuration metric.
+ */
+public class TracingRequestHandler extends RequestHandler2 {
+
+    private static final HandlerContextKey<Subsegment> SUBSEGMENT = new HandlerContextKey<>("TracingSubsegment");
+    private static final HandlerContextKey<Long> STARTED_AT = new HandlerContextKey<>("TracingStartedAt");
+
+    private final String service;
+    private final Metrics metrics;
+
+    public TracingRequestHandler(String service, Metrics metrics) {
+        this.service = service;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void beforeRequest(Request<?> request) {
+        if (Tracing.isSampled()) {
+            Subsegment subsegment = AWSXRay.beginSubsegment(nameOf(request));
+            subsegment.setNamespace(Namespace.AWS.toString());
+            request.addHandlerContext(SUBSEGMENT, subsegment);
+        } else {
+            request.addHandlerContext(STARTED_AT, System.nanoTime());
+        }
+    }
+
+    @Override
+    public void afterResponse(Request<?> request, Response<?> response) {
+        finish(request, null);
+    }
+
+    @Override
+    public void afterError(Request<?> request, Response<?> response, Exception e) {
+        finish(request, e);
+    }
+
+    private void finish(Request<?> request, Exception e) {
+        Subsegment subsegment = request.getHandlerContext(SUBSEGMENT);
+        if (subsegment != null) {
+            if (e != null) subsegment.addException(e);
+            subsegment.close();
+            return;
+        }
+        Long startedAt = request.getHandlerContext(STARTED_AT);
+        if (startedAt != null) {
+            metrics.duration(nameOf(request) + "Duration", Duration.ofNanos(System.nanoTime() - startedAt));
+        }
+    }
+
+    private String nameOf(Request<?> request) {
+        return service + operationOf(request.getOriginalRequest());
+    }
+
+    static String operationOf(AmazonWebServiceRequest request) {
+        String name = request.getClass().getSimpleName();
+        return name.endsWith("Request") ? name.substring(0, name.length() - "Request".length()) : name;
+    }
+}
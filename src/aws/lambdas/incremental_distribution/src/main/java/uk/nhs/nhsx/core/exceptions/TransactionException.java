@@ -19,4 +19,15 @@ public class TransactionException extends RuntimeException {
     public boolean isConditionFailure(){
         return nestedTransactionCanceledException.getCancellationReasons().stream().anyMatch(reason -> reason.getCode().equals("ConditionalCheckFailed"));
     }
+
+    public boolean isThrottling() {
+        return nestedTransactionCanceledException.getCancellationReasons().stream()
+            .anyMatch(reason -> "ThrottlingError".equals(reason.getCode()) || "ProvisionedThroughputExceeded".equals(reason.getCode()));
+    }
+
+    /* reasons come back in the order the items were given, one per item, "None" for those that did not cancel it */
+    public boolean isConditionFailureAt(int itemIndex) {
+        var reasons = nestedTransactionCanceledException.getCancellationReasons();
+        return reasons != null && itemIndex < reasons.size() && "ConditionalCheckFailed".equals(reasons.get(itemIndex).getCode());
+    }
 }
@@ -0,0 +1,102 @@
+package uk.nhs.nhsx.core.logging;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.async.AsyncLoggerConfig;
+import org.apache.logging.log4j.core.async.AsyncLoggerConfigDelegate;
+import org.apache.logging.log4j.core.config.Configuration;
+import org.apache.logging.log4j.core.jmx.RingBufferAdmin;
+import uk.nhs.nhsx.core.Environment;
+import uk.nhs.nhsx.core.metrics.LoggingMetrics;
+
+import java.time.Duration;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/*
+ log events are handed to a background thread (AsyncRoot in log4j2.xml) rather than written on the request path.
+ Lambda freezes the process as soon as the handler returns, which would leave whatever is still queued until the
+ next invocation, or lose it if there isn't one, so handlers wait for the queue to drain before returning. Outside
+ lambda nothing is frozen, and with many requests in flight in one process the queue may never be empty, so there
+ is no waiting there.
+
+ The wait is bounded: a request that logged a lot can take up to the budget (200ms unless LOG_DRAIN_BUDGET_MILLIS
+ says otherwise) longer to return. Anything still queued after that is written once the process thaws.
+ */
+public class AsyncLogging {
+
+    private static final Environment.EnvironmentKey<Integer> LOG_DRAIN_BUDGET_MILLIS = Environment.EnvironmentKey.integer("LOG_DRAIN_BUDGET_MILLIS");
+    private static final Duration DRAIN_BUDGET = Environment.Access.SYSTEM.optional(LOG_DRAIN_BUDGET_MILLIS).map(Duration::ofMillis).orElse(Duration.ofMillis(200));
+    private static final long PARK_NANOS = Duration.ofMillis(1).toNanos();
+
+    private static final boolean FROZEN_BETWEEN_INVOCATIONS = System.getenv("AWS_LAMBDA_FUNCTION_NAME") != null;
+
+    private static volatile Drain drain;
+
+    /*
+     for handlers that don't go through RoutingHandler: runs the work, then writes the invocation's metrics and waits
+     for its lines whatever the outcome
+     */
+    public static <T> T drainedAfter(Supplier<T> work) {
+        try {
+            return work.get();
+        } finally {
+            LoggingMetrics.flush();
+            awaitDrained();
+        }
+    }
+
+    public static void awaitDrained() {
+        if (FROZEN_BETWEEN_INVOCATIONS) {
+            awaitDrained(DRAIN_BUDGET);
+        }
+    }
+
+    public static void awaitDrained(Duration budget) {
+        Drain current = currentDrain();
+        if (current == null || current.ringBuffer == null) return;
+
+        long deadline = System.nanoTime() + budget.toNanos();
+        while (current.pending() > 0 && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    private static Drain currentDrain() {
+        if (!(LogManager.getContext(false) instanceof LoggerContext)) return null;
+        LoggerContext context = (LoggerContext) LogManager.getContext(false);
+        Configuration configuration = context.getConfiguration();
+
+        Drain current = drain;
+        if (current == null || current.configuration != configuration) {
+            current = new Drain(configuration, hasAsyncLoggers(configuration) ? ringBufferOf(context, configuration) : null);
+            drain = current;
+        }
+        return current;
+    }
+
+    /* asking a configuration without async loggers for its delegate would create a disruptor that is never started */
+    private static boolean hasAsyncLoggers(Configuration configuration) {
+        return configuration.getRootLogger() instanceof AsyncLoggerConfig
+            || configuration.getLoggers().values().stream().anyMatch(AsyncLoggerConfig.class::isInstance);
+    }
+
+    private static RingBufferAdmin ringBufferOf(LoggerContext context, Configuration configuration) {
+        AsyncLoggerConfigDelegate delegate = configuration.getAsyncLoggerConfigDelegate();
+        return delegate.createRingBufferAdmin(context.getName(), "");
+    }
+
+    private static class Drain {
+        private final Configuration configuration;
+        private final RingBufferAdmin ringBuffer;
+
+        private Drain(Configuration configuration, RingBufferAdmin ringBuffer) {
+            this.configuration = configuration;
+            this.ringBuffer = ringBuffer;
+        }
+
+        private long pending() {
+            return ringBuffer.getBufferSize() - ringBuffer.getRemainingCapacity();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package uk.nhs.nhsx.core.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ for lines logged once per object or per event on hot paths: the first occurrence is logged, then one in every n.
+ The count goes with the line, so the sampled output still says how many there were.
+ */
+public class LogSampler {
+
+    public static final int DEFAULT_EVERY = 100;
+
+    private final AtomicLong occurrences = new AtomicLong();
+    private final int every;
+
+    public LogSampler(int every) {
+        if (every < 1) throw new IllegalArgumentException("every must be at least 1, was " + every);
+        this.every = every;
+    }
+
+    public static LogSampler everyNth(int every) {
+        return new LogSampler(every);
+    }
+
+    public static LogSampler everyNth() {
+        return everyNth(DEFAULT_EVERY);
+    }
+
+    /* counts an occurrence, true if this one should be logged */
+    public boolean sample() {
+        return (occurrences.getAndIncrement() % every) == 0;
+    }
+
+    public long occurrences() {
+        return occurrences.get();
+    }
+}
@@ -0,0 +1,119 @@
+package uk.nhs.nhsx.core.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ metrics are written as log lines in cloudwatch embedded metric format, so cloudwatch turns each line into a metric
+ value as it is ingested, without a log metric filter per metric. They go to their own appender in log4j2.xml,
+ with nothing around the message, as a line is only recognised when it is a JSON object on its own.
+
+ Counts and durations are totalled in memory rather than written as they happen, as some are recorded on every
+ request or SDK call, and flush() writes one line per name once the invocation is done (see RoutingHandler and
+ AsyncLogging.drainedAfter). A duration's line carries <name>Count, <name>Sum and <name>Max.
+ */
+public class LoggingMetrics implements Metrics {
+
+    private static final Logger logger = LogManager.getLogger(LoggingMetrics.class);
+
+    static final String NAMESPACE = "IncrementalDistribution";
+
+    private static final String FUNCTION_NAME = Optional.ofNullable(System.getenv("AWS_LAMBDA_FUNCTION_NAME")).orElse("local");
+
+    private static final Map<String, AtomicLong> counts = new ConcurrentHashMap<>();
+    private static final Map<String, Durations> durations = new ConcurrentHashMap<>();
+
+    @Override
+    public void count(String name, long value) {
+        counts.computeIfAbsent(name, it -> new AtomicLong()).addAndGet(value);
+    }
+
+    /* writes what has been recorded since the last flush, leaving out names that have not been recorded since */
+    public static void flush() {
+        drained(FUNCTION_NAME, System.currentTimeMillis()).forEach(logger::info);
+    }
+
+    static List<String> drained(String functionName, long timestamp) {
+        List<String> lines = new ArrayList<>();
+        counts.forEach((name, total) -> {
+            long value = total.getAndSet(0);
+            if (value != 0) {
+                lines.add(embedded(name, value, "Count", functionName, timestamp));
+            }
+        });
+        durations.forEach((name, recorded) -> recorded.drained().ifPresent(it ->
+            lines.add(embedded(name, it, functionName, timestamp))
+        ));
+        return lines;
+    }
+
+    @Override
+    public void duration(String name, Duration duration) {
+        durations.computeIfAbsent(name, it -> new Durations()).add(duration.toMillis());
+    }
+
+    /* metric names are constants in the code, so need no escaping */
+    static String embedded(String name, long value, String unit, String functionName, long timestamp) {
+        return "{\"_aws\":{\"Timestamp\":" + timestamp
+            + ",\"CloudWatchMetrics\":[{\"Namespace\":\"" + NAMESPACE + "\",\"Dimensions\":[[\"FunctionName\"]]"
+            + ",\"Metrics\":[{\"Name\":\"" + name + "\",\"Unit\":\"" + unit + "\"}]}]}"
+            + ",\"FunctionName\":\"" + functionName + "\""
+            + ",\"" + name + "\":" + value + "}";
+    }
+
+    static String embedded(String name, Durations.Totals totals, String functionName, long timestamp) {
+        return "{\"_aws\":{\"Timestamp\":" + timestamp
+            + ",\"CloudWatchMetrics\":[{\"Namespace\":\"" + NAMESPACE + "\",\"Dimensions\":[[\"FunctionName\"]]"
+            + ",\"Metrics\":[{\"Name\":\"" + name + "Count\",\"Unit\":\"Count\"}"
+            + ",{\"Name\":\"" + name + "Sum\",\"Unit\":\"Milliseconds\"}"
+            + ",{\"Name\":\"" + name + "Max\",\"Unit\":\"Milliseconds\"}]}]}"
+            + ",\"FunctionName\":\"" + functionName + "\""
+            + ",\"" + name + "Count\":" + totals.count
+            + ",\"" + name + "Sum\":" + totals.sum
+            + ",\"" + name + "Max\":" + totals.max + "}";
+    }
+
+    /* synchronized rather than three atomics, so a flush never sees a count without its sum */
+    static class Durations {
+        private long count;
+        private long sum;
+        private long max;
+
+        synchronized void add(long millis) {
+            count++;
+            sum += millis;
+            max = Math.max(max, millis);
+        }
+
+        synchronized Optional<Totals> drained() {
+            if (count == 0) {
+                return Optional.empty();
+            }
+            Totals totals = new Totals(count, sum, max);
+            count = 0;
+            sum = 0;
+            max = 0;
+            return Optional.of(totals);
+        }
+
+        static class Totals {
+            final long count;
+            final long sum;
+            final long max;
+
+            Totals(long count, long sum, long max) {
+                this.count = count;
+                this.sum = sum;
+                this.max = max;
+            }
+        }
+    }
+}
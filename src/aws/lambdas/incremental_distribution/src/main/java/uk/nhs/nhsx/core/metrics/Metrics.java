@@ -0,0 +1,34 @@
+package uk.nhs.nhsx.core.metrics;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+public interface Metrics {
+
+    Metrics NONE = new Metrics() {
+        @Override
+        public void count(String name, long value) {
+        }
+
+        @Override
+        public void duration(String name, Duration duration) {
+        }
+    };
+
+    void count(String name, long value);
+
+    void duration(String name, Duration duration);
+
+    default void increment(String name) {
+        count(name, 1);
+    }
+
+    default <T> T timed(String name, Supplier<T> action) {
+        long start = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            duration(name, Duration.ofNanos(System.nanoTime() - start));
+        }
+    }
+}
@@ -8,6 +8,7 @@ import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 
@@ -29,12 +30,20 @@ public class Routing {
         return new PathRoutingHandler(pathMatcher, Optional.of(method), handler);
     }
 
+    /*
+     the response takes at least throttleDuration, whatever it took to produce, rather than that long on top of it: the
+     caller gets no faster at guessing, and the time no longer says anything about what was looked up
+     */
     public static APIGatewayProxyResponseEvent throttlingResponse(Duration throttleDuration,
                                                                   Supplier<APIGatewayProxyResponseEvent> responseSupplier) {
+        var deadline = System.nanoTime() + throttleDuration.toNanos();
         var response = responseSupplier.get();
 
         try {
-            Thread.sleep(throttleDuration.toMillis());
+            var remaining = deadline - System.nanoTime();
+            if (remaining > 0) {
+                TimeUnit.NANOSECONDS.sleep(remaining);
+            }
         } catch (InterruptedException e) {
             throw new RuntimeException("Interrupted while trying to delay response", e);
         }
@@ -4,7 +4,12 @@ import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import uk.nhs.nhsx.core.Priming;
+import uk.nhs.nhsx.core.logging.AsyncLogging;
+import uk.nhs.nhsx.core.metrics.LoggingMetrics;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.TreeMap;
 
@@ -12,18 +17,34 @@ import static com.google.common.collect.Maps.newTreeMap;
 
 public abstract class RoutingHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
 
+    private final List<Priming.Step> primingSteps = new ArrayList<>();
+
     @Override
     public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent request, Context context) {
+        try {
+            TreeMap<String, String> insensitiveHeaders = newTreeMap(String.CASE_INSENSITIVE_ORDER);
 
-        TreeMap<String, String> insensitiveHeaders = newTreeMap(String.CASE_INSENSITIVE_ORDER);
-
-        Optional.ofNullable(request.getHeaders())
-            .ifPresent(insensitiveHeaders::putAll);
+            Optional.ofNullable(request.getHeaders())
+                .ifPresent(insensitiveHeaders::putAll);
 
-        request.setHeaders(insensitiveHeaders);
+            request.setHeaders(insensitiveHeaders);
 
-        return handler().handle(request);
+            return handler().handle(request);
+        } finally {
+            LoggingMetrics.flush();
+            AsyncLogging.awaitDrained();
+        }
     }
 
     public abstract Routing.Handler handler();
+
+    protected void primeWith(Priming.Step... steps) {
+        primingSteps.addAll(List.of(steps));
+    }
+
+    /* the no-arg (lambda) constructors call this, so the steps run during lambda init rather than on the first request */
+    public RoutingHandler prime() {
+        Priming.prime(getClass(), primingSteps);
+        return this;
+    }
 }
@@ -1,7 +1,12 @@
 package uk.nhs.nhsx.core.routing;
 
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 import org.apache.http.entity.ContentType;
+import org.apache.logging.log4j.CloseableThreadContext;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import uk.nhs.nhsx.core.Environment;
@@ -10,8 +15,10 @@ import uk.nhs.nhsx.core.auth.Authenticator;
 import uk.nhs.nhsx.core.auth.ResponseSigner;
 import uk.nhs.nhsx.core.exceptions.ApiResponseException;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
 import java.util.function.Consumer;
 
 public class StandardHandlers {
@@ -20,7 +27,12 @@ public class StandardHandlers {
     
     private static final Environment.EnvironmentKey<String> MAINTENANCE_MODE = Environment.EnvironmentKey.string("MAINTENANCE_MODE");
     private static final Environment.EnvironmentKey<String> CUSTOM_OAI = Environment.EnvironmentKey.string("custom_oai");
-    
+
+    /* keyed by a hash of the header, so the cache holds no api key secrets; the name is parsed from the header itself */
+    private static final Cache<HashCode, Optional<String>> keyNames = CacheBuilder.newBuilder()
+        .maximumSize(256)
+        .build();
+
 
     public static Routing.Handler withoutSignedResponses(Environment environment, Authenticator authenticator, Routing.Handler delegate) {
         return defaultStack(environment, authenticator, catchExceptions(delegate));
@@ -44,14 +56,22 @@ public class StandardHandlers {
         );
     }
 
+    /*
+     the key name goes on every line logged for the request, as does the route, see log4j2.xml. Clients send the
+     same few authorization headers over and over, so each is decoded once
+     */
     public static Routing.Handler loggingIncomingRequests(Routing.Handler delegate) {
         return r -> {
-            String keyName =  apiKeyNameFrom(r.getHeaders().get("authorization")).orElse("none");
+            String keyName = Optional.ofNullable(r.getHeaders().get("authorization")).flatMap(StandardHandlers::cachedApiKeyNameFrom).orElse("none");
             String requestId = Optional.ofNullable(r.getHeaders().get("Request-Id")).orElse("none");
             String userAgent = Optional.ofNullable(r.getHeaders().get("User-Agent")).orElse("none");
-            logger.info("Received http request: method={}, path={},requestId={},apiKeyName={},userAgent={}",
-                r.getHttpMethod(), r.getPath(),requestId,keyName, userAgent);
-            return delegate.handle(r);
+            try (CloseableThreadContext.Instance ignored = CloseableThreadContext
+                .put("apiKeyName", keyName)
+                .put("route", r.getHttpMethod() + " " + r.getPath())) {
+                logger.info("Received http request: method={}, path={},requestId={},apiKeyName={},userAgent={}",
+                    r.getHttpMethod(), r.getPath(),requestId,keyName, userAgent);
+                return delegate.handle(r);
+            }
         };
     }
 
@@ -140,6 +160,15 @@ public class StandardHandlers {
         };
     }
 
+    private static Optional<String> cachedApiKeyNameFrom(String authorizationHeader) {
+        HashCode hash = Hashing.sha256().hashString(authorizationHeader, StandardCharsets.UTF_8);
+        try {
+            return keyNames.get(hash, () -> apiKeyNameFrom(authorizationHeader));
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Unable to read the api key name", e.getCause());
+        }
+    }
+
     public static Optional<String> apiKeyNameFrom(String authorizationHeader){
         return Optional.ofNullable(authorizationHeader)
             .filter(it -> it.startsWith("Bearer "))
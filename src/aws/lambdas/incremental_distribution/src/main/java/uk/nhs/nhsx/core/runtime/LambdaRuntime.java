@@ -0,0 +1,147 @@
+package uk.nhs.nhsx.core.runtime;
+
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.ThreadContext;
+import uk.nhs.nhsx.core.Jackson;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+
+/*
+ the lambda custom runtime loop (https://docs.aws.amazon.com/lambda/latest/dg/runtimes-api.html) for the api
+ handlers, which is the entry point of the native image build. It also runs on a JVM, so the two can be compared
+ like for like. The handler is named by the function's handler setting (_HANDLER), e.g.
+ uk.nhs.nhsx.virology.VirologySubmissionHandler, and built with its no-arg constructor, as the java runtime would.
+ */
+public class LambdaRuntime {
+
+    private static final Logger logger = LogManager.getLogger(LambdaRuntime.class);
+
+    private static final String API_VERSION = "2018-06-01";
+    private static final String TRACE_HEADER_PROPERTY = "com.amazonaws.xray.traceHeader";
+
+    private final HttpClient client;
+    private final URI runtimeApi;
+    private final Map<String, String> environment;
+
+    public LambdaRuntime(HttpClient client, URI runtimeApi, Map<String, String> environment) {
+        this.client = client;
+        this.runtimeApi = runtimeApi;
+        this.environment = environment;
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> environment = System.getenv();
+        LambdaRuntime runtime = new LambdaRuntime(
+            HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build(),
+            URI.create("http://" + environment.get("AWS_LAMBDA_RUNTIME_API") + "/" + API_VERSION + "/runtime/"),
+            environment
+        );
+
+        RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> handler;
+        try {
+            handler = handlerNamed(environment.get("_HANDLER"));
+        } catch (Exception e) {
+            runtime.reportInitError(e);
+            System.exit(1);
+            return;
+        }
+        runtime.run(handler);
+    }
+
+    @SuppressWarnings("unchecked")
+    static RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> handlerNamed(String name) throws ReflectiveOperationException {
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("No handler given in _HANDLER");
+        }
+        String className = name.contains("::") ? name.substring(0, name.indexOf("::")) : name;
+        return (RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>)
+            Class.forName(className).getDeclaredConstructor().newInstance();
+    }
+
+    public void run(RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> handler) {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                invokeNext(handler);
+            } catch (IOException e) {
+                logger.error("Unable to reach the runtime api", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    void invokeNext(RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> handler) throws IOException, InterruptedException {
+        HttpResponse<InputStream> next = client.send(
+            HttpRequest.newBuilder(runtimeApi.resolve("invocation/next")).GET().build(),
+            HttpResponse.BodyHandlers.ofInputStream()
+        );
+
+        String requestId = next.headers().firstValue("Lambda-Runtime-Aws-Request-Id")
+            .orElseThrow(() -> new IOException("Invocation without a request id"));
+        long deadline = next.headers().firstValue("Lambda-Runtime-Deadline-Ms").map(Long::parseLong)
+            .orElse(System.currentTimeMillis());
+        String invokedFunctionArn = next.headers().firstValue("Lambda-Runtime-Invoked-Function-Arn").orElse(null);
+        Optional<String> traceId = next.headers().firstValue("Lambda-Runtime-Trace-Id");
+
+        traceId.ifPresentOrElse(it -> System.setProperty(TRACE_HEADER_PROPERTY, it), () -> System.clearProperty(TRACE_HEADER_PROPERTY));
+        ThreadContext.put("AWSRequestId", requestId);
+        try {
+            String response;
+            try (InputStream body = next.body()) {
+                APIGatewayProxyRequestEvent event = Jackson.readJson(body, APIGatewayProxyRequestEvent.class);
+                response = Jackson.toJson(handler.handleRequest(event, new RuntimeContext(requestId, deadline, invokedFunctionArn, environment)));
+            } catch (Exception e) {
+                logger.error("Invocation {} failed", requestId, e);
+                post("invocation/" + requestId + "/error", errorJson(e));
+                return;
+            }
+            /* the invocation succeeded, so failing to hand over its response is not reported as an error of it */
+            post("invocation/" + requestId + "/response", response);
+        } finally {
+            ThreadContext.remove("AWSRequestId");
+        }
+    }
+
+    private void reportInitError(Exception e) {
+        logger.error("Unable to initialise handler", e);
+        try {
+            post("init/error", errorJson(e));
+        } catch (IOException ex) {
+            logger.error("Unable to report init error", ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void post(String path, String body) throws IOException, InterruptedException {
+        HttpResponse<Void> response = client.send(
+            HttpRequest.newBuilder(runtimeApi.resolve(path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build(),
+            HttpResponse.BodyHandlers.discarding()
+        );
+        if (response.statusCode() >= 300) {
+            logger.warn("Runtime api returned {} for {}", response.statusCode(), path);
+        }
+    }
+
+    private static String errorJson(Exception e) {
+        return Jackson.toJson(Map.of(
+            "errorType", e.getClass().getName(),
+            "errorMessage", String.valueOf(e.getMessage())
+        ));
+    }
+}
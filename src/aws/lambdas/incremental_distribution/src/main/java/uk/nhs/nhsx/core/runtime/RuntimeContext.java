@@ -0,0 +1,92 @@
+package uk.nhs.nhsx.core.runtime;
+
+import com.amazonaws.services.lambda.runtime.ClientContext;
+import com.amazonaws.services.lambda.runtime.CognitoIdentity;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/* the context of one invocation, from the runtime api headers and the function's reserved environment variables */
+class RuntimeContext implements Context {
+
+    private static final LambdaLogger stdout = new LambdaLogger() {
+        @Override
+        public void log(String message) {
+            System.out.print(message);
+        }
+
+        @Override
+        public void log(byte[] message) {
+            System.out.print(new String(message, StandardCharsets.UTF_8));
+        }
+    };
+
+    private final String requestId;
+    private final long deadlineMillis;
+    private final String invokedFunctionArn;
+    private final Map<String, String> environment;
+
+    RuntimeContext(String requestId, long deadlineMillis, String invokedFunctionArn, Map<String, String> environment) {
+        this.requestId = requestId;
+        this.deadlineMillis = deadlineMillis;
+        this.invokedFunctionArn = invokedFunctionArn;
+        this.environment = environment;
+    }
+
+    @Override
+    public String getAwsRequestId() {
+        return requestId;
+    }
+
+    @Override
+    public String getLogGroupName() {
+        return environment.get("AWS_LAMBDA_LOG_GROUP_NAME");
+    }
+
+    @Override
+    public String getLogStreamName() {
+        return environment.get("AWS_LAMBDA_LOG_STREAM_NAME");
+    }
+
+    @Override
+    public String getFunctionName() {
+        return environment.get("AWS_LAMBDA_FUNCTION_NAME");
+    }
+
+    @Override
+    public String getFunctionVersion() {
+        return environment.get("AWS_LAMBDA_FUNCTION_VERSION");
+    }
+
+    @Override
+    public String getInvokedFunctionArn() {
+        return invokedFunctionArn;
+    }
+
+    @Override
+    public CognitoIdentity getIdentity() {
+        return null;
+    }
+
+    @Override
+    public ClientContext getClientContext() {
+        return null;
+    }
+
+    @Override
+    public int getRemainingTimeInMillis() {
+        return (int) Math.max(0, deadlineMillis - System.currentTimeMillis());
+    }
+
+    @Override
+    public int getMemoryLimitInMB() {
+        return Integer.parseInt(environment.getOrDefault("AWS_LAMBDA_FUNCTION_MEMORY_SIZE", "0"));
+    }
+
+    @Override
+    public LambdaLogger getLogger() {
+        return stdout;
+    }
+}
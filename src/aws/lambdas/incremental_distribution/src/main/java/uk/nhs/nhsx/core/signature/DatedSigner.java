@@ -1,7 +1,25 @@
 package uk.nhs.nhsx.core.signature;
 
+import com.google.common.io.ByteSource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.function.Function;
 
 public interface DatedSigner {
     DatedSignature sign(Function<DatedSignature.SignatureDate, byte[]> content);
+
+    default void prime() {
+    }
+
+    default DatedSignature signStreaming(Function<DatedSignature.SignatureDate, ByteSource> content) {
+        return sign(signatureDate -> {
+            ByteSource source = content.apply(signatureDate);
+            try {
+                return source.read();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to read " + source, e);
+            }
+        });
+    }
 }
@@ -1,13 +1,15 @@
 package uk.nhs.nhsx.core.signature;
 
 import com.google.common.io.ByteSource;
-import com.google.common.primitives.Bytes;
 
-import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.function.Function;
 
-public class DistributionSignature implements Function<DatedSignature.SignatureDate, byte[]> {
+/*
+ the signed content is the date prefix followed by the distributed bytes; it is presented as a concatenated source
+ so signers can digest it incrementally instead of copying the whole payload into a new array
+ */
+public class DistributionSignature implements Function<DatedSignature.SignatureDate, ByteSource> {
 
     private final ByteSource bytes;
 
@@ -16,14 +18,10 @@ public class DistributionSignature implements Function<DatedSignature.SignatureD
     }
 
     @Override
-    public byte[] apply(DatedSignature.SignatureDate sd) {
-        try {
-            return Bytes.concat(
-                String.format("%s:", sd.string).getBytes(StandardCharsets.UTF_8),
-                bytes.read()
-            );
-        } catch (IOException e) {
-            throw new IllegalArgumentException("Unable to read " + bytes, e);
-        }
+    public ByteSource apply(DatedSignature.SignatureDate sd) {
+        return ByteSource.concat(
+            ByteSource.wrap(String.format("%s:", sd.string).getBytes(StandardCharsets.UTF_8)),
+            bytes
+        );
     }
 }
@@ -50,7 +50,7 @@ public class DistributionSignatureMain {
 
         RFC2616DatedSigner signer = StandardSigning.datedSigner(SystemClock.CLOCK, parameters, ParameterName.of(commandLine.ssmKeyId));
 
-        DatedSignature signature = signer.sign(new DistributionSignature(Files.asByteSource(new File(commandLine.input))));
+        DatedSignature signature = signer.signStreaming(new DistributionSignature(Files.asByteSource(new File(commandLine.input))));
 
         Map<String, String> map = new HashMap<>();
         Arrays.stream(SigningHeaders.fromDatedSignature(signature)).forEach(
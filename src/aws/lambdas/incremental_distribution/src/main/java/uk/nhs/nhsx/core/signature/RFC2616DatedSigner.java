@@ -1,5 +1,7 @@
 package uk.nhs.nhsx.core.signature;
 
+import com.google.common.io.ByteSource;
+
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
@@ -22,12 +24,26 @@ public class RFC2616DatedSigner implements DatedSigner {
 
     @Override
     public DatedSignature sign(Function<DatedSignature.SignatureDate, byte[]> content) {
+        DatedSignature.SignatureDate signatureDate = signatureDate();
+        return new DatedSignature(signatureDate, signer.sign(content.apply(signatureDate)));
+    }
+
+    @Override
+    public DatedSignature signStreaming(Function<DatedSignature.SignatureDate, ByteSource> content) {
+        DatedSignature.SignatureDate signatureDate = signatureDate();
+        return new DatedSignature(signatureDate, signer.sign(content.apply(signatureDate)));
+    }
 
+    @Override
+    public void prime() {
+        signatureDate();
+        signer.prime();
+    }
+
+    private DatedSignature.SignatureDate signatureDate() {
         Instant instant = clock.get();
         String date = format.format(instant.atZone(ZoneId.of("UTC")));
 
-        DatedSignature.SignatureDate signatureDate = new DatedSignature.SignatureDate(date, instant);
-
-        return new DatedSignature(signatureDate,signer.sign(content.apply(signatureDate)));
+        return new DatedSignature.SignatureDate(date, instant);
     }
 }
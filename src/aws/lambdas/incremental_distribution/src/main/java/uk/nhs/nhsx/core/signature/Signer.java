@@ -1,5 +1,23 @@
 package uk.nhs.nhsx.core.signature;
 
+import com.google.common.io.ByteSource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
 public interface Signer {
     Signature sign(byte[] bytes);
+
+    /* resolves whatever the first signature would need, without signing anything */
+    default void prime() {
+    }
+
+    /* signers that only need a digest of the content override this, so large content is never held in memory at once */
+    default Signature sign(ByteSource content) {
+        try {
+            return sign(content.read());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read " + content, e);
+        }
+    }
 }
@@ -96,12 +96,14 @@ public class DistributionService {
 
 	private void removeUnmodifiedObjectsFromDistributionBucket(BucketName bucketName) {
 		List<S3ObjectSummary> distributionObjectSummaries = awsS3.getObjectSummaries(bucketName.value);
+		List<String> outdated = new ArrayList<>();
 		for (S3ObjectSummary s3ObjectSummary : distributionObjectSummaries) {
 			if (!uploadedZipFileNames.contains(s3ObjectSummary.getKey())) {
 				logger.debug("Deleting outdated ZIP: {}", s3ObjectSummary.getKey());
-				awsS3.deleteObject(bucketName.value, s3ObjectSummary.getKey());
+				outdated.add(s3ObjectSummary.getKey());
 			}
 		}
+		awsS3.deleteAll(bucketName.value, outdated);
 	}
 
 	private void invalidateCloudFrontCaches() {
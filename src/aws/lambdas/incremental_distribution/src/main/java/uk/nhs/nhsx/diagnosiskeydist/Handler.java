@@ -10,6 +10,7 @@ import uk.nhs.nhsx.core.SystemClock;
 import uk.nhs.nhsx.core.aws.cloudfront.AwsCloudFrontClient;
 import uk.nhs.nhsx.core.aws.s3.AwsS3Client;
 import uk.nhs.nhsx.core.aws.ssm.AwsSsmParameters;
+import uk.nhs.nhsx.core.logging.AsyncLogging;
 import uk.nhs.nhsx.diagnosiskeydist.keydistribution.UploadToS3KeyDistributor;
 import uk.nhs.nhsx.diagnosiskeydist.s3.SubmissionFromS3Repository;
 
@@ -54,6 +55,10 @@ public class Handler implements RequestHandler<ScheduledEvent, String> {
     }
 
     public String handleRequest(ScheduledEvent input, Context context) {
+        return AsyncLogging.drainedAfter(() -> handle(input, context));
+    }
+
+    private String handle(ScheduledEvent input, Context context) {
         Date systemTime = new Date();
 
         Supplier<Instant> clock = SystemClock.CLOCK;
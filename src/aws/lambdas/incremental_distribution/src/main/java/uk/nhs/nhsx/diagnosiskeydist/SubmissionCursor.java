@@ -0,0 +1,16 @@
+package uk.nhs.nhsx.diagnosiskeydist;
+
+import java.util.List;
+
+/*
+ successive batches of submissions, in submission time order, each batch newer than the one before. Empty once
+ there are no more
+ */
+public interface SubmissionCursor extends AutoCloseable {
+
+    List<Submission> next() throws Exception;
+
+    @Override
+    default void close() {
+    }
+}
@@ -19,6 +19,22 @@ public interface SubmissionRepository {
 
     List<Submission> loadAllSubmissions(long minimalSubmissionTimeEpocMillisExclusive, int limit, int maxResults) throws Exception;
 
+    /* batches as loadAllSubmissions would return them, each starting after the newest submission of the one before */
+    default SubmissionCursor cursor(long minimalSubmissionTimeEpocMillisExclusive, int limit, int maxResults) {
+        return new SubmissionCursor() {
+            private long watermark = minimalSubmissionTimeEpocMillisExclusive;
+
+            @Override
+            public List<Submission> next() throws Exception {
+                List<Submission> batch = loadAllSubmissions(watermark, limit, maxResults);
+                for (Submission submission : batch) {
+                    watermark = Math.max(watermark, submission.submissionDate.getTime());
+                }
+                return batch;
+            }
+        };
+    }
+
     static StoredTemporaryExposureKeyPayload getTemporaryExposureKeys(InputStream jsonInputStream) throws IOException {
         return Jackson.readJson(jsonInputStream, StoredTemporaryExposureKeyPayload.class);
     }
@@ -33,7 +33,7 @@ public class UploadToS3KeyDistributor implements KeyDistributor {
             KeyFileUtility.zipFiles(zipFile, binFile, sigFile);
             ByteSource byteSource = asByteSource(zipFile);
 
-            DatedSignature signatureResult = signer.sign(new DistributionSignature(byteSource));
+            DatedSignature signatureResult = signer.signStreaming(new DistributionSignature(byteSource));
 
             s3Storage.upload(
                 S3Storage.Locator.of(name, key), 
@@ -2,11 +2,14 @@ package uk.nhs.nhsx.diagnosiskeydist.s3;
 
 import com.amazonaws.services.s3.model.S3ObjectInputStream;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import uk.nhs.nhsx.core.aws.s3.AwsS3;
+import uk.nhs.nhsx.core.logging.LogSampler;
 import uk.nhs.nhsx.diagnosiskeydist.ConcurrentExecution;
 import uk.nhs.nhsx.diagnosiskeydist.Submission;
+import uk.nhs.nhsx.diagnosiskeydist.SubmissionCursor;
 import uk.nhs.nhsx.diagnosiskeydist.SubmissionRepository;
 import uk.nhs.nhsx.diagnosiskeydist.utils.ConfigurationUtility;
 import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKeyPayload;
@@ -14,6 +17,11 @@ import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKeyPaylo
 import java.io.IOException;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -23,6 +31,10 @@ public class SubmissionFromS3Repository implements SubmissionRepository {
     private static final int MAXIMAL_S3_LOAD_PROTOBOF_TIME_MINUTES = 6;
     private static final String submissionBucketName = ConfigurationUtility.SUBMISSION_JSON_BUCKET_NAME;
 
+    private static final ExecutorService PREFETCH = Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setNameFormat("submission-prefetch-%d").setDaemon(true).build()
+    );
+
     private final AwsS3 awsS3;
     private final Predicate<String> objectKeyFilter;
 
@@ -33,6 +45,19 @@ public class SubmissionFromS3Repository implements SubmissionRepository {
 
     @Override
     public List<Submission> loadAllSubmissions(long minimalSubmissionTimeEpocMillisExclusive, int limit, int maxResults) throws Exception {
+        return load(limitSorted(summariesAfter(minimalSubmissionTimeEpocMillisExclusive), limit, maxResults));
+    }
+
+    /*
+     the bucket is listed once for the whole cursor, rather than once per batch, and the objects of the following
+     batch are fetched while the caller works on the current one
+     */
+    @Override
+    public SubmissionCursor cursor(long minimalSubmissionTimeEpocMillisExclusive, int limit, int maxResults) {
+        return new ListedOnce(summariesAfter(minimalSubmissionTimeEpocMillisExclusive), limit, maxResults);
+    }
+
+    private List<S3ObjectSummary> summariesAfter(long minimalSubmissionTimeEpocMillisExclusive) {
         long start = System.currentTimeMillis();
 
         List<S3ObjectSummary> summaries =
@@ -40,13 +65,20 @@ public class SubmissionFromS3Repository implements SubmissionRepository {
                 .stream()
                 .filter(it -> objectKeyFilter.test(it.getKey()))
                 .filter(it -> it.getLastModified().getTime() > minimalSubmissionTimeEpocMillisExclusive)
+                .sorted(Comparator.comparing(S3ObjectSummary::getLastModified))
                 .collect(Collectors.toList());
 
-        summaries = limit(summaries, limit, maxResults);
+        logger.info("Submission summaries listed. Count={}, Duration={}ms", summaries.size(), (System.currentTimeMillis() - start));
 
-        logger.info("Submission summaries loaded. Count={}, Duration={}ms", summaries.size(), (System.currentTimeMillis() - start));
+        return summaries;
+    }
+
+    private List<Submission> load(List<S3ObjectSummary> summaries) throws Exception {
+        logger.info("Submission summaries loaded. Count={}", summaries.size());
 
         List<Submission> submissions = Collections.synchronizedList(new ArrayList<>());
+        LogSampler loaded = LogSampler.everyNth();
+        int total = summaries.size();
         try (ConcurrentExecution pool = new ConcurrentExecution("LoadSubmissions", Duration.ofMinutes(MAXIMAL_S3_LOAD_PROTOBOF_TIME_MINUTES))) {
             for (S3ObjectSummary objectSummary : summaries) {
                 pool.execute(() ->
@@ -59,7 +91,9 @@ public class SubmissionFromS3Repository implements SubmissionRepository {
                                 } catch (IOException e) {
                                     throw new RuntimeException(e);
                                 }
-                                logger.debug("Submission loaded: {}", objectSummary.getKey());
+                                if (loaded.sample()) {
+                                    logger.debug("Submission loaded: {} ({} of {})", objectSummary.getKey(), loaded.occurrences(), total);
+                                }
                             },
                             () -> logger.warn("Bucket: " + submissionBucketName + " does not have key: " + objectSummary.getKey())
                         ));
@@ -71,11 +105,107 @@ public class SubmissionFromS3Repository implements SubmissionRepository {
                 .collect(Collectors.toList());
     }
 
+    private class ListedOnce implements SubmissionCursor {
+        private final List<S3ObjectSummary> summaries;
+        private final int limit;
+        private final int maxResults;
+        private int position;
+        private Prefetch following;
+
+        private ListedOnce(List<S3ObjectSummary> summaries, int limit, int maxResults) {
+            this.summaries = summaries;
+            this.limit = limit;
+            this.maxResults = maxResults;
+        }
+
+        @Override
+        public List<Submission> next() throws Exception {
+            List<Submission> current = following == null ? loadUnlessEmpty(nextSlice()) : awaitFollowing();
+
+            List<S3ObjectSummary> slice = nextSlice();
+            following = slice.isEmpty() ? null : new Prefetch(slice);
+
+            return current;
+        }
+
+        private List<Submission> loadUnlessEmpty(List<S3ObjectSummary> slice) throws Exception {
+            return slice.isEmpty() ? new ArrayList<>() : load(slice);
+        }
+
+        private List<Submission> awaitFollowing() throws Exception {
+            try {
+                return following.get();
+            } finally {
+                following = null;
+            }
+        }
+
+        /* as a fresh listing after the newest submission of the last slice would give */
+        private List<S3ObjectSummary> nextSlice() {
+            List<S3ObjectSummary> slice = limitSorted(summaries.subList(position, summaries.size()), limit, maxResults);
+            if (!slice.isEmpty()) {
+                Date newest = slice.get(slice.size() - 1).getLastModified();
+                position += slice.size();
+                while (position < summaries.size() && !summaries.get(position).getLastModified().after(newest)) {
+                    position++;
+                }
+            }
+            return slice;
+        }
+
+        @Override
+        public void close() {
+            if (following != null) {
+                following.abandon();
+                following = null;
+            }
+        }
+    }
+
+    /*
+     the following slice, loaded on the prefetch thread unless it is abandoned first. A load that has started is waited
+     for rather than interrupted, as ConcurrentExecution ends the lambda when one of its tasks fails, and left running
+     it would hold up the next cursor's prefetches
+     */
+    private class Prefetch {
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private final Future<List<Submission>> loaded;
+
+        private Prefetch(List<S3ObjectSummary> slice) {
+            this.loaded = PREFETCH.submit(() -> claimed.compareAndSet(false, true) ? load(slice) : new ArrayList<>());
+        }
+
+        private List<Submission> get() throws Exception {
+            try {
+                return loaded.get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+
+        private void abandon() {
+            if (claimed.compareAndSet(false, true)) return;
+            try {
+                loaded.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                logger.warn("Abandoned submission prefetch failed", e.getCause());
+            }
+        }
+    }
+
     public static List<S3ObjectSummary> limit(List<S3ObjectSummary> summaries, int limit, int maxResults) {
-        List<S3ObjectSummary> limited = new LinkedList<>();
-        Iterator<S3ObjectSummary> i = summaries.stream()
-            .sorted((e1, e2) -> e1.getLastModified().compareTo(e2.getLastModified()))
-            .iterator();
+        return limitSorted(
+            summaries.stream().sorted((e1, e2) -> e1.getLastModified().compareTo(e2.getLastModified())).collect(Collectors.toList()),
+            limit,
+            maxResults
+        );
+    }
+
+    private static List<S3ObjectSummary> limitSorted(List<S3ObjectSummary> summaries, int limit, int maxResults) {
+        List<S3ObjectSummary> limited = new ArrayList<>();
+        Iterator<S3ObjectSummary> i = summaries.iterator();
         Date lastModified = null;
         for (int counter = 1; i.hasNext() && counter <= maxResults; counter++) {
             S3ObjectSummary summary = i.next();
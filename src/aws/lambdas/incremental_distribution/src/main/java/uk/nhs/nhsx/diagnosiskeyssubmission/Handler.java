@@ -3,6 +3,7 @@ package uk.nhs.nhsx.diagnosiskeyssubmission;
 import uk.nhs.nhsx.core.Environment;
 import uk.nhs.nhsx.core.EnvironmentKeys;
 import uk.nhs.nhsx.core.HttpResponses;
+import uk.nhs.nhsx.core.Priming;
 import uk.nhs.nhsx.core.StandardSigning;
 import uk.nhs.nhsx.core.SystemClock;
 import uk.nhs.nhsx.core.UniqueId;
@@ -33,6 +34,7 @@ public class Handler extends RoutingHandler {
 
     public Handler() {
         this(Environment.fromSystem(), SystemClock.CLOCK);
+        prime();
     }
 
     public Handler(Environment environment, Supplier<Instant> clock) {
@@ -47,7 +49,7 @@ public class Handler extends RoutingHandler {
         );
     }
 
-    Handler(
+    public Handler(
             Environment environment,
             Authenticator authenticator,
             ResponseSigner signer,
@@ -83,6 +85,8 @@ public class Handler extends RoutingHandler {
                 )
             )
         );
+
+        primeWith(Priming.jackson(ClientTemporaryExposureKeysPayload.class), Priming.signing(signer));
     }
 
     @Override
@@ -18,6 +18,7 @@ public class Handler extends RoutingHandler {
 
     public Handler() {
         this(Environment.fromSystem());
+        prime();
     }
 
     public Handler(Environment environment) {
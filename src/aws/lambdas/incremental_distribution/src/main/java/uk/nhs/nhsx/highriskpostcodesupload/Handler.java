@@ -38,6 +38,7 @@ public class Handler extends RoutingHandler {
             new AwsS3Client(),
             new AwsCloudFrontClient()
         );
+        prime();
     }
 
     public Handler(Environment environment,
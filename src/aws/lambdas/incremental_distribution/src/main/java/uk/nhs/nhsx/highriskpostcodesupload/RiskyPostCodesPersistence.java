@@ -14,6 +14,7 @@ import uk.nhs.nhsx.core.signature.DistributionSignature;
 import uk.nhs.nhsx.core.signature.SigningHeaders;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 
 import static uk.nhs.nhsx.core.aws.s3.Sources.byteSourceFor;
@@ -47,35 +48,21 @@ public class RiskyPostCodesPersistence {
         this.s3Client = s3Client;
     }
 
-    public void uploadToBackup(String json) {
-        s3Client.upload(
-            S3Storage.Locator.of(bucketName, backupJsonKeyName),
-            ContentType.APPLICATION_JSON,
-            byteSourceFor(json)
-        );
-    }
-
-    public void uploadToRaw(String csv) {
-        s3Client.upload(
-            S3Storage.Locator.of(bucketName, rawCsvKeyName),
-            ContentType.TEXT_PLAIN,
-            byteSourceFor(csv)
-        );
-    }
-
-    public void uploadPostDistrictsVersion1(String riskyPostCodes) {
-        uploadPostDistrictsVersion(riskyPostCodes, distributionObjKeyName);
-    }
-
-    public void uploadPostDistrictsVersion2(String riskyPostCodes) {
-        uploadPostDistrictsVersion(riskyPostCodes, distributionV2ObjKeyName);
+    /* the backup, the raw csv and both distributions, uploaded together */
+    public void uploadAll(String json, String csv, String postDistrictsVersion1, String postDistrictsVersion2) {
+        s3Client.uploadAll(List.of(
+            S3Storage.Upload.of(S3Storage.Locator.of(bucketName, backupJsonKeyName), ContentType.APPLICATION_JSON, byteSourceFor(json)),
+            S3Storage.Upload.of(S3Storage.Locator.of(bucketName, rawCsvKeyName), ContentType.TEXT_PLAIN, byteSourceFor(csv)),
+            signedDistribution(postDistrictsVersion1, distributionObjKeyName),
+            signedDistribution(postDistrictsVersion2, distributionV2ObjKeyName)
+        ));
     }
 
-    private void uploadPostDistrictsVersion(String riskyPostCodes, ObjectKey objectKey) {
+    private S3Storage.Upload signedDistribution(String riskyPostCodes, ObjectKey objectKey) {
         var byteSource = byteSourceFor(riskyPostCodes);
-        var signatureResult = signer.sign(new DistributionSignature(byteSource));
+        var signatureResult = signer.signStreaming(new DistributionSignature(byteSource));
 
-        s3Client.upload(
+        return S3Storage.Upload.of(
             S3Storage.Locator.of(bucketName, objectKey),
             ContentType.APPLICATION_JSON,
             byteSource,
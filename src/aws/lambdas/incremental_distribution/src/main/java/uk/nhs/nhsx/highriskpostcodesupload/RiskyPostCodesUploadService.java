@@ -34,10 +34,12 @@ public class RiskyPostCodesUploadService {
 
                 var analyticsCsv = mapper.convertToAnalyticsCsv(request);
 
-                persistence.uploadToBackup(rawJson);
-                persistence.uploadToRaw(analyticsCsv);
-                persistence.uploadPostDistrictsVersion1(Jackson.toJson(result.riskyPostCodesV1));
-                persistence.uploadPostDistrictsVersion2(Jackson.toJson(result.riskyPostCodesV2));
+                persistence.uploadAll(
+                    rawJson,
+                    analyticsCsv,
+                    Jackson.toJson(result.riskyPostCodesV1),
+                    Jackson.toJson(result.riskyPostCodesV2)
+                );
 
                 awsCloudFront.invalidateCache(cloudFrontDistributionId, cloudFrontInvalidationPattern);
                 return HttpResponses.accepted("successfully uploaded");
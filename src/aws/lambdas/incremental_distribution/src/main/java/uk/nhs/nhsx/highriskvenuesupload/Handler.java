@@ -29,6 +29,7 @@ public class Handler extends RoutingHandler {
 
     public Handler() {
         this(Environment.fromSystem(), SystemClock.CLOCK);
+        prime();
     }
 
     public Handler(Environment environment, Supplier<Instant> clock) {
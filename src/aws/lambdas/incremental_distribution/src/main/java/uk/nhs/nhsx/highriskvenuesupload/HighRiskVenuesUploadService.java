@@ -42,7 +42,7 @@ public class HighRiskVenuesUploadService {
     private VenuesUploadResult uploadMaybe(String json) {
         ByteSource bytes = Sources.byteSourceFor(json);
 
-        MetaHeader[] headers = SigningHeaders.fromDatedSignature(signer.sign(new DistributionSignature(bytes)));
+        MetaHeader[] headers = SigningHeaders.fromDatedSignature(signer.signStreaming(new DistributionSignature(bytes)));
 
         s3Client.upload(config.locator, ContentType.APPLICATION_JSON, bytes, headers);
 
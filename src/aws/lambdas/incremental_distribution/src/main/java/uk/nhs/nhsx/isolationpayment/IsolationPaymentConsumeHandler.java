@@ -1,10 +1,11 @@
 package uk.nhs.nhsx.isolationpayment;
 
-import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import uk.nhs.nhsx.core.Environment;
 import uk.nhs.nhsx.core.SystemClock;
+import uk.nhs.nhsx.core.aws.AwsClients;
+import uk.nhs.nhsx.core.logging.AsyncLogging;
 import uk.nhs.nhsx.isolationpayment.model.IsolationRequest;
 import uk.nhs.nhsx.isolationpayment.model.IsolationResponse;
 
@@ -34,7 +35,7 @@ public class IsolationPaymentConsumeHandler implements RequestHandler<IsolationR
 
     private static IsolationPaymentGatewayService isolationPaymentService(Supplier<Instant> clock, Environment environment) {
         var persistence = new IsolationPaymentPersistence(
-            AmazonDynamoDBClientBuilder.defaultClient(),
+            AwsClients.dynamoDB.get(),
             environment.access.required(ISOLATION_TOKEN_TABLE)
         );
         var auditLogPrefix = environment.access.required(AUDIT_LOG_PREFIX);
@@ -43,6 +44,10 @@ public class IsolationPaymentConsumeHandler implements RequestHandler<IsolationR
 
     @Override
     public IsolationResponse handleRequest(IsolationRequest input, Context context) {
+        return AsyncLogging.drainedAfter(() -> handle(input, context));
+    }
+
+    private IsolationResponse handle(IsolationRequest input, Context context) {
         return Optional.ofNullable(input)
             .map(v -> v.ipcToken)
             .map(service::consumeIsolationToken)
@@ -1,19 +1,22 @@
 package uk.nhs.nhsx.isolationpayment;
 
-import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
 import uk.nhs.nhsx.core.Environment;
 import uk.nhs.nhsx.core.HttpResponses;
 import uk.nhs.nhsx.core.Jackson;
+import uk.nhs.nhsx.core.Priming;
 import uk.nhs.nhsx.core.SystemClock;
 import uk.nhs.nhsx.core.auth.ApiName;
 import uk.nhs.nhsx.core.auth.Authenticator;
 import uk.nhs.nhsx.core.auth.ResponseSigner;
+import uk.nhs.nhsx.core.aws.AwsClients;
 import uk.nhs.nhsx.core.routing.Routing;
 import uk.nhs.nhsx.core.routing.RoutingHandler;
 import uk.nhs.nhsx.isolationpayment.model.TokenGenerationRequest;
+import uk.nhs.nhsx.isolationpayment.model.TokenGenerationResponse;
 import uk.nhs.nhsx.isolationpayment.model.TokenUpdateRequest;
+import uk.nhs.nhsx.isolationpayment.model.TokenUpdateResponse;
 
 import java.time.Instant;
 import java.util.List;
@@ -44,6 +47,7 @@ public class IsolationPaymentOrderHandler extends RoutingHandler {
 
     public IsolationPaymentOrderHandler() {
         this(Environment.fromSystem(), SystemClock.CLOCK);
+        prime();
     }
 
     public IsolationPaymentOrderHandler(Environment environment, Supplier<Instant> clock) {
@@ -53,6 +57,8 @@ public class IsolationPaymentOrderHandler extends RoutingHandler {
             signResponseWithKeyGivenInSsm(clock, environment),
             isolationPaymentService(clock, TokenGenerator::getToken, environment)
         );
+
+        primeWith(Priming.client(AwsClients.dynamoDB));
     }
 
     public IsolationPaymentOrderHandler(Environment environment, 
@@ -72,6 +78,11 @@ public class IsolationPaymentOrderHandler extends RoutingHandler {
                 path(POST, "/isolation-payment/health", r -> ok())
             )
         );
+
+        primeWith(
+            Priming.jackson(TokenGenerationRequest.class, TokenUpdateRequest.class, TokenGenerationResponse.class, TokenUpdateResponse.class),
+            Priming.signing(signer)
+        );
     }
 
     private APIGatewayProxyResponseEvent createToken(APIGatewayProxyRequestEvent request) {
@@ -107,7 +118,7 @@ public class IsolationPaymentOrderHandler extends RoutingHandler {
                                                                          Supplier<String> tokenGenerator,
                                                                          Environment environment) {
         var persistence = new IsolationPaymentPersistence(
-            AmazonDynamoDBClientBuilder.defaultClient(),
+            AwsClients.dynamoDB.get(),
             environment.access.required(ISOLATION_TOKEN_TABLE)
         );
 
@@ -1,31 +1,77 @@
 package uk.nhs.nhsx.keyfederation;
 
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
-import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
 import com.amazonaws.services.dynamodbv2.document.DynamoDB;
 import com.amazonaws.services.dynamodbv2.document.Item;
 import com.amazonaws.services.dynamodbv2.document.KeyAttribute;
 import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.spec.PutItemSpec;
 import com.amazonaws.services.dynamodbv2.document.spec.UpdateItemSpec;
 import com.amazonaws.services.dynamodbv2.document.utils.ValueMap;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
 import com.amazonaws.services.dynamodbv2.model.ReturnValue;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.nhs.nhsx.core.Environment;
+import uk.nhs.nhsx.core.aws.AwsClients;
 import uk.nhs.nhsx.keyfederation.upload.lookup.UploadKeysResult;
 
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
+/*
+ checkpoints are written behind the batches they record: each update replaces any still waiting for the same item,
+ and whatever is waiting is written every flush interval, and by flush() before the handler returns. Writes are
+ conditional on the value this service last read or wrote, so an invocation that has fallen behind a concurrent one
+ never moves a checkpoint back; its write is dropped instead.
+ */
 public class BatchTagDynamoDBService implements BatchTagService {
 
+    private static final Logger logger = LogManager.getLogger(BatchTagDynamoDBService.class);
+
+    public static final Environment.EnvironmentKey<Integer> CHECKPOINT_FLUSH_INTERVAL_MILLIS = Environment.EnvironmentKey.integer("CHECKPOINT_FLUSH_INTERVAL_MILLIS");
+    private static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofSeconds(1);
+
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("checkpoint-flush-%d").setDaemon(true).build()
+    );
+
     private final String uploadTimeAttributeName = "uploadTimestamp";
     private final String primaryKeyAttributeName = "id";
     private final String primaryKeyAttributeValueDownload = "lastDownloadState";
     private final String primaryKeyAttributeValueUpload = "lastUploadState";
+    private final String primaryKeyAttributeValueBackfillPrefix = "backfillState_";
 
     private final Table table;
+    private final Duration flushInterval;
+
+    private final Map<String, Runnable> pending = new ConcurrentHashMap<>();
+    private final Map<String, Optional<String>> durableBatchTags = new ConcurrentHashMap<>();
+    private final Map<String, FederationBatch> pendingDownloads = new ConcurrentHashMap<>();
+    private final Map<String, BackfillBatch> pendingBackfills = new ConcurrentHashMap<>();
+    private final Object scheduling = new Object();
+    private ScheduledFuture<?> scheduledFlush;
 
     public BatchTagDynamoDBService(String stateTableName) {
-        AmazonDynamoDB client = AmazonDynamoDBClientBuilder.standard().build();
+        this(AwsClients.dynamoDB.get(), stateTableName,
+            Environment.Access.SYSTEM.optional(CHECKPOINT_FLUSH_INTERVAL_MILLIS).map(Duration::ofMillis).orElse(DEFAULT_FLUSH_INTERVAL));
+    }
+
+    public BatchTagDynamoDBService(AmazonDynamoDB client, String stateTableName) {
+        this(client, stateTableName, DEFAULT_FLUSH_INTERVAL);
+    }
+
+    public BatchTagDynamoDBService(AmazonDynamoDB client, String stateTableName, Duration flushInterval) {
         this.table = new DynamoDB(client).getTable(stateTableName);
+        this.flushInterval = flushInterval;
     }
 
     public Optional<UploadKeysResult> getLastUploadState() {
@@ -39,12 +85,13 @@ public class BatchTagDynamoDBService implements BatchTagService {
 
     @Override
     public void updateLastUploadState(Long uploadTimestamp) {
-        updateLastUploadState(uploadTimestamp, table);
+        enqueue(primaryKeyAttributeValueUpload, () -> updateLastUploadState(uploadTimestamp, table));
     }
 
     public void updateLastUploadState(Long uploadTimestamp, Table table) {
         UpdateItemSpec updateItemSpec = new UpdateItemSpec().withPrimaryKey(primaryKeyAttributeName, primaryKeyAttributeValueUpload)
             .withUpdateExpression("set " + uploadTimeAttributeName + " = :uploadTimestamp")
+            .withConditionExpression("attribute_not_exists(" + uploadTimeAttributeName + ") or " + uploadTimeAttributeName + " < :uploadTimestamp")
             .withReturnValues(ReturnValue.UPDATED_NEW)
             .withValueMap(new ValueMap()
                 .withLong(":uploadTimestamp", uploadTimestamp));
@@ -53,7 +100,11 @@ public class BatchTagDynamoDBService implements BatchTagService {
 
     @Override
     public Optional<FederationBatch> getLatestFederationBatch() {
+        var waiting = pendingDownloads.get(primaryKeyAttributeValueDownload);
+        if (waiting != null) return Optional.of(waiting);
+
         Item item = table.getItem(new KeyAttribute("id", primaryKeyAttributeValueDownload));
+        durableBatchTags.put(primaryKeyAttributeValueDownload, Optional.ofNullable(item).map(it -> it.getString("batchTag")));
         return Optional.ofNullable(item).map(it -> new FederationBatch(
             BatchTag.of(it.getString("batchTag")),
             LocalDate.parse(it.getString("batchDate"))
@@ -62,12 +113,115 @@ public class BatchTagDynamoDBService implements BatchTagService {
 
     @Override
     public void updateLatestFederationBatch(FederationBatch batch) {
-        table.putItem(
-            new Item()
-                .withPrimaryKey("id", primaryKeyAttributeValueDownload)
-                .with("batchTag", batch.batchTag.value)
-                .with("batchDate", batch.batchDate.toString())
-        );
+        if (!durableBatchTags.containsKey(primaryKeyAttributeValueDownload)) getLatestFederationBatch();
+
+        pendingDownloads.put(primaryKeyAttributeValueDownload, batch);
+        enqueue(primaryKeyAttributeValueDownload, () -> {
+            putIfBatchTagUnchanged(
+                new Item()
+                    .withPrimaryKey("id", primaryKeyAttributeValueDownload)
+                    .with("batchTag", batch.batchTag.value)
+                    .with("batchDate", batch.batchDate.toString()),
+                batch.batchTag
+            );
+            pendingDownloads.remove(primaryKeyAttributeValueDownload, batch);
+        });
+    }
+
+    @Override
+    public Optional<BackfillBatch> getBackfillBatch(LocalDate date) {
+        var id = primaryKeyAttributeValueBackfillPrefix + date;
+        var waiting = pendingBackfills.get(id);
+        if (waiting != null) return Optional.of(waiting);
+
+        Item item = table.getItem(new KeyAttribute("id", id));
+        durableBatchTags.put(id, Optional.ofNullable(item).filter(it -> it.isPresent("batchTag")).map(it -> it.getString("batchTag")));
+        return Optional.ofNullable(item).map(it -> new BackfillBatch(
+            it.isPresent("batchTag") ? BatchTag.of(it.getString("batchTag")) : null,
+            it.getBoolean("complete")
+        ));
     }
 
+    @Override
+    public void updateBackfillBatch(LocalDate date, BackfillBatch batch) {
+        var id = primaryKeyAttributeValueBackfillPrefix + date;
+        if (!durableBatchTags.containsKey(id)) getBackfillBatch(date);
+
+        pendingBackfills.put(id, batch);
+        enqueue(id, () -> {
+            Item item = new Item()
+                .withPrimaryKey("id", id)
+                .withBoolean("complete", batch.complete);
+            if (batch.batchTag != null) {
+                item = item.with("batchTag", batch.batchTag.value);
+            }
+            putIfBatchTagUnchanged(item, batch.batchTag);
+            pendingBackfills.remove(id, batch);
+        });
+    }
+
+    /* writes everything still waiting, on the calling thread */
+    @Override
+    public synchronized void flush() {
+        for (String id : pending.keySet()) {
+            Runnable write = pending.remove(id);
+            if (write == null) continue;
+            try {
+                write.run();
+            } catch (ConditionalCheckFailedException e) {
+                logger.warn("Checkpoint not written as a concurrent invocation has moved it on, id={}", id);
+                pendingDownloads.remove(id);
+                pendingBackfills.remove(id);
+                rereadBatchTag(id);
+            } catch (RuntimeException e) {
+                pending.putIfAbsent(id, write);
+                throw e;
+            }
+        }
+    }
+
+    /* the next write for this id is then conditional on what the other invocation stored, not on a guess */
+    private void rereadBatchTag(String id) {
+        if (!durableBatchTags.containsKey(id)) return;
+        Item item = table.getItem(new KeyAttribute("id", id));
+        durableBatchTags.put(id, Optional.ofNullable(item).filter(it -> it.isPresent("batchTag")).map(it -> it.getString("batchTag")));
+    }
+
+    /* batch tags are opaque, so the only way to know a checkpoint is not going backwards is that nobody else moved it */
+    private void putIfBatchTagUnchanged(Item item, BatchTag batchTag) {
+        var id = item.getString("id");
+        var previous = durableBatchTags.getOrDefault(id, Optional.empty());
+        var spec = new PutItemSpec().withItem(item);
+        if (previous.isPresent()) {
+            spec = spec.withConditionExpression("batchTag = :previous")
+                .withValueMap(new ValueMap().withString(":previous", previous.get()));
+        } else {
+            spec = spec.withConditionExpression("attribute_not_exists(batchTag)");
+        }
+        table.putItem(spec);
+        durableBatchTags.put(id, Optional.ofNullable(batchTag).map(it -> it.value));
+    }
+
+    private void enqueue(String id, Runnable write) {
+        pending.put(id, write);
+        synchronized (scheduling) {
+            if (scheduledFlush == null || scheduledFlush.isDone()) {
+                scheduledFlush = FLUSHER.schedule(this::flushInBackground, flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /* anything enqueued while this was writing is picked up by the next one */
+    private void flushInBackground() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            logger.error("Checkpoint flush failed, will retry", e);
+        }
+        if (!pending.isEmpty()) {
+            synchronized (scheduling) {
+                scheduledFlush = FLUSHER.schedule(this::flushInBackground, flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
 }
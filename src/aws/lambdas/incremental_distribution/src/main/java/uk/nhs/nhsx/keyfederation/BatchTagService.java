@@ -4,6 +4,7 @@ import uk.nhs.nhsx.keyfederation.upload.lookup.UploadKeysResult;
 
 import java.time.LocalDate;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 public interface BatchTagService {
 
@@ -15,6 +16,32 @@ public interface BatchTagService {
 
     void updateLatestFederationBatch(FederationBatch batch);
 
+    /* backfill keeps a checkpoint per day, separate from the forward checkpoint above */
+    Optional<BackfillBatch> getBackfillBatch(LocalDate date);
+
+    void updateBackfillBatch(LocalDate date, BackfillBatch batch);
+
+    /* implementations that write checkpoints behind the caller do so before this returns */
+    default void flush() {
+    }
+
+    /* runs the work, then flushes whatever the outcome; a failed flush never hides why the work itself failed */
+    default <T> T flushedAfter(Supplier<T> work) {
+        T result;
+        try {
+            result = work.get();
+        } catch (RuntimeException | Error e) {
+            try {
+                flush();
+            } catch (RuntimeException flushFailure) {
+                e.addSuppressed(flushFailure);
+            }
+            throw e;
+        }
+        flush();
+        return result;
+    }
+
     class FederationBatch {
         public final BatchTag batchTag;
         public final LocalDate batchDate;
@@ -24,4 +51,14 @@ public interface BatchTagService {
             this.batchDate = batchDate;
         }
     }
+
+    class BackfillBatch {
+        public final BatchTag batchTag;
+        public final boolean complete;
+
+        public BackfillBatch(BatchTag batchTag, boolean complete) {
+            this.batchTag = batchTag;
+            this.complete = complete;
+        }
+    }
 }
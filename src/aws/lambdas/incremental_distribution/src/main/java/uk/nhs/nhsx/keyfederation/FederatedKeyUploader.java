@@ -1,5 +1,6 @@
 package uk.nhs.nhsx.keyfederation;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.http.entity.ContentType;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -8,6 +9,8 @@ import uk.nhs.nhsx.core.aws.s3.BucketName;
 import uk.nhs.nhsx.core.aws.s3.ObjectKey;
 import uk.nhs.nhsx.core.aws.s3.S3Storage;
 import uk.nhs.nhsx.core.aws.s3.Sources;
+import uk.nhs.nhsx.core.metrics.LoggingMetrics;
+import uk.nhs.nhsx.core.metrics.Metrics;
 import uk.nhs.nhsx.diagnosiskeyssubmission.DiagnosisKeysSubmissionService;
 import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKey;
 import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKeyPayload;
@@ -20,38 +23,91 @@ import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Supplier;
 
 import static java.time.ZoneOffset.UTC;
-import static java.util.stream.Collectors.toList;
 
 public class FederatedKeyUploader {
 
     private static final Logger logger = LogManager.getLogger(DiagnosisKeysSubmissionService.class);
 
+    /* a batch holds keys from a dozen or so origins, each stored as its own object */
+    private static final ExecutorService ORIGINS = Executors.newFixedThreadPool(8,
+        new ThreadFactoryBuilder().setNameFormat("federated-origin-%d").setDaemon(true).build()
+    );
+
     private final S3Storage s3Storage;
     private final BucketName bucketName;
     private final String federatedKeySourcePrefix;
     private final Supplier<Instant> clock;
     private final Supplier<String> dateStringProvider;
     private final List<String> validOrigins;
+    private final SeenKeys seenKeys;
+    private final Executor executor;
+    private final Metrics metrics;
 
     public FederatedKeyUploader(S3Storage s3Storage,
                                 BucketName bucketName,
                                 String federatedKeySourcePrefix,
                                 Supplier<Instant> clock,
                                 List<String> validOrigins) {
+        this(s3Storage, bucketName, federatedKeySourcePrefix, clock, validOrigins, SeenKeys.NONE);
+    }
+
+    public FederatedKeyUploader(S3Storage s3Storage,
+                                BucketName bucketName,
+                                String federatedKeySourcePrefix,
+                                Supplier<Instant> clock,
+                                List<String> validOrigins,
+                                SeenKeys seenKeys) {
+        this(s3Storage, bucketName, federatedKeySourcePrefix, clock, validOrigins, seenKeys, ORIGINS, new LoggingMetrics());
+    }
+
+    public FederatedKeyUploader(S3Storage s3Storage,
+                                BucketName bucketName,
+                                String federatedKeySourcePrefix,
+                                Supplier<Instant> clock,
+                                List<String> validOrigins,
+                                SeenKeys seenKeys,
+                                Executor executor,
+                                Metrics metrics) {
         this.s3Storage = s3Storage;
         this.bucketName = bucketName;
         this.federatedKeySourcePrefix = federatedKeySourcePrefix;
         this.clock = clock;
         this.dateStringProvider = () -> DateTimeFormatter.ofPattern("yyyyMMdd").withZone(ZoneOffset.UTC).format(clock.get());
         this.validOrigins = validOrigins;
+        this.seenKeys = seenKeys;
+        this.executor = executor;
+        this.metrics = metrics;
     }
 
+    /*
+     keys are validated, and ones we have already stored dropped, as they are grouped, and each origin is then stored
+     concurrently; this returns once all of them are stored, or throws if any of them could not be, so the batch is
+     never checkpointed with an origin missing
+     */
     public void acceptKeysFromFederatedServer(DiagnosisKeysDownloadResponse payload) {
-        indexStoreModelKeysPerOrigin(payload)
-            .forEach((origin, keys) -> handleOriginKeys(payload, origin, keys));
+        var keysPerOrigin = validKeysPerOrigin(payload);
+        var stores = keysPerOrigin.entrySet().stream()
+            .map(it -> CompletableFuture.runAsync(() -> handleOriginKeys(payload, it.getKey(), it.getValue()), executor))
+            .toArray(CompletableFuture[]::new);
+
+        try {
+            CompletableFuture.allOf(stores).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+
+        keysPerOrigin.values().forEach(it -> seenKeys.markSeen(it.valid));
     }
 
     public Map<String, List<StoredTemporaryExposureKey>> indexStoreModelKeysPerOrigin(DiagnosisKeysDownloadResponse payload) {
@@ -69,30 +125,62 @@ public class FederatedKeyUploader {
         return keysPerOrigin;
     }
 
+    /* keys from origins we do not accept are counted but not validated, they are never stored */
+    Map<String, OriginKeys> validKeysPerOrigin(DiagnosisKeysDownloadResponse payload) {
+        var keysPerOrigin = new HashMap<String, OriginKeys>();
+        var inThisBatch = new HashSet<String>();
+        payload.exposures.forEach(it -> {
+            var originKeys = keysPerOrigin.computeIfAbsent(it.origin, origin -> new OriginKeys());
+            if (!validOrigins.contains(it.origin)) {
+                originKeys.invalid++;
+                return;
+            }
+            var storedTemporaryExposureKey = new StoredTemporaryExposureKey(
+                it.keyData, it.rollingStartNumber, it.rollingPeriod, it.transmissionRiskLevel
+            );
+            if (!isValidKey(storedTemporaryExposureKey)) {
+                originKeys.invalid++;
+            } else if (!inThisBatch.add(it.keyData + ":" + it.rollingStartNumber) || seenKeys.seen(storedTemporaryExposureKey)) {
+                originKeys.duplicate++;
+            } else {
+                originKeys.valid.add(storedTemporaryExposureKey);
+            }
+        });
+        return keysPerOrigin;
+    }
+
+    static class OriginKeys {
+        final List<StoredTemporaryExposureKey> valid = new ArrayList<>();
+        int invalid;
+        int duplicate;
+    }
+
     private void handleOriginKeys(DiagnosisKeysDownloadResponse payload,
                                   String origin,
-                                  List<StoredTemporaryExposureKey> temporaryExposureKeys) {
-        var validKeys = temporaryExposureKeys.stream()
-            .filter(this::isValidKey)
-            .collect(toList());
-
-        var invalidKeysCount = temporaryExposureKeys.size() - validKeys.size();
+                                  OriginKeys originKeys) {
+        var validKeys = originKeys.valid;
 
         logger.info(
-            "Downloaded from federated server valid keys={}, invalid keys={}, origin={}",
-            validKeys.size(), invalidKeysCount, origin
+            "Downloaded from federated server valid keys={}, invalid keys={}, already stored keys={}, origin={}",
+            validKeys.size(), originKeys.invalid, originKeys.duplicate, origin
         );
+        metrics.count("FederatedKeysValid." + origin, validKeys.size());
+        metrics.count("FederatedKeysInvalid." + origin, originKeys.invalid);
+        metrics.count("FederatedKeysDuplicate." + origin, originKeys.duplicate);
 
         if (validOrigins.contains(origin)) {
             if (validKeys.size() > 0) {
                 var exposureKeysPayload = new ExposureKeysPayload(origin, payload.batchTag, validKeys);
 
-                uploadOriginKeysToS3(exposureKeysPayload);
+                metrics.timed("FederatedKeysStoreDuration." + origin, () -> {
+                    uploadOriginKeysToS3(exposureKeysPayload);
+                    return null;
+                });
 
                 logger.debug("Stored in S3");
             } else {
                 logger.info(
-                    "Skip store to s3 because no valid keys were found or all keys were invalid, " +
+                    "Skip store to s3 because no valid keys were found, all keys were invalid or already stored, " +
                         "origin={}, batchTag={}", origin, payload.batchTag
                 );
             }
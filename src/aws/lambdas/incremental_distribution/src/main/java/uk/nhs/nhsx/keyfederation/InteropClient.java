@@ -1,95 +1,172 @@
 package uk.nhs.nhsx.keyfederation;
 
-import com.amazonaws.services.lambda.runtime.Context;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import uk.nhs.nhsx.core.Jackson;
+import uk.nhs.nhsx.core.metrics.LoggingMetrics;
+import uk.nhs.nhsx.core.metrics.Metrics;
 import uk.nhs.nhsx.keyfederation.download.DiagnosisKeysDownloadResponse;
-import uk.nhs.nhsx.keyfederation.upload.DiagnosisKeysUploadRequest;
 import uk.nhs.nhsx.keyfederation.upload.DiagnosisKeysUploadResponse;
+import uk.nhs.nhsx.keyfederation.upload.ExposureUpload;
 import uk.nhs.nhsx.keyfederation.upload.JWS;
+import uk.nhs.nhsx.keyfederation.upload.RequestBodyBuffer;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.zip.GZIPInputStream;
 
-import static java.net.http.HttpRequest.BodyPublishers.ofString;
-import static uk.nhs.nhsx.core.Jackson.toJson;
+import static uk.nhs.nhsx.core.Jackson.readJson;
+import static uk.nhs.nhsx.core.Jackson.writeJson;
 import static uk.nhs.nhsx.core.UncheckedException.uncheckedGet;
 
+/*
+ one HTTP/2 client for the lambda, with connect and request timeouts, shared by the upload and download handlers.
+ Responses are asked for gzipped and parsed as they stream in, rather than read into a string first
+ */
 public class InteropClient {
 
     private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
     private static final Logger logger = LogManager.getLogger(InteropClient.class);
+    private static final int ESTIMATED_ENCODED_BYTES_PER_KEY = 192;
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private static final HttpClient SHARED = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_2)
+        .connectTimeout(CONNECT_TIMEOUT)
+        .followRedirects(HttpClient.Redirect.NEVER)
+        .build();
 
     private final String interopBaseUrl;
     private final String authToken;
     private final JWS jws;
-
-    private final HttpClient client = HttpClient.newHttpClient();
+    private final HttpClient client;
+    private final Metrics metrics;
 
     public InteropClient(String interopBaseUrl, String authToken, JWS jws) {
+        this(interopBaseUrl, authToken, jws, SHARED, new LoggingMetrics());
+    }
+
+    public InteropClient(String interopBaseUrl, String authToken, JWS jws, HttpClient client, Metrics metrics) {
         this.interopBaseUrl = interopBaseUrl;
         this.authToken = authToken;
         this.jws = jws;
+        this.client = client;
+        this.metrics = metrics;
     }
 
     public Optional<DiagnosisKeysDownloadResponse> getExposureKeysBatch(LocalDate date, String batchTag) {
         var request = HttpRequest.newBuilder()
             .header("Authorization", "Bearer " + authToken)
+            .header("Accept-Encoding", "gzip")
+            .timeout(REQUEST_TIMEOUT)
             .uri(URI.create(interopBaseUrl + "/diagnosiskeys/download/" + date.format(FORMATTER) + batchTag))
             .build();
 
-        var response = uncheckedGet(() -> client.send(request, HttpResponse.BodyHandlers.ofString()));
-
-        logger.debug("GET {} -> {}", request.uri(), response.statusCode());
-
-        if (response.statusCode() == 200) {
-            return Optional.of(
-                Jackson.deserializeMaybe(response.body(), DiagnosisKeysDownloadResponse.class)
-                    .orElseThrow(RuntimeException::new)
-            );
-        }
-
-        if (response.statusCode() == 204) {
-            return Optional.empty();
-        }
+        return metrics.timed("InteropDownloadDuration", () -> {
+            var response = uncheckedGet(() -> client.send(request, HttpResponse.BodyHandlers.ofInputStream()));
+
+            logger.debug("GET {} -> {} ({})", request.uri(), response.statusCode(), response.version());
+
+            /* jackson closes the stream it reads from, so it gets a view that leaves the body open to be drained and counted */
+            var body = new CountingInputStream(response.body());
+            try {
+                if (response.statusCode() == 200) {
+                    return Optional.of(readJson(decoded(response, nonClosing(body)), DiagnosisKeysDownloadResponse.class));
+                }
+
+                if (response.statusCode() == 204) {
+                    return Optional.empty();
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to read keys from federated key server with batch tag " + batchTag, e);
+            } finally {
+                drainAndClose(body);
+                metrics.count("InteropDownloadBytes", body.getCount());
+            }
 
-        logger.error("Request to download keys from federated key server with batch tag " + batchTag + " failed with status code " + response.statusCode());
-        throw new RuntimeException("Unexpected HTTP status code " + response.statusCode());
+            logger.error("Request to download keys from federated key server with batch tag " + batchTag + " failed with status code " + response.statusCode());
+            throw new RuntimeException("Unexpected HTTP status code " + response.statusCode());
+        });
     }
 
-    public DiagnosisKeysUploadResponse uploadKeys(String payload) {
-        try {
-            DiagnosisKeysUploadRequest requestBody = new DiagnosisKeysUploadRequest(UUID.randomUUID().toString(), jws.sign(payload));
+    public DiagnosisKeysUploadResponse uploadKeys(List<ExposureUpload> exposures) {
+        RequestBodyBuffer requestBody = uploadRequestBody(UUID.randomUUID().toString(), exposures);
+        HttpRequest uploadRequest = HttpRequest.newBuilder()
+            .header("Authorization", "Bearer " + authToken)
+            .header("Content-Type", "application/json")
+            .header("Accept-Encoding", "gzip")
+            .timeout(REQUEST_TIMEOUT)
+            .uri(URI.create(interopBaseUrl + "/diagnosiskeys/upload"))
+            .POST(requestBody.asBodyPublisher())
+            .build();
+        metrics.count("InteropUploadBytes", requestBody.size());
 
-            HttpRequest uploadRequest = HttpRequest.newBuilder()
-                .header("Authorization", "Bearer " + authToken)
-                .header("Content-Type", "application/json")
-                .uri(URI.create(interopBaseUrl + "/diagnosiskeys/upload"))
-                .POST(ofString(toJson(requestBody)))
-                .build();
-            HttpResponse<String> httpResponse = client.send(uploadRequest, HttpResponse.BodyHandlers.ofString());
+        return metrics.timed("InteropUploadDuration", () -> {
+            try {
+                HttpResponse<InputStream> httpResponse = client.send(uploadRequest, HttpResponse.BodyHandlers.ofInputStream());
 
-            logger.debug("POST {} -> {}", uploadRequest.uri(), httpResponse.statusCode());
+                logger.debug("POST {} -> {} ({})", uploadRequest.uri(), httpResponse.statusCode(), httpResponse.version());
 
-            if (httpResponse.statusCode() == 200) {
-                return Jackson.deserializeMaybe(httpResponse.body(), DiagnosisKeysUploadResponse.class).orElseThrow(RuntimeException::new);
-            } else {
+                try (InputStream body = decoded(httpResponse, httpResponse.body())) {
+                    if (httpResponse.statusCode() == 200) {
+                        return readJson(body, DiagnosisKeysUploadResponse.class);
+                    }
+                }
                 logger.error("Request to upload keys to federated key server failed with status code " + httpResponse.statusCode());
                 throw new RuntimeException("Unexpected HTTP status code " + httpResponse.statusCode());
+            } catch (InterruptedException | IOException  e) {
+                logger.error("Request to upload keys to federated key server failed", e);
+                throw new RuntimeException(e);
             }
-        } catch (InterruptedException | IOException  e) {
-            logger.error("Request to upload keys to federated key server failed", e);
-            throw new RuntimeException(e);
+        });
+    }
+
+    private static InputStream nonClosing(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    private static void drainAndClose(InputStream body) {
+        try (body) {
+            ByteStreams.exhaust(body);
+        } catch (IOException e) {
+            logger.warn("Unable to drain response from federated key server", e);
         }
     }
+
+    private static InputStream decoded(HttpResponse<?> response, InputStream body) throws IOException {
+        boolean gzipped = response.headers().firstValue("Content-Encoding")
+            .map(it -> it.trim().equalsIgnoreCase("gzip"))
+            .orElse(false);
+        return gzipped ? new GZIPInputStream(body) : body;
+    }
+
+    /*
+     same bytes as serialising a DiagnosisKeysUploadRequest, but the signed payload is written once into the body buffer.
+     neither the uuid batch tag nor the base64url JWS ever need escaping in a json string
+     */
+    private RequestBodyBuffer uploadRequestBody(String batchTag, List<ExposureUpload> exposures) {
+        RequestBodyBuffer body = new RequestBodyBuffer(exposures.size() * ESTIMATED_ENCODED_BYTES_PER_KEY + 512);
+        body.writeBytes(("{\"batchTag\":\"" + batchTag + "\",\"payload\":\"").getBytes(StandardCharsets.UTF_8));
+        jws.sign(out -> writeJson(out, exposures), body);
+        body.writeBytes("\"}".getBytes(StandardCharsets.UTF_8));
+        return body;
+    }
 }
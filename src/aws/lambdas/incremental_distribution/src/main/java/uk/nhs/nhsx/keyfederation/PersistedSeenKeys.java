@@ -0,0 +1,154 @@
+package uk.nhs.nhsx.keyfederation;
+
+import com.amazonaws.services.s3.model.S3Object;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import com.google.common.io.ByteSource;
+import org.apache.http.entity.ContentType;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.nhs.nhsx.core.aws.s3.AwsS3;
+import uk.nhs.nhsx.core.aws.s3.BucketName;
+import uk.nhs.nhsx.core.aws.s3.ObjectKey;
+import uk.nhs.nhsx.core.aws.s3.S3Storage.Locator;
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKey;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ a bloom filter over the raw key bytes and rolling start number, one per 14 day window of rolling start numbers,
+ so a key always falls in the same window however late it is delivered, and only the last two windows are ever
+ read. A false positive drops a key we have not seen, so the filter is sized for one in a million at the most keys
+ we would expect in a window; the filters are around 3.5MB each.
+
+ The forward download and the backfill can both be storing a window at once, so a filter is only written over the
+ version it was read from. When someone else has written in between, theirs is read back and merged into ours, and
+ the write tried again: merging filters loses nothing, as each is the union of the keys put into it.
+ */
+public class PersistedSeenKeys implements SeenKeys {
+
+    private static final Logger logger = LogManager.getLogger(PersistedSeenKeys.class);
+
+    private static final long ROLLING_PERIODS_PER_WINDOW = 144 * 14;
+    private static final long EXPECTED_KEYS_PER_WINDOW = 1_000_000;
+    private static final double FALSE_POSITIVE_PROBABILITY = 0.000_001;
+    private static final int MAX_WRITE_ATTEMPTS = 5;
+
+    private static final DateTimeFormatter WINDOW_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd").withZone(ZoneOffset.UTC);
+
+    private static final Funnel<StoredTemporaryExposureKey> KEY_FUNNEL = (key, into) -> into
+        .putBytes(Base64.getDecoder().decode(key.key))
+        .putInt(key.rollingStartNumber);
+
+    private final AwsS3 awsS3;
+    private final BucketName bucketName;
+    private final String prefix;
+    private final Map<Long, BloomFilter<StoredTemporaryExposureKey>> windows = new ConcurrentHashMap<>();
+    private final Map<Long, Optional<String>> etags = new ConcurrentHashMap<>();
+    private final Set<Long> changed = ConcurrentHashMap.newKeySet();
+
+    public PersistedSeenKeys(AwsS3 awsS3, BucketName bucketName, String prefix) {
+        this.awsS3 = awsS3;
+        this.bucketName = bucketName;
+        this.prefix = prefix;
+    }
+
+    @Override
+    public boolean seen(StoredTemporaryExposureKey key) {
+        return windowOf(key).mightContain(key);
+    }
+
+    @Override
+    public void markSeen(Collection<StoredTemporaryExposureKey> keys) {
+        keys.forEach(key -> {
+            var window = windowIndexOf(key);
+            windowOf(key).put(key);
+            changed.add(window);
+        });
+    }
+
+    @Override
+    public void persist() {
+        for (Long window : Set.copyOf(changed)) {
+            var objectKey = objectKeyOf(window);
+            var filter = windows.get(window);
+            for (int attempt = 1; ; attempt++) {
+                var bytes = bytesOf(filter);
+                var stored = awsS3.uploadIfUnchanged(Locator.of(bucketName, objectKey), ContentType.APPLICATION_OCTET_STREAM, ByteSource.wrap(bytes), etags.get(window));
+                if (stored.isPresent()) {
+                    /* the next persist of this window, on a warm container, is conditional on what was just written */
+                    etags.put(window, stored);
+                    logger.info("Stored seen federated keys filter, window={}, bytes={}", objectKey, bytes.length);
+                    break;
+                }
+                if (attempt == MAX_WRITE_ATTEMPTS) {
+                    throw new RuntimeException("Seen federated keys filter kept changing while storing it, window=" + objectKey);
+                }
+                logger.info("Seen federated keys filter changed since it was read, merging, window={}", objectKey);
+                merge(window, filter);
+            }
+            changed.remove(window);
+        }
+    }
+
+    private void merge(long window, BloomFilter<StoredTemporaryExposureKey> into) {
+        Optional<S3Object> stored = awsS3.findObject(bucketName.value, objectKeyOf(window).value);
+        etags.put(window, stored.map(PersistedSeenKeys::etagOf));
+        if (stored.isPresent()) {
+            into.putAll(AwsS3.readAndClose(stored.get(), PersistedSeenKeys::read));
+        }
+    }
+
+    private static byte[] bytesOf(BloomFilter<StoredTemporaryExposureKey> filter) {
+        var out = new ByteArrayOutputStream();
+        try {
+            filter.writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private BloomFilter<StoredTemporaryExposureKey> windowOf(StoredTemporaryExposureKey key) {
+        return windows.computeIfAbsent(windowIndexOf(key), this::load);
+    }
+
+    private BloomFilter<StoredTemporaryExposureKey> load(long window) {
+        var objectKey = objectKeyOf(window);
+        Optional<S3Object> stored = awsS3.findObject(bucketName.value, objectKey.value);
+        etags.put(window, stored.map(PersistedSeenKeys::etagOf));
+        if (stored.isPresent()) {
+            return AwsS3.readAndClose(stored.get(), PersistedSeenKeys::read);
+        }
+        logger.info("No seen federated keys filter yet, window={}", objectKey);
+        return BloomFilter.create(KEY_FUNNEL, EXPECTED_KEYS_PER_WINDOW, FALSE_POSITIVE_PROBABILITY);
+    }
+
+    private static BloomFilter<StoredTemporaryExposureKey> read(S3Object object) throws IOException {
+        return BloomFilter.readFrom(object.getObjectContent(), KEY_FUNNEL);
+    }
+
+    private static String etagOf(S3Object object) {
+        return object.getObjectMetadata().getETag();
+    }
+
+    private ObjectKey objectKeyOf(long window) {
+        var windowStart = Instant.ofEpochSecond(window * ROLLING_PERIODS_PER_WINDOW * 600L);
+        return ObjectKey.of(prefix + "/" + WINDOW_FORMAT.format(windowStart) + ".bloom");
+    }
+
+    private static long windowIndexOf(StoredTemporaryExposureKey key) {
+        return key.rollingStartNumber / ROLLING_PERIODS_PER_WINDOW;
+    }
+}
@@ -0,0 +1,52 @@
+package uk.nhs.nhsx.keyfederation;
+
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKey;
+
+import java.util.Collection;
+import java.util.function.Supplier;
+
+/*
+ keys the federation server has already delivered to us, so ones it delivers again (after a batch tag reset, or
+ when history is replayed) are not stored, and distributed, a second time
+ */
+public interface SeenKeys {
+
+    SeenKeys NONE = new SeenKeys() {
+        @Override
+        public boolean seen(StoredTemporaryExposureKey key) {
+            return false;
+        }
+
+        @Override
+        public void markSeen(Collection<StoredTemporaryExposureKey> keys) {
+        }
+
+        @Override
+        public void persist() {
+        }
+    };
+
+    boolean seen(StoredTemporaryExposureKey key);
+
+    /* only once the keys are stored, so a batch that fails to store is not dropped when it is delivered again */
+    void markSeen(Collection<StoredTemporaryExposureKey> keys);
+
+    void persist();
+
+    /* runs the work, then persists whatever the outcome; a failed persist never hides why the work itself failed */
+    default <T> T persistedAfter(Supplier<T> work) {
+        T result;
+        try {
+            result = work.get();
+        } catch (RuntimeException | Error e) {
+            try {
+                persist();
+            } catch (RuntimeException persistFailure) {
+                e.addSuppressed(persistFailure);
+            }
+            throw e;
+        }
+        persist();
+        return result;
+    }
+}
@@ -0,0 +1,51 @@
+package uk.nhs.nhsx.keyfederation.download;
+
+import com.amazonaws.services.lambda.runtime.events.ScheduledEvent;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Optional;
+
+/*
+ the download lambda is run on a schedule and walks forward from its checkpoint. Invoked by hand with a range of
+ days in the event detail, e.g. {"detail": {"backfillFrom": "2020-09-01", "backfillTo": "2020-09-14"}}, it backfills
+ those days instead, and can be invoked again with the same range until every day is complete
+ */
+public class BackfillRequest {
+
+    private static final int DEFAULT_CONCURRENCY = 4;
+
+    public final LocalDate from;
+    public final LocalDate to;
+    public final int concurrency;
+
+    public BackfillRequest(LocalDate from, LocalDate to, int concurrency) {
+        if (to.isBefore(from)) throw new IllegalArgumentException("backfill range ends before it starts, from=" + from + ", to=" + to);
+        if (concurrency < 1) throw new IllegalArgumentException("backfill concurrency must be at least 1, was " + concurrency);
+        this.from = from;
+        this.to = to;
+        this.concurrency = concurrency;
+    }
+
+    public static Optional<BackfillRequest> from(ScheduledEvent event) {
+        Map<String, Object> detail = Optional.ofNullable(event).map(ScheduledEvent::getDetail).orElse(Map.of());
+        if (!detail.containsKey("backfillFrom")) return Optional.empty();
+
+        var from = LocalDate.parse(String.valueOf(detail.get("backfillFrom")));
+        var to = Optional.ofNullable(detail.get("backfillTo")).map(it -> LocalDate.parse(String.valueOf(it))).orElse(from);
+        var concurrency = Optional.ofNullable(detail.get("backfillConcurrency"))
+            .map(it -> Integer.parseInt(String.valueOf(it)))
+            .orElse(DEFAULT_CONCURRENCY);
+
+        return Optional.of(new BackfillRequest(from, to, concurrency));
+    }
+
+    @Override
+    public String toString() {
+        return "BackfillRequest{" +
+            "from=" + from +
+            ", to=" + to +
+            ", concurrency=" + concurrency +
+            '}';
+    }
+}
@@ -1,6 +1,7 @@
 package uk.nhs.nhsx.keyfederation.download;
 
 import com.amazonaws.services.lambda.runtime.Context;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import uk.nhs.nhsx.keyfederation.BatchTag;
@@ -14,6 +15,12 @@ import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -21,6 +28,10 @@ import java.util.stream.Collectors;
 public class DiagnosisKeysDownloadService {
     private static final Logger logger = LogManager.getLogger(DiagnosisKeysDownloadService.class);
 
+    private static final ExecutorService PREFETCH = Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setNameFormat("federation-prefetch-%d").setDaemon(true).build()
+    );
+
     private final Supplier<Instant> clock;
     private final InteropClient interopClient;
     private final FederatedKeyUploader keyUploader;
@@ -30,6 +41,7 @@ public class DiagnosisKeysDownloadService {
     private final int initialDownloadHistoryDays;
     private final int maxSubsequentBatchDownloadCount;
     private final Context context;
+    private final ExecutorService prefetchExecutor;
 
     public DiagnosisKeysDownloadService(Supplier<Instant> clock,
                                         InteropClient interopClient,
@@ -40,6 +52,20 @@ public class DiagnosisKeysDownloadService {
                                         int initialDownloadHistoryDays,
                                         int maxSubsequentBatchDownloadCount,
                                         Context context) {
+        this(clock, interopClient, keyUploader, batchTagService, downloadRiskLevelDefaultEnabled, downloadRiskLevelDefault,
+            initialDownloadHistoryDays, maxSubsequentBatchDownloadCount, context, PREFETCH);
+    }
+
+    public DiagnosisKeysDownloadService(Supplier<Instant> clock,
+                                        InteropClient interopClient,
+                                        FederatedKeyUploader keyUploader,
+                                        BatchTagService batchTagService,
+                                        boolean downloadRiskLevelDefaultEnabled,
+                                        int downloadRiskLevelDefault,
+                                        int initialDownloadHistoryDays,
+                                        int maxSubsequentBatchDownloadCount,
+                                        Context context,
+                                        ExecutorService prefetchExecutor) {
         this.clock = clock;
         this.interopClient = interopClient;
         this.keyUploader = keyUploader;
@@ -49,6 +75,7 @@ public class DiagnosisKeysDownloadService {
         this.initialDownloadHistoryDays = initialDownloadHistoryDays;
         this.maxSubsequentBatchDownloadCount = maxSubsequentBatchDownloadCount;
         this.context = context;
+        this.prefetchExecutor = prefetchExecutor;
     }
 
     public int downloadFromFederatedServerAndStoreKeys() {
@@ -62,6 +89,13 @@ public class DiagnosisKeysDownloadService {
         return processedBatches.get();
     }
 
+    /*
+     a two stage pipeline: the next batch is requested as soon as its tag is known, and fetched while the current
+     one is being stored. Only one fetch is ever ahead, and batches are stored, and their tag checkpointed, in order
+     on this thread, so the tag never gets ahead of the keys that are in S3. A fetch that is no longer wanted is
+     cancelled through the executor's own future, which interrupts it, so it doesn't hold up the next invocation's
+     fetches on the prefetch thread
+     */
     private int downloadKeysAndProcess(final LocalDate date, final BatchTag batchTag, int maxBatchDownloadCount, Context context) {
         var processedBatches = 0;
         var batch = Optional.ofNullable(batchTag).map(b -> "?batchTag=" + b.value).orElse("");
@@ -71,7 +105,16 @@ public class DiagnosisKeysDownloadService {
         for (int i= 1; i <= maxBatchDownloadCount && exposureKeysNextBatch.isPresent(); i++) {
             var startTime = System.currentTimeMillis();
             var diagnosisKeysDownloadResponse = exposureKeysNextBatch.get();
-            this.convertAndSaveKeys(diagnosisKeysDownloadResponse);
+            var prefetch = prefetchExecutor.submit(
+                () -> interopClient.getExposureKeysBatch(date, "?batchTag=" + diagnosisKeysDownloadResponse.batchTag)
+            );
+
+            try {
+                this.convertAndSaveKeys(diagnosisKeysDownloadResponse);
+            } catch (RuntimeException e) {
+                prefetch.cancel(true);
+                throw e;
+            }
 
             logger.info("Downloaded {} keys from federated server, BatchTag {} (batch {})",
                 diagnosisKeysDownloadResponse.exposures.size(),
@@ -81,9 +124,10 @@ public class DiagnosisKeysDownloadService {
             iterationDuration = Math.max(iterationDuration,System.currentTimeMillis() - startTime);
             if(iterationDuration >= context.getRemainingTimeInMillis()){
                 logger.warn("There is not enough time to complete another iteration");
+                prefetch.cancel(true);
                 break;
             }
-            exposureKeysNextBatch = interopClient.getExposureKeysBatch(date, "?batchTag=" + diagnosisKeysDownloadResponse.batchTag);
+            exposureKeysNextBatch = await(prefetch);
         }
 
         logger.info("Downloaded keys from federated server finished, batchCount={}", processedBatches);
@@ -91,15 +135,91 @@ public class DiagnosisKeysDownloadService {
         return processedBatches;
     }
 
+    /*
+     re-ingests a range of days, each on its own worker following that day's batch tag chain from the start. Each
+     day is checkpointed after every batch it stores, and marked complete when its chain runs out, so a run that
+     runs out of time is picked up where it left off by the next one. The forward checkpoint is not touched.
+     */
+    public int backfillFromFederatedServerAndStoreKeys(LocalDate from, LocalDate to, int concurrency) {
+        var days = from.datesUntil(to.plusDays(1)).collect(Collectors.toList());
+        var workers = Executors.newFixedThreadPool(
+            Math.max(1, Math.min(concurrency, days.size())),
+            new ThreadFactoryBuilder().setNameFormat("federation-backfill-%d").setDaemon(true).build()
+        );
+
+        try {
+            var backfills = days.stream()
+                .map(day -> CompletableFuture.supplyAsync(() -> backfillDay(day), workers))
+                .collect(Collectors.toList());
+
+            var processedBatches = 0;
+            for (CompletableFuture<Integer> backfill : backfills) {
+                processedBatches += await(backfill);
+            }
+
+            logger.info("Backfill from federated server finished, from={}, to={}, batchCount={}", from, to, processedBatches);
+
+            return processedBatches;
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private int backfillDay(LocalDate date) {
+        var checkpoint = batchTagService.getBackfillBatch(date);
+        if (checkpoint.map(it -> it.complete).orElse(false)) {
+            logger.info("Backfill already complete, date={}", date);
+            return 0;
+        }
+
+        var batchTag = checkpoint.map(it -> it.batchTag).orElse(null);
+        var processedBatches = 0;
+        var iterationDuration = 0L;
+        while (true) {
+            var startTime = System.currentTimeMillis();
+            var batch = Optional.ofNullable(batchTag).map(b -> "?batchTag=" + b.value).orElse("");
+            var exposureKeysNextBatch = interopClient.getExposureKeysBatch(date, batch);
+
+            if (exposureKeysNextBatch.isEmpty()) {
+                batchTagService.updateBackfillBatch(date, new BatchTagService.BackfillBatch(batchTag, true));
+                logger.info("Backfill complete, date={}, batchCount={}", date, processedBatches);
+                return processedBatches;
+            }
+
+            var diagnosisKeysDownloadResponse = exposureKeysNextBatch.get();
+            keyUploader.acceptKeysFromFederatedServer(transformed(diagnosisKeysDownloadResponse));
+            batchTag = BatchTag.of(diagnosisKeysDownloadResponse.batchTag);
+            batchTagService.updateBackfillBatch(date, new BatchTagService.BackfillBatch(batchTag, false));
+            processedBatches++;
+
+            iterationDuration = Math.max(iterationDuration, System.currentTimeMillis() - startTime);
+            if (iterationDuration >= context.getRemainingTimeInMillis()) {
+                logger.warn("There is not enough time to complete another backfill iteration, date={}, batchCount={}", date, processedBatches);
+                return processedBatches;
+            }
+        }
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new CompletionException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+    }
+
     private LocalDate dateNow() {
         return LocalDate.ofInstant(clock.get(), ZoneId.of("UTC"));
     }
 
     private void convertAndSaveKeys(DiagnosisKeysDownloadResponse diagnosisKeysDownloadResponse) {
-        var transformedResponse = new DiagnosisKeysDownloadResponse(
-            diagnosisKeysDownloadResponse.batchTag,
-            diagnosisKeysDownloadResponse.exposures.stream().map(this::postDownloadTransformations).collect(Collectors.toList())
-        );
+        var transformedResponse = transformed(diagnosisKeysDownloadResponse);
 
         keyUploader.acceptKeysFromFederatedServer(transformedResponse);
 
@@ -111,6 +231,13 @@ public class DiagnosisKeysDownloadService {
         );
     }
 
+    private DiagnosisKeysDownloadResponse transformed(DiagnosisKeysDownloadResponse diagnosisKeysDownloadResponse) {
+        return new DiagnosisKeysDownloadResponse(
+            diagnosisKeysDownloadResponse.batchTag,
+            diagnosisKeysDownloadResponse.exposures.stream().map(this::postDownloadTransformations).collect(Collectors.toList())
+        );
+    }
+
     public ExposureDownload postDownloadTransformations(ExposureDownload downloaded) {
         return new ExposureDownload(downloaded.keyData,
             downloaded.rollingStartNumber,
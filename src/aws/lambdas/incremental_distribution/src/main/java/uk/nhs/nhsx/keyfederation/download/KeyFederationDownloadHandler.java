@@ -14,11 +14,13 @@ import uk.nhs.nhsx.core.aws.s3.S3Storage;
 import uk.nhs.nhsx.core.aws.secretsmanager.AwsSecretManager;
 import uk.nhs.nhsx.core.aws.secretsmanager.SecretManager;
 import uk.nhs.nhsx.core.aws.ssm.AwsSsmParameters;
+import uk.nhs.nhsx.core.logging.AsyncLogging;
 import uk.nhs.nhsx.core.signature.Signer;
 import uk.nhs.nhsx.keyfederation.*;
 import uk.nhs.nhsx.keyfederation.upload.JWS;
 
 import java.time.Instant;
+import java.util.Optional;
 import java.util.function.Supplier;
 
 /**
@@ -30,11 +32,15 @@ public class KeyFederationDownloadHandler implements RequestHandler<ScheduledEve
 
     private static final Logger logger = LogManager.getLogger(KeyFederationDownloadHandler.class);
 
+    /* kept away from the download prefix, which distribution lists as submissions */
+    private static final String SEEN_KEYS_PREFIX = "seen-federated-keys/";
+
     private final Supplier<Instant> clock;
     private final KeyFederationDownloadConfig config;
     private final Supplier<InteropClient> interopClient;
     private final BatchTagService batchTagService;
     private final S3Storage awsS3Client;
+    private final SeenKeys seenKeys;
 
     public KeyFederationDownloadHandler() {
         this(
@@ -54,7 +60,8 @@ public class KeyFederationDownloadHandler implements RequestHandler<ScheduledEve
             config,
             new BatchTagDynamoDBService(config.stateTableName),
             () -> buildInteropClient(config, secretManager),
-            awsS3Client
+            awsS3Client,
+            new PersistedSeenKeys(awsS3Client, config.submissionBucketName, SEEN_KEYS_PREFIX + config.federatedKeyDownloadPrefix)
         );
     }
 
@@ -63,11 +70,21 @@ public class KeyFederationDownloadHandler implements RequestHandler<ScheduledEve
                    BatchTagService batchTagService,
                    Supplier<InteropClient> interopClient,
                    S3Storage awsS3Client) {
+        this(clock, config, batchTagService, interopClient, awsS3Client, SeenKeys.NONE);
+    }
+
+    public KeyFederationDownloadHandler(Supplier<Instant> clock,
+                   KeyFederationDownloadConfig config,
+                   BatchTagService batchTagService,
+                   Supplier<InteropClient> interopClient,
+                   S3Storage awsS3Client,
+                   SeenKeys seenKeys) {
         this.clock = clock;
         this.config = config;
         this.interopClient = interopClient;
         this.batchTagService = batchTagService;
         this.awsS3Client = awsS3Client;
+        this.seenKeys = seenKeys;
     }
 
     private static InteropClient buildInteropClient(KeyFederationDownloadConfig config, SecretManager secretManager) {
@@ -85,8 +102,12 @@ public class KeyFederationDownloadHandler implements RequestHandler<ScheduledEve
 
     @Override
     public String handleRequest(ScheduledEvent input, Context context) {
+        return AsyncLogging.drainedAfter(() -> batchTagService.flushedAfter(() -> handle(input, context)));
+    }
+
+    private String handle(ScheduledEvent input, Context context) {
         long start = System.currentTimeMillis();
-        int processedBatches = downloadFromFederatedServerAndStoreKeys(context);
+        int processedBatches = downloadFromFederatedServerAndStoreKeys(BackfillRequest.from(input), context);
         long downloadDuration = System.currentTimeMillis() - start;
 
         logger.info("InteropConnectorStats: Downloaded and processed {} key batches in {} seconds", processedBatches, (downloadDuration / 1000.));
@@ -94,29 +115,38 @@ public class KeyFederationDownloadHandler implements RequestHandler<ScheduledEve
         return "success";
     }
 
-    private int downloadFromFederatedServerAndStoreKeys(Context context) {
+    private int downloadFromFederatedServerAndStoreKeys(Optional<BackfillRequest> backfill, Context context) {
         if (config.downloadFeatureFlag.isEnabled()) {
-            try {
-                return new DiagnosisKeysDownloadService(
-                    clock,
-                    interopClient.get(),
-                    new FederatedKeyUploader(
-                        awsS3Client,
-                        config.submissionBucketName,
-                        config.federatedKeyDownloadPrefix,
+            // batches stored before a failure are still recorded
+            return seenKeys.persistedAfter(() -> {
+                try {
+                    var downloadService = new DiagnosisKeysDownloadService(
                         clock,
-                        config.validOrigins),
-                    batchTagService,
-                    config.downloadRiskLevelDefaultEnabled,
-                    config.downloadRiskLevelDefault,
-                    config.initialDownloadHistoryDays,
-                    config.maxSubsequentBatchDownloadCount,
-                    context
-                ).downloadFromFederatedServerAndStoreKeys();
-            } catch (Exception e) {
-                logger.error("Download keys failed with error", e);
-                throw new RuntimeException(e);
-            }
+                        interopClient.get(),
+                        new FederatedKeyUploader(
+                            awsS3Client,
+                            config.submissionBucketName,
+                            config.federatedKeyDownloadPrefix,
+                            clock,
+                            config.validOrigins,
+                            seenKeys),
+                        batchTagService,
+                        config.downloadRiskLevelDefaultEnabled,
+                        config.downloadRiskLevelDefault,
+                        config.initialDownloadHistoryDays,
+                        config.maxSubsequentBatchDownloadCount,
+                        context
+                    );
+                    if (backfill.isPresent()) {
+                        logger.info("Backfilling from federated server, {}", backfill.get());
+                        return downloadService.backfillFromFederatedServerAndStoreKeys(backfill.get().from, backfill.get().to, backfill.get().concurrency);
+                    }
+                    return downloadService.downloadFromFederatedServerAndStoreKeys();
+                } catch (Exception e) {
+                    logger.error("Download keys failed with error", e);
+                    throw new RuntimeException(e);
+                }
+            });
         } else {
             logger.info("Download to interop has been disabled, skipping this step");
         }
@@ -2,26 +2,43 @@ package uk.nhs.nhsx.keyfederation.upload;
 
 
 import com.amazonaws.services.lambda.runtime.Context;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import uk.nhs.nhsx.diagnosiskeydist.Submission;
+import uk.nhs.nhsx.diagnosiskeydist.SubmissionCursor;
 import uk.nhs.nhsx.diagnosiskeydist.SubmissionRepository;
+import uk.nhs.nhsx.core.SystemClock;
 import uk.nhs.nhsx.keyfederation.BatchTagService;
+import uk.nhs.nhsx.keyfederation.FederatedKeyUploader;
 import uk.nhs.nhsx.keyfederation.InteropClient;
 
 import java.time.Instant;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
-import static uk.nhs.nhsx.core.Jackson.toJson;
-
 public class DiagnosisKeysUploadService {
     private final static int NO_BATCH_SIZE_LIMIT_LEGACY_BATCH_SIZE = 0;
 
+    public static final int DEFAULT_MAX_UPLOAD_CHUNK_KEYS = 5_000;
+    public static final int DEFAULT_MAX_UPLOAD_CHUNK_BYTES = 4 * 1024 * 1024;
+    public static final int DEFAULT_MAX_CONCURRENT_UPLOADS = 2;
+
     private static final Logger logger = LogManager.getLogger(DiagnosisKeysUploadService.class);
 
+    private static final ExecutorService UPLOADS = Executors.newCachedThreadPool(
+        new ThreadFactoryBuilder().setNameFormat("federation-upload-%d").setDaemon(true).build()
+    );
+
     private final InteropClient interopClient;
     private final SubmissionRepository submissionRepository;
     private final String region;
@@ -33,6 +50,11 @@ public class DiagnosisKeysUploadService {
     private final int maxUploadBatchLimit;
     private final int maxSubsequentBatchUploadCount;
     private final Context context;
+    private final int maxUploadChunkKeys;
+    private final int maxUploadChunkBytes;
+    private final int maxConcurrentUploads;
+    private final Supplier<Instant> clock;
+    private final Executor uploadExecutor;
 
     public DiagnosisKeysUploadService(InteropClient interopClient,
                                       SubmissionRepository submissionRepository,
@@ -44,6 +66,46 @@ public class DiagnosisKeysUploadService {
                                       int maxUploadBatchSize,
                                       int maxSubsequentBatchUploadCount,
                                       Context context)
+    {
+        this(interopClient, submissionRepository, batchTagService, region, uploadRiskLevelDefaultEnabled, uploadRiskLevelDefault,
+            initialUploadHistoryDays, maxUploadBatchSize, maxSubsequentBatchUploadCount, context,
+            DEFAULT_MAX_UPLOAD_CHUNK_KEYS, DEFAULT_MAX_UPLOAD_CHUNK_BYTES, DEFAULT_MAX_CONCURRENT_UPLOADS);
+    }
+
+    public DiagnosisKeysUploadService(InteropClient interopClient,
+                                      SubmissionRepository submissionRepository,
+                                      BatchTagService batchTagService,
+                                      String region,
+                                      boolean uploadRiskLevelDefaultEnabled,
+                                      int uploadRiskLevelDefault,
+                                      int initialUploadHistoryDays,
+                                      int maxUploadBatchSize,
+                                      int maxSubsequentBatchUploadCount,
+                                      Context context,
+                                      int maxUploadChunkKeys,
+                                      int maxUploadChunkBytes,
+                                      int maxConcurrentUploads)
+    {
+        this(interopClient, submissionRepository, batchTagService, region, uploadRiskLevelDefaultEnabled, uploadRiskLevelDefault,
+            initialUploadHistoryDays, maxUploadBatchSize, maxSubsequentBatchUploadCount, context,
+            maxUploadChunkKeys, maxUploadChunkBytes, maxConcurrentUploads, SystemClock.CLOCK, UPLOADS);
+    }
+
+    public DiagnosisKeysUploadService(InteropClient interopClient,
+                                      SubmissionRepository submissionRepository,
+                                      BatchTagService batchTagService,
+                                      String region,
+                                      boolean uploadRiskLevelDefaultEnabled,
+                                      int uploadRiskLevelDefault,
+                                      int initialUploadHistoryDays,
+                                      int maxUploadBatchSize,
+                                      int maxSubsequentBatchUploadCount,
+                                      Context context,
+                                      int maxUploadChunkKeys,
+                                      int maxUploadChunkBytes,
+                                      int maxConcurrentUploads,
+                                      Supplier<Instant> clock,
+                                      Executor uploadExecutor)
     {
         this.interopClient = interopClient;
         this.submissionRepository = submissionRepository;
@@ -56,32 +118,42 @@ public class DiagnosisKeysUploadService {
         this.maxUploadBatchLimit = maxUploadBatchSize - 4; //4 mobile submissions/sec
         this.maxSubsequentBatchUploadCount = maxSubsequentBatchUploadCount;
         this.context = context;
+        this.maxUploadChunkKeys = maxUploadChunkKeys;
+        this.maxUploadChunkBytes = maxUploadChunkBytes;
+        this.maxConcurrentUploads = maxConcurrentUploads;
+        this.clock = clock;
+        this.uploadExecutor = uploadExecutor;
     }
 
     public int loadKeysAndUploadToFederatedServer() throws Exception {
         int submissionCount = 0;
         long iterationDuration = 0L;
         Instant lastUploadedSubmissionTime = getLastUploadedTime();
-        for (int i = 1; i <= maxSubsequentBatchUploadCount; i++) {
-            var startTime = System.currentTimeMillis();
-            var result = loadKeysAndUploadOneBatchToFederatedServer(lastUploadedSubmissionTime, i);
+        try (SubmissionCursor submissions = submissionRepository.cursor(
+            lastUploadedSubmissionTime.toEpochMilli(),
+            maxUploadBatchSize == NO_BATCH_SIZE_LIMIT_LEGACY_BATCH_SIZE ? Integer.MAX_VALUE : maxUploadBatchLimit,
+            maxUploadBatchSize == NO_BATCH_SIZE_LIMIT_LEGACY_BATCH_SIZE ? Integer.MAX_VALUE : maxUploadBatchSize)) {
 
-            submissionCount += result.submissionCount;
+            for (int i = 1; i <= maxSubsequentBatchUploadCount; i++) {
+                var startTime = System.currentTimeMillis();
+                var result = uploadOneBatchToFederatedServer(submissions.next(), lastUploadedSubmissionTime, i);
 
-            if (maxUploadBatchSize == NO_BATCH_SIZE_LIMIT_LEGACY_BATCH_SIZE
-                || lastUploadedSubmissionTime.equals(result.lastUploadedSubmissionTime)
-                || result.submissionCount < maxUploadBatchLimit)
-            {
-                break;
-            }
+                submissionCount += result.submissionCount;
 
-            lastUploadedSubmissionTime = result.lastUploadedSubmissionTime;
-            iterationDuration = Math.max(iterationDuration,System.currentTimeMillis() - startTime);
-            if(iterationDuration >= context.getRemainingTimeInMillis()){
-                logger.warn("There is not enough time to complete another iteration");
-                break;
-            }
+                if (maxUploadBatchSize == NO_BATCH_SIZE_LIMIT_LEGACY_BATCH_SIZE
+                    || lastUploadedSubmissionTime.equals(result.lastUploadedSubmissionTime)
+                    || result.submissionCount < maxUploadBatchLimit)
+                {
+                    break;
+                }
 
+                lastUploadedSubmissionTime = result.lastUploadedSubmissionTime;
+                iterationDuration = Math.max(iterationDuration,System.currentTimeMillis() - startTime);
+                if(iterationDuration >= context.getRemainingTimeInMillis()){
+                    logger.warn("There is not enough time to complete another iteration");
+                    break;
+                }
+            }
         }
 
         return submissionCount;
@@ -97,44 +169,102 @@ public class DiagnosisKeysUploadService {
         }
     }
 
-    public BatchUploadResult loadKeysAndUploadOneBatchToFederatedServer(Instant lastUploadedSubmissionTime, int batchNumber) throws Exception {
+    /*
+     the submissions come from a cursor listed once for the run, see SubmissionRepository.cursor. Their unexpired keys
+     are sent in chunks of bounded key count and size, a few at a time, and the watermark only moves past a submission
+     once every chunk up to and including its last key has been accepted
+     */
+    public BatchUploadResult uploadOneBatchToFederatedServer(List<Submission> newSubmissions, Instant lastUploadedSubmissionTime, int batchNumber) {
         logger.info("Begin: Upload diagnosis keys to the Nearform server (batch {})", batchNumber);
 
-        List<Submission> newSubmissions = submissionRepository.loadAllSubmissions(
-            lastUploadedSubmissionTime.toEpochMilli(),
-            maxUploadBatchSize == NO_BATCH_SIZE_LIMIT_LEGACY_BATCH_SIZE ? Integer.MAX_VALUE : maxUploadBatchLimit,
-            maxUploadBatchSize == NO_BATCH_SIZE_LIMIT_LEGACY_BATCH_SIZE ? Integer.MAX_VALUE : maxUploadBatchSize);
-
-        List<ExposureUpload> exposureKeys = getUploadRequestRawPayload(newSubmissions);
-
-        var transformedExposureKeys = exposureKeys.stream().map(this::preUploadTransformations).collect(Collectors.toList());
+        List<UploadChunk> chunks = chunksOf(newSubmissions);
+        int keyCount = chunks.stream().mapToInt(it -> it.exposures.size()).sum();
 
-        logger.info("Loading and transforming keys from submissions finished (from {} to {}), keyCount={} (batch {})",
+        logger.info("Loading and transforming keys from submissions finished (from {} to {}), keyCount={}, chunkCount={} (batch {})",
             newSubmissions.isEmpty() ? null : (newSubmissions.get(0).submissionDate),
             newSubmissions.isEmpty() ? null : (newSubmissions.get(newSubmissions.size() - 1).submissionDate),
-            transformedExposureKeys.size(), batchNumber);
+            keyCount, chunks.size(), batchNumber);
 
-        if (!transformedExposureKeys.isEmpty()) {
-            String payload = toJson(transformedExposureKeys);
-            DiagnosisKeysUploadResponse uploadResponse = interopClient.uploadKeys(payload);
-            if (uploadResponse != null) {
-                logger.info("Uploaded {} keys with submission date greater than {} to federation server (batch {})",
-                    uploadResponse.insertedExposures,
-                    lastUploadedSubmissionTime.toString(),
-                    batchNumber);
-
-                Instant updatedLastUploadedSubmissionTime = Instant.ofEpochMilli(newSubmissions.stream().map(submission -> submission.submissionDate.getTime()).max(Long::compare).orElseThrow());
-                batchTagService.updateLastUploadState(updatedLastUploadedSubmissionTime.toEpochMilli() / 1000);
-
-                return new BatchUploadResult(updatedLastUploadedSubmissionTime, newSubmissions.size());
-            }
-        } else {
+        if (keyCount == 0) {
             logger.info("No keys were available for uploading to federation server with submission date greater than {} (batch {})",
                 lastUploadedSubmissionTime.toString(),
                 batchNumber);
+            if (newSubmissions.isEmpty()) {
+                return new BatchUploadResult(lastUploadedSubmissionTime, 0);
+            }
+        }
+
+        Instant updatedLastUploadedSubmissionTime = uploadInOrder(chunks, lastUploadedSubmissionTime, batchNumber);
+        if (!updatedLastUploadedSubmissionTime.equals(lastUploadedSubmissionTime)) {
+            batchTagService.updateLastUploadState(updatedLastUploadedSubmissionTime.toEpochMilli() / 1000);
+        }
+
+        return new BatchUploadResult(updatedLastUploadedSubmissionTime, newSubmissions.size());
+    }
+
+    /* at most maxConcurrentUploads in flight; they are waited on oldest first, so acceptance is seen in order */
+    private Instant uploadInOrder(List<UploadChunk> chunks, Instant lastUploadedSubmissionTime, int batchNumber) {
+        Deque<Map.Entry<UploadChunk, CompletableFuture<DiagnosisKeysUploadResponse>>> inFlight = new ArrayDeque<>();
+        Instant watermark = lastUploadedSubmissionTime;
+        boolean acceptedSoFar = true;
+
+        try {
+            for (UploadChunk chunk : chunks) {
+                if (inFlight.size() >= maxConcurrentUploads) {
+                    var oldest = inFlight.removeFirst();
+                    acceptedSoFar = acceptedSoFar && accepted(oldest, batchNumber);
+                    if (acceptedSoFar) watermark = oldest.getKey().advance(watermark);
+                }
+                if (!acceptedSoFar) break;
+                inFlight.addLast(Map.entry(chunk, chunk.exposures.isEmpty()
+                    ? CompletableFuture.completedFuture(null)
+                    : CompletableFuture.supplyAsync(() -> interopClient.uploadKeys(chunk.exposures), uploadExecutor)));
+            }
+            while (!inFlight.isEmpty()) {
+                var oldest = inFlight.removeFirst();
+                acceptedSoFar = acceptedSoFar && accepted(oldest, batchNumber);
+                if (acceptedSoFar) watermark = oldest.getKey().advance(watermark);
+            }
+            return watermark;
+        } catch (RuntimeException e) {
+            /*
+             cancelling a CompletableFuture does not stop the request it stands for, so the uploads still in flight are
+             waited for rather than left running into the next invocation. Any of them accepted after the failed one
+             is sent again next run, as the watermark cannot move past a chunk that was not accepted
+             */
+            inFlight.forEach(it -> awaitQuietly(it.getValue()));
+            if (!watermark.equals(lastUploadedSubmissionTime)) {
+                batchTagService.updateLastUploadState(watermark.toEpochMilli() / 1000);
+            }
+            throw e;
+        }
+    }
+
+    private static void awaitQuietly(CompletableFuture<?> upload) {
+        try {
+            upload.join();
+        } catch (CompletionException | CancellationException e) {
+            logger.warn("Upload in flight when the batch failed also failed", e);
+        }
+    }
+
+    /* a chunk left with no keys, once expired ones are dropped, is accepted as it stands */
+    private boolean accepted(Map.Entry<UploadChunk, CompletableFuture<DiagnosisKeysUploadResponse>> upload, int batchNumber) {
+        if (upload.getKey().exposures.isEmpty()) return true;
+
+        DiagnosisKeysUploadResponse uploadResponse;
+        try {
+            uploadResponse = upload.getValue().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
         }
+        if (uploadResponse == null) return false;
 
-        return new BatchUploadResult(lastUploadedSubmissionTime, newSubmissions.size());
+        logger.info("Uploaded {} keys to federation server (batch {})", uploadResponse.insertedExposures, batchNumber);
+        return true;
     }
 
     public ExposureUpload preUploadTransformations(ExposureUpload upload) {
@@ -145,22 +275,68 @@ public class DiagnosisKeysUploadService {
             upload.regions);
     }
 
-    public List<ExposureUpload> getUploadRequestRawPayload(List<Submission> submissions) // FIXME filter expired keys (rollingStartNumber & rollingPeriod)
-    {
-        List<ExposureUpload> exposures = new ArrayList<>();
-        submissions.stream()
-            .forEach(submission ->
-                submission.payload.temporaryExposureKeys.forEach(exposure ->
-                    exposures.add(
-                        new ExposureUpload(
-                            exposure.key,
-                            exposure.rollingStartNumber,
-                            exposure.transmissionRisk,
-                            exposure.rollingPeriod,
-                            List.of(this.region)
-                        )
-                    )));
-        return exposures;
+    /* expired keys are dropped with the same rolling window that federated keys are checked against on the way in */
+    private List<ExposureUpload> unexpiredExposuresOf(Submission submission) {
+        return submission.payload.temporaryExposureKeys.stream()
+            .filter(exposure -> FederatedKeyUploader.isRollingStartNumberValid(clock, exposure.rollingStartNumber, exposure.rollingPeriod))
+            .map(exposure -> new ExposureUpload(
+                exposure.key,
+                exposure.rollingStartNumber,
+                exposure.transmissionRisk,
+                exposure.rollingPeriod,
+                List.of(this.region)
+            ))
+            .collect(Collectors.toList());
+    }
+
+    /*
+     submissions with the same date are never split across chunks at a date boundary, since the watermark is a date:
+     a chunk only carries a watermark when it holds the last key of the submissions up to that date
+     */
+    List<UploadChunk> chunksOf(List<Submission> submissions) {
+        List<UploadChunk> chunks = new ArrayList<>();
+        UploadChunk current = new UploadChunk();
+
+        for (int i = 0; i < submissions.size(); i++) {
+            Submission submission = submissions.get(i);
+            for (ExposureUpload exposure : unexpiredExposuresOf(submission)) {
+                var transformed = preUploadTransformations(exposure);
+                int bytes = estimatedEncodedBytes(transformed);
+                if (!current.exposures.isEmpty()
+                    && (current.exposures.size() >= maxUploadChunkKeys || current.bytes + bytes > maxUploadChunkBytes)) {
+                    chunks.add(current);
+                    current = new UploadChunk();
+                }
+                current.exposures.add(transformed);
+                current.bytes += bytes;
+            }
+            boolean lastOfItsDate = i == submissions.size() - 1
+                || !submissions.get(i + 1).submissionDate.equals(submission.submissionDate);
+            if (lastOfItsDate) {
+                current.submittedUpTo = submission.submissionDate.toInstant();
+            }
+        }
+        if (!current.exposures.isEmpty() || current.submittedUpTo != null) {
+            chunks.add(current);
+        }
+        return chunks;
+    }
+
+    static class UploadChunk {
+        final List<ExposureUpload> exposures = new ArrayList<>();
+        int bytes;
+        Instant submittedUpTo;
+
+        Instant advance(Instant watermark) {
+            return submittedUpTo != null && submittedUpTo.isAfter(watermark) ? submittedUpTo : watermark;
+        }
+    }
+
+    /* the key as json, base64url encoded into the signed payload */
+    private static int estimatedEncodedBytes(ExposureUpload exposure) {
+        int json = 104 + exposure.keyData.length()
+            + exposure.regions.stream().mapToInt(it -> it.length() + 3).sum();
+        return (json * 4 + 2) / 3;
     }
 
     private Instant getLastUploadedTime() {
@@ -3,13 +3,23 @@ package uk.nhs.nhsx.keyfederation.upload;
 import uk.nhs.nhsx.core.signature.Signature;
 import uk.nhs.nhsx.core.signature.Signer;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 
+/*
+ the payload is written straight through a base64url encoder into the output buffer, and the signer digests the
+ encoded header and payload from there, so large uploads are held in memory once rather than as several strings
+ */
 public class JWS {
 
     private static final Base64.Encoder URL_ENCODER = Base64.getUrlEncoder();
-    
+
+    private static final byte[] ENCODED_HEADER = URL_ENCODER.encode("{\"alg\":\"ES256\"}".getBytes(StandardCharsets.UTF_8));
+    private static final byte SEPARATOR = '.';
+
     private final Signer signer;
 
     public JWS(Signer signer) {
@@ -17,20 +27,30 @@ public class JWS {
     }
 
     public String sign(String payload) {
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        RequestBodyBuffer buffer = new RequestBodyBuffer(bytes.length * 4 / 3 + 256);
+        sign(out -> out.write(bytes), buffer);
+        return buffer.toString(StandardCharsets.US_ASCII);
+    }
 
-        String encodedHeader = encode("{\"alg\":\"ES256\"}");
-        String encodedPayload = encode(payload);
-
-        String signedComponent = encodedHeader + "." + encodedPayload;
+    public void sign(Payload payload, RequestBodyBuffer out) {
+        int start = out.size();
 
-        Signature signature = signer.sign(signedComponent.getBytes(StandardCharsets.UTF_8));
+        out.writeBytes(ENCODED_HEADER);
+        out.write(SEPARATOR);
+        try (OutputStream encoded = URL_ENCODER.wrap(out)) {
+            payload.writeTo(encoded);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write JWS payload", e);
+        }
 
-        String encodedSignature = URL_ENCODER.encodeToString(signature.asJWSCompatible());
+        Signature signature = signer.sign(out.writtenSince(start));
 
-        return signedComponent + "." + encodedSignature;
+        out.write(SEPARATOR);
+        out.writeBytes(URL_ENCODER.encode(signature.asJWSCompatible()));
     }
 
-    private String encode(String string) {
-        return URL_ENCODER.encodeToString(string.getBytes(StandardCharsets.UTF_8));
+    public interface Payload {
+        void writeTo(OutputStream out) throws IOException;
     }
 }
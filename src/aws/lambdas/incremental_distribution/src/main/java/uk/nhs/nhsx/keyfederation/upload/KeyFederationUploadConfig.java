@@ -28,6 +28,9 @@ public class KeyFederationUploadConfig {
     public final String stateTableName;
     public final String region;
     public final List<String> federatedKeyUploadPrefixes;
+    public final int maxUploadChunkKeys;
+    public final int maxUploadChunkBytes;
+    public final int maxConcurrentUploads;
 
     public KeyFederationUploadConfig(
         int maxSubsequentBatchUploadCount,
@@ -43,6 +46,31 @@ public class KeyFederationUploadConfig {
         String stateTableName,
         String region,
         List<String> federatedKeyUploadPrefixes) {
+        this(maxSubsequentBatchUploadCount, initialUploadHistoryDays, maxUploadBatchSize, uploadFeatureFlag,
+            uploadRiskLevelDefaultEnabled, uploadRiskLevelDefault, submissionBucketName, interopBaseUrl,
+            interopAuthTokenSecretName, signingKeyParameterName, stateTableName, region, federatedKeyUploadPrefixes,
+            DiagnosisKeysUploadService.DEFAULT_MAX_UPLOAD_CHUNK_KEYS,
+            DiagnosisKeysUploadService.DEFAULT_MAX_UPLOAD_CHUNK_BYTES,
+            DiagnosisKeysUploadService.DEFAULT_MAX_CONCURRENT_UPLOADS);
+    }
+
+    public KeyFederationUploadConfig(
+        int maxSubsequentBatchUploadCount,
+        int initialUploadHistoryDays,
+        int maxUploadBatchSize,
+        FeatureFlag uploadFeatureFlag,
+        boolean uploadRiskLevelDefaultEnabled,
+        int uploadRiskLevelDefault,
+        BucketName submissionBucketName,
+        String interopBaseUrl,
+        SecretName interopAuthTokenSecretName,
+        ParameterName signingKeyParameterName,
+        String stateTableName,
+        String region,
+        List<String> federatedKeyUploadPrefixes,
+        int maxUploadChunkKeys,
+        int maxUploadChunkBytes,
+        int maxConcurrentUploads) {
         this.maxSubsequentBatchUploadCount = maxSubsequentBatchUploadCount;
         this.maxUploadBatchSize = maxUploadBatchSize;
         this.initialUploadHistoryDays = initialUploadHistoryDays;
@@ -56,6 +84,9 @@ public class KeyFederationUploadConfig {
         this.stateTableName = stateTableName;
         this.region = region;
         this.federatedKeyUploadPrefixes = federatedKeyUploadPrefixes;
+        this.maxUploadChunkKeys = maxUploadChunkKeys;
+        this.maxUploadChunkBytes = maxUploadChunkBytes;
+        this.maxConcurrentUploads = maxConcurrentUploads;
     }
 
     private static final EnvironmentKey<Integer> MAX_SUBSEQUENT_BATCH_UPLOAD_COUNT = integer("MAX_SUBSEQUENT_BATCH_UPLOAD_COUNT");
@@ -71,6 +102,9 @@ public class KeyFederationUploadConfig {
     private static final EnvironmentKey<String> REGION = string("REGION");
     private static final EnvironmentKey<List<String>> FEDERATED_KEY_UPLOAD_PREFIXES = strings("FEDERATED_KEY_UPLOAD_PREFIXES");
     private static final EnvironmentKey<String> WORKSPACE = string("WORKSPACE");
+    private static final EnvironmentKey<Integer> MAX_UPLOAD_CHUNK_KEYS = integer("MAX_UPLOAD_CHUNK_KEYS");
+    private static final EnvironmentKey<Integer> MAX_UPLOAD_CHUNK_BYTES = integer("MAX_UPLOAD_CHUNK_BYTES");
+    private static final EnvironmentKey<Integer> MAX_CONCURRENT_UPLOADS = integer("MAX_CONCURRENT_UPLOADS");
 
     public static KeyFederationUploadConfig fromEnvironment(Environment e) {
         return new KeyFederationUploadConfig(
@@ -89,7 +123,10 @@ public class KeyFederationUploadConfig {
             e.access.required(StandardSigning.SSM_KEY_ID_PARAMETER_NAME),
             e.access.required(PROCESSOR_STATE_TABLE),
             e.access.required(REGION),
-            e.access.required(FEDERATED_KEY_UPLOAD_PREFIXES)
+            e.access.required(FEDERATED_KEY_UPLOAD_PREFIXES),
+            e.access.optional(MAX_UPLOAD_CHUNK_KEYS).orElse(DiagnosisKeysUploadService.DEFAULT_MAX_UPLOAD_CHUNK_KEYS),
+            e.access.optional(MAX_UPLOAD_CHUNK_BYTES).orElse(DiagnosisKeysUploadService.DEFAULT_MAX_UPLOAD_CHUNK_BYTES),
+            e.access.optional(MAX_CONCURRENT_UPLOADS).orElse(DiagnosisKeysUploadService.DEFAULT_MAX_CONCURRENT_UPLOADS)
         );
     }
 }
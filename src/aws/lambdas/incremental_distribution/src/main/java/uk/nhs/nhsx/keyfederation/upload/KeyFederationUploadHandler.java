@@ -12,6 +12,7 @@ import uk.nhs.nhsx.core.aws.s3.AwsS3Client;
 import uk.nhs.nhsx.core.aws.secretsmanager.AwsSecretManager;
 import uk.nhs.nhsx.core.aws.secretsmanager.SecretManager;
 import uk.nhs.nhsx.core.aws.ssm.AwsSsmParameters;
+import uk.nhs.nhsx.core.logging.AsyncLogging;
 import uk.nhs.nhsx.core.signature.Signer;
 import uk.nhs.nhsx.diagnosiskeydist.s3.SubmissionFromS3Repository;
 import uk.nhs.nhsx.keyfederation.BatchTagDynamoDBService;
@@ -79,6 +80,10 @@ public class KeyFederationUploadHandler implements RequestHandler<ScheduledEvent
 
     @Override
     public String handleRequest(ScheduledEvent input, Context context) {
+        return AsyncLogging.drainedAfter(() -> batchTagService.flushedAfter(() -> handle(input, context)));
+    }
+
+    private String handle(ScheduledEvent input, Context context) {
         long start = System.currentTimeMillis();
         int processedSubmissions = loadKeysAndUploadToFederatedServer(context);
         long uploadDuration = System.currentTimeMillis() - start;
@@ -104,7 +109,10 @@ public class KeyFederationUploadHandler implements RequestHandler<ScheduledEvent
                     config.initialUploadHistoryDays,
                     config.maxUploadBatchSize,
                     config.maxSubsequentBatchUploadCount,
-                    context
+                    context,
+                    config.maxUploadChunkKeys,
+                    config.maxUploadChunkBytes,
+                    config.maxConcurrentUploads
                 ).loadKeysAndUploadToFederatedServer();
             } catch (Exception e) {
                 logger.error("Upload keys failed with error", e);
@@ -0,0 +1,25 @@
+package uk.nhs.nhsx.keyfederation.upload;
+
+import com.google.common.io.ByteSource;
+
+import java.io.ByteArrayOutputStream;
+import java.net.http.HttpRequest;
+
+/*
+ a growable buffer whose contents can be signed and sent without being copied out first
+ */
+public class RequestBodyBuffer extends ByteArrayOutputStream {
+
+    public RequestBodyBuffer(int initialSize) {
+        super(initialSize);
+    }
+
+    // only valid until the next write, the buffer may be reallocated as it grows
+    public synchronized ByteSource writtenSince(int offset) {
+        return ByteSource.wrap(buf).slice(offset, count - offset);
+    }
+
+    public synchronized HttpRequest.BodyPublisher asBodyPublisher() {
+        return HttpRequest.BodyPublishers.ofByteArray(buf, 0, count);
+    }
+}
@@ -1,6 +1,7 @@
 package uk.nhs.nhsx.virology;
 
-import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
+import com.amazonaws.services.lambda.model.InvocationType;
+import com.amazonaws.services.lambda.model.InvokeRequest;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import org.apache.logging.log4j.LogManager;
@@ -8,44 +9,93 @@ import org.apache.logging.log4j.Logger;
 import uk.nhs.nhsx.core.Jackson;
 import uk.nhs.nhsx.core.SystemClock;
 import uk.nhs.nhsx.core.SystemObjectMapper;
+import uk.nhs.nhsx.core.aws.AwsClients;
 import uk.nhs.nhsx.core.aws.s3.AwsS3Client;
 import uk.nhs.nhsx.core.aws.s3.BucketName;
+import uk.nhs.nhsx.core.logging.AsyncLogging;
 import uk.nhs.nhsx.virology.order.TokensGenerator;
 import uk.nhs.nhsx.virology.persistence.VirologyPersistenceService;
 import uk.nhs.nhsx.virology.tokengen.CtaProcessorRequest;
+import uk.nhs.nhsx.virology.tokengen.CtaProcessorResult;
 import uk.nhs.nhsx.virology.tokengen.VirologyProcessorService;
 import uk.nhs.nhsx.virology.tokengen.VirologyProcessorStore;
 
+import java.time.Duration;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.function.BiConsumer;
 
 public class VirologyProcessorHandler implements RequestHandler<Map<String, String>, String> {
 
     private static final Logger logger = LogManager.getLogger(VirologyProcessorHandler.class);
     private final VirologyProcessorService virologyProcessorService;
+    private final BiConsumer<String, Map<String, String>> invokeAsync;
     private static final int MAX_RETRY_COUNT = 3;
+    private static final String JOB_ID = "jobId";
 
     public VirologyProcessorHandler() {
-        this(virologyProcessorService());
+        this(virologyProcessorService(), VirologyProcessorHandler::invokeAsync);
     }
 
-    public VirologyProcessorHandler(VirologyProcessorService virologyProcessorService) {
+    public VirologyProcessorHandler(VirologyProcessorService virologyProcessorService,
+                                    BiConsumer<String, Map<String, String>> invokeAsync) {
         this.virologyProcessorService = virologyProcessorService;
+        this.invokeAsync = invokeAsync;
     }
 
     @Override
     public String handleRequest(Map<String, String> event, Context context) {
+        return AsyncLogging.drainedAfter(() -> handle(event, context));
+    }
+
+    private String handle(Map<String, String> event, Context context) {
         logger.info("EVENT: {}", event);
         var ctaProcessorEvent = SystemObjectMapper.MAPPER.convertValue(event, CtaProcessorRequest.class);
-        var result = virologyProcessorService.generateAndStoreTokens(ctaProcessorEvent);
-        logger.info("RESULT: {}", event);
+        var jobId = jobIdFrom(event, context);
+        var result = virologyProcessorService.generateAndStoreTokens(
+            jobId,
+            ctaProcessorEvent,
+            () -> Duration.ofMillis(context.getRemainingTimeInMillis())
+        );
+        logger.info("RESULT: {}", result.toResponse());
+        if (result instanceof CtaProcessorResult.InProgress) {
+            continueInNewInvocation(event, jobId, context);
+        }
         return Jackson.toJson(result.toResponse());
     }
 
+    /*
+     a job that runs out of time carries on in a fresh invocation of this same function, which picks up from the last
+     chunk stored. The event is invoked asynchronously, so this one returns straight away. If it can't be invoked
+     this invocation fails, and lambda's own retries of an async invocation pick up the same job
+     */
+    private void continueInNewInvocation(Map<String, String> event, String jobId, Context context) {
+        var continuation = new HashMap<>(event);
+        continuation.put(JOB_ID, jobId);
+        logger.info("Job {} continuing in a new invocation", jobId);
+        invokeAsync.accept(context.getInvokedFunctionArn(), continuation);
+    }
+
+    private static void invokeAsync(String functionArn, Map<String, String> event) {
+        AwsClients.lambda.get().invoke(
+            new InvokeRequest()
+                .withFunctionName(functionArn)
+                .withInvocationType(InvocationType.Event)
+                .withPayload(Jackson.toJson(event))
+        );
+    }
+
+    /* async retries of an invocation keep its request id, so they pick up the same job without being told */
+    private static String jobIdFrom(Map<String, String> event, Context context) {
+        var jobId = event.get(JOB_ID);
+        return jobId != null ? jobId : context.getAwsRequestId();
+    }
+
     private static VirologyProcessorService virologyProcessorService() {
         return new VirologyProcessorService(
             new VirologyService(
                 new VirologyPersistenceService(
-                    AmazonDynamoDBClientBuilder.defaultClient(),
+                    AwsClients.dynamoDB.get(),
                     virologyConfig()
                 ),
                 new TokensGenerator(),
@@ -18,7 +18,9 @@ import uk.nhs.nhsx.virology.result.*;
 
 import java.time.Instant;
 import java.time.Period;
+import java.util.List;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import static uk.nhs.nhsx.core.exceptions.HttpStatusCode.UNPROCESSABLE_ENTITY_422;
 import static uk.nhs.nhsx.virology.persistence.VirologyDataTimeToLiveCalculator.DEFAULT_TTL;
@@ -130,6 +132,29 @@ public class VirologyService {
         return VirologyTokenGenResponse.of(testOrder.ctaToken.value);
     }
 
+    public static int tokensPerTransaction(String testResult) {
+        return VirologyPersistenceService.ordersPerTransaction(testResult);
+    }
+
+    /* numberOfTokens at most tokensPerTransaction, all persisted together or not at all */
+    public List<VirologyTokenGenResponse> acceptTestResultGeneratingTokens(VirologyTokenGenRequest tokenGenRequest,
+                                                                           int numberOfTokens) {
+        VirologyResultValidator.validateTestResult(tokenGenRequest.testResult, tokenGenRequest.testEndDate);
+
+        var expireAt = systemClock.get().plus(Period.ofWeeks(4)).getEpochSecond();
+
+        return persistenceService.persistTestOrdersAndResults(
+                tokensGenerator::generateVirologyTokens,
+                numberOfTokens,
+                expireAt,
+                tokenGenRequest.testResult,
+                tokenGenRequest.testEndDate
+            )
+            .stream()
+            .map(it -> VirologyTokenGenResponse.of(it.ctaToken.value))
+            .collect(Collectors.toList());
+    }
+
     public CtaExchangeResult exchangeCtaToken(CtaExchangeRequest ctaExchangeRequest) {
         return persistenceService
             .getTestOrder(ctaExchangeRequest.ctaToken)
@@ -1,6 +1,5 @@
 package uk.nhs.nhsx.virology;
 
-import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -8,15 +7,18 @@ import uk.nhs.nhsx.core.Environment;
 import uk.nhs.nhsx.core.EnvironmentKeys;
 import uk.nhs.nhsx.core.HttpResponses;
 import uk.nhs.nhsx.core.Jackson;
+import uk.nhs.nhsx.core.Priming;
 import uk.nhs.nhsx.core.SystemClock;
 import uk.nhs.nhsx.core.auth.ApiName;
 import uk.nhs.nhsx.core.auth.Authenticator;
 import uk.nhs.nhsx.core.auth.ResponseSigner;
+import uk.nhs.nhsx.core.aws.AwsClients;
 import uk.nhs.nhsx.core.routing.Routing;
 import uk.nhs.nhsx.core.routing.Routing.*;
 import uk.nhs.nhsx.core.routing.RoutingHandler;
 import uk.nhs.nhsx.virology.exchange.CtaExchangeRequest;
 import uk.nhs.nhsx.virology.lookup.VirologyLookupRequest;
+import uk.nhs.nhsx.virology.order.VirologyOrderResponse;
 import uk.nhs.nhsx.virology.order.VirologyRequestType;
 import uk.nhs.nhsx.virology.order.TokensGenerator;
 import uk.nhs.nhsx.virology.order.VirologyWebsiteConfig;
@@ -43,6 +45,7 @@ public class VirologySubmissionHandler extends RoutingHandler {
 
     public VirologySubmissionHandler() {
         this(Environment.fromSystem(), SystemClock.CLOCK, defaultDelayDuration);
+        prime();
     }
 
     public VirologySubmissionHandler(Environment environment, Supplier<Instant> clock, Duration throttleDuration) {
@@ -54,6 +57,8 @@ public class VirologySubmissionHandler extends RoutingHandler {
             websiteConfig(environment),
             throttleDuration
         );
+
+        primeWith(Priming.client(AwsClients.dynamoDB));
     }
 
     public VirologySubmissionHandler(Environment environment,
@@ -88,6 +93,11 @@ public class VirologySubmissionHandler extends RoutingHandler {
                 )
             )
         );
+
+        primeWith(
+            Priming.jackson(VirologyLookupRequest.class, CtaExchangeRequest.class, VirologyOrderResponse.class),
+            Priming.signing(signer)
+        );
     }
 
     private APIGatewayProxyResponseEvent handleVirologyOrder(VirologyService service,
@@ -104,7 +114,7 @@ public class VirologySubmissionHandler extends RoutingHandler {
     private static VirologyService virologyService(Supplier<Instant> clock, Environment environment) {
         return new VirologyService(
             new VirologyPersistenceService(
-                AmazonDynamoDBClientBuilder.defaultClient(),
+                AwsClients.dynamoDB.get(),
                 virologyConfig(environment)
             ),
             new TokensGenerator(),
@@ -1,6 +1,5 @@
 package uk.nhs.nhsx.virology;
 
-import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
 import org.apache.logging.log4j.LogManager;
@@ -8,15 +7,18 @@ import org.apache.logging.log4j.Logger;
 import uk.nhs.nhsx.core.Environment;
 import uk.nhs.nhsx.core.HttpResponses;
 import uk.nhs.nhsx.core.Jackson;
+import uk.nhs.nhsx.core.Priming;
 import uk.nhs.nhsx.core.SystemClock;
 import uk.nhs.nhsx.core.auth.ApiName;
 import uk.nhs.nhsx.core.auth.Authenticator;
+import uk.nhs.nhsx.core.aws.AwsClients;
 import uk.nhs.nhsx.core.routing.Routing;
 import uk.nhs.nhsx.core.routing.RoutingHandler;
 import uk.nhs.nhsx.virology.order.TokensGenerator;
 import uk.nhs.nhsx.virology.persistence.VirologyPersistenceService;
 import uk.nhs.nhsx.virology.result.VirologyResultRequest;
 import uk.nhs.nhsx.virology.result.VirologyTokenGenRequest;
+import uk.nhs.nhsx.virology.result.VirologyTokenGenResponse;
 
 import static uk.nhs.nhsx.core.Jackson.deserializeMaybe;
 import static uk.nhs.nhsx.core.auth.StandardAuthentication.awsAuthentication;
@@ -31,6 +33,8 @@ public class VirologyUploadHandler extends RoutingHandler {
 
     public VirologyUploadHandler() {
         this(Environment.fromSystem(), awsAuthentication(ApiName.TestResultUpload), virologyService());
+        primeWith(Priming.client(AwsClients.dynamoDB));
+        prime();
     }
 
     public VirologyUploadHandler(Environment environment, Authenticator authenticator, VirologyService virologyService) {
@@ -58,6 +62,8 @@ public class VirologyUploadHandler extends RoutingHandler {
                 )
             )
         );
+
+        primeWith(Priming.jackson(VirologyResultRequest.class, VirologyTokenGenRequest.class, VirologyTokenGenResponse.class));
     }
 
     private static APIGatewayProxyResponseEvent handleTestResult(VirologyResultSource source,
@@ -86,7 +92,7 @@ public class VirologyUploadHandler extends RoutingHandler {
     private static VirologyService virologyService() {
         return new VirologyService(
             new VirologyPersistenceService(
-                AmazonDynamoDBClientBuilder.defaultClient(),
+                AwsClients.dynamoDB.get(),
                 virologyConfig()
             ),
             new TokensGenerator(),
@@ -12,9 +12,12 @@ import uk.nhs.nhsx.virology.TestResultPollingToken;
 import uk.nhs.nhsx.virology.VirologyConfig;
 import uk.nhs.nhsx.virology.result.VirologyResultRequest;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
@@ -25,6 +28,8 @@ import static uk.nhs.nhsx.core.aws.dynamodb.DynamoTransactions.executeTransactio
 public class VirologyPersistenceService {
 
     private static final Logger logger = LogManager.getLogger(VirologyPersistenceService.class);
+    private static final int MAX_TRANSACTION_ITEMS = 25;
+
     private final AmazonDynamoDB dynamoDbClient;
     private final VirologyConfig config;
 
@@ -102,6 +107,80 @@ public class VirologyPersistenceService {
         );
     }
 
+    /* one order is two items, three when positive, and a transaction takes at most MAX_TRANSACTION_ITEMS */
+    public static int ordersPerTransaction(String testResult) {
+        return MAX_TRANSACTION_ITEMS / itemsPerOrder(testResult);
+    }
+
+    /*
+     persists numberOfOrders (at most ordersPerTransaction) orders and their results in one transaction. A cta token
+     already taken cancels the whole transaction, but the cancellation reasons say which one, so only those orders are
+     regenerated before it goes again. Any other cancellation is thrown for the caller to retry
+     */
+    public List<TestOrder> persistTestOrdersAndResults(Supplier<TestOrder> testOrderSupplier,
+                                                       int numberOfOrders,
+                                                       long expireAt,
+                                                       String testResult,
+                                                       String testEndDate) {
+        var itemsPerOrder = itemsPerOrder(testResult);
+        if (numberOfOrders < 1 || numberOfOrders * itemsPerOrder > MAX_TRANSACTION_ITEMS) {
+            throw new IllegalArgumentException(
+                "Can persist between 1 and " + ordersPerTransaction(testResult) + " orders in one transaction, was " + numberOfOrders
+            );
+        }
+
+        var testOrders = new ArrayList<TestOrder>(numberOfOrders);
+        var ctaTokens = new HashSet<String>();
+        for (var i = 0; i < numberOfOrders; i++) {
+            testOrders.add(distinctTestOrder(testOrderSupplier, ctaTokens));
+        }
+
+        var numberOfTries = 0;
+        do {
+            var transactItems = new ArrayList<TransactWriteItem>(numberOfOrders * itemsPerOrder);
+            for (TestOrder testOrder : testOrders) {
+                transactItems.add(testOrderCreateOp(testOrder, expireAt));
+                transactItems.add(testResultAvailableCreateOp(testOrder, expireAt, testResult, testEndDate));
+                if (VirologyResultRequest.NPEX_POSITIVE.equals(testResult)) {
+                    transactItems.add(submissionTokenCreateOp(testOrder, expireAt));
+                }
+            }
+
+            try {
+                executeTransaction(dynamoDbClient, transactItems);
+                return testOrders;
+            } catch (TransactionException e) {
+                var regenerated = 0;
+                for (var i = 0; i < testOrders.size(); i++) {
+                    if (e.isConditionFailureAt(i * itemsPerOrder)) {
+                        ctaTokens.remove(testOrders.get(i).ctaToken.value);
+                        testOrders.set(i, distinctTestOrder(testOrderSupplier, ctaTokens));
+                        regenerated++;
+                    }
+                }
+                if (regenerated == 0) throw e;
+                logger.info("Regenerating {} of {} test orders with cta tokens already taken", regenerated, testOrders.size());
+            }
+            numberOfTries++;
+        } while (numberOfTries < config.maxTokenPersistenceRetryCount);
+
+        throw new RuntimeException(
+            "Persistence of test orders exceeded maximum of " + config.maxTokenPersistenceRetryCount + " retries"
+        );
+    }
+
+    /* a transaction may not touch the same item twice, so tokens within one have to differ as well */
+    private static TestOrder distinctTestOrder(Supplier<TestOrder> testOrderSupplier, Set<String> ctaTokens) {
+        while (true) {
+            var testOrder = testOrderSupplier.get();
+            if (ctaTokens.add(testOrder.ctaToken.value)) return testOrder;
+        }
+    }
+
+    private static int itemsPerOrder(String testResult) {
+        return VirologyResultRequest.NPEX_POSITIVE.equals(testResult) ? 3 : 2;
+    }
+
     private TestOrder persistTestOrderTransactItems(Supplier<TestOrder> testOrderSupplier,
                                                     Function<TestOrder, List<TransactWriteItem>> transactWriteItems) {
         var numberOfTries = 0;
@@ -174,33 +253,37 @@ public class VirologyPersistenceService {
         }
     }
 
-    private void updateCtaExchangeTimeToLiveAndCounter(TestOrder testOrder, 
-                                                       TestResult testResult, 
+    /*
+     the submission token may already have gone, and the old way of finding out was another read before the write.
+     Its update is conditional on it existing, so instead the transaction with it is tried first, and only when that
+     condition is what cancelled it does the order and result update go again on its own
+     */
+    private void updateCtaExchangeTimeToLiveAndCounter(TestOrder testOrder,
+                                                       TestResult testResult,
                                                        VirologyDataTimeToLive virologyTimeToLive) {
-        if (testResult.isPositive() && submissionTokenPresent(testOrder)) {
-            executeTransaction(dynamoDbClient,
-                asList(
-                    testOrderTtlAndCounterUpdateOp(testOrder.ctaToken, virologyTimeToLive.testDataExpireAt),
-                    testResultTtlUpdateOp(testOrder.testResultPollingToken, virologyTimeToLive.testDataExpireAt),
-                    submissionTokenTimeToLiveUpdateOp(
-                        testOrder.diagnosisKeySubmissionToken,
-                        virologyTimeToLive.submissionDataExpireAt
-                    )
-                )
-            );
-        } else {
-            executeTransaction(dynamoDbClient,
-                asList(
-                    testOrderTtlAndCounterUpdateOp(testOrder.ctaToken, virologyTimeToLive.testDataExpireAt),
-                    testResultTtlUpdateOp(testOrder.testResultPollingToken, virologyTimeToLive.testDataExpireAt)
+        var orderAndResult = asList(
+            testOrderTtlAndCounterUpdateOp(testOrder.ctaToken, virologyTimeToLive.testDataExpireAt),
+            testResultTtlUpdateOp(testOrder.testResultPollingToken, virologyTimeToLive.testDataExpireAt)
+        );
+
+        if (testResult.isPositive()) {
+            var withSubmissionToken = new ArrayList<>(orderAndResult);
+            withSubmissionToken.add(
+                submissionTokenTimeToLiveUpdateOp(
+                    testOrder.diagnosisKeySubmissionToken,
+                    virologyTimeToLive.submissionDataExpireAt
                 )
             );
+            try {
+                executeTransaction(dynamoDbClient, withSubmissionToken);
+                return;
+            } catch (TransactionException e) {
+                if (!e.isConditionFailureAt(withSubmissionToken.size() - 1)) throw e;
+                logger.info("Submission token not present on cta exchange, ctaToken:" + testOrder.ctaToken);
+            }
         }
-    }
 
-    private boolean submissionTokenPresent(TestOrder testOrder){
-        var itemResult = dynamoDbClient.getItem(config.submissionTokensTable, attributeMap("diagnosisKeySubmissionToken", testOrder.diagnosisKeySubmissionToken.value));
-         return itemResult.getItem() != null;
+        executeTransaction(dynamoDbClient, orderAndResult);
     }
 
     private Optional<TestOrder> queryTestOrderFor(TestResult testResult) {
@@ -286,6 +369,7 @@ public class VirologyPersistenceService {
             new Update()
                 .withTableName(config.testOrdersTable)
                 .withKey(attributeMap("ctaToken", ctaToken.value))
+                .withConditionExpression("attribute_exists(ctaToken)")
                 .withUpdateExpression("set expireAt = :expireAt add downloadCount :dc")
                 .withExpressionAttributeValues(
                     Map.of(
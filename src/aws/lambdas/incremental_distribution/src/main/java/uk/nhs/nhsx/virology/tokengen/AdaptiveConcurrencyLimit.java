@@ -0,0 +1,58 @@
+package uk.nhs.nhsx.virology.tokengen;
+
+/*
+ additive increase, multiplicative decrease: each run of successes as long as the current limit lets one more call
+ in, and a throttled call halves it. Callers take a permit before each call and give it back with how the call went.
+ */
+public class AdaptiveConcurrencyLimit {
+
+    private final int minimum;
+    private final int maximum;
+
+    private int limit;
+    private int inFlight;
+    private int successesSinceChange;
+
+    public AdaptiveConcurrencyLimit(int minimum, int maximum, int initial) {
+        if (minimum < 1 || maximum < minimum || initial < minimum || initial > maximum) {
+            throw new IllegalArgumentException("Need 1 <= minimum <= initial <= maximum, was " + minimum + ", " + initial + ", " + maximum);
+        }
+        this.minimum = minimum;
+        this.maximum = maximum;
+        this.limit = initial;
+    }
+
+    public synchronized void acquire() throws InterruptedException {
+        while (inFlight >= limit) {
+            wait();
+        }
+        inFlight++;
+    }
+
+    public synchronized void succeeded() {
+        if (++successesSinceChange >= limit && limit < maximum) {
+            limit++;
+            successesSinceChange = 0;
+        }
+        release();
+    }
+
+    public synchronized void throttled() {
+        limit = Math.max(minimum, limit / 2);
+        successesSinceChange = 0;
+        release();
+    }
+
+    public synchronized void failed() {
+        release();
+    }
+
+    public synchronized int limit() {
+        return limit;
+    }
+
+    private void release() {
+        inFlight--;
+        notifyAll();
+    }
+}
@@ -0,0 +1,98 @@
+package uk.nhs.nhsx.virology.tokengen;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Objects;
+
+/*
+ how far a token generation job has got, written after each chunk so a later invocation, or a retry of this one,
+ carries on from the last chunk stored rather than starting again
+ */
+public class CtaProcessorProgress {
+
+    public final String testResult;
+    public final String testEndDate;
+    public final int numberOfTokens;
+    public final String filename;
+    public final int chunksCompleted;
+    public final int tokensGenerated;
+    public final long generationMillis;
+    public final boolean complete;
+
+    @JsonCreator
+    public CtaProcessorProgress(@JsonProperty("testResult") String testResult,
+                                @JsonProperty("testEndDate") String testEndDate,
+                                @JsonProperty("numberOfTokens") int numberOfTokens,
+                                @JsonProperty("filename") String filename,
+                                @JsonProperty("chunksCompleted") int chunksCompleted,
+                                @JsonProperty("tokensGenerated") int tokensGenerated,
+                                @JsonProperty("generationMillis") long generationMillis,
+                                @JsonProperty("complete") boolean complete) {
+        this.testResult = testResult;
+        this.testEndDate = testEndDate;
+        this.numberOfTokens = numberOfTokens;
+        this.filename = filename;
+        this.chunksCompleted = chunksCompleted;
+        this.tokensGenerated = tokensGenerated;
+        this.generationMillis = generationMillis;
+        this.complete = complete;
+    }
+
+    public static CtaProcessorProgress start(CtaProcessorRequest request, String filename) {
+        return new CtaProcessorProgress(request.testResult, request.testEndDate, request.numberOfTokens, filename, 0, 0, 0, false);
+    }
+
+    public boolean isFor(CtaProcessorRequest request) {
+        return Objects.equals(testResult, request.testResult)
+            && Objects.equals(testEndDate, request.testEndDate)
+            && Objects.equals(numberOfTokens, request.numberOfTokens);
+    }
+
+    public int tokensRemaining() {
+        return Math.max(0, numberOfTokens - tokensGenerated);
+    }
+
+    public CtaProcessorProgress withChunk(int tokens, long millis) {
+        return new CtaProcessorProgress(testResult, testEndDate, numberOfTokens, filename, chunksCompleted + 1, tokensGenerated + tokens, generationMillis + millis, false);
+    }
+
+    public CtaProcessorProgress completed() {
+        return new CtaProcessorProgress(testResult, testEndDate, numberOfTokens, filename, chunksCompleted, tokensGenerated, generationMillis, true);
+    }
+
+    public double tokensPerSecond() {
+        return generationMillis == 0 ? 0 : tokensGenerated * 1000.0 / generationMillis;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        CtaProcessorProgress that = (CtaProcessorProgress) o;
+        return numberOfTokens == that.numberOfTokens &&
+            chunksCompleted == that.chunksCompleted &&
+            tokensGenerated == that.tokensGenerated &&
+            generationMillis == that.generationMillis &&
+            complete == that.complete &&
+            Objects.equals(testResult, that.testResult) &&
+            Objects.equals(testEndDate, that.testEndDate) &&
+            Objects.equals(filename, that.filename);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(testResult, testEndDate, numberOfTokens, filename, chunksCompleted, tokensGenerated, generationMillis, complete);
+    }
+
+    @Override
+    public String toString() {
+        return "CtaProcessorProgress{" +
+            "filename='" + filename + '\'' +
+            ", chunksCompleted=" + chunksCompleted +
+            ", tokensGenerated=" + tokensGenerated +
+            ", numberOfTokens=" + numberOfTokens +
+            ", complete=" + complete +
+            '}';
+    }
+}
@@ -1,5 +1,6 @@
 package uk.nhs.nhsx.virology.tokengen;
 
+import java.util.Locale;
 import java.util.Map;
 
 public abstract class CtaProcessorResult {
@@ -9,10 +10,14 @@ public abstract class CtaProcessorResult {
     public static class Success extends CtaProcessorResult {
         public final String zipFilename;
         private final String message;
+        public final int tokensGenerated;
+        public final double tokensPerSecond;
 
-        public Success(String zipFilename, String message) {
+        public Success(String zipFilename, String message, int tokensGenerated, double tokensPerSecond) {
             this.zipFilename = zipFilename;
             this.message = message;
+            this.tokensGenerated = tokensGenerated;
+            this.tokensPerSecond = tokensPerSecond;
         }
 
         @Override
@@ -20,7 +25,35 @@ public abstract class CtaProcessorResult {
             return Map.of(
                 "result", "success",
                 "message", message,
-                "filename", zipFilename
+                "filename", zipFilename,
+                "tokensGenerated", String.valueOf(tokensGenerated),
+                "tokensPerSecond", String.format(Locale.ROOT, "%.1f", tokensPerSecond)
+            );
+        }
+    }
+
+    /*
+     the job ran out of time; invoking again with the same jobId carries on from the last chunk stored, which
+     VirologyProcessorHandler does itself
+     */
+    public static class InProgress extends CtaProcessorResult {
+        public final String jobId;
+        public final int tokensGenerated;
+        public final int numberOfTokens;
+
+        public InProgress(String jobId, int tokensGenerated, int numberOfTokens) {
+            this.jobId = jobId;
+            this.tokensGenerated = tokensGenerated;
+            this.numberOfTokens = numberOfTokens;
+        }
+
+        @Override
+        public Map<String, String> toResponse() {
+            return Map.of(
+                "result", "in_progress",
+                "message", String.format("Generated %d of %d tokens, continuing in a new invocation", tokensGenerated, numberOfTokens),
+                "jobId", jobId,
+                "tokensGenerated", String.valueOf(tokensGenerated)
             );
         }
     }
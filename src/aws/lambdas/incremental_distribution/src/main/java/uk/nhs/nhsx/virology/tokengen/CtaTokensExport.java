@@ -0,0 +1,85 @@
+package uk.nhs.nhsx.virology.tokengen;
+
+import uk.nhs.nhsx.core.aws.s3.UploadStream;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/*
+ the csv is written to two uploads at once, as it is and as the one entry of a zip, so neither file is ever held
+ whole, in memory or on disk. finish() completes both; after anything goes wrong abort() leaves neither behind.
+ The csv is stored before the zip is, so when storing the zip fails the stored csv is removed again.
+
+ The header and the rows are separated by newlines with none after the last row, as the csv always was, so each
+ chunk of rows is written after a separator rather than ending in one.
+ */
+public class CtaTokensExport {
+
+    private final UploadStream csv;
+    private final UploadStream zip;
+    private final Runnable removeStoredCsv;
+    private final ZipOutputStream zipOut;
+
+    public CtaTokensExport(UploadStream csv, UploadStream zip, String csvFilename, Runnable removeStoredCsv) {
+        this.csv = csv;
+        this.zip = zip;
+        this.removeStoredCsv = removeStoredCsv;
+        this.zipOut = new ZipOutputStream(zip);
+        try {
+            zipOut.putNextEntry(new ZipEntry(csvFilename));
+        } catch (IOException e) {
+            throw failed(new UncheckedIOException(e), false);
+        }
+        writeBytes(VirologyProcessorExports.CSV_HEADER);
+    }
+
+    public void write(String csvRows) {
+        writeBytes(VirologyProcessorExports.CSV_ROW_SEPARATOR + csvRows);
+    }
+
+    private void writeBytes(String content) {
+        var bytes = content.getBytes(StandardCharsets.UTF_8);
+        try {
+            csv.write(bytes);
+            zipOut.write(bytes);
+        } catch (IOException e) {
+            throw failed(new UncheckedIOException(e), false);
+        } catch (RuntimeException e) {
+            throw failed(e, false);
+        }
+    }
+
+    public void finish() {
+        boolean csvStored = false;
+        try {
+            zipOut.closeEntry();
+            zipOut.finish();
+            csv.close();
+            csvStored = true;
+            zip.close();
+        } catch (IOException e) {
+            throw failed(new UncheckedIOException(e), csvStored);
+        } catch (RuntimeException e) {
+            throw failed(e, csvStored);
+        }
+    }
+
+    /* cleaning up must not hide why the export failed */
+    private RuntimeException failed(RuntimeException e, boolean csvStored) {
+        try {
+            abort();
+            if (csvStored) removeStoredCsv.run();
+        } catch (RuntimeException cleanupFailure) {
+            e.addSuppressed(cleanupFailure);
+        }
+        return e;
+    }
+
+    public void abort() {
+        csv.abort();
+        zip.abort();
+    }
+}
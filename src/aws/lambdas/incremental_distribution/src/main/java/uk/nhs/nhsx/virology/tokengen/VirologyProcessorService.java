@@ -1,7 +1,11 @@
 package uk.nhs.nhsx.virology.tokengen;
 
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.retry.RetryUtils;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import uk.nhs.nhsx.core.exceptions.TransactionException;
 import uk.nhs.nhsx.virology.CtaToken;
 import uk.nhs.nhsx.virology.VirologyService;
 import uk.nhs.nhsx.virology.result.VirologyTokenGenRequest;
@@ -9,17 +13,19 @@ import uk.nhs.nhsx.virology.result.VirologyTokenGenResponse;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
+import java.util.Locale;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static java.util.concurrent.CompletableFuture.allOf;
 import static java.util.concurrent.CompletableFuture.supplyAsync;
-import static java.util.stream.IntStream.range;
 
 public class VirologyProcessorService {
 
@@ -28,96 +34,227 @@ public class VirologyProcessorService {
     private final Supplier<Instant> clock;
     private final int maxRetryCount;
 
-    private final ExecutorService executor = Executors.newFixedThreadPool(20);
+    private final Executor executor;
+    private final int tokensPerChunk;
 
     private static final Logger logger = LogManager.getLogger(VirologyProcessorService.class);
 
+    private static final int MAX_CONCURRENT_TRANSACTIONS = 20;
+    private static final int INITIAL_CONCURRENT_TRANSACTIONS = 4;
+    private static final Duration INITIAL_BACKOFF = Duration.ofMillis(50);
+    private static final Duration MAX_BACKOFF = Duration.ofSeconds(2);
+
+    public static final int DEFAULT_TOKENS_PER_CHUNK = 10_000;
+    private static final Duration FINISHING_TIME = Duration.ofMinutes(1);
+    private static final Duration UNLIMITED_TIME = Duration.ofMillis(Long.MAX_VALUE);
+
+    private static final ExecutorService TRANSACTIONS = Executors.newFixedThreadPool(
+        MAX_CONCURRENT_TRANSACTIONS,
+        new ThreadFactoryBuilder().setNameFormat("cta-token-transaction-%d").setDaemon(true).build()
+    );
+
     public VirologyProcessorService(VirologyService virologyService,
                                     VirologyProcessorStore virologyProcessorStore,
                                     Supplier<Instant> clock,
                                     int maxRetryCount) {
+        this(virologyService, virologyProcessorStore, clock, maxRetryCount, TRANSACTIONS);
+    }
+
+    public VirologyProcessorService(VirologyService virologyService,
+                                    VirologyProcessorStore virologyProcessorStore,
+                                    Supplier<Instant> clock,
+                                    int maxRetryCount,
+                                    Executor executor) {
+        this(virologyService, virologyProcessorStore, clock, maxRetryCount, executor, DEFAULT_TOKENS_PER_CHUNK);
+    }
+
+    public VirologyProcessorService(VirologyService virologyService,
+                                    VirologyProcessorStore virologyProcessorStore,
+                                    Supplier<Instant> clock,
+                                    int maxRetryCount,
+                                    Executor executor,
+                                    int tokensPerChunk) {
         this.virologyService = virologyService;
         this.virologyProcessorStore = virologyProcessorStore;
         this.clock = clock;
         this.maxRetryCount = maxRetryCount;
+        this.executor = executor;
+        this.tokensPerChunk = tokensPerChunk;
     }
 
     public CtaProcessorResult generateAndStoreTokens(CtaProcessorRequest event) {
-        logger.info("Generating tokens from event: {}", event);
-        var start = clock.get();
-        var tokens = generateTokens(event);
+        return generateAndStoreTokens(clock.get().toString(), event, () -> UNLIMITED_TIME);
+    }
 
-        if (tokens.isEmpty()) {
-            logger.info("No tokens generated/stored (empty list)");
-            return new CtaProcessorResult.Error("No tokens generated/stored (empty list)");
+    /*
+     tokens are generated a chunk at a time, and each chunk's rows are stored before the progress that counts them, so
+     whatever is stored survives this invocation. When what is left of remainingTime would not fit another chunk and
+     the files, it stops and says so, and invoking again with the same jobId carries on. A chunk that comes back short
+     is made up by the next one
+     */
+    public CtaProcessorResult generateAndStoreTokens(String jobId, CtaProcessorRequest event, Supplier<Duration> remainingTime) {
+        logger.info("Generating tokens for job {} from event: {}", jobId, event);
+        var progress = virologyProcessorStore.loadProgress(jobId)
+            .orElseGet(() -> CtaProcessorProgress.start(event, clock.get().toString()));
+
+        if (!progress.isFor(event)) {
+            logger.warn("Job {} was started for a different request: {}", jobId, progress);
+            return new CtaProcessorResult.Error("Job " + jobId + " was started for a different request");
+        }
+        if (progress.complete) {
+            logger.info("Job {} already complete", jobId);
+            return success(progress);
         }
 
-        var filename = start.toString();
-        var ctaTokensZip = storeTokens(event, tokens, filename);
+        var concurrency = new AdaptiveConcurrencyLimit(1, MAX_CONCURRENT_TRANSACTIONS, INITIAL_CONCURRENT_TRANSACTIONS);
+        var lastChunk = Duration.ZERO;
+        while (progress.tokensRemaining() > 0) {
+            if (remainingTime.get().compareTo(lastChunk.plus(FINISHING_TIME)) < 0) {
+                logger.info("Job {} out of time with {} of {} tokens generated", jobId, progress.tokensGenerated, progress.numberOfTokens);
+                return new CtaProcessorResult.InProgress(jobId, progress.tokensGenerated, progress.numberOfTokens);
+            }
+
+            var chunkSize = Math.min(tokensPerChunk, progress.tokensRemaining());
+            logger.info("Job {} minting {} tokens for part {}", jobId, chunkSize, progress.chunksCompleted + 1);
+            var chunkStart = System.nanoTime();
+            var tokens = generateTokens(event, chunkSize, concurrency);
+            if (tokens.isEmpty()) {
+                logger.info("No tokens generated/stored (empty list)");
+                return new CtaProcessorResult.Error("No tokens generated/stored (empty list)");
+            }
+
+            virologyProcessorStore.storePart(
+                jobId,
+                progress.chunksCompleted + 1,
+                VirologyProcessorExports.csvRowsFrom(tokens, event.testResult, event.testEndDate)
+            );
+            lastChunk = Duration.ofNanos(System.nanoTime() - chunkStart);
+            progress = progress.withChunk(tokens.size(), lastChunk.toMillis());
+            virologyProcessorStore.storeProgress(jobId, progress);
+        }
 
+        var zipFilename = storeTokens(jobId, progress);
+        progress = progress.completed();
+        virologyProcessorStore.storeProgress(jobId, progress);
+        virologyProcessorStore.deleteParts(jobId, progress.chunksCompleted);
+        logger.info("Job {} complete, files stored as {}", jobId, zipFilename);
+
+        return success(progress);
+    }
+
+    private static CtaProcessorResult success(CtaProcessorProgress progress) {
         var message = String.format(
-            "Generated %d tokens in %d seconds",
-            tokens.size(), Duration.between(start, Instant.now()).toSeconds()
+            Locale.ROOT,
+            "Generated %d tokens in %d seconds, %.1f tokens per second",
+            progress.tokensGenerated, Duration.ofMillis(progress.generationMillis).toSeconds(), progress.tokensPerSecond()
         );
         logger.info(message);
-
-        return new CtaProcessorResult.Success(ctaTokensZip.filename, message);
+        return new CtaProcessorResult.Success(
+            progress.filename + ".zip", message, progress.tokensGenerated, progress.tokensPerSecond()
+        );
     }
 
-    private CtaTokensZip storeTokens(CtaProcessorRequest event, List<CtaToken> tokens, String filename) {
-        var csvContent = VirologyProcessorExports.csvFrom(tokens, event.testResult, event.testEndDate);
-        var ctaTokensCsv = new CtaTokensCsv(filename, csvContent);
-        virologyProcessorStore.storeCsv(ctaTokensCsv);
-
-        var zipFile = VirologyProcessorExports.zipFrom(filename, ctaTokensCsv);
-        var ctaTokensZip = new CtaTokensZip(filename, zipFile);
-        virologyProcessorStore.storeZip(ctaTokensZip);
-        return ctaTokensZip;
+    /* only one part is held at a time, however many tokens there are */
+    private String storeTokens(String jobId, CtaProcessorProgress progress) {
+        var export = virologyProcessorStore.startExport(progress.filename);
+        try {
+            for (var partNumber = 1; partNumber <= progress.chunksCompleted; partNumber++) {
+                export.write(virologyProcessorStore.loadPart(jobId, partNumber));
+            }
+            export.finish();
+        } catch (RuntimeException e) {
+            export.abort();
+            throw e;
+        }
+        return progress.filename + ".zip";
     }
 
-    private List<CtaToken> generateTokens(CtaProcessorRequest event) {
+    /*
+     tokens are minted a transaction's worth at a time. How many transactions are in flight is found as it goes, backing
+     off when DynamoDB throttles rather than retrying into it
+     */
+    private List<CtaToken> generateTokens(CtaProcessorRequest event, int numberOfTokensInChunk, AdaptiveConcurrencyLimit concurrency) {
         var request = new VirologyTokenGenRequest(event.testResult, event.testEndDate);
-        var futures = createTokenGenFutures(event, request);
-        return collectResultsFrom(futures);
-    }
+        var tokensPerTransaction = VirologyService.tokensPerTransaction(event.testResult);
 
-    private List<CompletableFuture<VirologyTokenGenResponse>> createTokenGenFutures(CtaProcessorRequest event,
-                                                                                    VirologyTokenGenRequest request) {
-        return range(0, event.numberOfTokens)
-            .mapToObj(it ->
-                supplyAsync(() -> generateTokenRetryingOnFailure(request), executor)
+        var futures = new ArrayList<CompletableFuture<List<VirologyTokenGenResponse>>>();
+        for (var remaining = numberOfTokensInChunk; remaining > 0; remaining -= tokensPerTransaction) {
+            var numberOfTokens = Math.min(remaining, tokensPerTransaction);
+            futures.add(
+                supplyAsync(() -> generateTokensRetryingOnFailure(request, numberOfTokens, concurrency), executor)
                     .exceptionally(ex -> {
-                        logger.error("Exception while generating CTA token", ex);
-                        return null;
+                        logger.error("Exception while generating CTA tokens", ex);
+                        return List.of();
                     })
-            )
-            .collect(Collectors.toList());
+            );
+        }
+
+        var tokens = collectResultsFrom(futures);
+        logger.info("Generated {} tokens with concurrency limit now {} transactions", tokens.size(), concurrency.limit());
+        return tokens;
     }
 
-    private List<CtaToken> collectResultsFrom(List<CompletableFuture<VirologyTokenGenResponse>> futures) {
+    private List<CtaToken> collectResultsFrom(List<CompletableFuture<List<VirologyTokenGenResponse>>> futures) {
         return allOf(futures.toArray(new CompletableFuture[0]))
             .thenApply(
                 future -> futures
                     .stream()
                     .map(CompletableFuture::join)
-                    .filter(Objects::nonNull)
+                    .flatMap(List::stream)
                     .map(it -> CtaToken.of(it.ctaToken))
                     .collect(Collectors.toList())
             )
             .join();
     }
 
-    private VirologyTokenGenResponse generateTokenRetryingOnFailure(VirologyTokenGenRequest request) {
+    private List<VirologyTokenGenResponse> generateTokensRetryingOnFailure(VirologyTokenGenRequest request,
+                                                                           int numberOfTokens,
+                                                                           AdaptiveConcurrencyLimit concurrency) {
         var numberOfTries = 0;
         do {
+            acquire(concurrency);
             try {
-                return virologyService.acceptTestResultGeneratingTokens(request);
+                var tokens = virologyService.acceptTestResultGeneratingTokens(request, numberOfTokens);
+                concurrency.succeeded();
+                return tokens;
             } catch (Exception e) {
-                logger.info("Failed to generate cta token retry: {} with error: {}", numberOfTries, e.getMessage());
+                if (isThrottling(e)) {
+                    concurrency.throttled();
+                    logger.info("Throttled generating cta tokens retry: {}, concurrency now {}", numberOfTries, concurrency.limit());
+                    backOff(numberOfTries);
+                } else {
+                    concurrency.failed();
+                    logger.info("Failed to generate cta tokens retry: {} with error: {}", numberOfTries, e.getMessage());
+                }
             }
             numberOfTries++;
         } while (numberOfTries < maxRetryCount);
 
-        throw new RuntimeException("Generate cta token exceeded maximum of " + maxRetryCount + " retries");
+        throw new RuntimeException("Generate cta tokens exceeded maximum of " + maxRetryCount + " retries");
+    }
+
+    private static boolean isThrottling(Exception e) {
+        if (e instanceof TransactionException) return ((TransactionException) e).isThrottling();
+        return e instanceof AmazonServiceException && RetryUtils.isThrottlingException((AmazonServiceException) e);
+    }
+
+    /* full jitter, so throttled transactions don't all come back at once */
+    private static void backOff(int numberOfTries) {
+        var ceiling = Math.min(MAX_BACKOFF.toMillis(), INITIAL_BACKOFF.toMillis() << Math.min(numberOfTries, 10));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while backing off", e);
+        }
+    }
+
+    private static void acquire(AdaptiveConcurrencyLimit concurrency) {
+        try {
+            concurrency.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting to generate cta tokens", e);
+        }
     }
 }
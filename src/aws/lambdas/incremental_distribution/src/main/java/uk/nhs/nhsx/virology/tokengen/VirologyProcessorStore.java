@@ -2,36 +2,94 @@ package uk.nhs.nhsx.virology.tokengen;
 
 import org.apache.http.Consts;
 import org.apache.http.entity.ContentType;
+import uk.nhs.nhsx.core.Jackson;
+import uk.nhs.nhsx.core.aws.s3.AwsS3;
 import uk.nhs.nhsx.core.aws.s3.BucketName;
 import uk.nhs.nhsx.core.aws.s3.ObjectKey;
 import uk.nhs.nhsx.core.aws.s3.S3Storage;
 
-import static com.google.common.io.Files.asByteSource;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.IntStream.rangeClosed;
 import static uk.nhs.nhsx.core.aws.s3.Sources.byteSourceFor;
 
+/*
+ jobs in progress keep their state next to the files they produce: a progress object, and the rows of each chunk
+ as a part object of their own until the last chunk is done and they are streamed, one part at a time, into the files
+ */
 public class VirologyProcessorStore {
 
-    private final S3Storage s3Client;
+    private static final String JOBS_PREFIX = "jobs/";
+
+    private final AwsS3 s3Client;
     private final BucketName bucketName;
 
-    public VirologyProcessorStore(S3Storage s3Client, BucketName bucketName) {
+    public VirologyProcessorStore(AwsS3 s3Client, BucketName bucketName) {
         this.s3Client = s3Client;
         this.bucketName = bucketName;
     }
 
-    public void storeCsv(CtaTokensCsv ctaTokensCsv) {
+    /* filename.csv and filename.zip, holding the same rows */
+    public CtaTokensExport startExport(String filename) {
+        return new CtaTokensExport(
+            s3Client.uploadStream(
+                S3Storage.Locator.of(bucketName, ObjectKey.of(filename + ".csv")),
+                ContentType.create("text/csv", Consts.UTF_8)
+            ),
+            s3Client.uploadStream(
+                S3Storage.Locator.of(bucketName, ObjectKey.of(filename + ".zip")),
+                ContentType.create("application/zip")
+            ),
+            filename + ".csv",
+            () -> s3Client.deleteObject(bucketName.value, filename + ".csv")
+        );
+    }
+
+    public Optional<CtaProcessorProgress> loadProgress(String jobId) {
+        return s3Client.findObject(bucketName.value, progressKey(jobId))
+            .map(it -> AwsS3.readAndClose(it, object -> Jackson.readJson(object.getObjectContent(), CtaProcessorProgress.class)));
+    }
+
+    public void storeProgress(String jobId, CtaProcessorProgress progress) {
         s3Client.upload(
-            S3Storage.Locator.of(bucketName, ObjectKey.of(ctaTokensCsv.filename)),
-            ContentType.create("text/csv", Consts.UTF_8),
-            byteSourceFor(ctaTokensCsv.content)
+            S3Storage.Locator.of(bucketName, ObjectKey.of(progressKey(jobId))),
+            ContentType.APPLICATION_JSON,
+            byteSourceFor(Jackson.toJson(progress))
         );
     }
 
-    public void storeZip(CtaTokensZip ctaTokensZip) {
+    public void storePart(String jobId, int partNumber, String csvRows) {
         s3Client.upload(
-            S3Storage.Locator.of(bucketName, ObjectKey.of(ctaTokensZip.filename)),
-            ContentType.create("application/zip"),
-            asByteSource(ctaTokensZip.content)
+            S3Storage.Locator.of(bucketName, ObjectKey.of(partKey(jobId, partNumber))),
+            ContentType.create("text/csv", Consts.UTF_8),
+            byteSourceFor(csvRows)
         );
     }
+
+    public String loadPart(String jobId, int partNumber) {
+        var part = s3Client.findObject(bucketName.value, partKey(jobId, partNumber));
+        if (part.isEmpty()) {
+            throw new IllegalStateException("Job " + jobId + " is missing part " + partNumber);
+        }
+        return AwsS3.readAndClose(part.get(), it -> new String(it.getObjectContent().readAllBytes(), StandardCharsets.UTF_8));
+    }
+
+    public void deleteParts(String jobId, int numberOfParts) {
+        s3Client.deleteAll(bucketName.value, partKeys(jobId, numberOfParts));
+    }
+
+    private static List<String> partKeys(String jobId, int numberOfParts) {
+        return rangeClosed(1, numberOfParts).mapToObj(it -> partKey(jobId, it)).collect(toList());
+    }
+
+    private static String progressKey(String jobId) {
+        return JOBS_PREFIX + jobId + "/progress.json";
+    }
+
+    private static String partKey(String jobId, int partNumber) {
+        return String.format("%s%s/part-%05d.csv", JOBS_PREFIX, jobId, partNumber);
+    }
 }
@@ -4,8 +4,10 @@ import com.amazonaws.HttpMethod;
 import com.amazonaws.services.kms.model.SigningAlgorithmSpec;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.google.common.io.BaseEncoding;
 import org.hamcrest.MatcherAssert;
 import org.junit.jupiter.api.Test;
+import uk.nhs.nhsx.testhelper.DigestSigner;
 import uk.nhs.nhsx.testhelper.ProxyRequestBuilder;
 import uk.nhs.nhsx.core.HttpResponses;
 import uk.nhs.nhsx.core.signature.KeyId;
@@ -13,6 +15,7 @@ import uk.nhs.nhsx.core.signature.RFC2616DatedSigner;
 import uk.nhs.nhsx.core.signature.Signature;
 import uk.nhs.nhsx.core.signature.Signer;
 
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
@@ -21,8 +24,10 @@ import java.time.Month;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.Base64;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.hamcrest.CoreMatchers.equalTo;
 
 public class AwsResponseSignerTest {
@@ -129,6 +134,105 @@ public class AwsResponseSignerTest {
         assertThat(response.getHeaders()).containsKey("X-Amz-Meta-Signature");
     }
 
+    @Test
+    public void streamedSignatureMatchesSigningTheConcatenatedBytes() {
+        DigestSigner digestSigner = new DigestSigner();
+        AwsResponseSigner streamingSigner = new AwsResponseSigner(new RFC2616DatedSigner(() -> now.toInstant(), digestSigner));
+        String date = "Sun, 02 Aug 2020 10:18:44 UTC";
+
+        requestBuilder.withMethod(HttpMethod.POST)
+                .withPath("/some/path")
+                .withHeader("Request-Id", "client-request-id");
+
+        APIGatewayProxyResponseEvent text = HttpResponses.ok("{\"foo\":\"bar\"}");
+        streamingSigner.sign(requestBuilder.build(), text);
+
+        byte[] bytes = new byte[]{0, 1, 2, 3, 4, 5};
+        APIGatewayProxyResponseEvent binary = HttpResponses.ok();
+        binary.setIsBase64Encoded(true);
+        binary.setBody(Base64.getEncoder().encodeToString(bytes));
+        streamingSigner.sign(requestBuilder.build(), binary);
+
+        assertThat(text.getHeaders().get("X-Amz-Meta-Signature")).isEqualTo(signatureHeaderOf(
+            digestSigner.sign(calculateExpectedContent("client-request-id", "POST", date, "/some/path", "{\"foo\":\"bar\"}"))
+        ));
+        assertThat(binary.getHeaders().get("X-Amz-Meta-Signature")).isEqualTo(signatureHeaderOf(
+            digestSigner.sign(calculateExpectedContent("client-request-id", "POST", date, "/some/path", bytes))
+        ));
+    }
+
+    @Test
+    public void signingBinaryContentWithoutPadding() {
+
+        requestBuilder.withMethod(HttpMethod.POST)
+                .withPath("/some/path")
+                .withHeader("Request-Id", "client-request-id");
+
+        byte[] bytes = new byte[]{0, 1, 2, 3, 4};
+
+        APIGatewayProxyResponseEvent response = HttpResponses.ok();
+        response.setIsBase64Encoded(true);
+        response.setBody(Base64.getEncoder().withoutPadding().encodeToString(bytes));
+
+        expectedContentToSign = calculateExpectedContent("client-request-id", "POST", "Sun, 02 Aug 2020 10:18:44 UTC", "/some/path", bytes);
+
+        signer.sign(requestBuilder.build(), response);
+        assertThat(response.getHeaders()).containsKey("X-Amz-Meta-Signature");
+    }
+
+    @Test
+    public void signingBinaryContentWrappedIntoLines() {
+
+        requestBuilder.withMethod(HttpMethod.POST)
+                .withPath("/some/path")
+                .withHeader("Request-Id", "client-request-id");
+
+        byte[] bytes = new byte[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11};
+
+        APIGatewayProxyResponseEvent response = HttpResponses.ok();
+        response.setIsBase64Encoded(true);
+        response.setBody(Base64.getMimeEncoder(4, "\r\n".getBytes()).encodeToString(bytes) + "\n");
+
+        expectedContentToSign = calculateExpectedContent("client-request-id", "POST", "Sun, 02 Aug 2020 10:18:44 UTC", "/some/path", bytes);
+
+        signer.sign(requestBuilder.build(), response);
+        assertThat(response.getHeaders()).containsKey("X-Amz-Meta-Signature");
+    }
+
+    @Test
+    public void refusesToSignBinaryContentThatIsNotBase64() {
+
+        requestBuilder.withMethod(HttpMethod.POST)
+                .withPath("/some/path")
+                .withHeader("Request-Id", "client-request-id");
+
+        APIGatewayProxyResponseEvent response = HttpResponses.ok();
+        response.setIsBase64Encoded(true);
+        response.setBody("AAEC*AwQF");
+
+        assertThatThrownBy(() -> signer.sign(requestBuilder.build(), response))
+            .isInstanceOf(UncheckedIOException.class)
+            .hasRootCauseInstanceOf(BaseEncoding.DecodingException.class);
+        assertThat(response.getHeaders()).doesNotContainKey("X-Amz-Meta-Signature");
+    }
+
+    @Test
+    public void primingDoesNotSign() {
+        AtomicInteger signatures = new AtomicInteger();
+        AwsResponseSigner signer = new AwsResponseSigner(new RFC2616DatedSigner(() -> now.toInstant(), b -> {
+            signatures.incrementAndGet();
+            return signatureResult;
+        }));
+
+        signer.prime();
+
+        assertThat(signatures.get()).isEqualTo(0);
+    }
+
+    private String signatureHeaderOf(Signature signature) {
+        return "keyId=\"" + signature.keyId.value + "\",signature=\"" + signature.asBase64Encoded() + "\"";
+    }
+
     private byte[] calculateExpectedContent(String requestId, String method, String date, String path, String content) {
         return String.format("%s:%s:%s:%s:%s", requestId, method, path, date, content).getBytes(StandardCharsets.UTF_8);
     }
@@ -1,7 +1,18 @@
 package uk.nhs.nhsx.core.auth;
 
+import com.google.common.util.concurrent.MoreExecutors;
 import org.junit.jupiter.api.Test;
-
+import uk.nhs.nhsx.testhelper.mocks.FakeMetrics;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.CoreMatchers.equalTo;
@@ -21,7 +32,15 @@ public class CachingApiKeyAuthorizerTest {
         return result;
     };
 
-    private final ApiKeyAuthorizer authorizer = new CachingApiKeyAuthorizer(delegate);
+    private Instant now = Instant.parse("2020-12-01T10:00:00Z");
+
+    private final FakeMetrics metrics = new FakeMetrics();
+
+    private final List<Runnable> pendingRefreshes = new ArrayList<>();
+
+    private final ApiKeyAuthorizer authorizer = new CachingApiKeyAuthorizer(
+        delegate, () -> now, metrics, pendingRefreshes::add
+    );
 
     @Test
     public void cachesPositiveResult() throws Exception {
@@ -67,4 +86,105 @@ public class CachingApiKeyAuthorizerTest {
 
         assertThat(count.get(), is(2));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void forgetsNegativeResultSoonerThanPositive() throws Exception {
+        result = false;
+        assertThat(authorizer.authorize(ApiKey.of("name", "value")), is(false));
+        assertThat(count.get(), is(1));
+
+        result = true;
+        now = now.plus(Duration.ofSeconds(11));
+        assertThat(authorizer.authorize(ApiKey.of("name", "value")), is(true));
+        assertThat(count.get(), is(2));
+
+        now = now.plus(Duration.ofSeconds(11));
+        assertThat(authorizer.authorize(ApiKey.of("name", "value")), is(true));
+        assertThat(count.get(), is(2));
+    }
+
+    @Test
+    public void refreshesPositiveResultBeforeExpiry() throws Exception {
+        result = true;
+        assertThat(authorizer.authorize(ApiKey.of("name", "value")), is(true));
+        assertThat(count.get(), is(1));
+
+        result = false;
+        now = now.plus(Duration.ofSeconds(50));
+        assertThat(authorizer.authorize(ApiKey.of("name", "value")), is(true));
+        assertThat(count.get(), is(1));
+
+        pendingRefreshes.forEach(Runnable::run);
+        assertThat(count.get(), is(2));
+
+        assertThat(authorizer.authorize(ApiKey.of("name", "value")), is(false));
+        assertThat(count.get(), is(2));
+    }
+
+    @Test
+    public void startsOneRefreshPerEntry() throws Exception {
+        result = true;
+        authorizer.authorize(ApiKey.of("name", "value"));
+
+        now = now.plus(Duration.ofSeconds(50));
+        authorizer.authorize(ApiKey.of("name", "value"));
+        authorizer.authorize(ApiKey.of("name", "value"));
+
+        assertThat(pendingRefreshes.size(), is(1));
+    }
+
+    @Test
+    public void expiresPositiveResultThatWasNotUsed() throws Exception {
+        result = true;
+        assertThat(authorizer.authorize(ApiKey.of("name", "value")), is(true));
+
+        result = false;
+        now = now.plus(Duration.ofMinutes(2));
+        assertThat(authorizer.authorize(ApiKey.of("name", "value")), is(false));
+        assertThat(count.get(), is(2));
+    }
+
+    @Test
+    public void sharesVerificationBetweenConcurrentRequestsForSameKey() throws Exception {
+        CountDownLatch verifying = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ApiKeyAuthorizer slow = new CachingApiKeyAuthorizer(
+            k -> {
+                count.incrementAndGet();
+                verifying.countDown();
+                try {
+                    return release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            },
+            () -> now, metrics, MoreExecutors.directExecutor()
+        );
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Boolean> first = executor.submit(() -> slow.authorize(ApiKey.of("name", "value")));
+            verifying.await(5, TimeUnit.SECONDS);
+            Future<Boolean> second = executor.submit(() -> slow.authorize(ApiKey.of("name", "value")));
+            Thread.sleep(100);
+            release.countDown();
+
+            assertThat(first.get(5, TimeUnit.SECONDS), is(true));
+            assertThat(second.get(5, TimeUnit.SECONDS), is(true));
+            assertThat(count.get(), is(1));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void countsHitsAndMisses() throws Exception {
+        result = true;
+        authorizer.authorize(ApiKey.of("name", "value"));
+        authorizer.authorize(ApiKey.of("name", "value"));
+        authorizer.authorize(ApiKey.of("name", "value"));
+
+        assertThat(metrics.count("ApiKeyAuthorizerCacheMiss"), is(1L));
+        assertThat(metrics.count("ApiKeyAuthorizerCacheHit"), is(2L));
+    }
+}
@@ -0,0 +1,259 @@
+package uk.nhs.nhsx.core.aws.kms;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.kms.AWSKMSAsync;
+import com.amazonaws.services.kms.model.AWSKMSException;
+import com.amazonaws.services.kms.model.SignRequest;
+import com.amazonaws.services.kms.model.SignResult;
+import com.google.common.io.ByteSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import uk.nhs.nhsx.core.signature.KeyId;
+import uk.nhs.nhsx.core.signature.Signature;
+import uk.nhs.nhsx.testhelper.mocks.FakeMetrics;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class KmsSignerTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final AWSKMSAsync client = mock(AWSKMSAsync.class);
+    private final FakeMetrics metrics = new FakeMetrics();
+    private final List<AsyncHandler<SignRequest, SignResult>> calls = new ArrayList<>();
+
+    private final KmsSigner signer = new KmsSigner(
+        () -> KeyId.of("some-key"), () -> client, scheduler, metrics, Duration.ofMillis(50), Duration.ofMillis(500)
+    );
+
+    @AfterEach
+    public void stopScheduler() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void signsDigestOfContent() {
+        answeringWith((request, handler) -> handler.onSuccess(request, signatureOf(1, 2, 3)));
+
+        Signature signature = signer.sign("hello".getBytes());
+
+        assertThat(signature.keyId).isEqualTo(KeyId.of("some-key"));
+        assertThat(signature.asByteBuffer().array()).containsExactly(1, 2, 3);
+        assertThat(metrics.durations("KmsSignDuration")).hasSize(1);
+        assertThat(metrics.count("KmsSignHedged")).isEqualTo(0);
+    }
+
+    @Test
+    public void primingLooksUpTheKeyWithoutSigning() {
+        List<String> lookups = new ArrayList<>();
+        KmsSigner signer = new KmsSigner(
+            () -> { lookups.add("some-key"); return KeyId.of("some-key"); }, () -> client, scheduler, metrics, Duration.ofMillis(50), Duration.ofMillis(500)
+        );
+
+        signer.prime();
+
+        assertThat(lookups).hasSize(1);
+        verify(client, times(0)).signAsync(any(), any());
+    }
+
+    @Test
+    public void signsSameDigestWhenContentIsStreamed() {
+        List<SignRequest> requests = new ArrayList<>();
+        answeringWith((request, handler) -> {
+            requests.add(request);
+            handler.onSuccess(request, signatureOf(1));
+        });
+
+        signer.sign("hello world".getBytes());
+        signer.sign(ByteSource.concat(ByteSource.wrap("hello ".getBytes()), ByteSource.wrap("world".getBytes())));
+
+        assertThat(requests).hasSize(2);
+        assertThat(requests.get(1).getMessage()).isEqualTo(requests.get(0).getMessage());
+        assertThat(requests.get(1).getMessageType()).isEqualTo("DIGEST");
+    }
+
+    @Test
+    public void hedgesSlowRequestAndUsesFirstAnswer() {
+        answeringWith((request, handler) -> {
+            calls.add(handler);
+            if (calls.size() == 2) {
+                handler.onSuccess(request, signatureOf(2));
+            }
+        });
+
+        Signature signature = signer.sign("hello".getBytes());
+
+        assertThat(signature.asByteBuffer().array()).containsExactly(2);
+        assertThat(metrics.count("KmsSignHedged")).isEqualTo(1);
+        verify(client, times(2)).signAsync(any(), any());
+    }
+
+    @Test
+    public void failsWhenEveryAttemptFails() {
+        answeringWith((request, handler) -> {
+            calls.add(handler);
+            if (calls.size() == 2) {
+                calls.forEach(it -> it.onError(throttling()));
+            }
+        });
+
+        assertThatThrownBy(() -> signer.sign("hello".getBytes()))
+            .isInstanceOf(AWSKMSException.class);
+
+        assertThat(metrics.count("KmsSignThrottled")).isEqualTo(1);
+    }
+
+    @Test
+    public void givesUpAfterTimeoutBudget() {
+        answeringWith((request, handler) -> { });
+
+        assertThatThrownBy(() -> signer.sign("hello".getBytes()))
+            .hasMessageContaining("Timed out");
+
+        assertThat(metrics.count("KmsSignTimeout")).isEqualTo(1);
+    }
+
+    @Test
+    public void losingHedgedAttemptIsNotAFailure() {
+        answeringWith((request, handler) -> {
+            calls.add(handler);
+            if (calls.size() == 2) {
+                calls.get(0).onError(throttling());
+                handler.onSuccess(request, signatureOf(2));
+            }
+        });
+
+        signer.sign("hello".getBytes());
+
+        assertThat(metrics.count("KmsSignThrottled")).isEqualTo(0);
+        assertThat(metrics.count("KmsSignFailed")).isEqualTo(0);
+    }
+
+    @Test
+    public void failsFastWhileOpenAfterRepeatedFailures() {
+        answeringWith((request, handler) -> {
+            calls.add(handler);
+            handler.onError(throttling());
+        });
+        for (int i = 0; i < 5; i++) {
+            assertThatThrownBy(() -> signer.sign("hello".getBytes())).isInstanceOf(AWSKMSException.class);
+        }
+        calls.clear();
+
+        assertThatThrownBy(() -> signer.sign("hello".getBytes()))
+            .hasMessageContaining("circuit breaker is open");
+
+        assertThat(calls).isEmpty();
+        assertThat(metrics.count("KmsSignRejected")).isEqualTo(1);
+    }
+
+    @Test
+    public void closesAfterSuccessfulUnhedgedTrialOnceCooledDown() throws Exception {
+        KmsSigner signer = new KmsSigner(
+            () -> KeyId.of("some-key"), () -> client, scheduler, metrics, Duration.ofMillis(50), Duration.ofMillis(500), Duration.ofMillis(100)
+        );
+        answeringWith((request, handler) -> handler.onError(throttling()));
+        for (int i = 0; i < 5; i++) {
+            assertThatThrownBy(() -> signer.sign("hello".getBytes()));
+        }
+        assertThatThrownBy(() -> signer.sign("hello".getBytes())).hasMessageContaining("circuit breaker is open");
+
+        Thread.sleep(150);
+
+        answeringWith((request, handler) -> {
+            calls.add(handler);
+            if (calls.size() < 3) {
+                scheduler.schedule(() -> handler.onSuccess(request, signatureOf(1)), 100, TimeUnit.MILLISECONDS);
+            } else {
+                handler.onSuccess(request, signatureOf(3));
+            }
+        });
+
+        signer.sign("hello".getBytes());
+        assertThat(calls).hasSize(1);
+        assertThat(metrics.count("KmsSignHedged")).isEqualTo(0);
+
+        Signature signature = signer.sign("hello".getBytes());
+        assertThat(signature.asByteBuffer().array()).containsExactly(3);
+        assertThat(calls).hasSize(3);
+        assertThat(metrics.count("KmsSignHedged")).isEqualTo(1);
+    }
+
+    @Test
+    public void reopensWhenTrialFails() throws Exception {
+        KmsSigner signer = new KmsSigner(
+            () -> KeyId.of("some-key"), () -> client, scheduler, metrics, Duration.ofMillis(50), Duration.ofMillis(500), Duration.ofMillis(100)
+        );
+        answeringWith((request, handler) -> handler.onError(throttling()));
+        for (int i = 0; i < 5; i++) {
+            assertThatThrownBy(() -> signer.sign("hello".getBytes()));
+        }
+
+        Thread.sleep(150);
+
+        assertThatThrownBy(() -> signer.sign("hello".getBytes())).isInstanceOf(AWSKMSException.class);
+        assertThatThrownBy(() -> signer.sign("hello".getBytes())).hasMessageContaining("circuit breaker is open");
+    }
+
+    @Test
+    public void anErrorDuringTheTrialDoesNotKeepTheBreakerOpen() throws Exception {
+        KmsSigner signer = new KmsSigner(
+            () -> KeyId.of("some-key"), () -> client, scheduler, metrics, Duration.ofMillis(50), Duration.ofMillis(500), Duration.ofMillis(100)
+        );
+        answeringWith((request, handler) -> handler.onError(throttling()));
+        for (int i = 0; i < 5; i++) {
+            assertThatThrownBy(() -> signer.sign("hello".getBytes()));
+        }
+
+        Thread.sleep(150);
+
+        answeringWith((request, handler) -> { throw new LinkageError("client broken"); });
+        assertThatThrownBy(() -> signer.sign("hello".getBytes())).isInstanceOf(LinkageError.class);
+        assertThatThrownBy(() -> signer.sign("hello".getBytes())).hasMessageContaining("circuit breaker is open");
+
+        Thread.sleep(150);
+
+        answeringWith((request, handler) -> handler.onSuccess(request, signatureOf(1)));
+        assertThat(signer.sign("hello".getBytes()).asByteBuffer().array()).containsExactly(1);
+    }
+
+    private interface Answer {
+        void answer(SignRequest request, AsyncHandler<SignRequest, SignResult> handler);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void answeringWith(Answer answer) {
+        doAnswer(invocation -> {
+            answer.answer(invocation.getArgument(0), (AsyncHandler<SignRequest, SignResult>) invocation.getArgument(1));
+            return null;
+        }).when(client).signAsync(any(), any());
+    }
+
+    private static SignResult signatureOf(int... bytes) {
+        byte[] signature = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            signature[i] = (byte) bytes[i];
+        }
+        return new SignResult().withSignature(ByteBuffer.wrap(signature));
+    }
+
+    private static AWSKMSException throttling() {
+        AWSKMSException exception = new AWSKMSException("Rate exceeded");
+        exception.setErrorCode("ThrottlingException");
+        exception.setStatusCode(400);
+        return exception;
+    }
+}
@@ -0,0 +1,139 @@
+package uk.nhs.nhsx.core.aws.s3;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.google.common.io.ByteSource;
+import org.apache.http.entity.ContentType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import uk.nhs.nhsx.testhelper.mocks.FakeMetrics;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AwsS3ClientTest {
+
+    private final AmazonS3 s3 = mock(AmazonS3.class);
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final FakeMetrics metrics = new FakeMetrics();
+    private final AwsS3Client client = new AwsS3Client(s3, executor, metrics);
+
+    @AfterEach
+    public void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void uploadsAllObjects() {
+        List<S3Storage.Upload> uploads = IntStream.range(0, 10)
+            .mapToObj(i -> S3Storage.Upload.of(
+                S3Storage.Locator.of(BucketName.of("bucket"), ObjectKey.of("key-" + i)),
+                ContentType.APPLICATION_JSON,
+                ByteSource.wrap(("{\"i\":" + i + "}").getBytes(StandardCharsets.UTF_8))
+            ))
+            .collect(Collectors.toList());
+
+        client.uploadAll(uploads);
+
+        ArgumentCaptor<PutObjectRequest> requests = ArgumentCaptor.forClass(PutObjectRequest.class);
+        verify(s3, times(10)).putObject(requests.capture());
+        assertThat(requests.getAllValues()).extracting(PutObjectRequest::getKey)
+            .containsExactlyInAnyOrder(uploads.stream().map(it -> it.locator.key.value).toArray(String[]::new));
+        assertThat(metrics.durations("S3PutObjectDuration")).hasSize(10);
+    }
+
+    @Test
+    public void failsUploadAllWhenAnyUploadFails() {
+        when(s3.putObject(any(PutObjectRequest.class))).thenThrow(new AmazonS3Exception("denied"));
+
+        assertThatThrownBy(() -> client.uploadAll(List.of(
+            S3Storage.Upload.of(
+                S3Storage.Locator.of(BucketName.of("bucket"), ObjectKey.of("key")),
+                ContentType.APPLICATION_JSON,
+                ByteSource.empty()
+            )
+        ))).isInstanceOf(AmazonS3Exception.class);
+    }
+
+    @Test
+    public void getsAllObjectsThatExistInKeyOrder() {
+        when(s3.getObject("bucket", "a")).thenReturn(objectWith("a", "first"));
+        when(s3.getObject("bucket", "b")).thenThrow(noSuchKey());
+        when(s3.getObject("bucket", "c")).thenReturn(objectWith("c", "third"));
+
+        Map<String, String> contents = client.getAll("bucket", List.of("c", "b", "a"),
+            it -> new String(it.getObjectContent().readAllBytes(), StandardCharsets.UTF_8));
+
+        assertThat(contents.keySet()).containsExactly("c", "a");
+        assertThat(contents).containsEntry("a", "first").containsEntry("c", "third");
+        assertThat(metrics.durations("S3GetObjectDuration")).hasSize(3);
+    }
+
+    @Test
+    public void refusesBulkCallsFromItsOwnPoolThreads() {
+        when(s3.getObject("bucket", "a")).thenReturn(objectWith("a", "first"));
+
+        assertThatThrownBy(() -> client.getAll("bucket", List.of("a"), it -> {
+            client.deleteAll("bucket", List.of("b"));
+            return "read";
+        }))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessageContaining("deleteAll can't be called from an S3 pool thread");
+    }
+
+    @Test
+    public void findsNothingOnlyWhenTheKeyDoesNotExist() {
+        when(s3.getObject("bucket", "missing")).thenThrow(noSuchKey());
+        when(s3.getObject("bucket", "denied")).thenThrow(new AmazonS3Exception("denied"));
+
+        assertThat(client.findObject("bucket", "missing")).isEmpty();
+        assertThatThrownBy(() -> client.findObject("bucket", "denied")).isInstanceOf(AmazonS3Exception.class);
+        assertThat(client.getObject("bucket", "denied")).isEmpty();
+    }
+
+    @Test
+    public void deletesInBatchesOfAThousand() {
+        List<String> keys = IntStream.range(0, 2500).mapToObj(i -> "key-" + i).collect(Collectors.toList());
+
+        client.deleteAll("bucket", keys);
+
+        ArgumentCaptor<DeleteObjectsRequest> requests = ArgumentCaptor.forClass(DeleteObjectsRequest.class);
+        verify(s3, times(3)).deleteObjects(requests.capture());
+        assertThat(requests.getAllValues()).extracting(it -> it.getKeys().size())
+            .containsExactlyInAnyOrder(1000, 1000, 500);
+        assertThat(metrics.count("S3DeletedObjects")).isEqualTo(2500);
+    }
+
+    private static S3Object objectWith(String key, String content) {
+        S3Object object = new S3Object();
+        object.setBucketName("bucket");
+        object.setKey(key);
+        object.setObjectContent(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+        return object;
+    }
+
+    private static AmazonS3Exception noSuchKey() {
+        AmazonS3Exception exception = new AmazonS3Exception("missing");
+        exception.setStatusCode(404);
+        exception.setErrorCode("NoSuchKey");
+        return exception;
+    }
+}
@@ -0,0 +1,129 @@
+package uk.nhs.nhsx.core.aws.s3;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import uk.nhs.nhsx.testhelper.mocks.FakeMetrics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MultipartUploadStreamTest {
+
+    private static final int PART_SIZE = 10;
+
+    private final AmazonS3 s3 = mock(AmazonS3.class);
+    private final FakeMetrics metrics = new FakeMetrics();
+    private final List<String> uploadedParts = new ArrayList<>();
+    private final MultipartUploadStream stream = new MultipartUploadStream(
+        s3,
+        S3Storage.Locator.of(BucketName.of("bucket"), ObjectKey.of("key")),
+        new ObjectMetadata(),
+        metrics,
+        PART_SIZE
+    );
+
+    @BeforeEach
+    public void setUp() {
+        InitiateMultipartUploadResult initiated = new InitiateMultipartUploadResult();
+        initiated.setUploadId("upload-id");
+        when(s3.initiateMultipartUpload(any(InitiateMultipartUploadRequest.class))).thenReturn(initiated);
+        when(s3.uploadPart(any(UploadPartRequest.class))).thenAnswer(invocation -> {
+            UploadPartRequest request = invocation.getArgument(0);
+            uploadedParts.add(new String(request.getInputStream().readAllBytes()));
+            UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(request.getPartNumber());
+            result.setETag("etag-" + request.getPartNumber());
+            return result;
+        });
+    }
+
+    @Test
+    public void putsWhatFitsInOnePartAsOneObject() throws IOException {
+        stream.write("small".getBytes());
+        stream.close();
+
+        ArgumentCaptor<PutObjectRequest> request = ArgumentCaptor.forClass(PutObjectRequest.class);
+        verify(s3).putObject(request.capture());
+        assertThat(request.getValue().getMetadata().getContentLength()).isEqualTo(5);
+        verify(s3, never()).initiateMultipartUpload(any(InitiateMultipartUploadRequest.class));
+    }
+
+    @Test
+    public void uploadsEachFullBufferAsAPart() throws IOException {
+        stream.write("0123456789abcdefghij".getBytes());
+        stream.write("klm".getBytes());
+        stream.close();
+
+        assertThat(uploadedParts).containsExactly("0123456789", "abcdefghij", "klm");
+
+        ArgumentCaptor<CompleteMultipartUploadRequest> request = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(s3).completeMultipartUpload(request.capture());
+        assertThat(request.getValue().getPartETags()).extracting(PartETag::getETag)
+            .containsExactly("etag-1", "etag-2", "etag-3");
+        assertThat(metrics.count("S3MultipartUpload")).isEqualTo(1);
+    }
+
+    @Test
+    public void neverUploadsAnEmptyLastPart() throws IOException {
+        stream.write("0123456789abcdefghij".getBytes());
+        stream.close();
+
+        assertThat(uploadedParts).containsExactly("0123456789", "abcdefghij");
+    }
+
+    @Test
+    public void abortsTheUploadWhenAPartFails() {
+        when(s3.uploadPart(any(UploadPartRequest.class))).thenThrow(new AmazonS3Exception("denied"));
+
+        assertThatThrownBy(() -> stream.write("0123456789abcdefghij".getBytes())).isInstanceOf(AmazonS3Exception.class);
+
+        verify(s3).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        verify(s3, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+
+    @Test
+    public void keepsThePartFailureWhenAbortingAlsoFails() {
+        AmazonS3Exception partFailure = new AmazonS3Exception("denied");
+        AmazonS3Exception abortFailure = new AmazonS3Exception("abort denied");
+        when(s3.uploadPart(any(UploadPartRequest.class))).thenThrow(partFailure);
+        doThrow(abortFailure).when(s3).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+
+        assertThatThrownBy(() -> stream.write("0123456789abcdefghij".getBytes()))
+            .isSameAs(partFailure)
+            .hasSuppressedException(abortFailure);
+        assertThat(metrics.durations("S3AbortMultipartUploadDuration")).hasSize(1);
+    }
+
+    @Test
+    public void abortedStreamStoresNothing() throws IOException {
+        stream.write("0123456789abcdefghij".getBytes());
+        stream.abort();
+        stream.close();
+
+        verify(s3).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        verify(s3, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+        verify(s3, never()).putObject(any(PutObjectRequest.class));
+    }
+}
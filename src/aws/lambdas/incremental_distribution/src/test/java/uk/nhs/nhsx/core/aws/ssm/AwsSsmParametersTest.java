@@ -0,0 +1,128 @@
+package uk.nhs.nhsx.core.aws.ssm;
+
+import com.amazonaws.services.simplesystemsmanagement.AWSSimpleSystemsManagement;
+import com.amazonaws.services.simplesystemsmanagement.model.GetParametersRequest;
+import com.amazonaws.services.simplesystemsmanagement.model.GetParametersResult;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AwsSsmParametersTest {
+
+    private final AWSSimpleSystemsManagement client = mock(AWSSimpleSystemsManagement.class);
+    private final ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+    private final Parameters parameters = new AwsSsmParameters(() -> client, scheduler);
+
+    @Test
+    public void loadsAllDeclaredParametersInOneRequest() {
+        respondingWith(
+            parameter("one", "1"),
+            parameter("two", "2")
+        );
+
+        Parameter<String> one = parameters.ofString(ParameterName.of("one"));
+        Parameter<Integer> two = parameters.parameter(ParameterName.of("two"), Integer::parseInt);
+
+        assertThat(one.value()).isEqualTo("1");
+        assertThat(two.value()).isEqualTo(2);
+        assertThat(one.value()).isEqualTo("1");
+
+        ArgumentCaptor<GetParametersRequest> request = ArgumentCaptor.forClass(GetParametersRequest.class);
+        verify(client, times(1)).getParameters(request.capture());
+        assertThat(request.getValue().getNames()).containsExactlyInAnyOrder("one", "two");
+    }
+
+    @Test
+    public void splitsLargeDeclarationsIntoBatchesOfTen() {
+        when(client.getParameters(any())).thenReturn(new GetParametersResult());
+
+        for (int i = 0; i < 12; i++) {
+            parameters.ofString(ParameterName.of("p" + i));
+        }
+
+        assertThatThrownBy(() -> parameters.ofString(ParameterName.of("p0")).value())
+            .hasMessageContaining("Unable to load parameter for p0");
+
+        verify(client, times(2)).getParameters(any());
+    }
+
+    @Test
+    public void refreshesInTheBackground() {
+        respondingWith(parameter("one", "1"));
+
+        Parameter<String> one = parameters.ofString(ParameterName.of("one"));
+        assertThat(one.value()).isEqualTo("1");
+
+        ArgumentCaptor<Runnable> refresh = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).scheduleWithFixedDelay(refresh.capture(), anyLong(), anyLong(), eq(TimeUnit.MILLISECONDS));
+
+        respondingWith(parameter("one", "changed"));
+        assertThat(one.value()).isEqualTo("1");
+
+        refresh.getValue().run();
+        assertThat(one.value()).isEqualTo("changed");
+    }
+
+    @Test
+    public void convertsOnlyWhenTheValueChanges() {
+        respondingWith(parameter("one", "1"));
+        AtomicInteger conversions = new AtomicInteger();
+
+        Parameter<Integer> one = parameters.parameter(ParameterName.of("one"), it -> {
+            conversions.incrementAndGet();
+            return Integer.parseInt(it);
+        });
+        one.value();
+        one.value();
+
+        ArgumentCaptor<Runnable> refresh = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).scheduleWithFixedDelay(refresh.capture(), anyLong(), anyLong(), eq(TimeUnit.MILLISECONDS));
+
+        refresh.getValue().run();
+        assertThat(one.value()).isEqualTo(1);
+        assertThat(conversions.get()).isEqualTo(1);
+
+        respondingWith(parameter("one", "2"));
+        refresh.getValue().run();
+        assertThat(one.value()).isEqualTo(2);
+        assertThat(conversions.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void keepsPreviousValueWhenRefreshFails() {
+        respondingWith(parameter("one", "1"));
+
+        Parameter<String> one = parameters.ofString(ParameterName.of("one"));
+        assertThat(one.value()).isEqualTo("1");
+
+        ArgumentCaptor<Runnable> refresh = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).scheduleWithFixedDelay(refresh.capture(), anyLong(), anyLong(), eq(TimeUnit.MILLISECONDS));
+
+        when(client.getParameters(any())).thenThrow(new RuntimeException("ssm unavailable"));
+        refresh.getValue().run();
+
+        assertThat(one.value()).isEqualTo("1");
+    }
+
+    private void respondingWith(com.amazonaws.services.simplesystemsmanagement.model.Parameter... values) {
+        when(client.getParameters(any())).thenReturn(new GetParametersResult().withParameters(List.of(values)));
+    }
+
+    private static com.amazonaws.services.simplesystemsmanagement.model.Parameter parameter(String name, String value) {
+        return new com.amazonaws.services.simplesystemsmanagement.model.Parameter().withName(name).withValue(value);
+    }
+}
@@ -1,64 +1,119 @@
 package uk.nhs.nhsx.core.aws.xray;
 
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
 import com.amazonaws.xray.AWSXRay;
 import com.amazonaws.xray.entities.Segment;
+import com.amazonaws.xray.entities.Subsegment;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
+import uk.nhs.nhsx.testhelper.mocks.FakeMetrics;
 
 import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.util.concurrent.Callable;
+import java.io.UncheckedIOException;
+import java.util.List;
 
-import static org.hamcrest.CoreMatchers.is;
-import static org.hamcrest.CoreMatchers.sameInstance;
+import static java.util.stream.Collectors.toList;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.jupiter.api.Assertions.assertThrows;
-import static uk.nhs.nhsx.core.aws.xray.Tracing.tracing;
 
 public class TracingTest {
 
-    public interface NiceInterface {
-        Object method(int arg1, Object arg2) throws IOException;
+    private final FakeMetrics metrics = new FakeMetrics();
+
+    @AfterEach
+    public void endSegment() {
+        if (AWSXRay.getGlobalRecorder().getTraceEntity() != null) {
+            AWSXRay.endSegment();
+        }
+    }
+
+    @Test
+    public void sampledCallIsTracedAsSubsegment() {
+        Segment segment = AWSXRay.beginSegment("test");
+        Object returnValue = new Object();
+
+        assertThat(Tracing.trace("Thing", metrics, () -> returnValue), sameInstance(returnValue));
+
+        assertThat(namesOf(segment), contains("Thing"));
+        assertThat(metrics.durations("ThingDuration"), is(empty()));
     }
 
     @Test
-    public void invokesDelegateAndReturnsCorrectResult() throws Exception {
-        inDummySegment(() ->
-        {
-            Object returnValue = new Object();
-
-            int arg1 = 1;
-            Object arg2 = new Object();
-
-            NiceInterface i = tracing("invocations", NiceInterface.class, (a, b) -> {
-                assertThat(a, is(arg1));
-                assertThat(b, sameInstance(arg2));
-                return returnValue;
-            });
-
-            assertThat(i.method(arg1, arg2), sameInstance(returnValue));
-            return null;
-        });
+    public void unsampledCallIsTimedAsMetric() {
+        Segment segment = AWSXRay.beginSegment("test");
+        segment.setSampled(false);
+
+        assertThat(Tracing.trace("Thing", metrics, () -> "result"), is("result"));
+
+        assertThat(namesOf(segment), is(empty()));
+        assertThat(metrics.durations("ThingDuration"), hasSize(1));
     }
 
     @Test
-    public void throwsCorrectException() {
-
-        assertThrows(FileNotFoundException.class, () ->
-                inDummySegment(() -> {
-                    NiceInterface i = tracing("invocations", NiceInterface.class, (a, b) -> {
-                        throw new FileNotFoundException("should not get converted to invocation/undeclared throwable exception");
-                    });
-                    i.method(1, this);
-                    return null;
-                })
-        );
+    public void callWithoutSegmentIsTimedAsMetric() {
+        assertThat(Tracing.trace("Thing", metrics, () -> "result"), is("result"));
+
+        assertThat(metrics.durations("ThingDuration"), hasSize(1));
     }
 
-    private void inDummySegment(Callable<Void> runnable) throws Exception {
-        try (Segment ignored = AWSXRay.beginDummySegment()) {
-            runnable.call();
+    @Test
+    public void samplingWithoutSegmentFollowsTheInvocationsTraceHeader() {
+        try {
+            System.setProperty("com.amazonaws.xray.traceHeader", "Root=1-5759e988-bd862e3fe1be46a994272793;Parent=53995c3f42cd8ad8;Sampled=1");
+            assertThat(Tracing.isSampled(), is(true));
+
+            System.setProperty("com.amazonaws.xray.traceHeader", "Root=1-5759e988-bd862e3fe1be46a994272793;Parent=53995c3f42cd8ad8;Sampled=0");
+            assertThat(Tracing.isSampled(), is(false));
         } finally {
-            AWSXRay.endSegment();
+            System.clearProperty("com.amazonaws.xray.traceHeader");
         }
+        assertThat(Tracing.isSampled(), is(false));
+    }
+
+    @Test
+    public void exceptionIsRethrownAndRecorded() {
+        Segment segment = AWSXRay.beginSegment("test");
+        UncheckedIOException thrown = new UncheckedIOException(new FileNotFoundException());
+
+        assertThat(assertThrows(UncheckedIOException.class, () -> Tracing.trace("Thing", metrics, () -> {
+            throw thrown;
+        })), sameInstance(thrown));
+
+        Subsegment subsegment = segment.getSubsegments().get(0);
+        assertThat(subsegment.isFault(), is(true));
+    }
+
+    @Test
+    public void requestHandlerNamesSubsegmentAfterServiceAndOperation() {
+        Segment segment = AWSXRay.beginSegment("test");
+        TracingRequestHandler handler = new TracingRequestHandler("DynamoDB", metrics);
+        DefaultRequest<GetItemRequest> request = new DefaultRequest<>(new GetItemRequest(), "AmazonDynamoDBv2");
+
+        handler.beforeRequest(request);
+        handler.afterResponse(request, null);
+
+        assertThat(namesOf(segment), contains("DynamoDBGetItem"));
+        assertThat(metrics.durations("DynamoDBGetItemDuration"), is(empty()));
+    }
+
+    @Test
+    public void requestHandlerTimesUnsampledRequestsAsMetric() {
+        TracingRequestHandler handler = new TracingRequestHandler("DynamoDB", metrics);
+        DefaultRequest<GetItemRequest> request = new DefaultRequest<>(new GetItemRequest(), "AmazonDynamoDBv2");
+
+        handler.beforeRequest(request);
+        handler.afterError(request, null, new RuntimeException());
+
+        assertThat(metrics.durations("DynamoDBGetItemDuration"), hasSize(1));
+    }
+
+    private static List<String> namesOf(Segment segment) {
+        return segment.getSubsegments().stream().map(Subsegment::getName).collect(toList());
     }
-}
\ No newline at end of file
+}
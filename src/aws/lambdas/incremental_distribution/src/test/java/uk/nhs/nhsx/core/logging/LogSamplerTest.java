@@ -0,0 +1,34 @@
+package uk.nhs.nhsx.core.logging;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class LogSamplerTest {
+
+    @Test
+    public void logsFirstOccurrenceThenEveryNth() {
+        LogSampler sampler = LogSampler.everyNth(10);
+
+        long sampled = IntStream.range(0, 25).filter(it -> sampler.sample()).count();
+
+        assertThat(sampled, is(3L));
+        assertThat(sampler.occurrences(), is(25L));
+    }
+
+    @Test
+    public void everyOneLogsEverything() {
+        LogSampler sampler = LogSampler.everyNth(1);
+
+        assertThat(IntStream.range(0, 5).allMatch(it -> sampler.sample()), is(true));
+    }
+
+    @Test
+    public void rejectsNonPositiveRate() {
+        assertThrows(IllegalArgumentException.class, () -> LogSampler.everyNth(0));
+    }
+}
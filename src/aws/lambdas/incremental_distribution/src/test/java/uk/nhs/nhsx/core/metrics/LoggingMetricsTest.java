@@ -0,0 +1,68 @@
+package uk.nhs.nhsx.core.metrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LoggingMetricsTest {
+
+    @Test
+    public void writesEmbeddedMetricFormat() throws Exception {
+        JsonNode line = new ObjectMapper().readTree(
+            LoggingMetrics.embedded("ApiKeyAuthorizerCacheHit", 1, "Count", "some-function", 1606816800000L)
+        );
+
+        JsonNode directive = line.get("_aws").get("CloudWatchMetrics").get(0);
+
+        assertThat(line.get("_aws").get("Timestamp").asLong()).isEqualTo(1606816800000L);
+        assertThat(directive.get("Namespace").asText()).isEqualTo(LoggingMetrics.NAMESPACE);
+        assertThat(directive.get("Dimensions").get(0).get(0).asText()).isEqualTo("FunctionName");
+        assertThat(directive.get("Metrics").get(0).get("Name").asText()).isEqualTo("ApiKeyAuthorizerCacheHit");
+        assertThat(directive.get("Metrics").get(0).get("Unit").asText()).isEqualTo("Count");
+        assertThat(line.get("FunctionName").asText()).isEqualTo("some-function");
+        assertThat(line.get("ApiKeyAuthorizerCacheHit").asLong()).isEqualTo(1);
+    }
+
+    @Test
+    public void countsAreWrittenAsOneTotalPerNameWhenFlushed() throws Exception {
+        LoggingMetrics.drained("some-function", 1606816800000L);
+        LoggingMetrics metrics = new LoggingMetrics();
+
+        metrics.increment("ApiKeyAuthorizerCacheHit");
+        metrics.increment("ApiKeyAuthorizerCacheHit");
+        metrics.count("ApiKeyAuthorizerCacheHit", 3);
+
+        List<String> lines = LoggingMetrics.drained("some-function", 1606816800000L);
+
+        assertThat(lines).hasSize(1);
+        assertThat(new ObjectMapper().readTree(lines.get(0)).get("ApiKeyAuthorizerCacheHit").asLong()).isEqualTo(5);
+        assertThat(LoggingMetrics.drained("some-function", 1606816800000L)).isEmpty();
+    }
+
+    @Test
+    public void durationsAreWrittenAsOneCountSumAndMaxPerNameWhenFlushed() throws Exception {
+        LoggingMetrics.drained("some-function", 1606816800000L);
+        LoggingMetrics metrics = new LoggingMetrics();
+
+        metrics.duration("DynamoDBDuration", Duration.ofMillis(12));
+        metrics.duration("DynamoDBDuration", Duration.ofMillis(30));
+        metrics.duration("DynamoDBDuration", Duration.ofMillis(3));
+
+        List<String> lines = LoggingMetrics.drained("some-function", 1606816800000L);
+
+        assertThat(lines).hasSize(1);
+        JsonNode line = new ObjectMapper().readTree(lines.get(0));
+        JsonNode names = line.get("_aws").get("CloudWatchMetrics").get(0).get("Metrics");
+        assertThat(names).extracting(it -> it.get("Name").asText())
+            .containsExactly("DynamoDBDurationCount", "DynamoDBDurationSum", "DynamoDBDurationMax");
+        assertThat(line.get("DynamoDBDurationCount").asLong()).isEqualTo(3);
+        assertThat(line.get("DynamoDBDurationSum").asLong()).isEqualTo(45);
+        assertThat(line.get("DynamoDBDurationMax").asLong()).isEqualTo(30);
+        assertThat(LoggingMetrics.drained("some-function", 1606816800000L)).isEmpty();
+    }
+}
@@ -8,6 +8,7 @@ import uk.nhs.nhsx.core.HttpResponses;
 import uk.nhs.nhsx.core.auth.Authenticator;
 import uk.nhs.nhsx.core.exceptions.HttpStatusCode;
 
+import java.time.Duration;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.CoreMatchers.equalTo;
@@ -43,4 +44,23 @@ public class RoutingTest {
         MatcherAssert.assertThat(response, hasStatus(HttpStatusCode.OK_200));
         MatcherAssert.assertThat(chosen.get(), equalTo(1));
     }
+
+    @Test
+    public void throttlingCountsTimeSpentProducingTheResponse() {
+        Duration throttle = Duration.ofMillis(200);
+        long started = System.nanoTime();
+
+        Routing.throttlingResponse(throttle, () -> {
+            try {
+                Thread.sleep(150);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return HttpResponses.ok();
+        });
+
+        Duration took = Duration.ofNanos(System.nanoTime() - started);
+        MatcherAssert.assertThat(took.compareTo(throttle) >= 0, equalTo(true));
+        MatcherAssert.assertThat(took.compareTo(Duration.ofMillis(300)) < 0, equalTo(true));
+    }
 }
@@ -1,11 +1,15 @@
 package uk.nhs.nhsx.core.routing;
 
+import com.amazonaws.HttpMethod;
 import org.apache.http.entity.ContentType;
+import org.apache.logging.log4j.ThreadContext;
 import org.junit.jupiter.api.Test;
 import uk.nhs.nhsx.core.HttpResponses;
 import uk.nhs.nhsx.core.TestEnvironments;
 import uk.nhs.nhsx.core.exceptions.HttpStatusCode;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
@@ -133,6 +137,19 @@ public class StandardHandlersTest {
         assertThat(StandardHandlers.apiKeyNameFrom(authorizationHeader), is(Optional.empty()));
     }
 
+    @Test
+    public void requestContextIsAvailableToLoggingWhileHandling() {
+        String authorizationHeader = "Bearer " + Base64.getEncoder().encodeToString("mobile:secret".getBytes(StandardCharsets.UTF_8));
+        Map<String, String> seen = new HashMap<>();
 
+        Routing.Handler handler = StandardHandlers.loggingIncomingRequests(r -> {
+            seen.putAll(ThreadContext.getImmutableContext());
+            return HttpResponses.ok();
+        });
+        handler.handle(request().withMethod(HttpMethod.POST).withPath("/submission/diagnosis-keys").withHeader("authorization", authorizationHeader).build());
 
-}
\ No newline at end of file
+        assertThat(seen.get("apiKeyName"), is("mobile"));
+        assertThat(seen.get("route"), is("POST /submission/diagnosis-keys"));
+        assertThat(ThreadContext.containsKey("apiKeyName"), is(false));
+    }
+}
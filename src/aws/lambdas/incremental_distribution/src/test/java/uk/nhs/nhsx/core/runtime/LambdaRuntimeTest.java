@@ -0,0 +1,109 @@
+package uk.nhs.nhsx.core.runtime;
+
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class LambdaRuntimeTest {
+
+    private static final String PREFIX = "/2018-06-01/runtime/";
+
+    private final List<String> calls = new CopyOnWriteArrayList<>();
+    private final Map<String, String> posted = new ConcurrentHashMap<>();
+    private volatile boolean dropResponses = false;
+
+    private HttpServer server;
+    private LambdaRuntime runtime;
+
+    @BeforeEach
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext(PREFIX, this::handle);
+        server.start();
+        runtime = new LambdaRuntime(
+            HttpClient.newHttpClient(),
+            URI.create("http://127.0.0.1:" + server.getAddress().getPort() + PREFIX),
+            Map.of()
+        );
+    }
+
+    @AfterEach
+    public void stop() {
+        server.stop(0);
+    }
+
+    @Test
+    public void postsTheHandlersResponse() throws Exception {
+        runtime.invokeNext((RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>)
+            (event, context) -> new APIGatewayProxyResponseEvent().withStatusCode(200).withBody(event.getPath() + " from " + context.getAwsRequestId()));
+
+        assertThat(calls).containsExactly("invocation/next", "invocation/some-request-id/response");
+        assertThat(posted.get("invocation/some-request-id/response")).contains("\"body\":\"/some/path from some-request-id\"");
+    }
+
+    @Test
+    public void postsAnErrorWhenTheHandlerThrows() throws Exception {
+        runtime.invokeNext((RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>)
+            (event, context) -> { throw new IllegalStateException("handler failed"); });
+
+        assertThat(calls).containsExactly("invocation/next", "invocation/some-request-id/error");
+        assertThat(posted.get("invocation/some-request-id/error"))
+            .contains("\"errorType\":\"java.lang.IllegalStateException\"")
+            .contains("\"errorMessage\":\"handler failed\"");
+    }
+
+    @Test
+    public void aResponseThatCannotBePostedIsNotReportedAsAnError() {
+        dropResponses = true;
+
+        assertThatThrownBy(() -> runtime.invokeNext((RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>)
+            (event, context) -> new APIGatewayProxyResponseEvent().withStatusCode(200)))
+            .isInstanceOf(IOException.class);
+
+        assertThat(calls).containsExactly("invocation/next", "invocation/some-request-id/response");
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath().substring(PREFIX.length());
+        calls.add(path);
+        if (path.equals("invocation/next")) {
+            exchange.getResponseHeaders().add("Lambda-Runtime-Aws-Request-Id", "some-request-id");
+            exchange.getResponseHeaders().add("Lambda-Runtime-Deadline-Ms", String.valueOf(System.currentTimeMillis() + 30_000));
+            respond(exchange, 200, "{\"httpMethod\":\"GET\",\"path\":\"/some/path\"}");
+            return;
+        }
+        posted.put(path, new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+        if (dropResponses && path.endsWith("/response")) {
+            exchange.close();
+            return;
+        }
+        respond(exchange, 202, "");
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package uk.nhs.nhsx.core.signature;
+
+import com.google.common.io.ByteSource;
+import com.google.common.primitives.Bytes;
+import org.junit.jupiter.api.Test;
+import uk.nhs.nhsx.testhelper.DigestSigner;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DistributionSignatureTest {
+
+    private final Instant now = Instant.parse("2020-08-02T10:18:44Z");
+    private final RFC2616DatedSigner signer = new RFC2616DatedSigner(() -> now, new DigestSigner());
+
+    @Test
+    public void streamedSignatureMatchesSigningTheConcatenatedBytes() {
+        byte[] payload = "some distributed content".getBytes(StandardCharsets.UTF_8);
+
+        DatedSignature streamed = signer.signStreaming(new DistributionSignature(ByteSource.wrap(payload)));
+        DatedSignature concatenated = signer.sign(sd -> Bytes.concat((sd.string + ":").getBytes(StandardCharsets.UTF_8), payload));
+
+        assertThat(streamed.signatureDate.string).isEqualTo("Sun, 02 Aug 2020 10:18:44 UTC");
+        assertThat(streamed.signature.asBase64Encoded()).isEqualTo(concatenated.signature.asBase64Encoded());
+    }
+
+    @Test
+    public void signsTheDatePrefixAndTheContent() throws Exception {
+        ByteSource content = new DistributionSignature(ByteSource.wrap(new byte[]{0, 1, 2}))
+            .apply(new DatedSignature.SignatureDate("some-date", now));
+
+        assertThat(content.read()).isEqualTo(Bytes.concat("some-date:".getBytes(StandardCharsets.UTF_8), new byte[]{0, 1, 2}));
+    }
+}
@@ -0,0 +1,89 @@
+package uk.nhs.nhsx.diagnosiskeydist;
+
+import com.amazonaws.services.kms.model.SigningAlgorithmSpec;
+import uk.nhs.nhsx.core.aws.s3.BucketName;
+import uk.nhs.nhsx.core.aws.ssm.ParameterName;
+import uk.nhs.nhsx.core.aws.xray.Tracing;
+import uk.nhs.nhsx.core.signature.RFC2616DatedSigner;
+import uk.nhs.nhsx.core.signature.Signer;
+import uk.nhs.nhsx.diagnosiskeydist.keydistribution.UploadToS3KeyDistributor;
+import uk.nhs.nhsx.diagnosiskeydist.s3.SubmissionFromS3Repository;
+import uk.nhs.nhsx.diagnosiskeydist.utils.ConfigurationUtility;
+import uk.nhs.nhsx.keyfederation.TestKeyPairs;
+import uk.nhs.nhsx.keyfederation.upload.KmsCompatibleSigner;
+import uk.nhs.nhsx.testhelper.local.FaultInjection;
+import uk.nhs.nhsx.testhelper.local.FileSystemS3;
+import uk.nhs.nhsx.testhelper.local.LocalRunOptions;
+import uk.nhs.nhsx.testhelper.local.SyntheticSubmissions;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.List;
+
+import static uk.nhs.nhsx.core.ObjectKeyFilter.includeMobileAndAllowedPrefixes;
+
+/*
+ runs a whole distribution batch against a directory standing in for S3, e.g.
+ ./gradlew benchmarkDistribution -Dbenchmark.args="--submissions-per-hour 200 --latency-ms 20"
+ */
+public class LocalDistributionBenchmark {
+
+    private static final BucketName DISTRIBUTION_BUCKET = BucketName.of("local-distribution");
+
+    public static void main(String[] args) throws Exception {
+        Tracing.disableXRayComplaintsForMainClasses();
+
+        LocalRunOptions options = LocalRunOptions.parse(args);
+        Path root = options.root();
+        FileSystemS3 s3 = new FileSystemS3(root, options.faults());
+
+        Instant now = validBatchStart(Instant.now());
+
+        long generateStart = System.nanoTime();
+        int submissions = new SyntheticSubmissions(new FileSystemS3(root, FaultInjection.NONE), options.seed)
+            .generate(BucketName.of(ConfigurationUtility.SUBMISSION_JSON_BUCKET_NAME), now, Duration.ofDays(options.days), options.submissionsPerHour, options.keysPerSubmission);
+        Duration generated = Duration.ofNanos(System.nanoTime() - generateStart);
+
+        Signer signer = new KmsCompatibleSigner(TestKeyPairs.INSTANCE.getEcPrime256r1().getPrivate(), SigningAlgorithmSpec.ECDSA_SHA_256);
+
+        DistributionService service = new DistributionService(
+            new SubmissionFromS3Repository(s3, includeMobileAndAllowedPrefixes(List.of())),
+            new ExposureProtobuf("uk.nhs.covid19.local"),
+            new UploadToS3KeyDistributor(s3, new RFC2616DatedSigner(() -> now, signer)),
+            signer,
+            (distributionId, pattern) -> { },
+            s3,
+            new BatchProcessingConfig(
+                false,
+                DISTRIBUTION_BUCKET,
+                "local-distribution-id",
+                "/distribution/daily/*",
+                "/distribution/two-hourly/*",
+                ParameterName.of("unused"),
+                ParameterName.of("unused")
+            )
+        );
+
+        long start = System.nanoTime();
+        service.distributeKeys(Date.from(now));
+        Duration distributed = Duration.ofNanos(System.nanoTime() - start);
+
+        int zips = s3.getObjectSummaries(DISTRIBUTION_BUCKET.value).size();
+
+        System.out.printf("root=%s%n%s, %s%n", root, options, options.faults());
+        System.out.printf("generated %d submissions in %d ms%n", submissions, generated.toMillis());
+        System.out.printf("distributed %d zips in %d ms (%.1f submissions/s)%n",
+            zips, distributed.toMillis(), submissions * 1000.0 / Math.max(1, distributed.toMillis()));
+    }
+
+    // inside the window the scheduled run starts in, a few minutes before an even hour
+    private static Instant validBatchStart(Instant instant) {
+        Instant hour = instant.truncatedTo(ChronoUnit.HOURS);
+        long hourOfDay = hour.getEpochSecond() / 3600 % 24;
+        Instant oddHour = hourOfDay % 2 == 0 ? hour.minus(Duration.ofHours(1)) : hour;
+        return oddHour.plus(Duration.ofMinutes(46)).plusSeconds(30);
+    }
+}
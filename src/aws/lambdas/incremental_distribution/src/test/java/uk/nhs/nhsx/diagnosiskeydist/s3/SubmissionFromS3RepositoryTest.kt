@@ -1,10 +1,13 @@
 package uk.nhs.nhsx.diagnosiskeydist.s3
 
+import com.amazonaws.services.s3.model.S3Object
 import com.amazonaws.services.s3.model.S3ObjectSummary
 import org.assertj.core.api.Assertions.assertThat
 import org.junit.jupiter.api.Test
+import uk.nhs.nhsx.core.aws.s3.AwsS3
 import uk.nhs.nhsx.testhelper.mocks.FakeDiagnosisKeysS3
 import java.util.*
+import java.util.concurrent.atomic.AtomicInteger
 import java.util.function.Predicate
 
 class SubmissionFromS3RepositoryTest {
@@ -97,5 +100,56 @@ class SubmissionFromS3RepositoryTest {
         assertThat(submissions).hasSize(2)
     }
 
-}
+    @Test
+    fun `cursor lists the bucket once and yields successive batches`() {
+        val now = System.currentTimeMillis()
+        var listings = 0
+        val summaries = listOf(
+            S3ObjectSummary().apply { key = "A"; lastModified = Date(now + 60000) },
+            S3ObjectSummary().apply { key = "B"; lastModified = Date(now + 2 * 60000) },
+            S3ObjectSummary().apply { key = "C"; lastModified = Date(now + 2 * 60000) },
+            S3ObjectSummary().apply { key = "D"; lastModified = Date(now + 3 * 60000) },
+            S3ObjectSummary().apply { key = "E"; lastModified = Date(now + 4 * 60000) }
+        )
+        val fakeS3 = object : AwsS3 by FakeDiagnosisKeysS3(summaries) {
+            override fun getObjectSummaries(bucketName: String?): List<S3ObjectSummary> {
+                listings++
+                return summaries
+            }
+        }
+
+        SubmissionFromS3Repository(fakeS3) { true }.cursor(now, 2, 3).use { cursor ->
+            assertThat(cursor.next().map { it.submissionDate.time }).containsExactly(now + 60000, now + 2 * 60000, now + 2 * 60000)
+            assertThat(cursor.next().map { it.submissionDate.time }).containsExactly(now + 3 * 60000, now + 4 * 60000)
+            assertThat(cursor.next()).isEmpty()
+        }
+
+        assertThat(listings).isEqualTo(1)
+    }
 
+    @Test
+    fun `closing the cursor early leaves no prefetch running`() {
+        val now = System.currentTimeMillis()
+        val started = AtomicInteger()
+        val finished = AtomicInteger()
+        val summaries = listOf(
+            S3ObjectSummary().apply { key = "A"; lastModified = Date(now + 60000) },
+            S3ObjectSummary().apply { key = "B"; lastModified = Date(now + 2 * 60000) },
+            S3ObjectSummary().apply { key = "C"; lastModified = Date(now + 3 * 60000) }
+        )
+        val delegate = FakeDiagnosisKeysS3(summaries)
+        val fakeS3 = object : AwsS3 by delegate {
+            override fun getObject(bucketName: String?, key: String?): Optional<S3Object> {
+                started.incrementAndGet()
+                Thread.sleep(100)
+                return delegate.getObject(bucketName, key).also { finished.incrementAndGet() }
+            }
+        }
+
+        SubmissionFromS3Repository(fakeS3) { true }.cursor(now, 1, 1).use { cursor ->
+            assertThat(cursor.next()).hasSize(1)
+        }
+
+        assertThat(finished.get()).isEqualTo(started.get())
+    }
+}
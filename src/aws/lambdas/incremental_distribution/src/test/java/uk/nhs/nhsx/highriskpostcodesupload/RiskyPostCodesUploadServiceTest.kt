@@ -119,10 +119,7 @@ class RiskyPostCodesUploadServiceTest {
 
     private val persistence = mockk<RiskyPostCodesPersistence> {
         every { retrievePostDistrictRiskLevels() } returns riskLevelsMetadata
-        every { uploadToBackup(any()) } just Runs
-        every { uploadToRaw(any()) } just Runs
-        every { uploadPostDistrictsVersion1(capture(postDistrictsV1Slot)) } just Runs
-        every { uploadPostDistrictsVersion2(capture(postDistrictsV2Slot)) } just Runs
+        every { uploadAll(any(), any(), capture(postDistrictsV1Slot), capture(postDistrictsV2Slot)) } just Runs
     }
 
     private val service = RiskyPostCodesUploadService(persistence, awsCloudFront, "cloudfront-dist-id", "cloudfront-invalidation-pattern")
@@ -223,10 +220,7 @@ class RiskyPostCodesUploadServiceTest {
     private fun verifyMocksInvoked(json: String, csv: String) {
         verifySequence {
             persistence.retrievePostDistrictRiskLevels()
-            persistence.uploadToBackup(json)
-            persistence.uploadToRaw(csv)
-            persistence.uploadPostDistrictsVersion1(any())
-            persistence.uploadPostDistrictsVersion2(any())
+            persistence.uploadAll(json, csv, any(), any())
             awsCloudFront.invalidateCache("cloudfront-dist-id", "cloudfront-invalidation-pattern")
         }
     }
@@ -3,6 +3,7 @@ package uk.nhs.nhsx.isolationpayment
 import com.amazonaws.HttpMethod
 import com.amazonaws.services.kms.model.SigningAlgorithmSpec
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent
+import com.google.common.io.ByteSource
 import io.mockk.every
 import io.mockk.mockk
 import org.assertj.core.api.Assertions.assertThat
@@ -41,7 +42,7 @@ class IsolationPaymentOrderHandlerTest {
     private val authenticator = Authenticator { true }
 
     private val contentSigner = mockk<Signer> {
-        every { sign(any()) } returns
+        every { sign(any<ByteSource>()) } returns
             Signature(
                 KeyId.of("TEST_KEY_ID"),
                 SigningAlgorithmSpec.ECDSA_SHA_256, "TEST_SIGNATURE".toByteArray()
@@ -0,0 +1,122 @@
+package uk.nhs.nhsx.keyfederation
+
+import com.amazonaws.services.dynamodbv2.document.DynamoDB
+import com.amazonaws.services.dynamodbv2.local.embedded.DynamoDBEmbedded
+import com.amazonaws.services.dynamodbv2.model.AttributeDefinition
+import com.amazonaws.services.dynamodbv2.model.CreateTableRequest
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement
+import com.amazonaws.services.dynamodbv2.model.KeyType
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import uk.nhs.nhsx.keyfederation.BatchTagService.FederationBatch
+import java.time.Duration
+import java.time.LocalDate
+
+class BatchTagDynamoDBServiceLocalTest {
+
+    private val dbClient = DynamoDBEmbedded.create().amazonDynamoDB()
+    private val tableName = "federation_state_table"
+    private val table = DynamoDB(dbClient).getTable(tableName)
+    private val sep15 = LocalDate.of(2020, 9, 15)
+
+    // long enough that nothing is written in the background while a test runs
+    private fun service() = BatchTagDynamoDBService(dbClient, tableName, Duration.ofMinutes(10))
+
+    @BeforeEach
+    fun setup() {
+        dbClient.createTable(CreateTableRequest()
+            .withTableName(tableName)
+            .withKeySchema(KeySchemaElement().withAttributeName("id").withKeyType(KeyType.HASH))
+            .withAttributeDefinitions(AttributeDefinition().withAttributeName("id").withAttributeType("S"))
+            .withProvisionedThroughput(ProvisionedThroughput(100L, 100L)))
+    }
+
+    @Test
+    fun `updates are coalesced until flushed and read back before they are`() {
+        val service = service()
+
+        service.updateLatestFederationBatch(FederationBatch(BatchTag.of("a"), sep15))
+        service.updateLatestFederationBatch(FederationBatch(BatchTag.of("b"), sep15))
+
+        assertThat(table.getItem("id", "lastDownloadState")).isNull()
+        assertThat(service.latestFederationBatch.get().batchTag.value).isEqualTo("b")
+
+        service.flush()
+
+        assertThat(table.getItem("id", "lastDownloadState").getString("batchTag")).isEqualTo("b")
+    }
+
+    @Test
+    fun `a slower invocation does not move the download checkpoint back`() {
+        val faster = service()
+        val slower = service()
+        faster.latestFederationBatch
+        slower.latestFederationBatch
+
+        faster.updateLatestFederationBatch(FederationBatch(BatchTag.of("b"), sep15))
+        faster.flush()
+        slower.updateLatestFederationBatch(FederationBatch(BatchTag.of("a"), sep15))
+        slower.flush()
+
+        assertThat(table.getItem("id", "lastDownloadState").getString("batchTag")).isEqualTo("b")
+        assertThat(slower.latestFederationBatch.get().batchTag.value).isEqualTo("b")
+    }
+
+    @Test
+    fun `after losing to a concurrent invocation the next write follows on from what it stored`() {
+        val faster = service()
+        val slower = service()
+        faster.latestFederationBatch
+        slower.latestFederationBatch
+
+        faster.updateLatestFederationBatch(FederationBatch(BatchTag.of("b"), sep15))
+        faster.flush()
+        slower.updateLatestFederationBatch(FederationBatch(BatchTag.of("a"), sep15))
+        slower.flush()
+        slower.updateLatestFederationBatch(FederationBatch(BatchTag.of("c"), sep15))
+        slower.flush()
+
+        assertThat(table.getItem("id", "lastDownloadState").getString("batchTag")).isEqualTo("c")
+    }
+
+    @Test
+    fun `a failed flush is suppressed by the failure of the work it follows`() {
+        val flushFailure = RuntimeException("flush failed")
+        val service = object : InMemoryBatchTagService() {
+            override fun flush() = throw flushFailure
+        }
+
+        assertThatThrownBy { service.flushedAfter<String> { throw IllegalStateException("work failed") } }
+            .isInstanceOf(IllegalStateException::class.java)
+            .hasSuppressedException(flushFailure)
+    }
+
+    @Test
+    fun `upload checkpoint never goes backwards`() {
+        val service = service()
+
+        service.updateLastUploadState(200)
+        service.flush()
+        service.updateLastUploadState(100)
+        service.flush()
+
+        assertThat(service.lastUploadState.get().lastUploadedTimeStamp).isEqualTo(200L)
+    }
+
+    @Test
+    fun `backfill checkpoints are kept per day`() {
+        val service = service()
+
+        service.updateBackfillBatch(sep15, BatchTagService.BackfillBatch(BatchTag.of("a"), false))
+        service.updateBackfillBatch(sep15.minusDays(1), BatchTagService.BackfillBatch(null, true))
+        service.flush()
+
+        val reloaded = service()
+        assertThat(reloaded.getBackfillBatch(sep15).get().batchTag.value).isEqualTo("a")
+        assertThat(reloaded.getBackfillBatch(sep15).get().complete).isFalse()
+        assertThat(reloaded.getBackfillBatch(sep15.minusDays(1)).get().complete).isTrue()
+    }
+}
@@ -5,6 +5,7 @@ import io.mockk.every
 import io.mockk.mockk
 import io.mockk.verify
 import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
 import org.junit.jupiter.api.Assertions.assertEquals
 import org.junit.jupiter.api.Test
 import uk.nhs.nhsx.core.aws.s3.BucketName
@@ -20,6 +21,9 @@ import java.time.ZoneOffset
 import java.time.temporal.ChronoUnit
 import java.util.*
 import java.util.Optional.empty
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
 import java.util.function.Supplier
 
 class DiagnosisKeysDownloadServiceTest {
@@ -276,4 +280,126 @@ class DiagnosisKeysDownloadServiceTest {
         assertThat(batchesProcessed).isEqualTo(2)
     }
 
-}
\ No newline at end of file
+    @Test
+    fun `next batch is fetched while the current one is stored and its tag only advances once stored`() {
+        val nextFetched = CountDownLatch(1)
+        val tagWhileStoring = mutableListOf<BatchTag?>()
+        val batchTagService = InMemoryBatchTagService(BatchTag.of("xyz"), sep15)
+        val uploader = mockk<FederatedKeyUploader>()
+
+        every { interopClient.getExposureKeysBatch(sep15, "?batchTag=xyz") } returns batch
+        every { interopClient.getExposureKeysBatch(sep15, "?batchTag=abc") } answers {
+            nextFetched.countDown()
+            empty()
+        }
+        every { uploader.acceptKeysFromFederatedServer(any()) } answers {
+            assertThat(nextFetched.await(5, TimeUnit.SECONDS)).isTrue()
+            tagWhileStoring.add(batchTagService.batchTag)
+        }
+        every { context.remainingTimeInMillis } returns 10000
+
+        val service = DiagnosisKeysDownloadService(clock, interopClient, uploader, batchTagService, false, -1, 14, 5, context)
+
+        val batchesProcessed = service.downloadFromFederatedServerAndStoreKeys()
+
+        assertThat(batchesProcessed).isEqualTo(1)
+        assertThat(tagWhileStoring.map { it?.value }).containsExactly("xyz")
+        assertThat(batchTagService.batchTag!!.value).isEqualTo("abc")
+    }
+
+    @Test
+    fun `a fetch ahead of a batch that fails to store is interrupted`() {
+        val fetchStarted = CountDownLatch(1)
+        val fetchInterrupted = CountDownLatch(1)
+        val uploader = mockk<FederatedKeyUploader>()
+
+        every { interopClient.getExposureKeysBatch(sep15, "?batchTag=xyz") } returns batch
+        every { interopClient.getExposureKeysBatch(sep15, "?batchTag=abc") } answers {
+            fetchStarted.countDown()
+            try {
+                Thread.sleep(60_000)
+            } catch (e: InterruptedException) {
+                fetchInterrupted.countDown()
+            }
+            empty()
+        }
+        every { uploader.acceptKeysFromFederatedServer(any()) } answers {
+            assertThat(fetchStarted.await(5, TimeUnit.SECONDS)).isTrue()
+            throw IllegalStateException("store failed")
+        }
+        every { context.remainingTimeInMillis } returns 10000
+
+        val prefetch = Executors.newSingleThreadExecutor()
+        try {
+            val service = DiagnosisKeysDownloadService(
+                clock, interopClient, uploader, InMemoryBatchTagService(BatchTag.of("xyz"), sep15), false, -1, 14, 5, context, prefetch
+            )
+
+            assertThatThrownBy { service.downloadFromFederatedServerAndStoreKeys() }.hasMessage("store failed")
+            assertThat(fetchInterrupted.await(5, TimeUnit.SECONDS)).isTrue()
+        } finally {
+            prefetch.shutdownNow()
+        }
+    }
+
+    @Test
+    fun `backfill follows each day's chain and leaves the forward checkpoint alone`() {
+        val sep02 = LocalDate.of(2020, 9, 2)
+        every { interopClient.getExposureKeysBatch(sep01, "") } returns batch
+        every { interopClient.getExposureKeysBatch(sep01, "?batchTag=abc") } returns empty()
+        every { interopClient.getExposureKeysBatch(sep02, "") } returns Optional.of(DiagnosisKeysDownloadResponse("def", listOf(
+            ExposureDownload("kzQt9Lf3xjtAlMtm7jkSqw==", rollingStartNumber, 1, 144, "GB-EAW", listOf("GB-EAW"))
+        )))
+        every { interopClient.getExposureKeysBatch(sep02, "?batchTag=def") } returns empty()
+        every { context.remainingTimeInMillis } returns 10000
+
+        val batchTagService = InMemoryBatchTagService(BatchTag.of("xyz"), sep15)
+        val service = DiagnosisKeysDownloadService(clock, interopClient, keyUploader, batchTagService, false, -1, 14, 5, context)
+
+        val batchesProcessed = service.backfillFromFederatedServerAndStoreKeys(sep01, sep02, 2)
+
+        assertThat(batchesProcessed).isEqualTo(2)
+        assertThat(fakeS3Storage.count).isEqualTo(2)
+        assertThat(batchTagService.backfillBatches[sep01]!!.batchTag.value).isEqualTo("abc")
+        assertThat(batchTagService.backfillBatches[sep01]!!.complete).isTrue()
+        assertThat(batchTagService.backfillBatches[sep02]!!.batchTag.value).isEqualTo("def")
+        assertThat(batchTagService.backfillBatches[sep02]!!.complete).isTrue()
+        assertThat(batchTagService.batchTag!!.value).isEqualTo("xyz")
+        assertThat(batchTagService.batchDate).isEqualTo(sep15)
+    }
+
+    @Test
+    fun `backfill resumes from each day's checkpoint and skips complete days`() {
+        val sep02 = LocalDate.of(2020, 9, 2)
+        every { interopClient.getExposureKeysBatch(sep02, "?batchTag=xyz") } returns batch
+        every { interopClient.getExposureKeysBatch(sep02, "?batchTag=abc") } returns empty()
+        every { context.remainingTimeInMillis } returns 10000
+
+        val batchTagService = InMemoryBatchTagService()
+        batchTagService.updateBackfillBatch(sep01, BatchTagService.BackfillBatch(BatchTag.of("def"), true))
+        batchTagService.updateBackfillBatch(sep02, BatchTagService.BackfillBatch(BatchTag.of("xyz"), false))
+        val service = DiagnosisKeysDownloadService(clock, interopClient, keyUploader, batchTagService, false, -1, 14, 5, context)
+
+        val batchesProcessed = service.backfillFromFederatedServerAndStoreKeys(sep01, sep02, 2)
+
+        assertThat(batchesProcessed).isEqualTo(1)
+        assertThat(batchTagService.backfillBatches[sep02]!!.batchTag.value).isEqualTo("abc")
+        assertThat(batchTagService.backfillBatches[sep02]!!.complete).isTrue()
+        verify(exactly = 0) { interopClient.getExposureKeysBatch(sep01, any()) }
+    }
+
+    @Test
+    fun `backfill stops a day that runs out of time without completing it`() {
+        every { interopClient.getExposureKeysBatch(sep01, "") } returns batch
+        every { context.remainingTimeInMillis } returns -2
+
+        val batchTagService = InMemoryBatchTagService()
+        val service = DiagnosisKeysDownloadService(clock, interopClient, keyUploader, batchTagService, false, -1, 14, 5, context)
+
+        val batchesProcessed = service.backfillFromFederatedServerAndStoreKeys(sep01, sep01, 4)
+
+        assertThat(batchesProcessed).isEqualTo(1)
+        assertThat(batchTagService.backfillBatches[sep01]!!.batchTag.value).isEqualTo("abc")
+        assertThat(batchTagService.backfillBatches[sep01]!!.complete).isFalse()
+    }
+}
@@ -5,7 +5,6 @@ import com.amazonaws.services.lambda.runtime.Context
 import com.amazonaws.services.s3.model.S3ObjectSummary
 import com.amazonaws.xray.strategy.ContextMissingStrategy
 import com.fasterxml.jackson.annotation.JsonProperty
-import com.fasterxml.jackson.core.type.TypeReference
 import com.github.tomakehurst.wiremock.WireMockServer
 import com.github.tomakehurst.wiremock.client.WireMock.aResponse
 import com.github.tomakehurst.wiremock.client.WireMock.equalTo
@@ -22,14 +21,21 @@ import org.junit.jupiter.api.Test
 import org.mockito.ArgumentCaptor
 import org.mockito.Mockito
 import uk.nhs.nhsx.core.Jackson
-import uk.nhs.nhsx.core.SystemObjectMapper
 import uk.nhs.nhsx.testhelper.mocks.FakeDiagnosisKeysS3
 import uk.nhs.nhsx.diagnosiskeydist.s3.SubmissionFromS3Repository
 import uk.nhs.nhsx.keyfederation.upload.DiagnosisKeysUploadRequest
 import uk.nhs.nhsx.keyfederation.upload.DiagnosisKeysUploadService
 import uk.nhs.nhsx.keyfederation.upload.ExposureUpload
 import uk.nhs.nhsx.keyfederation.upload.JWS
+import uk.nhs.nhsx.keyfederation.upload.RequestBodyBuffer
+import uk.nhs.nhsx.diagnosiskeydist.Submission
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKey
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKeyPayload
+import uk.nhs.nhsx.keyfederation.upload.DiagnosisKeysUploadResponse
 import uk.nhs.nhsx.testhelper.mocks.FakeSubmissionRepository
+import java.time.Instant
+import java.time.temporal.ChronoUnit
+import java.util.concurrent.Executor
 import java.time.OffsetDateTime
 import java.time.ZoneOffset
 import java.time.format.DateTimeFormatter
@@ -52,6 +58,11 @@ class DiagnosisKeysUploadServiceTest {
 
     private val context = Mockito.mock(Context::class.java)
 
+    private fun signingWith(signature: String) {
+        Mockito.doAnswer { (it.arguments[1] as RequestBodyBuffer).writeBytes(signature.toByteArray()) }
+            .`when`(jws).sign(Mockito.any(JWS.Payload::class.java), Mockito.any(RequestBodyBuffer::class.java))
+    }
+
     @Test
     fun testPreUploadTransformations() {
         val service = DiagnosisKeysUploadService(
@@ -86,7 +97,7 @@ class DiagnosisKeysUploadServiceTest {
                         }
                     """.trimIndent())
             ))
-        Mockito.`when`(jws.sign(Mockito.anyString())).thenReturn("DUMMY_SIGNATURE")
+        signingWith("DUMMY_SIGNATURE")
 
         val service = DiagnosisKeysUploadService(
             InteropClient(wireMockRule.baseUrl(), "DUMMY_TOKEN", jws),
@@ -122,7 +133,7 @@ class DiagnosisKeysUploadServiceTest {
                     """.trimIndent())
             ))
 
-        Mockito.`when`(jws.sign(Mockito.anyString())).thenReturn("DUMMY_SIGNATURE")
+        signingWith("DUMMY_SIGNATURE")
 
         val spyInteropClient = Mockito.spy(InteropClient(wireMockRule.baseUrl(), "DUMMY_TOKEN", jws))
 
@@ -150,10 +161,11 @@ class DiagnosisKeysUploadServiceTest {
         )
         service.loadKeysAndUploadToFederatedServer()
 
-        val captor = ArgumentCaptor.forClass(String::class.java)
+        @Suppress("UNCHECKED_CAST")
+        val captor = ArgumentCaptor.forClass(List::class.java) as ArgumentCaptor<List<ExposureUpload>>
         Mockito.verify(spyInteropClient).uploadKeys(captor.capture())
 
-        val exposuresUploaded = SystemObjectMapper.MAPPER.readValue(captor.value, object : TypeReference<List<ExposureUpload>>() {})
+        val exposuresUploaded = captor.value
 
         assertThat(exposuresUploaded).hasSize(2)
 
@@ -179,7 +191,7 @@ class DiagnosisKeysUploadServiceTest {
                     """.trimIndent())
             ))
 
-        Mockito.`when`(jws.sign(Mockito.anyString())).thenReturn("DUMMY_SIGNATURE")
+        signingWith("DUMMY_SIGNATURE")
 
         val spyInteropClient = Mockito.spy(InteropClient(wireMockRule.baseUrl(), "DUMMY_TOKEN", jws))
 
@@ -204,10 +216,11 @@ class DiagnosisKeysUploadServiceTest {
         )
         service.loadKeysAndUploadToFederatedServer()
 
-        val captor = ArgumentCaptor.forClass(String::class.java)
+        @Suppress("UNCHECKED_CAST")
+        val captor = ArgumentCaptor.forClass(List::class.java) as ArgumentCaptor<List<ExposureUpload>>
         Mockito.verify(spyInteropClient).uploadKeys(captor.capture())
 
-        val exposuresUploaded = SystemObjectMapper.MAPPER.readValue(captor.value, object : TypeReference<List<ExposureUpload>>() {})
+        val exposuresUploaded = captor.value
 
         assertThat(exposuresUploaded).hasSize(1)
 
@@ -233,7 +246,7 @@ class DiagnosisKeysUploadServiceTest {
                     """.trimIndent())
             ))
 
-        Mockito.`when`(jws.sign(Mockito.anyString())).thenReturn("DUMMY_SIGNATURE")
+        signingWith("DUMMY_SIGNATURE")
 
         val batchTagService = Mockito.spy(InMemoryBatchTagService())
         val service = DiagnosisKeysUploadService(
@@ -265,7 +278,7 @@ class DiagnosisKeysUploadServiceTest {
                     """.trimIndent())
             ))
 
-        Mockito.`when`(jws.sign(Mockito.anyString())).thenReturn("DUMMY_SIGNATURE")
+        signingWith("DUMMY_SIGNATURE")
         Mockito.`when`(context.remainingTimeInMillis).thenReturn(-2)
 
         val spyInteropClient = Mockito.spy(InteropClient(wireMockRule.baseUrl(), "DUMMY_TOKEN", jws))
@@ -321,7 +334,7 @@ class DiagnosisKeysUploadServiceTest {
                     """.trimIndent())
             ))
 
-        Mockito.`when`(jws.sign(Mockito.anyString())).thenReturn("DUMMY_SIGNATURE")
+        signingWith("DUMMY_SIGNATURE")
         Mockito.`when`(context.remainingTimeInMillis).thenReturn(1000000)
 
         val spyInteropClient = Mockito.spy(InteropClient(wireMockRule.baseUrl(), "DUMMY_TOKEN", jws))
@@ -361,6 +374,95 @@ class DiagnosisKeysUploadServiceTest {
 
     }
 
+    @Test
+    fun `expired keys are not uploaded`() {
+        val interopClient = Mockito.mock(InteropClient::class.java)
+        Mockito.`when`(interopClient.uploadKeys(Mockito.anyList())).thenReturn(DiagnosisKeysUploadResponse("abc", 1))
+        val now = Instant.parse("2020-09-15T00:00:00Z")
+        val service = uploadService(interopClient, now, 100, Int.MAX_VALUE, 1)
+
+        service.uploadOneBatchToFederatedServer(listOf(
+            submission(now.minusSeconds(10), "W2zb3BeMWt6Xr2u0ABG32Q==" to now.minus(1, ChronoUnit.DAYS)),
+            submission(now.minusSeconds(5), "kzQt9Lf3xjtAlMtm7jkSqw==" to now.minus(20, ChronoUnit.DAYS))
+        ), now.minusSeconds(60), 1)
+
+        @Suppress("UNCHECKED_CAST")
+        val captor = ArgumentCaptor.forClass(List::class.java) as ArgumentCaptor<List<ExposureUpload>>
+        Mockito.verify(interopClient).uploadKeys(captor.capture())
+        assertThat(captor.value.map { it.keyData }).containsExactly("W2zb3BeMWt6Xr2u0ABG32Q==")
+    }
+
+    @Test
+    fun `keys are uploaded in chunks and the watermark stops before the first chunk not accepted`() {
+        val interopClient = Mockito.mock(InteropClient::class.java)
+        Mockito.`when`(interopClient.uploadKeys(Mockito.anyList()))
+            .thenReturn(DiagnosisKeysUploadResponse("abc", 2))
+            .thenReturn(null)
+            .thenReturn(DiagnosisKeysUploadResponse("def", 2))
+        val now = Instant.parse("2020-09-15T00:00:00Z")
+        val lastStored = mutableListOf<Long>()
+        val recording = object : InMemoryBatchTagService() {
+            override fun updateLastUploadState(lastUploadState: Long?) {
+                lastStored.add(lastUploadState!!)
+            }
+        }
+        val service = uploadService(interopClient, now, 2, Int.MAX_VALUE, 1, recording)
+        val yesterday = now.minus(1, ChronoUnit.DAYS)
+
+        val result = service.uploadOneBatchToFederatedServer(listOf(
+            submission(now.minusSeconds(30), "W2zb3BeMWt6Xr2u0ABG32Q==" to yesterday, "B3xb3BeMWt6Xr2u0ABG45F==" to yesterday),
+            submission(now.minusSeconds(20), "kzQt9Lf3xjtAlMtm7jkSqw==" to yesterday, "QHtCeDEgfmiPUtJWmyIzrw==" to yesterday),
+            submission(now.minusSeconds(10), "ogNW4Ra+Zdds1ShN56yv3w==" to yesterday)
+        ), now.minusSeconds(60), 1)
+
+        Mockito.verify(interopClient, Mockito.times(2)).uploadKeys(Mockito.anyList())
+        assertThat(result.lastUploadedSubmissionTime).isEqualTo(now.minusSeconds(30))
+        assertThat(lastStored).containsExactly(now.minusSeconds(30).epochSecond)
+    }
+
+    @Test
+    fun `a chunk closes before it goes over the byte budget`() {
+        val now = Instant.parse("2020-09-15T00:00:00Z")
+        val yesterday = now.minus(1, ChronoUnit.DAYS)
+        val service = uploadService(Mockito.mock(InteropClient::class.java), now, 100, 400, 1)
+
+        val chunks = service.chunksOf(listOf(
+            submission(now.minusSeconds(30), "W2zb3BeMWt6Xr2u0ABG32Q==" to yesterday, "B3xb3BeMWt6Xr2u0ABG45F==" to yesterday),
+            submission(now.minusSeconds(20), "kzQt9Lf3xjtAlMtm7jkSqw==" to yesterday)
+        ))
+
+        assertThat(chunks.map { it.exposures.size }).containsExactly(2, 1)
+        assertThat(chunks.map { it.submittedUpTo }).containsExactly(now.minusSeconds(30), now.minusSeconds(20))
+    }
+
+    private fun uploadService(interopClient: InteropClient,
+                              now: Instant,
+                              maxChunkKeys: Int,
+                              maxChunkBytes: Int,
+                              maxConcurrentUploads: Int,
+                              batchTagService: BatchTagService = InMemoryBatchTagService()) = DiagnosisKeysUploadService(
+        interopClient,
+        FakeSubmissionRepository(listOf()),
+        batchTagService,
+        "GB-EAW",
+        false, -1,
+        14, 0,
+        100,
+        context,
+        maxChunkKeys,
+        maxChunkBytes,
+        maxConcurrentUploads,
+        { now },
+        Executor { it.run() }
+    )
+
+    private fun submission(submittedAt: Instant, vararg keys: Pair<String, Instant>) = Submission(
+        Date.from(submittedAt),
+        StoredTemporaryExposureKeyPayload(keys.map { (key, start) ->
+            StoredTemporaryExposureKey(key, Math.toIntExact(start.epochSecond / 600 / 144 * 144), 144, 7)
+        })
+    )
+
     class UploadPayloadPattern(@JsonProperty matchesPayloadPattern: String = """{ batchTag: [a-f0-9\-]+, payload: "DUMMY_SIGNATURE" }""") : StringValuePattern(matchesPayloadPattern) {
         override fun match(value: String?): MatchResult {
             return Jackson.deserializeMaybe(value, DiagnosisKeysUploadRequest::class.java).map {
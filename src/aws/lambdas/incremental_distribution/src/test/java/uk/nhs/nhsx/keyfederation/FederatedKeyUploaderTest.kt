@@ -1,21 +1,28 @@
 package uk.nhs.nhsx.keyfederation
 
 import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
 import org.hamcrest.CoreMatchers.equalTo
 import org.hamcrest.MatcherAssert.assertThat
 import org.junit.jupiter.api.Test
 import uk.nhs.nhsx.testhelper.data.TestData
+import com.google.common.io.ByteSource
+import org.apache.http.entity.ContentType
 import uk.nhs.nhsx.core.aws.s3.BucketName
+import uk.nhs.nhsx.core.aws.s3.MetaHeader
 import uk.nhs.nhsx.core.aws.s3.ObjectKey
+import uk.nhs.nhsx.core.aws.s3.S3Storage
 import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKey
 import uk.nhs.nhsx.keyfederation.download.DiagnosisKeysDownloadResponse
 import uk.nhs.nhsx.keyfederation.download.ExposureDownload
+import uk.nhs.nhsx.testhelper.mocks.FakeMetrics
 import uk.nhs.nhsx.testhelper.mocks.FakeS3StorageMultipleObjects
 import java.nio.charset.StandardCharsets
 import java.time.Instant
 import java.time.LocalDateTime
 import java.time.ZoneOffset
 import java.time.temporal.ChronoUnit
+import java.util.concurrent.Executor
 import java.util.function.Supplier
 
 class FederatedKeyUploaderTest {
@@ -67,12 +74,11 @@ class FederatedKeyUploaderTest {
         val payload = DiagnosisKeysDownloadResponse("batchTag", exposures)
         keyUploader.acceptKeysFromFederatedServer(payload)
 
-        val firstUpload = s3Storage.fakeS3Objects[0]
-        val secondUpload = s3Storage.fakeS3Objects[1]
+        // origins are stored concurrently, so the order of the uploads is not fixed
+        val firstUpload = s3Storage.fakeS3Objects.single { it.name == objectKeyNI }
+        val secondUpload = s3Storage.fakeS3Objects.single { it.name == objectKeyIE }
         assertThat(s3Storage.count, equalTo(2))
         assertThat(s3Storage.bucket, equalTo<BucketName>(bucketName))
-        assertThat(firstUpload.name, equalTo<ObjectKey>(objectKeyNI))
-        assertThat(secondUpload.name, equalTo<ObjectKey>(objectKeyIE))
         assertThat(String(firstUpload.bytes.read(), StandardCharsets.UTF_8), equalTo(TestData.STORED_FEDERATED_KEYS_PAYLOAD_NI))
         assertThat(String(secondUpload.bytes.read(), StandardCharsets.UTF_8), equalTo(TestData.STORED_FEDERATED_KEYS_PAYLOAD_IE))
     }
@@ -128,5 +134,54 @@ class FederatedKeyUploaderTest {
         assertThat(s3Storage.count, equalTo(0))
     }
 
+    @Test
+    fun countsValidAndInvalidKeysPerOrigin() {
+        val metrics = FakeMetrics()
+        val keyUploader = FederatedKeyUploader(
+            s3Storage, bucketName, "federatedKeyPrefix", clock, validOrigins, SeenKeys.NONE, Executor { it.run() }, metrics
+        )
+        val rollingStartNumber = LocalDateTime.ofInstant(clock.get().minus(1, ChronoUnit.HOURS), ZoneOffset.UTC).toEpochSecond(ZoneOffset.UTC) / 600L
+        val expired = LocalDateTime.ofInstant(clock.get().minus(20, ChronoUnit.DAYS), ZoneOffset.UTC).toEpochSecond(ZoneOffset.UTC) / 600L
+        val payload = DiagnosisKeysDownloadResponse(
+            "batchTag",
+            listOf(
+                ExposureDownload("W2zb3BeMWt6Xr2u0ABG32Q==", rollingStartNumber.toInt(), 7, 144, "NI", listOf("NI")),
+                ExposureDownload("B3xb3BeMWt6Xr2u0ABG45F==", expired.toInt(), 7, 144, "NI", listOf("NI")),
+                ExposureDownload("kzQt9Lf3xjtAlMtm7jkSqw==", rollingStartNumber.toInt(), 4, 144, "IE", listOf("IE")),
+                ExposureDownload("kzQt9Lf3xjtAlMtm7jkSqw==", rollingStartNumber.toInt(), 4, 144, "GB", listOf("GB"))
+            )
+        )
+        keyUploader.acceptKeysFromFederatedServer(payload)
+
+        assertThat(s3Storage.count, equalTo(2))
+        assertThat(metrics.count("FederatedKeysValid.NI"), equalTo(1L))
+        assertThat(metrics.count("FederatedKeysInvalid.NI"), equalTo(1L))
+        assertThat(metrics.count("FederatedKeysValid.IE"), equalTo(1L))
+        assertThat(metrics.count("FederatedKeysInvalid.GB"), equalTo(1L))
+        assertThat(metrics.durations("FederatedKeysStoreDuration.NI").size, equalTo(1))
+        assertThat(metrics.durations("FederatedKeysStoreDuration.GB").size, equalTo(0))
+    }
+
+    @Test
+    fun failsWhenAnyOriginCannotBeStored() {
+        val failing = object : S3Storage {
+            override fun upload(locator: S3Storage.Locator, contentType: ContentType, bytes: ByteSource, vararg meta: MetaHeader) {
+                if (locator.key.value.contains("/IE/")) throw IllegalStateException("store failed")
+            }
+        }
+        val keyUploader = FederatedKeyUploader(failing, bucketName, "federatedKeyPrefix", clock, validOrigins)
+        val rollingStartNumber = LocalDateTime.ofInstant(clock.get().minus(1, ChronoUnit.HOURS), ZoneOffset.UTC).toEpochSecond(ZoneOffset.UTC) / 600L
+        val payload = DiagnosisKeysDownloadResponse(
+            "batchTag",
+            listOf(
+                ExposureDownload("W2zb3BeMWt6Xr2u0ABG32Q==", rollingStartNumber.toInt(), 7, 144, "NI", listOf("NI")),
+                ExposureDownload("kzQt9Lf3xjtAlMtm7jkSqw==", rollingStartNumber.toInt(), 4, 144, "IE", listOf("IE"))
+            )
+        )
+
+        assertThatThrownBy { keyUploader.acceptKeysFromFederatedServer(payload) }
+            .isInstanceOf(IllegalStateException::class.java)
+    }
+
 }
 
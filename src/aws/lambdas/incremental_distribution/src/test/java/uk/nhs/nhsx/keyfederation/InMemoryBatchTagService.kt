@@ -27,4 +27,12 @@ open class InMemoryBatchTagService(var batchTag: BatchTag? = null, var batchDate
         this.batchDate = batch.batchDate
     }
 
-}
\ No newline at end of file
+    val backfillBatches = mutableMapOf<LocalDate, BatchTagService.BackfillBatch>()
+
+    override fun getBackfillBatch(date: LocalDate): Optional<BatchTagService.BackfillBatch> =
+        synchronized(backfillBatches) { Optional.ofNullable(backfillBatches[date]) }
+
+    override fun updateBackfillBatch(date: LocalDate, batch: BatchTagService.BackfillBatch) {
+        synchronized(backfillBatches) { backfillBatches[date] = batch }
+    }
+}
@@ -13,7 +13,11 @@ import org.junit.jupiter.api.Test
 import org.mockito.Mockito
 import uk.nhs.nhsx.keyfederation.download.DiagnosisKeysDownloadResponse
 import uk.nhs.nhsx.keyfederation.upload.JWS
+import uk.nhs.nhsx.testhelper.mocks.FakeMetrics
+import java.io.ByteArrayOutputStream
+import java.net.http.HttpClient
 import java.time.LocalDate
+import java.util.zip.GZIPOutputStream
 
 
 class InteropClientTest {
@@ -364,4 +368,28 @@ class InteropClientTest {
 
         assertThat(wireMockRule.findAllUnmatchedRequests(), hasSize(0))
     }
-}
\ No newline at end of file
+
+    @Test
+    fun `gzipped download is decoded and its size and latency recorded`() {
+        val json = """{"batchTag":"75b326f7-ae6f-42f6-9354-00c0a6b797b3","exposures":[{"keyData":"ogNW4Ra+Zdds1ShN56yv3w==","rollingStartNumber":2662992,"transmissionRiskLevel":0,"rollingPeriod":144,"origin":"JE","regions":["GB"]}]}"""
+        val gzipped = ByteArrayOutputStream().also { out -> GZIPOutputStream(out).use { it.write(json.toByteArray()) } }.toByteArray()
+
+        wireMockRule.stubFor(WireMock.get("/diagnosiskeys/download/2020-08-19")
+            .withHeader("Accept-Encoding", WireMock.containing("gzip"))
+            .willReturn(
+                WireMock.aResponse()
+                    .withStatus(200)
+                    .withHeader("Content-Type", "application/json; charset=utf-8")
+                    .withHeader("Content-Encoding", "gzip")
+                    .withBody(gzipped))
+        )
+
+        val metrics = FakeMetrics()
+        val service = InteropClient(wireMockRule.baseUrl(), "DUMMY_TOKEN", jws, HttpClient.newHttpClient(), metrics)
+        val response = service.getExposureKeysBatch(LocalDate.of(2020, 8, 19), "").get()
+
+        assertThat(response.exposures[0].keyData, equalTo("ogNW4Ra+Zdds1ShN56yv3w=="))
+        assertThat(metrics.count("InteropDownloadBytes"), equalTo(gzipped.size.toLong()))
+        assertThat(metrics.durations("InteropDownloadDuration"), hasSize(1))
+    }
+}
@@ -0,0 +1,161 @@
+package uk.nhs.nhsx.keyfederation
+
+import com.amazonaws.services.s3.model.S3Object
+import com.amazonaws.services.s3.model.S3ObjectSummary
+import com.google.common.hash.Hashing
+import com.google.common.io.ByteSource
+import org.apache.http.entity.ContentType
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.jupiter.api.Test
+import uk.nhs.nhsx.core.aws.s3.AwsS3
+import uk.nhs.nhsx.core.aws.s3.BucketName
+import uk.nhs.nhsx.core.aws.s3.MetaHeader
+import uk.nhs.nhsx.core.aws.s3.S3Storage
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKey
+import uk.nhs.nhsx.keyfederation.download.DiagnosisKeysDownloadResponse
+import uk.nhs.nhsx.keyfederation.download.ExposureDownload
+import java.time.Instant
+import java.util.Optional
+import java.util.function.Supplier
+
+class PersistedSeenKeysTest {
+
+    private val bucketName = BucketName.of("some-bucket-name")
+    private val s3 = InMemoryS3()
+
+    private val key = StoredTemporaryExposureKey("W2zb3BeMWt6Xr2u0ABG32Q==", 2666736, 144, 7)
+    private val sameKeyDifferentDay = StoredTemporaryExposureKey("W2zb3BeMWt6Xr2u0ABG32Q==", 2666736 + 144, 144, 7)
+    private val otherKey = StoredTemporaryExposureKey("kzQt9Lf3xjtAlMtm7jkSqw==", 2666736, 144, 7)
+
+    @Test
+    fun keysAreOnlySeenOnceMarked() {
+        val seenKeys = PersistedSeenKeys(s3, bucketName, "seen-federated-keys/nearform")
+
+        assertThat(seenKeys.seen(key)).isFalse
+        seenKeys.markSeen(listOf(key))
+
+        assertThat(seenKeys.seen(key)).isTrue
+        assertThat(seenKeys.seen(sameKeyDifferentDay)).isFalse
+        assertThat(seenKeys.seen(otherKey)).isFalse
+    }
+
+    @Test
+    fun seenKeysSurviveBeingPersistedAndReloaded() {
+        val first = PersistedSeenKeys(s3, bucketName, "seen-federated-keys/nearform")
+        first.markSeen(listOf(key))
+        first.persist()
+
+        assertThat(s3.objects.keys).containsExactly("seen-federated-keys/nearform/20200903.bloom")
+
+        val second = PersistedSeenKeys(s3, bucketName, "seen-federated-keys/nearform")
+        assertThat(second.seen(key)).isTrue
+        assertThat(second.seen(otherKey)).isFalse
+    }
+
+    @Test
+    fun concurrentWritersMergeRatherThanOverwrite() {
+        val forward = PersistedSeenKeys(s3, bucketName, "seen-federated-keys/nearform")
+        val backfill = PersistedSeenKeys(s3, bucketName, "seen-federated-keys/nearform")
+        forward.seen(key)
+        backfill.seen(otherKey)
+
+        forward.markSeen(listOf(key))
+        backfill.markSeen(listOf(otherKey))
+        forward.persist()
+        backfill.persist()
+
+        val reloaded = PersistedSeenKeys(s3, bucketName, "seen-federated-keys/nearform")
+        assertThat(reloaded.seen(key)).isTrue
+        assertThat(reloaded.seen(otherKey)).isTrue
+        assertThat(s3.rejectedWrites).isEqualTo(1)
+    }
+
+    @Test
+    fun laterPersistsFollowOnFromTheirOwnWrite() {
+        val seenKeys = PersistedSeenKeys(s3, bucketName, "seen-federated-keys/nearform")
+
+        seenKeys.markSeen(listOf(key))
+        seenKeys.persist()
+        seenKeys.markSeen(listOf(otherKey))
+        seenKeys.persist()
+
+        assertThat(s3.rejectedWrites).isEqualTo(0)
+        assertThat(PersistedSeenKeys(s3, bucketName, "seen-federated-keys/nearform").seen(otherKey)).isTrue
+    }
+
+    @Test
+    fun aFailedPersistIsSuppressedByTheFailureOfTheWorkItFollows() {
+        val persistFailure = RuntimeException("persist failed")
+        val seenKeys = object : SeenKeys by SeenKeys.NONE {
+            override fun persist() = throw persistFailure
+        }
+
+        assertThatThrownBy { seenKeys.persistedAfter<Int> { throw IllegalStateException("download failed") } }
+            .isInstanceOf(IllegalStateException::class.java)
+            .hasSuppressedException(persistFailure)
+    }
+
+    @Test
+    fun onlyChangedWindowsArePersisted() {
+        val seenKeys = PersistedSeenKeys(s3, bucketName, "seen-federated-keys/nearform")
+        seenKeys.seen(key)
+        seenKeys.persist()
+
+        assertThat(s3.objects).isEmpty()
+    }
+
+    @Test
+    fun storedKeysAreNotStoredAgainWhenRedelivered() {
+        val storage = InMemoryS3()
+        val seenKeys = PersistedSeenKeys(storage, bucketName, "seen-federated-keys/nearform")
+        val uploader = FederatedKeyUploader(storage, bucketName, "nearform", Supplier { Instant.parse("2020-09-15T00:00:00Z") }, listOf("NI"), seenKeys)
+        val payload = DiagnosisKeysDownloadResponse(
+            "batchTag",
+            listOf(ExposureDownload("W2zb3BeMWt6Xr2u0ABG32Q==", 2666736, 7, 144, "NI", listOf("NI")))
+        )
+
+        uploader.acceptKeysFromFederatedServer(payload)
+        uploader.acceptKeysFromFederatedServer(payload)
+
+        assertThat(storage.objects.keys).containsExactly("nearform/NI/20200915/batchTag.json")
+    }
+
+    private class InMemoryS3 : AwsS3 {
+        val objects = LinkedHashMap<String, ByteArray>()
+        var rejectedWrites = 0
+
+        override fun upload(locator: S3Storage.Locator, contentType: ContentType, bytes: ByteSource, vararg meta: MetaHeader) {
+            synchronized(objects) { objects[locator.key.value] = bytes.read() }
+        }
+
+        override fun uploadIfUnchanged(locator: S3Storage.Locator, contentType: ContentType, bytes: ByteSource, etag: Optional<String>): Optional<String> =
+            synchronized(objects) {
+                if (Optional.ofNullable(objects[locator.key.value]).map { etagOf(it) } != etag) {
+                    rejectedWrites++
+                    Optional.empty()
+                } else {
+                    objects[locator.key.value] = bytes.read()
+                    Optional.of(etagOf(objects.getValue(locator.key.value)))
+                }
+            }
+
+        override fun getObjectSummaries(bucketName: String): List<S3ObjectSummary> = emptyList()
+
+        override fun getObject(bucketName: String, key: String): Optional<S3Object> =
+            Optional.ofNullable(objects[key]).map {
+                S3Object().apply {
+                    this.bucketName = bucketName
+                    this.key = key
+                    objectMetadata.setHeader("ETag", etagOf(it))
+                    setObjectContent(it.inputStream())
+                }
+            }
+
+        private fun etagOf(bytes: ByteArray) = Hashing.md5().hashBytes(bytes).toString()
+
+        override fun deleteObject(bucketName: String, objectKeyName: String) {
+            objects.remove(objectKeyName)
+        }
+    }
+}
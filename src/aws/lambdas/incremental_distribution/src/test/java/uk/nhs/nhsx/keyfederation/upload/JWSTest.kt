@@ -30,6 +30,26 @@ class JWSTest {
         assertThat(verified.headers.getStringHeaderValue("alg"), equalTo("ES256"))
     }
 
+    @Test
+    fun `signing streamed content after existing bytes in the buffer`() {
+        val payload = """[{ "key": 1234 }]"""
+        val buffer = RequestBodyBuffer(16)
+        buffer.writeBytes("prefix:".toByteArray())
+
+        JWS(KmsCompatibleSigner(private)).sign({ it.write(payload.toByteArray()) }, buffer)
+
+        val written = buffer.toString(Charsets.US_ASCII)
+        assertThat(written.substringBefore(":"), equalTo("prefix"))
+
+        val verified = JsonWebSignature().also {
+            it.key = public
+            it.compactSerialization = written.substringAfter(":")
+        }
+
+        assertThat(verified.payload, equalTo(payload))
+        assertThat("signature is valid", verified.verifySignature(), equalTo(true))
+    }
+
     @Test
     fun `complains when KMS returns incompatible signature`() {
         assertThat(
@@ -0,0 +1,98 @@
+package uk.nhs.nhsx.keyfederation.upload;
+
+import com.amazonaws.services.kms.model.SigningAlgorithmSpec;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.stubbing.ServeEvent;
+import uk.nhs.nhsx.core.aws.s3.BucketName;
+import uk.nhs.nhsx.core.aws.xray.Tracing;
+import uk.nhs.nhsx.diagnosiskeydist.s3.SubmissionFromS3Repository;
+import uk.nhs.nhsx.diagnosiskeydist.utils.ConfigurationUtility;
+import uk.nhs.nhsx.keyfederation.BatchTagDynamoDBService;
+import uk.nhs.nhsx.keyfederation.InteropClient;
+import uk.nhs.nhsx.keyfederation.TestKeyPairs;
+import uk.nhs.nhsx.testhelper.ContextBuilder;
+import uk.nhs.nhsx.testhelper.local.FaultInjection;
+import uk.nhs.nhsx.testhelper.local.FileSystemS3;
+import uk.nhs.nhsx.testhelper.local.LocalDynamoClient;
+import uk.nhs.nhsx.testhelper.local.LocalRunOptions;
+import uk.nhs.nhsx.testhelper.local.SyntheticSubmissions;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static uk.nhs.nhsx.core.ObjectKeyFilter.includeMobileAndAllowedPrefixes;
+
+/*
+ uploads generated submissions to a stubbed federation server, with the batch state kept in DynamoDBLocal, e.g.
+ ./gradlew benchmarkFederationUpload -Dbenchmark.args="--submissions-per-hour 50 --latency-ms 10"
+ */
+public class LocalFederationUploadBenchmark {
+
+    private static final String STATE_TABLE = "local-federation-state";
+    private static final int MAX_UPLOAD_BATCH_SIZE = 1000;
+    private static final int MAX_SUBSEQUENT_BATCH_UPLOAD_COUNT = 100;
+
+    public static void main(String[] args) throws Exception {
+        Tracing.disableXRayComplaintsForMainClasses();
+
+        LocalRunOptions options = LocalRunOptions.parse(args);
+        Path root = options.root();
+        FileSystemS3 s3 = new FileSystemS3(root, options.faults());
+
+        int submissions = new SyntheticSubmissions(new FileSystemS3(root, FaultInjection.NONE), options.seed)
+            .generate(BucketName.of(ConfigurationUtility.SUBMISSION_JSON_BUCKET_NAME), Instant.now(), Duration.ofDays(options.days), options.submissionsPerHour, options.keysPerSubmission);
+
+        LocalDynamoClient dynamo = new LocalDynamoClient(options.faults()).createTable(STATE_TABLE, "id");
+
+        WireMockServer server = new WireMockServer(0);
+        server.start();
+        try {
+            server.stubFor(WireMock.post("/diagnosiskeys/upload")
+                .willReturn(WireMock.aResponse()
+                    .withStatus(200)
+                    .withBody("{\"batchTag\":\"75b326f7-ae6f-42f6-9354-00c0a6b797b3\",\"insertedExposures\":0}")));
+
+            BatchTagDynamoDBService batchTagService = new BatchTagDynamoDBService(dynamo.amazonDynamoDB(), STATE_TABLE);
+            DiagnosisKeysUploadService service = new DiagnosisKeysUploadService(
+                new InteropClient(server.baseUrl(), "local", new JWS(new KmsCompatibleSigner(TestKeyPairs.INSTANCE.getEcPrime256r1().getPrivate(), SigningAlgorithmSpec.ECDSA_SHA_256))),
+                new SubmissionFromS3Repository(s3, includeMobileAndAllowedPrefixes(List.of())),
+                batchTagService,
+                "GB-EAW",
+                false,
+                -1,
+                options.days,
+                MAX_UPLOAD_BATCH_SIZE,
+                MAX_SUBSEQUENT_BATCH_UPLOAD_COUNT,
+                unlimitedTime()
+            );
+
+            long start = System.nanoTime();
+            int uploaded = service.loadKeysAndUploadToFederatedServer();
+            batchTagService.flush();
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+            List<ServeEvent> requests = server.getAllServeEvents();
+            long bytes = requests.stream().mapToLong(it -> it.getRequest().getBody().length).sum();
+
+            System.out.printf("root=%s%n%s, %s%n", root, options, options.faults());
+            System.out.printf("generated %d submissions%n", submissions);
+            System.out.printf("uploaded %d submissions in %d requests (%d bytes) in %d ms%n",
+                uploaded, requests.size(), bytes, elapsed.toMillis());
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static Context unlimitedTime() {
+        return new ContextBuilder.TestContext() {
+            @Override
+            public int getRemainingTimeInMillis() {
+                return Integer.MAX_VALUE;
+            }
+        };
+    }
+}
@@ -0,0 +1,38 @@
+package uk.nhs.nhsx.testhelper;
+
+import com.amazonaws.services.kms.model.SigningAlgorithmSpec;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import uk.nhs.nhsx.core.signature.KeyId;
+import uk.nhs.nhsx.core.signature.Signature;
+import uk.nhs.nhsx.core.signature.Signer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/*
+ a deterministic stand-in for KmsSigner: the "signature" is the SHA-256 of the content, and the ByteSource overload
+ hashes as it reads, like the real one, so the two overloads can be compared byte for byte
+ */
+public class DigestSigner implements Signer {
+
+    private final KeyId keyId = KeyId.of("some-key");
+
+    @Override
+    public Signature sign(byte[] bytes) {
+        return signatureOf(Hashing.sha256().hashBytes(bytes).asBytes());
+    }
+
+    @Override
+    public Signature sign(ByteSource content) {
+        try {
+            return signatureOf(content.hash(Hashing.sha256()).asBytes());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read " + content, e);
+        }
+    }
+
+    private Signature signatureOf(byte[] digest) {
+        return new Signature(keyId, SigningAlgorithmSpec.ECDSA_SHA_256, digest);
+    }
+}
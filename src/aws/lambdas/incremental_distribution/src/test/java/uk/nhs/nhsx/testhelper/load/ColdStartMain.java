@@ -0,0 +1,139 @@
+package uk.nhs.nhsx.testhelper.load;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import uk.nhs.nhsx.core.aws.xray.Tracing;
+import uk.nhs.nhsx.testhelper.ContextBuilder;
+import uk.nhs.nhsx.testhelper.local.FaultInjection;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/*
+ time to first response of each api handler, with and without priming. Every run is a fresh JVM, so class
+ loading, jackson setup and the first signature are paid again each time, as they are in a new lambda. The
+ local stand-ins are set up before the clock starts, e.g.
+ ./gradlew coldStart -Dcoldstart.args="--handler virology --runs 5"
+ */
+public class ColdStartMain {
+
+    private static final String RESULT_PREFIX = "COLD_START ";
+
+    @Parameter(names = "--handler", description = "One of diagnosis-keys, virology or analytics, all of them if not given")
+    private String handler;
+
+    @Parameter(names = "--runs", description = "Number of fresh JVMs per handler, with and without priming")
+    private int runs = 3;
+
+    @Parameter(names = "--probe", hidden = true, description = "Measure a single start in this JVM")
+    private boolean probe = false;
+
+    @Parameter(names = "--primed", hidden = true, description = "Prime the handler before the first request")
+    private boolean primed = false;
+
+    @Parameter(names = "--help", help = true, description = "Show help")
+    private boolean help = false;
+
+    public static void main(String[] args) throws Exception {
+        Tracing.disableXRayComplaintsForMainClasses();
+
+        ColdStartMain options = new ColdStartMain();
+        JCommander commander = JCommander.newBuilder().addObject(options).build();
+        commander.parse(args);
+        if (options.help) {
+            commander.usage();
+            System.exit(1);
+        }
+        if (options.probe) {
+            options.probe();
+        } else {
+            options.run();
+        }
+    }
+
+    private void run() throws Exception {
+        List<String> handlers = Optional.ofNullable(handler).map(List::of).orElse(LocalHandlers.NAMES);
+
+        System.out.printf("%-16s %-8s %12s %12s %12s %12s%n", "handler", "mode", "construct ms", "prime ms", "first ms", "total ms");
+        for (String name : handlers) {
+            for (boolean prime : List.of(false, true)) {
+                List<long[]> results = new ArrayList<>();
+                for (int i = 0; i < runs; i++) {
+                    results.add(startChild(name, prime));
+                }
+                System.out.printf("%-16s %-8s %12d %12d %12d %12d%n",
+                    name, prime ? "primed" : "unprimed",
+                    median(results, 0), median(results, 1), median(results, 2), median(results, 0) + median(results, 1) + median(results, 2));
+            }
+        }
+    }
+
+    private static long[] startChild(String name, boolean prime) throws Exception {
+        List<String> command = new ArrayList<>(List.of(
+            Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+            "-Djava.library.path=" + System.getProperty("java.library.path"),
+            "-cp", System.getProperty("java.class.path"),
+            ColdStartMain.class.getName(),
+            "--probe", "--handler", name
+        ));
+        if (prime) command.add("--primed");
+
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        long[] result = null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(RESULT_PREFIX)) {
+                    result = Arrays.stream(line.substring(RESULT_PREFIX.length()).split(" "))
+                        .mapToLong(Long::parseLong)
+                        .toArray();
+                }
+            }
+        }
+        if (process.waitFor() != 0 || result == null) {
+            throw new IllegalStateException("Cold start probe of " + name + " failed with exit code " + process.exitValue());
+        }
+        return result;
+    }
+
+    private static long median(List<long[]> results, int column) {
+        long[] values = results.stream().mapToLong(it -> it[column]).sorted().toArray();
+        return values[values.length / 2];
+    }
+
+    private void probe() throws Exception {
+        LocalHandlers handlers = new LocalHandlers(FaultInjection.NONE, Duration.ZERO);
+
+        long start = System.nanoTime();
+        LocalHandlers.Target target = handlers.build(handler);
+        long constructed = System.nanoTime();
+        if (primed) {
+            target.handler.prime();
+        }
+        long readyAt = System.nanoTime();
+
+        APIGatewayProxyRequestEvent request = target.scenarios.get(0).requests.get();
+        long requestAt = System.nanoTime();
+        APIGatewayProxyResponseEvent response = target.handler.handleRequest(request, ContextBuilder.aContext());
+        long respondedAt = System.nanoTime();
+
+        System.err.printf("%s first response %d after %d ms of JVM uptime%n",
+            handler, response.getStatusCode(), ManagementFactory.getRuntimeMXBean().getUptime());
+        System.out.println(RESULT_PREFIX + millis(constructed - start) + " " + millis(readyAt - constructed) + " " + millis(respondedAt - requestAt));
+        System.exit(0);
+    }
+
+    private static long millis(long nanos) {
+        return Duration.ofNanos(nanos).toMillis();
+    }
+}
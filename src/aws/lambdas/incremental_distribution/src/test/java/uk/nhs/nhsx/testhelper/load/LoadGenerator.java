@@ -0,0 +1,107 @@
+package uk.nhs.nhsx.testhelper.load;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ each virtual user is a thread calling the handler in a closed loop, cycling through the scenarios.
+ calls made during the warmup are not recorded. allocation is measured per thread, so it includes the
+ (small) cost of recording alongside whatever the handler allocates
+ */
+public class LoadGenerator {
+
+    private static final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> handler;
+    private final List<Scenario> scenarios;
+    private final Context context;
+
+    public LoadGenerator(RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> handler,
+                         List<Scenario> scenarios,
+                         Context context) {
+        this.handler = handler;
+        this.scenarios = scenarios;
+        this.context = context;
+    }
+
+    public LoadReport run(int users, Duration warmup, Duration duration) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(users,
+            new ThreadFactoryBuilder().setNameFormat("virtual-user-%d").setDaemon(true).build());
+
+        long start = System.nanoTime();
+        long recordFrom = start + warmup.toNanos();
+        long until = recordFrom + duration.toNanos();
+
+        try {
+            List<Future<Map<String, RouteStats>>> results = new ArrayList<>();
+            for (int user = 0; user < users; user++) {
+                int offset = user;
+                results.add(executor.submit(() -> virtualUser(offset, recordFrom, until)));
+            }
+
+            Map<String, RouteStats> merged = new TreeMap<>();
+            for (Future<Map<String, RouteStats>> result : results) {
+                result.get().forEach((route, stats) -> merged.merge(route, stats, RouteStats::merge));
+            }
+            return new LoadReport(merged, duration, users);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Virtual user failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Map<String, RouteStats> virtualUser(int offset, long recordFrom, long until) {
+        Map<String, RouteStats> stats = new HashMap<>();
+        long threadId = Thread.currentThread().getId();
+        boolean measureAllocation = threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled();
+
+        for (int i = offset; ; i++) {
+            Scenario scenario = scenarios.get(i % scenarios.size());
+            APIGatewayProxyRequestEvent request;
+            try {
+                request = scenario.requests.get();
+            } catch (RuntimeException e) {
+                // setting up the request hit an injected failure, it is not a call to the handler
+                if (System.nanoTime() >= until) {
+                    return stats;
+                }
+                continue;
+            }
+
+            long allocatedBefore = measureAllocation ? threads.getThreadAllocatedBytes(threadId) : 0;
+            long before = System.nanoTime();
+            boolean error;
+            try {
+                APIGatewayProxyResponseEvent response = handler.handleRequest(request, context);
+                error = response.getStatusCode() >= 500;
+            } catch (RuntimeException e) {
+                error = true;
+            }
+            long after = System.nanoTime();
+            long allocated = measureAllocation ? threads.getThreadAllocatedBytes(threadId) - allocatedBefore : 0;
+
+            if (after >= until) {
+                return stats;
+            }
+            if (before >= recordFrom) {
+                stats.computeIfAbsent(scenario.route, RouteStats::new).record(after - before, error, allocated);
+            }
+        }
+    }
+}
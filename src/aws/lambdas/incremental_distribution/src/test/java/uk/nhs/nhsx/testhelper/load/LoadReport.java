@@ -0,0 +1,42 @@
+package uk.nhs.nhsx.testhelper.load;
+
+import java.time.Duration;
+import java.util.Map;
+
+public class LoadReport {
+
+    public final Map<String, RouteStats> routes;
+    public final Duration elapsed;
+    public final int users;
+
+    LoadReport(Map<String, RouteStats> routes, Duration elapsed, int users) {
+        this.routes = routes;
+        this.elapsed = elapsed;
+        this.users = users;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%d users for %d ms%n", users, elapsed.toMillis()));
+        report.append(String.format("%-50s %9s %7s %10s %9s %9s %9s %12s %10s%n",
+            "route", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms", "alloc B/req", "alloc MB/s"));
+        routes.values().forEach(it ->
+            report.append(String.format("%-50s %9d %7d %10.1f %9.2f %9.2f %9.2f %12d %10.1f%n",
+                it.route,
+                it.count(),
+                it.errors(),
+                it.throughput(elapsed),
+                millis(it.percentile(50)),
+                millis(it.percentile(99)),
+                millis(it.percentile(99.9)),
+                it.allocatedBytesPerRequest(),
+                it.allocationRateMegabytesPerSecond(elapsed)))
+        );
+        return report.toString();
+    }
+
+    private static double millis(Duration duration) {
+        return duration.toNanos() / 1_000_000.0;
+    }
+}
@@ -0,0 +1,97 @@
+package uk.nhs.nhsx.testhelper.load;
+
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import uk.nhs.nhsx.core.aws.xray.Tracing;
+import uk.nhs.nhsx.core.logging.AsyncLogging;
+import uk.nhs.nhsx.core.routing.RoutingHandler;
+import uk.nhs.nhsx.testhelper.ContextBuilder;
+import uk.nhs.nhsx.testhelper.local.FaultInjection;
+
+import java.time.Duration;
+
+/*
+ drives a handler, with its full stack of auth, maintenance filter, custom oai check, signing and exception
+ handling, against local stand-ins for KMS, Secrets Manager, S3, DynamoDB and Firehose, e.g.
+ ./gradlew loadTest -Dload.args="--handler virology --users 32 --duration-seconds 60 --latency-ms 5"
+
+ the cost of logging shows up by running the same load with --logging sync and --logging async. Outside lambda the
+ handlers don't wait for the log queue to drain, so --drain-budget-ms 200 makes every request wait for it as it
+ would in lambda, up to that budget, to compare sync with async as deployed
+ */
+public class LoadTestMain {
+
+    @Parameter(names = "--handler", description = "One of diagnosis-keys, virology or analytics")
+    private String handler = "diagnosis-keys";
+
+    @Parameter(names = "--users", description = "Number of virtual users")
+    private int users = 16;
+
+    @Parameter(names = "--warmup-seconds", description = "Seconds of load before recording starts")
+    private int warmupSeconds = 10;
+
+    @Parameter(names = "--duration-seconds", description = "Seconds of recorded load")
+    private int durationSeconds = 30;
+
+    @Parameter(names = "--latency-ms", description = "Latency added to every call to a stand-in")
+    private long latencyMillis = 0;
+
+    @Parameter(names = "--error-rate", description = "Fraction of calls to a stand-in that fail")
+    private double errorRate = 0.0;
+
+    @Parameter(names = "--cta-exchange-delay-ms", description = "Throttling delay of the cta exchange route")
+    private long ctaExchangeDelayMillis = 1000;
+
+    @Parameter(names = "--logging", description = "async, the log4j2.xml the lambdas use, or sync, the plain text synchronous configuration it replaced")
+    private String logging = "async";
+
+    @Parameter(names = "--drain-budget-ms", description = "Wait up to this long after each request for queued log lines to be written, as the lambdas do, or 0 not to wait")
+    private long drainBudgetMillis = 0;
+
+    @Parameter(names = "--help", help = true, description = "Show help")
+    private boolean help = false;
+
+    public static void main(String[] args) throws Exception {
+        LoadTestMain options = new LoadTestMain();
+        JCommander commander = JCommander.newBuilder().addObject(options).build();
+        commander.parse(args);
+        if (options.help) {
+            commander.usage();
+            System.exit(1);
+        }
+
+        /* before anything creates a logger, as log4j reads its configuration once */
+        if (options.logging.equals("sync")) {
+            System.setProperty("log4j.configurationFile", "log4j2-sync.xml");
+        }
+
+        Tracing.disableXRayComplaintsForMainClasses();
+        options.run();
+    }
+
+    private void run() throws Exception {
+        FaultInjection faults = new FaultInjection(Duration.ofMillis(latencyMillis), errorRate);
+        LocalHandlers.Target target = new LocalHandlers(faults, Duration.ofMillis(ctaExchangeDelayMillis)).build(handler);
+
+        LoadReport report = new LoadGenerator(drained(target.handler), target.scenarios, ContextBuilder.aContext())
+            .run(users, Duration.ofSeconds(warmupSeconds), Duration.ofSeconds(durationSeconds));
+
+        System.out.printf("handler=%s, logging=%s, drain-budget-ms=%d, %s%n", handler, logging, drainBudgetMillis, faults);
+        System.out.print(report);
+    }
+
+    private RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> drained(RoutingHandler handler) {
+        if (drainBudgetMillis <= 0) return handler;
+        Duration budget = Duration.ofMillis(drainBudgetMillis);
+        return (request, context) -> {
+            try {
+                return handler.handleRequest(request, context);
+            } finally {
+                AsyncLogging.awaitDrained(budget);
+            }
+        };
+    }
+}
@@ -0,0 +1,221 @@
+package uk.nhs.nhsx.testhelper.load;
+
+import com.amazonaws.HttpMethod;
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.kinesisfirehose.AbstractAmazonKinesisFirehose;
+import com.amazonaws.services.kinesisfirehose.AmazonKinesisFirehose;
+import com.amazonaws.services.kinesisfirehose.model.PutRecordRequest;
+import com.amazonaws.services.kinesisfirehose.model.PutRecordResult;
+import com.amazonaws.services.kms.model.SigningAlgorithmSpec;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import uk.nhs.nhsx.analyticssubmission.AnalyticsConfig;
+import uk.nhs.nhsx.core.Environment;
+import uk.nhs.nhsx.core.SystemClock;
+import uk.nhs.nhsx.core.TestEnvironments;
+import uk.nhs.nhsx.core.UniqueId;
+import uk.nhs.nhsx.core.auth.ApiName;
+import uk.nhs.nhsx.core.auth.Authenticator;
+import uk.nhs.nhsx.core.auth.AwsResponseSigner;
+import uk.nhs.nhsx.core.auth.ResponseSigner;
+import uk.nhs.nhsx.core.aws.s3.BucketName;
+import uk.nhs.nhsx.core.aws.s3.UniqueObjectKeyNameProvider;
+import uk.nhs.nhsx.core.random.crockford.CrockfordDammRandomStringGenerator;
+import uk.nhs.nhsx.core.routing.RoutingHandler;
+import uk.nhs.nhsx.core.signature.RFC2616DatedSigner;
+import uk.nhs.nhsx.core.signature.Signer;
+import uk.nhs.nhsx.keyfederation.TestKeyPairs;
+import uk.nhs.nhsx.keyfederation.upload.KmsCompatibleSigner;
+import uk.nhs.nhsx.testhelper.local.FaultInjection;
+import uk.nhs.nhsx.testhelper.local.FileSystemS3;
+import uk.nhs.nhsx.testhelper.local.InMemorySecretManager;
+import uk.nhs.nhsx.testhelper.local.LocalDynamoClient;
+import uk.nhs.nhsx.virology.VirologyConfig;
+import uk.nhs.nhsx.virology.VirologyService;
+import uk.nhs.nhsx.virology.VirologySubmissionHandler;
+import uk.nhs.nhsx.virology.order.TokensGenerator;
+import uk.nhs.nhsx.virology.order.VirologyWebsiteConfig;
+import uk.nhs.nhsx.virology.persistence.VirologyPersistenceService;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static uk.nhs.nhsx.core.auth.StandardAuthentication.awsAuthentication;
+import static uk.nhs.nhsx.testhelper.ProxyRequestBuilder.request;
+
+/*
+ the api handlers, with their full stack of auth, maintenance filter, custom oai check, signing and exception
+ handling, wired to local stand-ins for KMS, Secrets Manager, S3, DynamoDB and Firehose, along with the
+ requests to drive them with
+ */
+public class LocalHandlers {
+
+    public static final List<String> NAMES = List.of("diagnosis-keys", "virology", "analytics");
+
+    private static final String API_KEY_NAME = "load-test";
+    private static final String API_KEY_VALUE = UUID.randomUUID().toString();
+    private static final String CUSTOM_OAI = "load-test-oai";
+
+    private static final String SUBMISSION_TOKENS_TABLE = "submission-tokens";
+    private static final String TEST_ORDERS_TABLE = "test-orders";
+    private static final String TEST_ORDERS_INDEX = "test-orders-index";
+    private static final String TEST_RESULTS_TABLE = "test-results";
+    private static final BucketName SUBMISSION_STORE = BucketName.of("submission-store");
+
+    public static class Target {
+        public final RoutingHandler handler;
+        public final List<Scenario> scenarios;
+
+        private Target(RoutingHandler handler, List<Scenario> scenarios) {
+            this.handler = handler;
+            this.scenarios = scenarios;
+        }
+    }
+
+    private final FaultInjection faults;
+    private final Duration ctaExchangeDelay;
+    private final FileSystemS3 s3;
+    private final LocalDynamoClient dynamo;
+    private final Authenticator authenticator;
+    private final ResponseSigner signer;
+    private final Environment environment;
+
+    public LocalHandlers(FaultInjection faults, Duration ctaExchangeDelay) throws IOException {
+        this.faults = faults;
+        this.ctaExchangeDelay = ctaExchangeDelay;
+        this.s3 = new FileSystemS3(Files.createTempDirectory("load-test-s3"), faults);
+        this.dynamo = new LocalDynamoClient(faults)
+            .createTable(SUBMISSION_TOKENS_TABLE, "diagnosisKeySubmissionToken")
+            .createTable(TEST_ORDERS_TABLE, "ctaToken", TEST_ORDERS_INDEX, "testResultPollingToken")
+            .createTable(TEST_RESULTS_TABLE, "testResultPollingToken");
+
+        this.authenticator = awsAuthentication(ApiName.Mobile,
+            new InMemorySecretManager(faults).withApiKey(ApiName.Mobile, API_KEY_NAME, API_KEY_VALUE));
+
+        this.signer = new AwsResponseSigner(new RFC2616DatedSigner(SystemClock.CLOCK,
+            faults.wrap(Signer.class, new KmsCompatibleSigner(TestKeyPairs.INSTANCE.getEcPrime256r1().getPrivate(), SigningAlgorithmSpec.ECDSA_SHA_256))));
+
+        this.environment = TestEnvironments.TEST.apply(Map.of(
+            "MAINTENANCE_MODE", "false",
+            "custom_oai", CUSTOM_OAI,
+            "submission_tokens_table", SUBMISSION_TOKENS_TABLE,
+            "SUBMISSION_STORE", SUBMISSION_STORE.value
+        ));
+    }
+
+    public Target build(String name) {
+        switch (name) {
+            case "diagnosis-keys":
+                return new Target(
+                    new uk.nhs.nhsx.diagnosiskeyssubmission.Handler(
+                        environment, authenticator, signer, s3, dynamo,
+                        new UniqueObjectKeyNameProvider(SystemClock.CLOCK, UniqueId.ID), SystemClock.CLOCK
+                    ),
+                    List.of(
+                        Scenario.of("POST /submission/diagnosis-keys", () -> {
+                            String token = UUID.randomUUID().toString();
+                            dynamo.putItem(SUBMISSION_TOKENS_TABLE, new Item().withPrimaryKey("diagnosisKeySubmissionToken", token));
+                            return post("/submission/diagnosis-keys", diagnosisKeysPayload(token));
+                        }),
+                        Scenario.of("POST /submission/diagnosis-keys/health", () -> post("/submission/diagnosis-keys/health", ""))
+                    )
+                );
+            case "virology":
+                CrockfordDammRandomStringGenerator tokens = new CrockfordDammRandomStringGenerator();
+                return new Target(
+                    new VirologySubmissionHandler(
+                        environment, authenticator, signer,
+                        new VirologyService(
+                            new VirologyPersistenceService(dynamo.amazonDynamoDB(), new VirologyConfig(
+                                TEST_ORDERS_TABLE, TEST_RESULTS_TABLE, SUBMISSION_TOKENS_TABLE, TEST_ORDERS_INDEX,
+                                VirologyConfig.MAX_TOKEN_PERSISTENCE_RETRY_COUNT)),
+                            new TokensGenerator(),
+                            SystemClock.CLOCK
+                        ),
+                        new VirologyWebsiteConfig("https://example.com/order", "https://example.com/register"),
+                        ctaExchangeDelay
+                    ),
+                    List.of(
+                        Scenario.of("POST /virology-test/home-kit/order", () -> post("/virology-test/home-kit/order", "")),
+                        Scenario.of("POST /virology-test/results", () -> post("/virology-test/results",
+                            "{\"testResultPollingToken\":\"" + UUID.randomUUID() + "\"}")),
+                        Scenario.of("POST /virology-test/cta-exchange", () -> post("/virology-test/cta-exchange",
+                            "{\"ctaToken\":\"" + tokens.generate() + "\"}")),
+                        Scenario.of("POST /virology-test/health", () -> post("/virology-test/health", ""))
+                    )
+                );
+            case "analytics":
+                return new Target(
+                    new uk.nhs.nhsx.analyticssubmission.Handler(
+                        environment, authenticator, s3,
+                        faults.wrap(AmazonKinesisFirehose.class, new LocalFirehose()),
+                        new UniqueObjectKeyNameProvider(SystemClock.CLOCK, UniqueId.ID),
+                        new AnalyticsConfig("analytics-stream", true, true, SUBMISSION_STORE)
+                    ),
+                    List.of(
+                        Scenario.of("POST /submission/mobile-analytics", () -> post("/submission/mobile-analytics", analyticsPayload())),
+                        Scenario.of("POST /submission/mobile-analytics/health", () -> post("/submission/mobile-analytics/health", ""))
+                    )
+                );
+            default:
+                throw new IllegalArgumentException("Unknown handler " + name + ", expected one of " + NAMES);
+        }
+    }
+
+    private static APIGatewayProxyRequestEvent post(String path, String json) {
+        return request()
+            .withMethod(HttpMethod.POST)
+            .withPath(path)
+            .withHeader("x-custom-oai", CUSTOM_OAI)
+            .withRandomRequestId()
+            .withBearerToken(InMemorySecretManager.bearerTokenFor(API_KEY_NAME, API_KEY_VALUE))
+            .withJson(json)
+            .build();
+    }
+
+    private static String diagnosisKeysPayload(String token) {
+        Random random = ThreadLocalRandom.current();
+        long today = Instant.now().getEpochSecond() / 600 / 144 * 144;
+        StringBuilder keys = new StringBuilder();
+        for (int day = 0; day < 14; day++) {
+            byte[] key = new byte[16];
+            random.nextBytes(key);
+            if (day > 0) keys.append(',');
+            keys.append("{\"key\":\"").append(Base64.getEncoder().encodeToString(key))
+                .append("\",\"rollingStartNumber\":").append(today - day * 144L)
+                .append(",\"rollingPeriod\":144,\"transmissionRiskLevel\":7}");
+        }
+        return "{\"diagnosisKeySubmissionToken\":\"" + token + "\",\"temporaryExposureKeys\":[" + keys + "]}";
+    }
+
+    private static String analyticsPayload() {
+        return "{" +
+            "\"metadata\":{\"operatingSystemVersion\":\"iPhone OS 13.5.1 (17F80)\",\"latestApplicationVersion\":\"3.0\",\"deviceModel\":\"iPhone11,2\",\"postalDistrict\":\"AB10\"}," +
+            "\"analyticsWindow\":{\"endDate\":\"2020-07-28T22:59:00Z\",\"startDate\":\"2020-07-27T23:00:00Z\"}," +
+            "\"metrics\":{" +
+            "\"cumulativeDownloadBytes\":140000000,\"cumulativeUploadBytes\":140000000," +
+            "\"cumulativeCellularDownloadBytes\":80000000,\"cumulativeCellularUploadBytes\":70000000," +
+            "\"cumulativeWifiDownloadBytes\":60000000,\"cumulativeWifiUploadBytes\":50000000," +
+            "\"checkedIn\":1,\"canceledCheckIn\":1,\"receivedVoidTestResult\":1,\"isIsolatingBackgroundTick\":1," +
+            "\"hasHadRiskyContactBackgroundTick\":1,\"receivedPositiveTestResult\":1,\"receivedNegativeTestResult\":1," +
+            "\"hasSelfDiagnosedPositiveBackgroundTick\":1,\"completedQuestionnaireAndStartedIsolation\":1," +
+            "\"encounterDetectionPausedBackgroundTick\":1,\"completedQuestionnaireButDidNotStartIsolation\":1," +
+            "\"totalBackgroundTasks\":1,\"runningNormallyBackgroundTick\":1,\"completedOnboarding\":1}," +
+            "\"includesMultipleApplicationVersions\":false" +
+            "}";
+    }
+
+    private static class LocalFirehose extends AbstractAmazonKinesisFirehose {
+        @Override
+        public PutRecordResult putRecord(PutRecordRequest request) {
+            return new PutRecordResult().withRecordId(UUID.randomUUID().toString());
+        }
+    }
+}
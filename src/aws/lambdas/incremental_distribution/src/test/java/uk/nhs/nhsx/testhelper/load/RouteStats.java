@@ -0,0 +1,70 @@
+package uk.nhs.nhsx.testhelper.load;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/* not thread safe, each virtual user records into its own stats which are merged at the end */
+public class RouteStats {
+
+    public final String route;
+
+    private long[] latencies = new long[1024];
+    private int count;
+    private int errors;
+    private long allocatedBytes;
+
+    public RouteStats(String route) {
+        this.route = route;
+    }
+
+    void record(long latencyNanos, boolean error, long allocated) {
+        if (count == latencies.length) {
+            latencies = Arrays.copyOf(latencies, count * 2);
+        }
+        latencies[count++] = latencyNanos;
+        if (error) {
+            errors++;
+        }
+        allocatedBytes += allocated;
+    }
+
+    RouteStats merge(RouteStats other) {
+        RouteStats merged = new RouteStats(route);
+        merged.latencies = Arrays.copyOf(latencies, count + other.count);
+        System.arraycopy(other.latencies, 0, merged.latencies, count, other.count);
+        merged.count = count + other.count;
+        merged.errors = errors + other.errors;
+        merged.allocatedBytes = allocatedBytes + other.allocatedBytes;
+        return merged;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public int errors() {
+        return errors;
+    }
+
+    public double throughput(Duration elapsed) {
+        return count * 1000.0 / Math.max(1, elapsed.toMillis());
+    }
+
+    public Duration percentile(double percentile) {
+        if (count == 0) {
+            return Duration.ZERO;
+        }
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+        return Duration.ofNanos(sorted[Math.max(0, Math.min(count - 1, index))]);
+    }
+
+    public long allocatedBytesPerRequest() {
+        return count == 0 ? 0 : allocatedBytes / count;
+    }
+
+    public double allocationRateMegabytesPerSecond(Duration elapsed) {
+        return allocatedBytes / (1024.0 * 1024.0) / Math.max(0.001, elapsed.toMillis() / 1000.0);
+    }
+}
@@ -0,0 +1,24 @@
+package uk.nhs.nhsx.testhelper.load;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+
+import java.util.function.Supplier;
+
+/*
+ a named route and a source of requests for it. requests are built outside the timed part of each call,
+ so any setup they need (e.g. storing a token the request refers to) does not count towards latency
+ */
+public class Scenario {
+
+    public final String route;
+    public final Supplier<APIGatewayProxyRequestEvent> requests;
+
+    private Scenario(String route, Supplier<APIGatewayProxyRequestEvent> requests) {
+        this.route = route;
+        this.requests = requests;
+    }
+
+    public static Scenario of(String route, Supplier<APIGatewayProxyRequestEvent> requests) {
+        return new Scenario(route, requests);
+    }
+}
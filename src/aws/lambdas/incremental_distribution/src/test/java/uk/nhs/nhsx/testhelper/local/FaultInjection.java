@@ -0,0 +1,67 @@
+package uk.nhs.nhsx.testhelper.local;
+
+import com.amazonaws.AmazonServiceException;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ added latency and a rate of failed calls, so local runs behave a little more like the real services
+ */
+public class FaultInjection {
+
+    public static final FaultInjection NONE = new FaultInjection(Duration.ZERO, 0.0);
+
+    private final Duration latency;
+    private final double errorRate;
+
+    public FaultInjection(Duration latency, double errorRate) {
+        this.latency = latency;
+        this.errorRate = errorRate;
+    }
+
+    public void apply(String operation) {
+        if (!latency.isZero()) {
+            try {
+                Thread.sleep(latency.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted during " + operation, e);
+            }
+        }
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            AmazonServiceException exception = new AmazonServiceException("Injected failure in " + operation);
+            exception.setStatusCode(503);
+            exception.setErrorCode("ServiceUnavailable");
+            exception.setErrorType(AmazonServiceException.ErrorType.Service);
+            throw exception;
+        }
+    }
+
+    public <T> T wrap(Class<T> clazz, T delegate) {
+        return clazz.cast(
+            Proxy.newProxyInstance(
+                clazz.getClassLoader(),
+                new Class<?>[]{clazz},
+                (proxy, method, args) -> {
+                    apply(clazz.getSimpleName() + "." + method.getName());
+                    try {
+                        return method.invoke(delegate, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }
+            )
+        );
+    }
+
+    @Override
+    public String toString() {
+        return "FaultInjection{" +
+            "latency=" + latency +
+            ", errorRate=" + errorRate +
+            '}';
+    }
+}
@@ -0,0 +1,150 @@
+package uk.nhs.nhsx.testhelper.local;
+
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import org.apache.http.entity.ContentType;
+import uk.nhs.nhsx.core.aws.s3.AwsS3;
+import uk.nhs.nhsx.core.aws.s3.MetaHeader;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/*
+ buckets are directories under the root, and keys are paths within them. object metadata is not kept,
+ the last modified time of an object is the modified time of its file
+ */
+public class FileSystemS3 implements AwsS3 {
+
+    private final Path root;
+    private final FaultInjection faults;
+
+    public FileSystemS3(Path root, FaultInjection faults) {
+        this.root = root;
+        this.faults = faults;
+    }
+
+    @Override
+    public void upload(Locator locator, ContentType contentType, ByteSource bytes, MetaHeader... meta) {
+        faults.apply("S3.upload");
+        Path path = pathOf(locator.bucket.value, locator.key.value);
+        try {
+            Files.createDirectories(path.getParent());
+            try (OutputStream out = Files.newOutputStream(path)) {
+                bytes.copyTo(out);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write " + path, e);
+        }
+    }
+
+    /* the etag is the md5 of the content, as S3's is for objects not uploaded in parts */
+    @Override
+    public synchronized Optional<String> uploadIfUnchanged(Locator locator, ContentType contentType, ByteSource bytes, Optional<String> etag) {
+        faults.apply("S3.uploadIfUnchanged");
+        Path path = pathOf(locator.bucket.value, locator.key.value);
+        Optional<String> current = Files.isRegularFile(path) ? Optional.of(etagOf(com.google.common.io.Files.asByteSource(path.toFile()))) : Optional.empty();
+        if (!current.equals(etag)) {
+            return Optional.empty();
+        }
+        upload(locator, contentType, bytes);
+        return Optional.of(etagOf(bytes));
+    }
+
+    public void setLastModified(String bucketName, String key, Instant lastModified) {
+        try {
+            Files.setLastModifiedTime(pathOf(bucketName, key), FileTime.from(lastModified));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to touch " + key, e);
+        }
+    }
+
+    @Override
+    public List<S3ObjectSummary> getObjectSummaries(String bucketName) {
+        faults.apply("S3.getObjectSummaries");
+        Path bucket = root.resolve(bucketName);
+        if (!Files.isDirectory(bucket)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.walk(bucket)) {
+            return files
+                .filter(Files::isRegularFile)
+                .map(it -> summaryOf(bucketName, bucket, it))
+                .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to list " + bucket, e);
+        }
+    }
+
+    @Override
+    public Optional<S3Object> getObject(String bucketName, String key) {
+        faults.apply("S3.getObject");
+        Path path = pathOf(bucketName, key);
+        if (!Files.isRegularFile(path)) {
+            return Optional.empty();
+        }
+        try {
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentLength(Files.size(path));
+            metadata.setLastModified(new Date(Files.getLastModifiedTime(path).toMillis()));
+            metadata.setHeader("ETag", etagOf(com.google.common.io.Files.asByteSource(path.toFile())));
+
+            S3Object object = new S3Object();
+            object.setBucketName(bucketName);
+            object.setKey(key);
+            object.setObjectMetadata(metadata);
+            object.setObjectContent(Files.newInputStream(path));
+            return Optional.of(object);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read " + path, e);
+        }
+    }
+
+    @Override
+    public void deleteObject(String bucketName, String objectKeyName) {
+        faults.apply("S3.deleteObject");
+        try {
+            Files.deleteIfExists(pathOf(bucketName, objectKeyName));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to delete " + objectKeyName, e);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static String etagOf(ByteSource bytes) {
+        try {
+            return bytes.hash(Hashing.md5()).toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read " + bytes, e);
+        }
+    }
+
+    private Path pathOf(String bucketName, String key) {
+        return root.resolve(bucketName).resolve(key);
+    }
+
+    private static S3ObjectSummary summaryOf(String bucketName, Path bucket, Path file) {
+        try {
+            S3ObjectSummary summary = new S3ObjectSummary();
+            summary.setBucketName(bucketName);
+            summary.setKey(bucket.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/"));
+            summary.setSize(Files.size(file));
+            summary.setLastModified(new Date(Files.getLastModifiedTime(file).toMillis()));
+            return summary;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read " + file, e);
+        }
+    }
+}
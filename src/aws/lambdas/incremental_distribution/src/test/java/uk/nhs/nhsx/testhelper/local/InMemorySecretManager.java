@@ -0,0 +1,44 @@
+package uk.nhs.nhsx.testhelper.local;
+
+import at.favre.lib.crypto.bcrypt.BCrypt;
+import uk.nhs.nhsx.core.auth.ApiName;
+import uk.nhs.nhsx.core.aws.secretsmanager.SecretManager;
+import uk.nhs.nhsx.core.aws.secretsmanager.SecretName;
+import uk.nhs.nhsx.core.aws.secretsmanager.SecretValue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ api keys are stored the way they are in secrets manager, as bcrypt hashes under /<api name>/<key name>
+ */
+public class InMemorySecretManager implements SecretManager {
+
+    private static final int BCRYPT_COST = 10;
+
+    private final Map<SecretName, SecretValue> secrets = new ConcurrentHashMap<>();
+    private final FaultInjection faults;
+
+    public InMemorySecretManager(FaultInjection faults) {
+        this.faults = faults;
+    }
+
+    public InMemorySecretManager withApiKey(ApiName apiName, String keyName, String keyValue) {
+        String hash = BCrypt.withDefaults().hashToString(BCRYPT_COST, keyValue.toCharArray());
+        secrets.put(SecretName.of("/" + apiName.name + "/" + keyName), SecretValue.of(hash));
+        return this;
+    }
+
+    public static String bearerTokenFor(String keyName, String keyValue) {
+        return Base64.getEncoder().encodeToString((keyName + ":" + keyValue).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public Optional<SecretValue> getSecret(SecretName secretName) {
+        faults.apply("SecretsManager.getSecretValue");
+        return Optional.ofNullable(secrets.get(secretName));
+    }
+}
@@ -0,0 +1,88 @@
+package uk.nhs.nhsx.testhelper.local;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.document.DeleteItemOutcome;
+import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.PrimaryKey;
+import com.amazonaws.services.dynamodbv2.document.spec.DeleteItemSpec;
+import com.amazonaws.services.dynamodbv2.local.embedded.DynamoDBEmbedded;
+import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
+import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndex;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.Projection;
+import com.amazonaws.services.dynamodbv2.model.ProjectionType;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
+import com.amazonaws.services.dynamodbv2.model.ReturnValue;
+import uk.nhs.nhsx.core.aws.dynamodb.AwsDynamoClient;
+
+/*
+ an in-process DynamoDBLocal; needs the sqlite native libraries on java.library.path (see copyNativeDependencies)
+ */
+public class LocalDynamoClient implements AwsDynamoClient {
+
+    private final AmazonDynamoDB client;
+    private final DynamoDB dynamoDB;
+
+    public LocalDynamoClient(FaultInjection faults) {
+        this.client = faults.wrap(AmazonDynamoDB.class, DynamoDBEmbedded.create().amazonDynamoDB());
+        this.dynamoDB = new DynamoDB(client);
+    }
+
+    public AmazonDynamoDB amazonDynamoDB() {
+        return client;
+    }
+
+    public LocalDynamoClient createTable(String tableName, String hashKeyName) {
+        client.createTable(
+            new CreateTableRequest()
+                .withTableName(tableName)
+                .withKeySchema(new KeySchemaElement().withAttributeName(hashKeyName).withKeyType(KeyType.HASH))
+                .withAttributeDefinitions(new AttributeDefinition().withAttributeName(hashKeyName).withAttributeType("S"))
+                .withProvisionedThroughput(new ProvisionedThroughput(1000L, 1000L))
+        );
+        return this;
+    }
+
+    public LocalDynamoClient createTable(String tableName, String hashKeyName, String indexName, String indexHashKeyName) {
+        client.createTable(
+            new CreateTableRequest()
+                .withTableName(tableName)
+                .withKeySchema(new KeySchemaElement().withAttributeName(hashKeyName).withKeyType(KeyType.HASH))
+                .withAttributeDefinitions(
+                    new AttributeDefinition().withAttributeName(hashKeyName).withAttributeType("S"),
+                    new AttributeDefinition().withAttributeName(indexHashKeyName).withAttributeType("S")
+                )
+                .withGlobalSecondaryIndexes(
+                    new GlobalSecondaryIndex()
+                        .withIndexName(indexName)
+                        .withKeySchema(new KeySchemaElement().withAttributeName(indexHashKeyName).withKeyType(KeyType.HASH))
+                        .withProjection(new Projection().withProjectionType(ProjectionType.ALL))
+                        .withProvisionedThroughput(new ProvisionedThroughput(1000L, 1000L))
+                )
+                .withProvisionedThroughput(new ProvisionedThroughput(1000L, 1000L))
+        );
+        return this;
+    }
+
+    @Override
+    public void putItem(String tableName, Item item) {
+        dynamoDB.getTable(tableName).putItem(item);
+    }
+
+    @Override
+    public Item getItem(String tableName, String hashKeyName, String hashKeyValue) {
+        return dynamoDB.getTable(tableName).getItem(hashKeyName, hashKeyValue);
+    }
+
+    @Override
+    public DeleteItemOutcome deleteItem(String tableName, String hashKeyName, String hashKeyValue) {
+        return dynamoDB.getTable(tableName).deleteItem(
+            new DeleteItemSpec()
+                .withPrimaryKey(new PrimaryKey(hashKeyName, hashKeyValue))
+                .withReturnValues(ReturnValue.ALL_OLD)
+        );
+    }
+}
@@ -0,0 +1,70 @@
+package uk.nhs.nhsx.testhelper.local;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+public class LocalRunOptions {
+
+    @Parameter(names = "--root", description = "Directory for the local buckets (default a new temporary directory)")
+    private String root;
+
+    @Parameter(names = "--days", description = "Days of submissions to generate")
+    public int days = 14;
+
+    @Parameter(names = "--submissions-per-hour", description = "Mobile submissions generated per hour")
+    public int submissionsPerHour = 100;
+
+    @Parameter(names = "--keys-per-submission", description = "Keys in each generated submission")
+    public int keysPerSubmission = 14;
+
+    @Parameter(names = "--latency-ms", description = "Latency added to every S3 and DynamoDB call")
+    public long latencyMillis = 0;
+
+    @Parameter(names = "--error-rate", description = "Fraction of S3 and DynamoDB calls that fail")
+    public double errorRate = 0.0;
+
+    @Parameter(names = "--seed", description = "Seed for the generated data")
+    public long seed = 1;
+
+    @Parameter(names = "--help", help = true, description = "Show help")
+    private boolean help = false;
+
+    public static LocalRunOptions parse(String[] args) {
+        LocalRunOptions options = new LocalRunOptions();
+        JCommander commander = JCommander.newBuilder().addObject(options).build();
+        commander.parse(args);
+        if (options.help) {
+            commander.usage();
+            System.exit(1);
+        }
+        return options;
+    }
+
+    public FaultInjection faults() {
+        return new FaultInjection(Duration.ofMillis(latencyMillis), errorRate);
+    }
+
+    public Path root() {
+        try {
+            return root == null ? Files.createTempDirectory("local-s3") : Files.createDirectories(Path.of(root));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "days=" + days +
+            ", submissionsPerHour=" + submissionsPerHour +
+            ", keysPerSubmission=" + keysPerSubmission +
+            ", latencyMillis=" + latencyMillis +
+            ", errorRate=" + errorRate +
+            ", seed=" + seed;
+    }
+}
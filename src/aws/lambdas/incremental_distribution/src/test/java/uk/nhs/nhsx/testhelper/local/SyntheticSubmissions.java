@@ -0,0 +1,78 @@
+package uk.nhs.nhsx.testhelper.local;
+
+import org.apache.http.entity.ContentType;
+import uk.nhs.nhsx.core.Jackson;
+import uk.nhs.nhsx.core.aws.s3.BucketName;
+import uk.nhs.nhsx.core.aws.s3.ObjectKey;
+import uk.nhs.nhsx.core.aws.s3.S3Storage;
+import uk.nhs.nhsx.core.aws.s3.Sources;
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKey;
+import uk.nhs.nhsx.diagnosiskeyssubmission.model.StoredTemporaryExposureKeyPayload;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/*
+ mobile submissions (keys at the root of the bucket) spread evenly over the window before the end time,
+ each carrying one daily key per day of the window. seeded, so runs with the same settings see the same data
+ */
+public class SyntheticSubmissions {
+
+    private static final int ROLLING_PERIOD = 144;
+    private static final int TRANSMISSION_RISK = 7;
+
+    private final FileSystemS3 s3;
+    private final Random random;
+
+    public SyntheticSubmissions(FileSystemS3 s3, long seed) {
+        this.s3 = s3;
+        this.random = new Random(seed);
+    }
+
+    public int generate(BucketName bucketName, Instant end, Duration window, int submissionsPerHour, int keysPerSubmission) {
+        long hours = window.toHours();
+        long total = hours * submissionsPerHour;
+        long spacingMillis = Duration.ofHours(1).toMillis() / submissionsPerHour;
+        Instant start = end.minus(window);
+
+        for (long i = 0; i < total; i++) {
+            Instant submittedAt = start.plusMillis(i * spacingMillis + random.nextInt((int) Math.max(1, spacingMillis)));
+            ObjectKey key = ObjectKey.of(new UUID(random.nextLong(), random.nextLong()).toString() + ".json");
+
+            s3.upload(
+                S3Storage.Locator.of(bucketName, key),
+                ContentType.APPLICATION_JSON,
+                Sources.byteSourceFor(Jackson.toJson(payloadFor(submittedAt, keysPerSubmission)))
+            );
+            s3.setLastModified(bucketName.value, key.value, submittedAt);
+        }
+
+        return Math.toIntExact(total);
+    }
+
+    private StoredTemporaryExposureKeyPayload payloadFor(Instant submittedAt, int keysPerSubmission) {
+        long today = submittedAt.truncatedTo(ChronoUnit.DAYS).getEpochSecond() / 600;
+        List<StoredTemporaryExposureKey> keys = new ArrayList<>();
+        for (int day = 0; day < keysPerSubmission; day++) {
+            keys.add(new StoredTemporaryExposureKey(
+                randomKey(),
+                Math.toIntExact(today - (long) day * ROLLING_PERIOD),
+                ROLLING_PERIOD,
+                TRANSMISSION_RISK
+            ));
+        }
+        return new StoredTemporaryExposureKeyPayload(keys);
+    }
+
+    private String randomKey() {
+        byte[] key = new byte[16];
+        random.nextBytes(key);
+        return Base64.getEncoder().encodeToString(key);
+    }
+}
@@ -22,6 +22,10 @@ class FakeDiagnosisKeysS3(private val objectSummaries: List<S3ObjectSummary>,
 
     override fun upload(locator: S3Storage.Locator?, contentType: ContentType?, bytes: ByteSource?, vararg meta: MetaHeader?) {}
 
+    // nothing is stored, so nothing is ever changed underneath a conditional write
+    override fun uploadIfUnchanged(locator: S3Storage.Locator, contentType: ContentType, bytes: ByteSource, etag: Optional<String>): Optional<String> =
+        Optional.of(UUID.randomUUID().toString())
+
     override fun getObjectSummaries(bucketName: String?) = objectSummaries
 
     override fun getObject(bucketName: String?, key: String?): Optional<S3Object> {
@@ -0,0 +1,33 @@
+package uk.nhs.nhsx.testhelper.mocks;
+
+import uk.nhs.nhsx.core.metrics.Metrics;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class FakeMetrics implements Metrics {
+
+    private final Map<String, Long> counts = new ConcurrentHashMap<>();
+    private final Map<String, List<Duration>> durations = new ConcurrentHashMap<>();
+
+    @Override
+    public void count(String name, long value) {
+        counts.merge(name, value, Long::sum);
+    }
+
+    @Override
+    public void duration(String name, Duration duration) {
+        durations.computeIfAbsent(name, k -> new CopyOnWriteArrayList<>()).add(duration);
+    }
+
+    public long count(String name) {
+        return counts.getOrDefault(name, 0L);
+    }
+
+    public List<Duration> durations(String name) {
+        return durations.getOrDefault(name, List.of());
+    }
+}
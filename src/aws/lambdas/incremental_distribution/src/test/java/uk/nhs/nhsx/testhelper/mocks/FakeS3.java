@@ -2,10 +2,16 @@ package uk.nhs.nhsx.testhelper.mocks;
 
 import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import org.apache.http.entity.ContentType;
 import uk.nhs.nhsx.core.aws.s3.AwsS3;
 import uk.nhs.nhsx.core.aws.s3.BucketName;
+import uk.nhs.nhsx.core.aws.s3.MetaHeader;
 import uk.nhs.nhsx.core.aws.s3.ObjectKey;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.AbstractMap;
 import java.util.List;
 import java.util.Map;
@@ -29,6 +35,26 @@ public class FakeS3 extends FakeS3Storage implements AwsS3 {
         throw new UnsupportedOperationException("james didn't write");
     }
 
+    /* only the last upload is kept, so the write goes ahead when that is the version given, by the md5 of its content */
+    @Override
+    public Optional<String> uploadIfUnchanged(Locator locator, ContentType contentType, ByteSource bytes, Optional<String> etag) {
+        Optional<String> current = Optional.ofNullable(this.bytes).map(FakeS3::etagOf);
+        if (!current.equals(etag)) {
+            return Optional.empty();
+        }
+        upload(locator, contentType, bytes, new MetaHeader[0]);
+        return Optional.of(etagOf(bytes));
+    }
+
+    @SuppressWarnings("deprecation")
+    private static String etagOf(ByteSource bytes) {
+        try {
+            return bytes.hash(Hashing.md5()).toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     @Override
     public void deleteObject(String bucketName, String objectKeyName) {
         deleted.add(new AbstractMap.SimpleEntry<>(BucketName.of(bucketName), ObjectKey.of(objectKeyName)));
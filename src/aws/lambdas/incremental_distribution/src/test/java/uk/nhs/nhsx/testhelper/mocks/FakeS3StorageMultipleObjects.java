@@ -15,7 +15,7 @@ public class FakeS3StorageMultipleObjects implements S3Storage {
     public List<FakeS3Object> fakeS3Objects = new ArrayList<>();
 
     @Override
-    public void upload(Locator locator, ContentType contentType, ByteSource bytes, MetaHeader[] meta) {
+    public synchronized void upload(Locator locator, ContentType contentType, ByteSource bytes, MetaHeader[] meta) {
         this.count++;
         this.bucket = locator.bucket;
         this.fakeS3Objects.add(new FakeS3Object(locator.key, contentType, bytes, meta));
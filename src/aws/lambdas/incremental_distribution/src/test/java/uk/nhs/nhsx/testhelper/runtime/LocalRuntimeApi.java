@@ -0,0 +1,134 @@
+package uk.nhs.nhsx.testhelper.runtime;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/*
+ a stand-in for the lambda runtime api, enough to run a custom runtime (native or JVM) on a developer machine:
+ it hands out queued events on invocation/next and completes them when the runtime posts a response or an error
+ */
+public class LocalRuntimeApi implements AutoCloseable {
+
+    private static final String PREFIX = "/2018-06-01/runtime/";
+
+    public static class Invocation {
+        public final String requestId = UUID.randomUUID().toString();
+        public final String event;
+        public final CompletableFuture<String> result = new CompletableFuture<>();
+        private volatile long servedAt;
+
+        private Invocation(String event) {
+            this.event = event;
+        }
+
+        public Duration latency(long respondedAt) {
+            return Duration.ofNanos(respondedAt - servedAt);
+        }
+    }
+
+    private final BlockingQueue<Invocation> pending = new LinkedBlockingQueue<>();
+    private final ConcurrentHashMap<String, Invocation> inFlight = new ConcurrentHashMap<>();
+    private final CompletableFuture<Long> firstPollAt = new CompletableFuture<>();
+    private final CompletableFuture<String> initError = new CompletableFuture<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final HttpServer server;
+
+    public LocalRuntimeApi() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(executor);
+        server.createContext(PREFIX, this::handle);
+        server.start();
+    }
+
+    /* the value of AWS_LAMBDA_RUNTIME_API */
+    public String address() {
+        return "127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public Invocation invoke(String event) {
+        Invocation invocation = new Invocation(event);
+        pending.add(invocation);
+        return invocation;
+    }
+
+    /* System.nanoTime() of the first poll for an invocation, i.e. when the runtime finished initialising */
+    public CompletableFuture<Long> firstPoll() {
+        return firstPollAt;
+    }
+
+    public CompletableFuture<String> initError() {
+        return initError;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath().substring(PREFIX.length());
+        try {
+            if (path.equals("invocation/next")) {
+                next(exchange);
+            } else if (path.equals("init/error")) {
+                initError.complete(body(exchange));
+                respond(exchange, 202, "");
+            } else if (path.startsWith("invocation/")) {
+                String[] parts = path.split("/");
+                Invocation invocation = inFlight.remove(parts[1]);
+                String body = body(exchange);
+                if (invocation != null) {
+                    if (parts[2].equals("response")) {
+                        invocation.result.complete(body);
+                    } else {
+                        invocation.result.completeExceptionally(new IllegalStateException("Invocation failed: " + body));
+                    }
+                }
+                respond(exchange, invocation == null ? 400 : 202, "");
+            } else {
+                respond(exchange, 404, "");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respond(exchange, 500, "");
+        }
+    }
+
+    private void next(HttpExchange exchange) throws IOException, InterruptedException {
+        firstPollAt.complete(System.nanoTime());
+        Invocation invocation = pending.take();
+        inFlight.put(invocation.requestId, invocation);
+        exchange.getResponseHeaders().add("Lambda-Runtime-Aws-Request-Id", invocation.requestId);
+        exchange.getResponseHeaders().add("Lambda-Runtime-Deadline-Ms", String.valueOf(System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30)));
+        exchange.getResponseHeaders().add("Lambda-Runtime-Invoked-Function-Arn", "arn:aws:lambda:eu-west-2:000000000000:function:local");
+        invocation.servedAt = System.nanoTime();
+        respond(exchange, 200, invocation.event);
+    }
+
+    private static String body(HttpExchange exchange) throws IOException {
+        return new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,224 @@
+package uk.nhs.nhsx.testhelper.runtime;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import uk.nhs.nhsx.core.aws.xray.Tracing;
+import uk.nhs.nhsx.core.runtime.LambdaRuntime;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/*
+ compares the native image build with the zipLambdaDistribution build of the same handler: both run the same
+ custom runtime loop against a local runtime api, and we record time to initialised, time to first response,
+ latency of the following invocations and peak resident memory. The handler talks to whichever AWS account the
+ caller's credentials point at, with any further environment given as --env, e.g.
+ ./gradlew compareStartup -Dstartup.args="--handler uk.nhs.nhsx.circuitbreakers.RiskyVenueHandler --env SSM_CIRCUIT_BREAKER_BASE_NAME=/app/te-dev"
+
+ with --agent-config the JVM run also records reflection and resource use with the native-image tracing agent,
+ merged into the given directory, which is how the configuration under META-INF/native-image is kept up to date
+ */
+public class StartupComparisonMain {
+
+    private static final String DEFAULT_EVENT = "{\"httpMethod\":\"POST\",\"path\":\"/health\",\"headers\":{},\"body\":\"\"}";
+
+    @Parameter(names = "--handler", description = "Handler class, as given in the function's handler setting")
+    private String handler = "uk.nhs.nhsx.diagnosiskeyssubmission.Handler";
+
+    @Parameter(names = "--event", description = "File with the API Gateway event to send, a POST /health if not given")
+    private String event;
+
+    @Parameter(names = "--invocations", description = "Number of invocations per run")
+    private int invocations = 20;
+
+    @Parameter(names = "--native", description = "Native bootstrap executable")
+    private String nativeBootstrap = "build/native/bootstrap";
+
+    @Parameter(names = "--jvm-distribution", description = "Zip built by zipLambdaDistribution")
+    private String jvmDistribution;
+
+    @Parameter(names = "--env", description = "Environment variable for the handler, as KEY=VALUE")
+    private List<String> environment = new ArrayList<>();
+
+    @Parameter(names = "--agent-config", description = "Run the JVM with the native-image agent, merging its configuration into this directory")
+    private String agentConfig;
+
+    @Parameter(names = "--help", help = true, description = "Show help")
+    private boolean help = false;
+
+    public static void main(String[] args) throws Exception {
+        Tracing.disableXRayComplaintsForMainClasses();
+
+        StartupComparisonMain options = new StartupComparisonMain();
+        JCommander commander = JCommander.newBuilder().addObject(options).build();
+        commander.parse(args);
+        if (options.help) {
+            commander.usage();
+            System.exit(1);
+        }
+        options.run();
+    }
+
+    private void run() throws Exception {
+        String payload = Optional.ofNullable(event)
+            .map(it -> readString(Paths.get(it)))
+            .orElse(DEFAULT_EVENT);
+
+        List<Result> results = new ArrayList<>();
+        if (jvmDistribution != null) {
+            results.add(measure("jvm", jvmCommand(unzip(Paths.get(jvmDistribution))), payload));
+        }
+        if (Files.isExecutable(Paths.get(nativeBootstrap))) {
+            results.add(measure("native", List.of(Paths.get(nativeBootstrap).toAbsolutePath().toString()), payload));
+        } else {
+            System.out.printf("No native bootstrap at %s, build it with ./gradlew nativeImage%n", nativeBootstrap);
+        }
+
+        System.out.printf("handler=%s, invocations=%d%n", handler, invocations);
+        System.out.printf("%-8s %14s %18s %16s %16s%n", "runtime", "init ms", "first response ms", "mean later ms", "peak rss MB");
+        results.forEach(System.out::println);
+    }
+
+    private Result measure(String name, List<String> command, String payload) throws Exception {
+        try (LocalRuntimeApi api = new LocalRuntimeApi()) {
+            ProcessBuilder builder = new ProcessBuilder(command).inheritIO();
+            builder.environment().putAll(handlerEnvironment(api));
+
+            long startedAt = System.nanoTime();
+            Process process = builder.start();
+            try {
+                LocalRuntimeApi.Invocation first = api.invoke(payload);
+                first.result.get(60, TimeUnit.SECONDS);
+                long firstResponseAt = System.nanoTime();
+                long initialisedAt = api.firstPoll().get();
+
+                long later = 0;
+                for (int i = 1; i < invocations; i++) {
+                    LocalRuntimeApi.Invocation invocation = api.invoke(payload);
+                    invocation.result.get(30, TimeUnit.SECONDS);
+                    later += invocation.latency(System.nanoTime()).toNanos();
+                }
+
+                return new Result(
+                    name,
+                    Duration.ofNanos(initialisedAt - startedAt),
+                    Duration.ofNanos(firstResponseAt - startedAt),
+                    invocations > 1 ? Duration.ofNanos(later / (invocations - 1)) : Duration.ZERO,
+                    peakResidentKb(process.pid())
+                );
+            } finally {
+                process.destroy();
+                process.waitFor(10, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    private Map<String, String> handlerEnvironment(LocalRuntimeApi api) {
+        Map<String, String> values = new HashMap<>(Map.of(
+            "AWS_LAMBDA_RUNTIME_API", api.address(),
+            "_HANDLER", handler,
+            "AWS_LAMBDA_FUNCTION_NAME", "local",
+            "AWS_LAMBDA_FUNCTION_MEMORY_SIZE", "1024"
+        ));
+        for (String it : environment) {
+            String[] parts = it.split("=", 2);
+            values.put(parts[0], parts.length > 1 ? parts[1] : "");
+        }
+        return values;
+    }
+
+    private List<String> jvmCommand(Path distribution) {
+        List<String> command = new ArrayList<>(List.of(
+            Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+            "-XX:+UseSerialGC",
+            "-Xshare:auto"
+        ));
+        if (agentConfig != null) {
+            command.add("-agentlib:native-image-agent=config-merge-dir=" + Paths.get(agentConfig).toAbsolutePath());
+        }
+        command.addAll(List.of(
+            "-cp", distribution + File.pathSeparator + distribution.resolve("lib") + "/*",
+            LambdaRuntime.class.getName()
+        ));
+        return command;
+    }
+
+    private static Path unzip(Path zip) throws IOException {
+        Path target = Files.createTempDirectory("lambda-distribution");
+        try (ZipInputStream input = new ZipInputStream(Files.newInputStream(zip))) {
+            ZipEntry entry;
+            while ((entry = input.getNextEntry()) != null) {
+                Path path = target.resolve(entry.getName()).normalize();
+                if (!path.startsWith(target)) {
+                    throw new IOException("Entry outside of target directory: " + entry.getName());
+                }
+                if (entry.isDirectory()) {
+                    Files.createDirectories(path);
+                } else {
+                    Files.createDirectories(path.getParent());
+                    Files.copy(input, path);
+                }
+            }
+        }
+        return target;
+    }
+
+    /* VmHWM is the peak resident set size, only available on linux */
+    private static Optional<Long> peakResidentKb(long pid) {
+        Path status = Paths.get("/proc", String.valueOf(pid), "status");
+        if (!Files.exists(status)) return Optional.empty();
+        try (InputStream input = Files.newInputStream(status)) {
+            return new String(input.readAllBytes(), StandardCharsets.UTF_8).lines()
+                .filter(it -> it.startsWith("VmHWM:"))
+                .map(it -> Long.parseLong(it.replaceAll("[^0-9]", "")))
+                .findFirst();
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static String readString(Path path) {
+        try {
+            return Files.readString(path);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to read " + path, e);
+        }
+    }
+
+    private static class Result {
+        private final String runtime;
+        private final Duration init;
+        private final Duration firstResponse;
+        private final Duration meanLater;
+        private final Optional<Long> peakResidentKb;
+
+        private Result(String runtime, Duration init, Duration firstResponse, Duration meanLater, Optional<Long> peakResidentKb) {
+            this.runtime = runtime;
+            this.init = init;
+            this.firstResponse = firstResponse;
+            this.meanLater = meanLater;
+            this.peakResidentKb = peakResidentKb;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-8s %14d %18d %16.1f %16s",
+                runtime, init.toMillis(), firstResponse.toMillis(), meanLater.toNanos() / 1e6,
+                peakResidentKb.map(it -> String.valueOf(it / 1024)).orElse("n/a"));
+        }
+    }
+}
@@ -336,6 +336,28 @@ class VirologyServiceTest {
         }
     }
 
+    @Test
+    fun `accepts test lab virology result generating several tokens at once`() {
+        val testOrders = listOf(
+            TestOrder("074qbxqq", "09657719-fe58-46a3-a3a3-a8db82d48043", "9dd3a549-2db0-4ba4-aadb-b32e235d4cc0"),
+            TestOrder("1e19z5zt", "2f4a3b1e-3c4d-4e5f-8a9b-0c1d2e3f4a5b", "5b6c7d8e-9f0a-4b1c-8d2e-3f4a5b6c7d8e")
+        )
+        every { persistenceService.persistTestOrdersAndResults(any(), 2, any(), any(), any()) } returns testOrders
+
+        val service = VirologyService(persistenceService, tokensGenerator, clock)
+
+        val response = service.acceptTestResultGeneratingTokens(
+            VirologyTokenGenRequest("POSITIVE", "2020-08-07T00:00:00Z"), 2
+        )
+
+        assertThat(response).containsExactly(VirologyTokenGenResponse.of("074qbxqq"), VirologyTokenGenResponse.of("1e19z5zt"))
+        verify(exactly = 1) {
+            persistenceService.persistTestOrdersAndResults(
+                any(), 2, fourWeeksExpireAt, "POSITIVE", "2020-08-07T00:00:00Z"
+            )
+        }
+    }
+
     @Test
     fun `accepts test lab virology negative result`() {
         val testOrderTokens = TestOrder(
@@ -3,6 +3,7 @@ package uk.nhs.nhsx.virology
 import com.amazonaws.HttpMethod
 import com.amazonaws.services.kms.model.SigningAlgorithmSpec
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent
+import com.google.common.io.ByteSource
 import io.mockk.Runs
 import io.mockk.every
 import io.mockk.just
@@ -38,7 +39,7 @@ import java.util.Optional
 class VirologySubmissionHandlerTest {
 
     private val contentSigner = mockk<Signer> {
-        every { sign(any()) } returns
+        every { sign(any<ByteSource>()) } returns
             Signature(
                 KeyId.of("TEST_KEY_ID"),
                 SigningAlgorithmSpec.ECDSA_SHA_256, "TEST_SIGNATURE".toByteArray()
@@ -245,6 +245,69 @@ class VirologyPersistenceLocalTest {
             .isInstanceOf(RuntimeException::class.java)
     }
 
+    @Test
+    fun `creates a transaction of test orders and final positive results`() {
+        val generator = TokensGenerator()
+
+        val testOrders = persistence.persistTestOrdersAndResults(
+            { generator.generateVirologyTokens() },
+            VirologyPersistenceService.ordersPerTransaction(VirologyResultRequest.NPEX_POSITIVE),
+            fourWeeksTtl,
+            positiveTestResult.testResult,
+            positiveTestResult.testEndDate
+        )
+
+        assertThat(testOrders).hasSize(8)
+        testOrders.forEach {
+            assertOrderIsPresent(it)
+            assertSubmissionIsPresent(it)
+        }
+    }
+
+    @Test
+    fun `regenerates only the test orders whose tokens collide`() {
+        val generator = TokensGenerator()
+        val taken = generator.generateVirologyTokens()
+        persistence.persistTestOrder({ taken }, fourWeeksTtl)
+
+        val tokensWithCollision = TestOrder(
+            taken.ctaToken.value,
+            "testResultPollingToken-collision",
+            "diagnosisKeySubmissionToken-collision"
+        )
+        val first = generator.generateVirologyTokens()
+        val last = generator.generateVirologyTokens()
+        val replacement = generator.generateVirologyTokens()
+
+        val tokensSupplier = mockk<Supplier<TestOrder>>()
+        every { tokensSupplier.get() } returns first andThen tokensWithCollision andThen last andThen replacement
+
+        val testOrders = persistence.persistTestOrdersAndResults(
+            tokensSupplier,
+            3,
+            fourWeeksTtl,
+            negativeTestResult.testResult,
+            negativeTestResult.testEndDate
+        )
+
+        assertThat(testOrders).containsExactly(first, replacement, last)
+        verify(exactly = 4) { tokensSupplier.get() }
+        testOrders.forEach { assertOrderIsPresent(it) }
+    }
+
+    @Test
+    fun `rejects more test orders than fit in one transaction`() {
+        assertThatThrownBy {
+            persistence.persistTestOrdersAndResults(
+                { TokensGenerator().generateVirologyTokens() },
+                13,
+                fourWeeksTtl,
+                negativeTestResult.testResult,
+                negativeTestResult.testEndDate
+            )
+        }.isInstanceOf(IllegalArgumentException::class.java)
+    }
+
     @Test
     fun `creates test order and final positive result`() {
         persistence.persistTestOrderAndResult(
@@ -512,6 +575,32 @@ class VirologyPersistenceLocalTest {
         assertSubmissionIsNotPresent()
     }
 
+    @Test
+    fun `cta exchange does not recreate an order that has been deleted`() {
+        persistence.persistTestOrderAndResult(
+            { testOrder },
+            fourWeeksTtl,
+            positiveTestResult.testResult,
+            positiveTestResult.testEndDate
+        )
+
+        dbClient.deleteItem(
+            DeleteItemRequest()
+                .withTableName(virologyConfig.testOrdersTable)
+                .withKey(mapOf("ctaToken" to stringAttribute(testOrder.ctaToken.value)))
+        )
+
+        persistence.updateOnCtaExchange(
+            testOrder,
+            positiveTestResult,
+            VirologyDataTimeToLive(10, 20)
+        )
+
+        assertOrderIsNotPresent()
+        assertTestResultIsPresent(testOrder, positiveTestResult, expireAt = fourWeeksTtl)
+        assertSubmissionIsPresent(testOrder, expireAt = fourWeeksTtl)
+    }
+
     @Test
     fun `updates cta exchange negative test result`() {
         persistence.persistTestOrderAndResult(
@@ -0,0 +1,72 @@
+package uk.nhs.nhsx.virology.tokengen
+
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.jupiter.api.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import kotlin.concurrent.thread
+
+class AdaptiveConcurrencyLimitTest {
+
+    @Test
+    fun `grows by one after a limit's worth of successes`() {
+        val concurrency = AdaptiveConcurrencyLimit(1, 10, 2)
+
+        repeat(2) {
+            concurrency.acquire()
+            concurrency.succeeded()
+        }
+
+        assertThat(concurrency.limit()).isEqualTo(3)
+    }
+
+    @Test
+    fun `halves when throttled but not below the minimum`() {
+        val concurrency = AdaptiveConcurrencyLimit(2, 10, 8)
+
+        concurrency.acquire()
+        concurrency.throttled()
+        assertThat(concurrency.limit()).isEqualTo(4)
+
+        repeat(3) {
+            concurrency.acquire()
+            concurrency.throttled()
+        }
+        assertThat(concurrency.limit()).isEqualTo(2)
+    }
+
+    @Test
+    fun `does not grow past the maximum`() {
+        val concurrency = AdaptiveConcurrencyLimit(1, 2, 2)
+
+        repeat(10) {
+            concurrency.acquire()
+            concurrency.succeeded()
+        }
+
+        assertThat(concurrency.limit()).isEqualTo(2)
+    }
+
+    @Test
+    fun `holds callers beyond the limit until a permit comes back`() {
+        val concurrency = AdaptiveConcurrencyLimit(1, 1, 1)
+        concurrency.acquire()
+
+        val acquired = CountDownLatch(1)
+        thread {
+            concurrency.acquire()
+            acquired.countDown()
+        }
+
+        assertThat(acquired.await(100, TimeUnit.MILLISECONDS)).isFalse
+        concurrency.failed()
+        assertThat(acquired.await(1, TimeUnit.SECONDS)).isTrue
+    }
+
+    @Test
+    fun `rejects an initial limit outside its bounds`() {
+        assertThatThrownBy { AdaptiveConcurrencyLimit(2, 10, 1) }
+            .isInstanceOf(IllegalArgumentException::class.java)
+    }
+}
@@ -0,0 +1,81 @@
+package uk.nhs.nhsx.virology.tokengen
+
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.assertj.core.api.Assertions.catchThrowable
+import org.junit.jupiter.api.Test
+import uk.nhs.nhsx.core.aws.s3.UploadStream
+import java.util.zip.ZipInputStream
+
+class CtaTokensExportTest {
+
+    private var csv: String? = null
+    private var zip: ByteArray? = null
+
+    private val export = CtaTokensExport(
+        UploadStream.buffering { csv = it.asCharSource(Charsets.UTF_8).read() },
+        UploadStream.buffering { zip = it.read() },
+        "file-name.csv",
+        Runnable { csv = null }
+    )
+
+    private val csvContent = """
+            cta token, test result, test end date
+            pesddgrq, POSITIVE, 2020-10-06T00:00:00Z
+            gve9v72v, POSITIVE, 2020-10-06T00:00:00Z
+            fveeqkrn, POSITIVE, 2020-10-06T00:00:00Z
+        """.trimIndent()
+
+    @Test
+    fun `writes the same rows to the csv and the zip`() {
+        export.write("pesddgrq, POSITIVE, 2020-10-06T00:00:00Z")
+        export.write("gve9v72v, POSITIVE, 2020-10-06T00:00:00Z\nfveeqkrn, POSITIVE, 2020-10-06T00:00:00Z")
+        export.finish()
+
+        assertThat(csv).isEqualTo(csvContent)
+
+        ZipInputStream(zip!!.inputStream()).use {
+            val entry = it.nextEntry
+            assertThat(entry.name).isEqualTo("file-name.csv")
+            assertThat(it.readBytes()).isEqualTo(csvContent.toByteArray(Charsets.UTF_8))
+            assertThat(it.nextEntry).isNull()
+        }
+    }
+
+    @Test
+    fun `stores nothing when aborted`() {
+        export.write("pesddgrq, POSITIVE, 2020-10-06T00:00:00Z")
+        export.abort()
+
+        assertThat(csv).isNull()
+        assertThat(zip).isNull()
+    }
+
+    @Test
+    fun `fails when the zip cannot be stored`() {
+        val failing = CtaTokensExport(
+            UploadStream.buffering { csv = it.asCharSource(Charsets.UTF_8).read() },
+            UploadStream.buffering { throw IllegalStateException("upload failed") },
+            "file-name.csv",
+            Runnable { csv = null }
+        )
+
+        assertThatThrownBy { failing.finish() }.isInstanceOf(IllegalStateException::class.java)
+        assertThat(csv).isNull()
+    }
+
+    @Test
+    fun `a failure to remove the csv does not hide why the zip failed`() {
+        val failing = CtaTokensExport(
+            UploadStream.buffering { },
+            UploadStream.buffering { throw IllegalStateException("upload failed") },
+            "file-name.csv",
+            Runnable { throw RuntimeException("delete failed") }
+        )
+
+        val thrown = catchThrowable { failing.finish() }
+
+        assertThat(thrown).isInstanceOf(IllegalStateException::class.java).hasMessage("upload failed")
+        assertThat(thrown.suppressed.map { it.message }).containsExactly("delete failed")
+    }
+}
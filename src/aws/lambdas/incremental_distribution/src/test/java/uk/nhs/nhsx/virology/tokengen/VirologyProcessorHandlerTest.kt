@@ -1,5 +1,6 @@
 package uk.nhs.nhsx.virology.tokengen
 
+import com.amazonaws.services.lambda.runtime.Context
 import io.mockk.every
 import io.mockk.mockk
 import io.mockk.verify
@@ -11,7 +12,13 @@ import uk.nhs.nhsx.virology.VirologyProcessorHandler
 class VirologyProcessorHandlerTest {
 
     private val service = mockk<VirologyProcessorService>()
-    private val handler = VirologyProcessorHandler(service)
+    private val invoked = mutableListOf<Pair<String, Map<String, String>>>()
+    private val handler = VirologyProcessorHandler(service) { functionArn, event -> invoked.add(functionArn to event) }
+    private val context = mockk<Context> {
+        every { awsRequestId } returns "request-id"
+        every { remainingTimeInMillis } returns 900_000
+        every { invokedFunctionArn } returns "some-function-arn"
+    }
 
     @Test
     fun `event is of accepted type`() {
@@ -20,13 +27,46 @@ class VirologyProcessorHandlerTest {
             "testEndDate" to "2020-10-06T00:00:00Z",
             "numberOfTokens" to "1000"
         )
-        every { service.generateAndStoreTokens(any()) } returns CtaProcessorResult.Success("some-file.zip", "some-message")
+        every { service.generateAndStoreTokens(any(), any(), any()) } returns CtaProcessorResult.Success("some-file.zip", "some-message", 1000, 100.0)
 
-        val json = handler.handleRequest(input, mockk())
+        val json = handler.handleRequest(input, context)
         assertThat(json).containsSubsequence("some-file.zip")
 
         val expectedEvent = CtaProcessorRequest("POSITIVE", "2020-10-06T00:00:00Z", 1000)
-        verify { service.generateAndStoreTokens(expectedEvent) }
+        verify { service.generateAndStoreTokens("request-id", expectedEvent, any()) }
+        assertThat(invoked).isEmpty()
+    }
+
+    @Test
+    fun `continues a job that ran out of time in a new invocation`() {
+        val input = mapOf(
+            "testResult" to "POSITIVE",
+            "testEndDate" to "2020-10-06T00:00:00Z",
+            "numberOfTokens" to "1000"
+        )
+        every { service.generateAndStoreTokens(any(), any(), any()) } returns CtaProcessorResult.InProgress("request-id", 500, 1000)
+
+        handler.handleRequest(input, context)
+
+        assertThat(invoked).containsExactly("some-function-arn" to input + ("jobId" to "request-id"))
+    }
+
+    @Test
+    fun `carries on the job given in the event`() {
+        val input = mapOf(
+            "testResult" to "POSITIVE",
+            "testEndDate" to "2020-10-06T00:00:00Z",
+            "numberOfTokens" to "1000",
+            "jobId" to "earlier-request-id"
+        )
+        every { service.generateAndStoreTokens(any(), any(), any()) } returns CtaProcessorResult.InProgress("earlier-request-id", 500, 1000)
+
+        val json = handler.handleRequest(input, context)
+        assertThat(json).contains("in_progress").contains("earlier-request-id")
+
+        val expectedEvent = CtaProcessorRequest("POSITIVE", "2020-10-06T00:00:00Z", 1000)
+        verify { service.generateAndStoreTokens("earlier-request-id", expectedEvent, any()) }
+        assertThat(invoked).containsExactly("some-function-arn" to input)
     }
 
     @Test
@@ -1,117 +1,211 @@
 package uk.nhs.nhsx.virology.tokengen
 
+import com.amazonaws.AmazonServiceException
 import io.mockk.Runs
 import io.mockk.every
 import io.mockk.just
 import io.mockk.mockk
-import io.mockk.slot
 import io.mockk.verify
 import org.assertj.core.api.Assertions.assertThat
 import org.junit.jupiter.api.Test
+import uk.nhs.nhsx.core.aws.s3.UploadStream
 import uk.nhs.nhsx.virology.VirologyService
 import uk.nhs.nhsx.virology.result.VirologyTokenGenRequest
 import uk.nhs.nhsx.virology.result.VirologyTokenGenResponse
+import java.time.Duration
 import java.time.Instant
+import java.util.Optional
+import java.util.concurrent.Executor
 import java.util.function.Supplier
+import java.util.zip.ZipInputStream
 
 class VirologyProcessorServiceTest {
 
     private val clock = Supplier { Instant.ofEpochSecond(0) }
     private val virologyService = mockk<VirologyService>()
-    private val store = mockk<VirologyProcessorStore>()
+    private val parts = mutableMapOf<Int, String>()
+    private var exportedFilename: String? = null
+    private var exportedCsv: String? = null
+    private var exportedZip: ByteArray? = null
+    private var progress: CtaProcessorProgress? = null
+    private val store = mockk<VirologyProcessorStore> {
+        every { loadProgress(any()) } answers { Optional.ofNullable(progress) }
+        every { storeProgress(any(), any()) } answers { progress = secondArg() }
+        every { storePart(any(), any(), any()) } answers { parts[secondArg()] = thirdArg() }
+        every { loadPart(any(), any()) } answers { parts.getValue(secondArg()) }
+        every { startExport(any()) } answers {
+            exportedFilename = firstArg()
+            CtaTokensExport(
+                UploadStream.buffering { exportedCsv = it.asCharSource(Charsets.UTF_8).read() },
+                UploadStream.buffering { exportedZip = it.read() },
+                firstArg<String>() + ".csv",
+                Runnable { exportedCsv = null }
+            )
+        }
+        every { deleteParts(any(), any()) } just Runs
+    }
     private val maxRetryCount: Int = 3
-    private val processorService = VirologyProcessorService(virologyService, store, clock, maxRetryCount)
+    private val processorService = VirologyProcessorService(virologyService, store, clock, maxRetryCount, Executor { it.run() })
 
     private val r1 = VirologyTokenGenResponse.of("pesddgrq")
     private val r2 = VirologyTokenGenResponse.of("gve9v72v")
     private val r3 = VirologyTokenGenResponse.of("fveeqkrn")
 
-    private val csvSlot = slot<CtaTokensCsv>()
-    private val zipSlot = slot<CtaTokensZip>()
     private val tokenGenRequest = VirologyTokenGenRequest("POSITIVE", "2020-10-06T00:00:00Z")
     private val multiTokenEvent = CtaProcessorRequest("POSITIVE", "2020-10-06T00:00:00Z", 3)
     private val singleTokenEvent = CtaProcessorRequest("POSITIVE", "2020-10-06T00:00:00Z", 1)
 
     @Test
     fun `generates tokens`() {
-        every { virologyService.acceptTestResultGeneratingTokens(any()) } returnsMany listOf(r1, r2, r3)
-        every { store.storeCsv(capture(csvSlot)) } just Runs
-        every { store.storeZip(capture(zipSlot)) } just Runs
+        every { virologyService.acceptTestResultGeneratingTokens(any(), 3) } returns listOf(r1, r2, r3)
 
         processorService.generateAndStoreTokens(multiTokenEvent)
 
-        verify(exactly = 3) { virologyService.acceptTestResultGeneratingTokens(tokenGenRequest) }
-        verify(exactly = 1) { store.storeCsv(any()) }
-        assertThat(csvSlot.captured.filename).isEqualTo("1970-01-01T00:00:00Z.csv")
-        assertThat(csvSlot.captured.content).contains("pesddgrq")
-        assertThat(csvSlot.captured.content).contains("gve9v72v")
-        assertThat(csvSlot.captured.content).contains("fveeqkrn")
+        verify(exactly = 1) { virologyService.acceptTestResultGeneratingTokens(tokenGenRequest, 3) }
+        verify(exactly = 1) { store.startExport(any()) }
+        assertThat(exportedFilename).isEqualTo("1970-01-01T00:00:00Z")
+        assertThat(exportedCsv!!).contains("pesddgrq")
+        assertThat(exportedCsv!!).contains("gve9v72v")
+        assertThat(exportedCsv!!).contains("fveeqkrn")
 
-        verify(exactly = 1) { store.storeZip(any()) }
-        assertThat(zipSlot.captured.filename).isEqualTo("1970-01-01T00:00:00Z.zip")
+        assertThat(unzipped(exportedZip!!)).isEqualTo(exportedCsv)
     }
 
     @Test
-    fun `single token - no tokens stored when service throws exception everytime it is called (with retries)`() {
-        every { virologyService.acceptTestResultGeneratingTokens(any()) } throws Exception()
+    fun `packs tokens into as few transactions as will hold them`() {
+        every { virologyService.acceptTestResultGeneratingTokens(any(), any()) } answers {
+            (1..secondArg<Int>()).map { VirologyTokenGenResponse.of("token$it") }
+        }
 
-        processorService.generateAndStoreTokens(singleTokenEvent)
+        val result = processorService.generateAndStoreTokens(CtaProcessorRequest("POSITIVE", "2020-10-06T00:00:00Z", 20))
 
-        verify(exactly = 3) { virologyService.acceptTestResultGeneratingTokens(tokenGenRequest) }
-        verify(exactly = 0) { store.storeCsv(any()) }
-        verify(exactly = 0) { store.storeZip(any()) }
+        assertThat(result).isInstanceOf(CtaProcessorResult.Success::class.java)
+        verify(exactly = 2) { virologyService.acceptTestResultGeneratingTokens(tokenGenRequest, 8) }
+        verify(exactly = 1) { virologyService.acceptTestResultGeneratingTokens(tokenGenRequest, 4) }
+        assertThat(exportedCsv!!.lines().filter { it.startsWith("token") }).hasSize(20)
     }
 
     @Test
-    fun `multi token - no tokens stored when service throws exception everytime it is called (with retries)`() {
-        every { virologyService.acceptTestResultGeneratingTokens(any()) } throws Exception()
+    fun `single token - no tokens stored when service throws exception everytime it is called (with retries)`() {
+        every { virologyService.acceptTestResultGeneratingTokens(any(), any()) } throws Exception()
 
-        processorService.generateAndStoreTokens(multiTokenEvent)
+        processorService.generateAndStoreTokens(singleTokenEvent)
 
-        verify(exactly = 9) { virologyService.acceptTestResultGeneratingTokens(tokenGenRequest) }
-        verify(exactly = 0) { store.storeCsv(any()) }
-        verify(exactly = 0) { store.storeZip(any()) }
+        verify(exactly = 3) { virologyService.acceptTestResultGeneratingTokens(tokenGenRequest, 1) }
+        verify(exactly = 0) { store.startExport(any()) }
     }
 
     @Test
     fun `single token - retries when exception is thrown`() {
         every {
-            virologyService.acceptTestResultGeneratingTokens(any())
-        } throws IllegalStateException("Error 1!") andThenThrows IllegalStateException("Error 2!") andThen r1
+            virologyService.acceptTestResultGeneratingTokens(any(), any())
+        } throws IllegalStateException("Error 1!") andThenThrows IllegalStateException("Error 2!") andThen listOf(r1)
 
-        every { store.storeCsv(capture(csvSlot)) } just Runs
-        every { store.storeZip(capture(zipSlot)) } just Runs
 
         processorService.generateAndStoreTokens(singleTokenEvent)
 
-        verify(exactly = 3) { virologyService.acceptTestResultGeneratingTokens(tokenGenRequest) }
-        verify(exactly = 1) { store.storeCsv(any()) }
-        assertThat(csvSlot.captured.filename).isEqualTo("1970-01-01T00:00:00Z.csv")
-        assertThat(csvSlot.captured.content).contains("pesddgrq")
+        verify(exactly = 3) { virologyService.acceptTestResultGeneratingTokens(tokenGenRequest, 1) }
+        verify(exactly = 1) { store.startExport(any()) }
+        assertThat(exportedCsv!!).contains("pesddgrq")
 
-        verify(exactly = 1) { store.storeZip(any()) }
-        assertThat(zipSlot.captured.filename).isEqualTo("1970-01-01T00:00:00Z.zip")
     }
 
     @Test
-    fun `multi token - retries when exception is thrown`() {
+    fun `retries transactions that were throttled`() {
+        val throttled = AmazonServiceException("Rate exceeded").apply { errorCode = "ThrottlingException" }
         every {
-            virologyService.acceptTestResultGeneratingTokens(any())
-        } returns r1 andThenThrows IllegalStateException("something bad happened!") andThen r3
+            virologyService.acceptTestResultGeneratingTokens(any(), any())
+        } throws throttled andThen listOf(r1, r2, r3)
 
-        every { store.storeCsv(capture(csvSlot)) } just Runs
-        every { store.storeZip(capture(zipSlot)) } just Runs
 
         processorService.generateAndStoreTokens(multiTokenEvent)
 
-        verify(exactly = 4) { virologyService.acceptTestResultGeneratingTokens(tokenGenRequest) }
-        verify(exactly = 1) { store.storeCsv(any()) }
-        assertThat(csvSlot.captured.filename).isEqualTo("1970-01-01T00:00:00Z.csv")
-        assertThat(csvSlot.captured.content).contains("pesddgrq")
-        assertThat(csvSlot.captured.content).contains("fveeqkrn")
-        assertThat(csvSlot.captured.content).doesNotContain("gve9v72v")
+        verify(exactly = 2) { virologyService.acceptTestResultGeneratingTokens(tokenGenRequest, 3) }
+        assertThat(exportedCsv!!).contains("pesddgrq")
+    }
 
-        verify(exactly = 1) { store.storeZip(any()) }
-        assertThat(zipSlot.captured.filename).isEqualTo("1970-01-01T00:00:00Z.zip")
+    @Test
+    fun `makes up for transactions that failed with another chunk`() {
+        val failed = IllegalStateException("something bad happened!")
+        every {
+            virologyService.acceptTestResultGeneratingTokens(any(), 8)
+        } throws failed andThenThrows failed andThenThrows failed andThen listOf(r1, r2, r3, r1, r2, r3, r1, r2)
+        every { virologyService.acceptTestResultGeneratingTokens(any(), 2) } returns listOf(r3, r3)
+
+
+        val result = processorService.generateAndStoreTokens(CtaProcessorRequest("POSITIVE", "2020-10-06T00:00:00Z", 10))
+
+        assertThat((result as CtaProcessorResult.Success).tokensGenerated).isEqualTo(10)
+        verify(exactly = 4) { virologyService.acceptTestResultGeneratingTokens(tokenGenRequest, 8) }
+        verify(exactly = 2) { store.storePart(any(), any(), any()) }
+    }
+
+    @Test
+    fun `stores each chunk as a part and puts them together at the end`() {
+        val chunkedService = VirologyProcessorService(virologyService, store, clock, maxRetryCount, Executor { it.run() }, 10)
+        every { virologyService.acceptTestResultGeneratingTokens(any(), any()) } answers {
+            (1..secondArg<Int>()).map { VirologyTokenGenResponse.of("token${parts.size}-$it") }
+        }
+
+        val result = chunkedService.generateAndStoreTokens("job", CtaProcessorRequest("NEGATIVE", "2020-10-06T00:00:00Z", 20)) { Duration.ofMinutes(15) }
+
+        assertThat(result).isInstanceOf(CtaProcessorResult.Success::class.java)
+        assertThat((result as CtaProcessorResult.Success).tokensGenerated).isEqualTo(20)
+        assertThat(result.toResponse()).containsEntry("tokensGenerated", "20").containsKey("tokensPerSecond")
+        verify(exactly = 1) { store.storePart("job", 1, any()) }
+        verify(exactly = 1) { store.storePart("job", 2, any()) }
+        verify(exactly = 1) { store.deleteParts("job", 2) }
+        assertThat(exportedCsv!!.lines().filter { it.startsWith("token") }).hasSize(20)
+        assertThat(progress!!.complete).isTrue
     }
-}
\ No newline at end of file
+
+    @Test
+    fun `stops when out of time and carries on from the last chunk when invoked again`() {
+        val chunkedService = VirologyProcessorService(virologyService, store, clock, maxRetryCount, Executor { it.run() }, 8)
+        val event = CtaProcessorRequest("POSITIVE", "2020-10-06T00:00:00Z", 16)
+        every { virologyService.acceptTestResultGeneratingTokens(any(), any()) } answers {
+            (1..secondArg<Int>()).map { VirologyTokenGenResponse.of("token${parts.size}-$it") }
+        }
+
+        val remaining = mutableListOf(Duration.ofMinutes(15), Duration.ofSeconds(10))
+        val first = chunkedService.generateAndStoreTokens("job", event) { remaining.removeAt(0) }
+
+        assertThat(first).isInstanceOf(CtaProcessorResult.InProgress::class.java)
+        assertThat(first.toResponse()).containsEntry("jobId", "job").containsEntry("tokensGenerated", "8")
+        verify(exactly = 0) { store.startExport(any()) }
+
+        val second = chunkedService.generateAndStoreTokens("job", event) { Duration.ofMinutes(15) }
+
+        assertThat(second).isInstanceOf(CtaProcessorResult.Success::class.java)
+        verify(exactly = 2) { virologyService.acceptTestResultGeneratingTokens(tokenGenRequest, 8) }
+        assertThat(exportedCsv!!).contains("token0-1").contains("token1-8")
+    }
+
+    @Test
+    fun `a completed job retried does not generate again`() {
+        progress = CtaProcessorProgress.start(multiTokenEvent, "1970-01-01T00:00:00Z").withChunk(3, 1000).completed()
+
+        val result = processorService.generateAndStoreTokens("job", multiTokenEvent) { Duration.ofMinutes(15) }
+
+        assertThat(result).isInstanceOf(CtaProcessorResult.Success::class.java)
+        assertThat((result as CtaProcessorResult.Success).zipFilename).isEqualTo("1970-01-01T00:00:00Z.zip")
+        assertThat(result.tokensPerSecond).isEqualTo(3.0)
+        verify(exactly = 0) { virologyService.acceptTestResultGeneratingTokens(any(), any()) }
+    }
+
+    @Test
+    fun `refuses to carry on a job started for a different request`() {
+        progress = CtaProcessorProgress.start(singleTokenEvent, "1970-01-01T00:00:00Z")
+
+        val result = processorService.generateAndStoreTokens("job", multiTokenEvent) { Duration.ofMinutes(15) }
+
+        assertThat(result).isInstanceOf(CtaProcessorResult.Error::class.java)
+        verify(exactly = 0) { virologyService.acceptTestResultGeneratingTokens(any(), any()) }
+    }
+
+    private fun unzipped(zip: ByteArray): String =
+        ZipInputStream(zip.inputStream()).use {
+            it.nextEntry
+            it.readBytes().toString(Charsets.UTF_8)
+        }
+}
@@ -1,7 +1,8 @@
 package uk.nhs.nhsx.virology.tokengen
 
+import com.amazonaws.services.s3.model.AmazonS3Exception
+import com.amazonaws.services.s3.model.S3Object
 import com.google.common.io.ByteSource
-import com.google.common.io.Files.asByteSource
 import io.mockk.Runs
 import io.mockk.every
 import io.mockk.just
@@ -11,10 +12,14 @@ import io.mockk.verify
 import org.apache.http.Consts
 import org.apache.http.entity.ContentType
 import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
 import org.junit.jupiter.api.Test
+import uk.nhs.nhsx.core.aws.s3.AwsS3
 import uk.nhs.nhsx.core.aws.s3.BucketName
 import uk.nhs.nhsx.core.aws.s3.ObjectKey
 import uk.nhs.nhsx.core.aws.s3.S3Storage
+import uk.nhs.nhsx.core.aws.s3.UploadStream
+import java.util.Optional
 
 class VirologyProcessorStoreTest {
 
@@ -22,32 +27,76 @@ class VirologyProcessorStoreTest {
     private val locatorSlot = slot<S3Storage.Locator>()
     private val contentTypeSlot = slot<ContentType>()
     private val bytesSlot = slot<ByteSource>()
-    private val s3Storage = mockk<S3Storage> {
+    private val s3Storage = mockk<AwsS3> {
         every { upload(capture(locatorSlot), capture(contentTypeSlot), capture(bytesSlot)) } just Runs
     }
     private val store = VirologyProcessorStore(s3Storage, bucketName)
 
     @Test
-    fun `stores csv file`() {
-        store.storeCsv(CtaTokensCsv("file.csv", "file-content"))
+    fun `exports csv and zip`() {
+        val uploaded = mutableMapOf<String, ByteArray>()
+        every { s3Storage.uploadStream(any(), any()) } answers {
+            val locator = firstArg<S3Storage.Locator>()
+            UploadStream.buffering { uploaded[locator.key.value] = it.read() }
+        }
 
-        verify(exactly = 1) { s3Storage.upload(any(), any(), any()) }
-        assertThat(locatorSlot.captured.bucket).isEqualTo(BucketName.of("bucket"))
-        assertThat(locatorSlot.captured.key).isEqualTo(ObjectKey.of("file.csv"))
-        assertThat(contentTypeSlot.captured.charset).isEqualTo(Consts.UTF_8)
+        val export = store.startExport("file")
+        export.write("pesddgrq, POSITIVE, 2020-10-06T00:00:00Z")
+        export.finish()
+
+        verify(exactly = 1) { s3Storage.uploadStream(match { it.key.value == "file.csv" }, match { it.mimeType == "text/csv" && it.charset == Consts.UTF_8 }) }
+        verify(exactly = 1) { s3Storage.uploadStream(match { it.key.value == "file.zip" }, match { it.mimeType == "application/zip" }) }
+        assertThat(uploaded.getValue("file.csv").toString(Charsets.UTF_8))
+            .isEqualTo("cta token, test result, test end date\npesddgrq, POSITIVE, 2020-10-06T00:00:00Z")
+        assertThat(uploaded).containsKey("file.zip")
+    }
+
+    @Test
+    fun `stores job progress and reads it back`() {
+        val progress = CtaProcessorProgress.start(CtaProcessorRequest("POSITIVE", "2020-10-06T00:00:00Z", 20), "file").withChunk(10, 500)
+        store.storeProgress("job", progress)
+
+        assertThat(locatorSlot.captured.key).isEqualTo(ObjectKey.of("jobs/job/progress.json"))
+        val stored = S3Object().apply { setObjectContent(bytesSlot.captured.openStream()) }
+        every { s3Storage.findObject("bucket", "jobs/job/progress.json") } returns Optional.of(stored)
+
+        assertThat(store.loadProgress("job")).contains(progress)
+    }
+
+    @Test
+    fun `no progress for a job not started`() {
+        every { s3Storage.findObject("bucket", "jobs/job/progress.json") } returns Optional.empty()
+
+        assertThat(store.loadProgress("job")).isEmpty
+    }
+
+    @Test
+    fun `fails to load progress when it cannot be read`() {
+        every { s3Storage.findObject("bucket", "jobs/job/progress.json") } throws AmazonS3Exception("denied")
+
+        assertThatThrownBy { store.loadProgress("job") }.isInstanceOf(AmazonS3Exception::class.java)
+    }
+
+    @Test
+    fun `stores parts numbered in order`() {
+        store.storePart("job", 12, "token, POSITIVE, 2020-10-06T00:00:00Z")
+
+        assertThat(locatorSlot.captured.key).isEqualTo(ObjectKey.of("jobs/job/part-00012.csv"))
         assertThat(contentTypeSlot.captured.mimeType).isEqualTo("text/csv")
-        assertThat(bytesSlot.captured.asCharSource(Charsets.UTF_8).read()).isEqualTo("file-content")
     }
 
     @Test
-    fun `stores zip file`() {
-        val zipFile = createTempFile("file", ".zip")
-        store.storeZip(CtaTokensZip("file.zip", zipFile))
+    fun `loads a part`() {
+        val stored = S3Object().apply { setObjectContent("rows".byteInputStream()) }
+        every { s3Storage.findObject("bucket", "jobs/job/part-00002.csv") } returns Optional.of(stored)
+
+        assertThat(store.loadPart("job", 2)).isEqualTo("rows")
+    }
+
+    @Test
+    fun `loading a part fails when it is missing`() {
+        every { s3Storage.findObject("bucket", "jobs/job/part-00002.csv") } returns Optional.empty()
 
-        verify(exactly = 1) { s3Storage.upload(any(), any(), any()) }
-        assertThat(locatorSlot.captured.bucket).isEqualTo(BucketName.of("bucket"))
-        assertThat(locatorSlot.captured.key).isEqualTo(ObjectKey.of("file.zip"))
-        assertThat(contentTypeSlot.captured.mimeType).isEqualTo("application/zip")
-        assertThat(bytesSlot.captured.read()).isEqualTo(asByteSource(zipFile).read())
+        assertThatThrownBy { store.loadPart("job", 2) }.isInstanceOf(IllegalStateException::class.java)
     }
-}
\ No newline at end of file
+}
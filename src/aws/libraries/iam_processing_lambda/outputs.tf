@@ -1,3 +1,7 @@
 output "arn" {
   value = aws_iam_role.this.arn
-}
\ No newline at end of file
+}
+
+output "name" {
+  value = aws_iam_role.this.name
+}
@@ -32,7 +32,7 @@ resource "aws_cloudwatch_log_group" "this" {
 
 resource "aws_cloudwatch_log_metric_filter" "this" {
   name           = "ErrorLogCount"
-  pattern        = "[date,thread,awsRequestId,logLevel = ERROR,className, description]"
+  pattern        = "{ $.level = \"ERROR\" }"
   log_group_name = aws_cloudwatch_log_group.this.name
 
   metric_transformation {
@@ -44,7 +44,7 @@ resource "aws_cloudwatch_log_metric_filter" "this" {
 
 resource "aws_cloudwatch_log_metric_filter" "warning_lambda_metric" {
   name           = "WarningLogCount"
-  pattern        = "[date,thread,awsRequestId,logLevel = WARN,className, description]"
+  pattern        = "{ $.level = \"WARN\" }"
   log_group_name = aws_cloudwatch_log_group.this.name
 
   metric_transformation {
@@ -28,6 +28,23 @@ module "virology_tokens_processing_lambda" {
   tags             = var.tags
 }
 
+# a job that runs out of time carries on in an async invocation of the same function
+data "aws_iam_policy_document" "continue_job" {
+  statement {
+    actions   = ["lambda:InvokeFunction"]
+    resources = [
+      module.virology_tokens_processing_lambda.lambda_function_arn,
+      "${module.virology_tokens_processing_lambda.lambda_function_arn}:*"
+    ]
+  }
+}
+
+resource "aws_iam_role_policy" "continue_job" {
+  name   = "${local.identifier_prefix}-continue-job"
+  role   = module.processor_role.name
+  policy = data.aws_iam_policy_document.continue_job.json
+}
+
 module "virology_tokens_bucket" {
   source         = "../../libraries/submission_s3"
   name           = "virology-tokens"